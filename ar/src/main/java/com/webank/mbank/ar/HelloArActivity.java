@@ -19,10 +19,9 @@ package com.webank.mbank.ar;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.media.AudioManager;
-import android.media.SoundPool;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.design.widget.BaseTransientBottomBar;
 import android.support.design.widget.Snackbar;
@@ -49,23 +48,49 @@ import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationException;
+import com.webank.mbank.ar.audio.SoundBank;
+import com.webank.mbank.ar.audio.SoundPoolSink;
+import com.webank.mbank.ar.game.InputEvent;
+import com.webank.mbank.ar.game.InputEventRing;
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameLoop;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Frustum;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.profiling.FrameProfiler;
+import com.webank.mbank.ar.profiling.StartupTimer;
+import com.webank.mbank.ar.rendering.ArCorePlaneSource;
+import com.webank.mbank.ar.rendering.AssetLoader;
 import com.webank.mbank.ar.rendering.BackgroundRenderer;
+import com.webank.mbank.ar.rendering.FrameArena;
+import com.webank.mbank.ar.rendering.GlDiagnostics;
+import com.webank.mbank.ar.rendering.Gles20Backend;
 import com.webank.mbank.ar.rendering.ObjectRenderer;
 import com.webank.mbank.ar.rendering.PlaneRenderer;
 import com.webank.mbank.ar.rendering.PointCloudRenderer;
+import com.webank.mbank.ar.rendering.ShaderCache;
+import com.webank.mbank.ar.rendering.StateCachingGlBackend;
+import com.webank.mbank.ar.rendering.TextureData;
+import com.webank.mbank.ar.trace.TraceRecorder;
 import com.webank.mbank.ar.utils.CameraPermissionHelper;
 import com.webank.mbank.ar.utils.DisplayRotationHelper;
 import com.webank.mbank.ar.utils.Logger;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import static android.opengl.Matrix.rotateM;
-import static android.opengl.Matrix.translateM;
 
 /**
  * This is a simple example that shows how to create an augmented reality (AR) application using the
@@ -74,65 +99,103 @@ import static android.opengl.Matrix.translateM;
  */
 public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.Renderer {
     private static final String TAG = "HelloArActivity";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // 每局开始时抓取的trace帧数,大约10秒
+    private static final int TRACE_FRAMES = 300;
+    // 启动时带上这个参数会把整个会话录制下来,用于在JVM上回放:
+    // adb shell am start -n <package>/com.webank.mbank.ar.HelloArActivity --ez wear.recordSession true
+    private static final String EXTRA_RECORD_SESSION = "wear.recordSession";
+    // 同时播放的音效上限
+    private static final int MAX_VOICES = 4;
+    // 每帧最多用来上传资源的时间,超过一帧的1/4会明显掉帧
+    private static final long ASSET_UPLOAD_BUDGET_NANOS = 4000000L;
+    private static final String PLANE_ASSET = "trigrid";
 
     private GLSurfaceView surfaceView;
     private Session session;
     private TextView scoreTx;
-    private SoundPool soundPool;
     private Anchor hitAnchor;
     private Context mContext;
     private Snackbar messageSnackbar;
     private DisplayRotationHelper displayRotationHelper;
 
-    private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
-    private final ObjectRenderer virtualObject = new ObjectRenderer();
-    private final ObjectRenderer robot = new ObjectRenderer();
-    private final PlaneRenderer planeRenderer = new PlaneRenderer();
-    private final PointCloudRenderer pointCloud = new PointCloudRenderer();
+    private final Gles20Backend gles = new Gles20Backend();
+    // 绘制过程中的GL错误只计数和上报,不中断这一帧;debug包每个发给驱动的调用之后都检查,release包抽样检查
+    private final GlDiagnostics glDiagnostics = new GlDiagnostics(gles);
+    // 所有的GL调用都通过它发出,和当前状态相同的绑定、开关和uniform不会发给驱动
+    private final StateCachingGlBackend gl = new StateCachingGlBackend(glDiagnostics.wrap(gles));
+    // 桌子和小机器人共用同一个program,链接好的program保存到磁盘,下次启动不用重新编译
+    private final ShaderCache shaderCache = new ShaderCache(gl);
+    private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer(gl, shaderCache, glDiagnostics);
+    private final ObjectRenderer virtualObject = new ObjectRenderer(gl, shaderCache, glDiagnostics);
+    private final ObjectRenderer robot = new ObjectRenderer(gl, shaderCache, glDiagnostics);
+    private final PlaneRenderer planeRenderer = new PlaneRenderer(gl, shaderCache, glDiagnostics);
+    private final PointCloudRenderer pointCloud = new PointCloudRenderer(gl, shaderCache, glDiagnostics);
+    // 每帧从相机矩阵更新,桌子和小机器人完全在视锥体外时不画
+    private final Frustum frustum = new Frustum();
+
+    // Per-frame scratch matrices, recycled at the start of every onDrawFrame.
+    private final FrameArena frameArena = new FrameArena();
 
     // Temporary matrix allocated here to reduce number of allocations for each frame.
-    private float[] boxObjectModelMatrix1 = new float[16];
-    private float[] boxObjectModelMatrix2 = new float[16];
-    private float[] penguinModelMatrix = new float[16];
-    private float[] penguinModelMatrixTemp = new float[16];
-    private float[] boxObjectModelMatrixTemp = new float[16];
-    private float[] penguinAnimationModelMatrixTemp = new float[16];
-    private float[] penguinRotateMatrix = new float[16];
+    private final float[] anchorMatrix = new float[16];
+    private final float[] penguinRotateMatrix = new float[16];
+    // PlaneRenderer按下标遍历平面,每帧复用这个列表
+    private final ArrayList<Plane> planeList = new ArrayList<>();
 
     // Tap handling and UI.
-    private final ArrayBlockingQueue<MotionEvent> queuedSingleTaps = new ArrayBlockingQueue<>(16);
-    private final ArrayList<float[]> virtualModelMatrixList = new ArrayList<>();
-    private final ArrayList<float[]> robotModelMatrixList = new ArrayList<>();
-
-    private boolean isGameOver = true;
-    private boolean direction = true;
+    // UI线程写入点击的位置,GL线程每帧取出一个做hitTest,不保存会被系统回收的MotionEvent
+    private final InputEventRing queuedSingleTaps = new InputEventRing(16);
+    private final InputEvent tap = new InputEvent();
+
+    // 游戏逻辑在单独的游戏线程上推进,GL线程只读取其发布的快照
+    // 随机数种子会写进录制的trace,回放时可以生成同样的桌子
+    private final long gameSeed = System.nanoTime();
+    private final JumpGameEngine gameEngine = new JumpGameEngine(new Random(gameSeed));
+    private final JumpGameLoop gameLoop = new JumpGameLoop(gameEngine);
+
+    // 分阶段统计每帧的耗时,只在debug包中开启
+    private final FrameProfiler profiler = new FrameProfiler();
+    // 启动到第一帧、到资源加载完成的耗时,只在GL线程上访问
+    private final StartupTimer startupTimer = new StartupTimer();
+
+    // 资源在后台线程解码和解析,GL线程每帧在预算内上传一部分;GL环境重建时重新加载
+    private final ExecutorService assetExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WeAr-AssetLoader");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+    // 以下只在GL线程上访问
+    private AssetLoader assetLoader;
+    private boolean isPlaneAssetLoaded = false;
+    private boolean isAssetsLoaded = false;
+    // 在GL线程查询,提交资源之后才在后台线程读取
+    private boolean isCompressedTextureSupported = false;
+    // 正在抓取trace,抓取完成后在后台线程导出,只在GL线程上访问
+    private boolean isTraceCapturing = false;
+    private volatile boolean isTraceWriting = false;
+    // 会话录制,UI线程创建和关闭,GL线程和UI线程写入
+    private volatile TraceRecorder sessionRecorder;
+    // onResume时解码所有音效,onPause时释放,UI线程和游戏线程都会播放
+    private volatile SoundBank soundBank;
+
+    // UI线程和GL线程都会访问
+    private volatile boolean isGameOver = true;
+    private volatile boolean isGameStart = false;
     private boolean installRequested;
-    private boolean xTranslateStrideComplete = false;
-    private boolean isFirstDrawComplete = false;
-    private boolean isGameStart = false;
+    // 点击平面产生了新的锚点,等锚点被追踪到后开始新的一局,只在GL线程上访问
+    private boolean isStartPending = false;
 
-    private float yTranslateStride = 0f;
-    private float downTime;
-    private float upTime;
     private float virtualObjectScaleFactor = 0.0009f;
     private float robotScaleFactor = 15f;
-    private float translateStride = 0f;
-    private float zRotateStride = 0f;
-    private float zRotateAngle = 0f;
-    private float randomTranslateValue;
-    private float halfWidthOftheBox = 0.09f;
-  
-    private float pressTime;
-    private float robotY = 0.14f;
-    private float jumpDistance;
-    private float robotX = 0;
-    private float robotZ = 0;
 
     private int n = 1;
-    private int soundId;
     private int jumpSuccessNum = 1;
     private int jumpfailNum = 1;
-    private int randomOrientation;
     private int gameScore = 0;
     private int maxGameScore = 0;
     private int robotRotateAngle = -90;
@@ -141,30 +204,45 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startupTimer.start(System.nanoTime());
         setContentView(R.layout.activity_hello_ar);
         mContext = this;
         surfaceView = (GLSurfaceView) findViewById(R.id.surfaceview);
         displayRotationHelper = new DisplayRotationHelper(/*context=*/ this);
         scoreTx = (TextView) findViewById(R.id.game_score);
+        gameEngine.setListener(gameListener);
+        profiler.setEnabled(BuildConfig.DEBUG);
+        gameLoop.setProfiler(profiler);
+        glDiagnostics.setMode(BuildConfig.DEBUG ? GlDiagnostics.Mode.STRICT : GlDiagnostics.Mode.SAMPLED);
+        // 读写program二进制需要API 18的GLES30
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            shaderCache.setBinaryDirectory(new File(getCacheDir(), "shaders"));
+        }
 
         surfaceView.setOnTouchListener(
                 new View.OnTouchListener() {
                     @Override
                     public boolean onTouch(View v, MotionEvent event) {
+                        TraceRecorder recorder = sessionRecorder;
                         if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                            downTime = event.getDownTime();
-                            if (isFirstDrawComplete) {
-                                playVoice(R.raw.long_press);
-
-
+                            if (gameLoop.isInGame()) {
+                                playVoice(SoundBank.LONG_PRESS);
+                            }
+                            long downNanos = event.getDownTime() * NANOS_PER_MILLI;
+                            gameLoop.press(event.getX(), event.getY(), downNanos);
+                            if (recorder != null) {
+                                recorder.recordTouch(MotionEvent.ACTION_DOWN, event.getX(), event.getY(), downNanos);
                             }
                         }
                         if (event.getAction() == MotionEvent.ACTION_UP) {
-                            if (isFirstDrawComplete) {
-                                releaseVoiceUnloop();
+                            if (gameLoop.isInGame()) {
+                                stopVoice(SoundBank.LONG_PRESS);
+                            }
+                            long upNanos = event.getEventTime() * NANOS_PER_MILLI;
+                            gameLoop.release(event.getX(), event.getY(), upNanos);
+                            if (recorder != null) {
+                                recorder.recordTouch(MotionEvent.ACTION_UP, event.getX(), event.getY(), upNanos);
                             }
-                            upTime = event.getEventTime();
-                            pressTime = upTime - downTime;
                             if (isGameOver) {
                                 onSingleTap(event);
                             }
@@ -194,7 +272,7 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     private void onSingleTap(MotionEvent e) {
 
         // Queue tap if there is space. Tap is lost if queue is full.
-        queuedSingleTaps.offer(e);
+        queuedSingleTaps.offer(InputEvent.ACTION_UP, e.getX(), e.getY(), e.getEventTime() * NANOS_PER_MILLI);
 
     }
 
@@ -255,6 +333,10 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         }
 
         showLoadingMessage();
+        loadSounds();
+        if (sessionRecorder == null && getIntent().getBooleanExtra(EXTRA_RECORD_SESSION, false)) {
+            startSessionRecording();
+        }
         // Note that order matters - see the note in onPause(), the reverse applies here.
         try {
             session.resume();
@@ -262,6 +344,7 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             e.printStackTrace();
         }
         surfaceView.onResume();
+        gameLoop.start();
         //注册显示监听器
         displayRotationHelper.onResume();
     }
@@ -277,7 +360,31 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             surfaceView.onPause();
             session.pause();
         }
-        releaseVoiceUnloop();
+        gameLoop.stop();
+        releaseSounds();
+        // GL线程已经暂停,不会再写入
+        TraceRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            sessionRecorder = null;
+            recorder.close();
+            Logger.i(TAG, "session trace saved, %d frames", recorder.getFrameCount());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        assetExecutor.shutdownNow();
+    }
+
+    private void startSessionRecording() {
+        File file = new File(getFilesDir(), "session_" + System.currentTimeMillis() + ".trace");
+        try {
+            sessionRecorder = new TraceRecorder(new FileOutputStream(file), gameSeed);
+            Logger.i(TAG, "recording session to %s", file.getAbsolutePath());
+        } catch (IOException e) {
+            Logger.e(TAG, e, "failed to start session recording");
+        }
     }
 
     @Override
@@ -314,47 +421,143 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        // 新的context从默认状态开始,之前记录的状态和链接的program都不再有效
+        this.gl.invalidate();
+        shaderCache.onContextCreated();
 
-        GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+        // 通过状态缓存设置,参数gl会绕过缓存
+        this.gl.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
         // Create the texture and pass it to ARCore session to be filled during update().
+        // 相机背景同步创建,第一帧就能画出来
         backgroundRenderer.createOnGlThread(/*context=*/ this);
 
+        // 支持ETC1时加载预先压缩好的.ktx纹理,否则解码PNG
+        isCompressedTextureSupported = TextureData.isEtc1Supported(this.gl);
+
         // Prepare the other rendering objects.
-        try {
-            virtualObject.createOnGlThread(/*context=*/ this, "webox.obj", "webox.png");
-            robot.createOnGlThread(/*context=*/ this, "wepenguin.obj", "wepenguin.png");
+        // 其它资源在后台加载,加载完成之前不画平面,也不开始游戏
+        startLoadingAssets();
+    }
 
-            //这里采用默认的BlendModeo：BlendMode.Opaque
-            virtualObject.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
-            robot.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+    /** 提交所有需要加载的资源,GL环境重建之后旧的资源都已失效,需要全部重新加载 */
+    private void startLoadingAssets() {
+        isPlaneAssetLoaded = false;
+        isAssetsLoaded = false;
+        AssetLoader loader = new AssetLoader(assetExecutor, ASSET_UPLOAD_BUDGET_NANOS);
+        loader.setListener(assetListener);
+
+        virtualObject.setInstancingEnabled(true);
+        //这里采用默认的BlendModeo：BlendMode.Opaque
+        virtualObject.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        robot.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        virtualObject.setCompressedTexturesSupported(isCompressedTextureSupported);
+        robot.setCompressedTexturesSupported(isCompressedTextureSupported);
+        virtualObject.setCullingFrustum(frustum);
+        robot.setCullingFrustum(frustum);
+        loader.submit("webox", modelAsset(virtualObject, "webox.obj", "webox.png"));
+        loader.submit("wepenguin", modelAsset(robot, "wepenguin.obj", "wepenguin.png"));
+        loader.submit(PLANE_ASSET, new AssetLoader.Asset() {
+            private TextureData texture;
 
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to read obj file");
+            @Override
+            public void prepare() throws IOException {
+                texture = PlaneRenderer.decodeTexture(HelloArActivity.this, "trigrid.png",
+                        isCompressedTextureSupported);
+            }
+
+            @Override
+            public boolean upload() throws IOException {
+                planeRenderer.createOnGlThread(HelloArActivity.this, texture);
+                return true;
+            }
+        });
+        loader.submit("pointcloud", new AssetLoader.Asset() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public boolean upload() {
+                pointCloud.createOnGlThread(HelloArActivity.this);
+                return true;
+            }
+        });
+        assetLoader = loader;
+    }
+
+    private AssetLoader.Asset modelAsset(final ObjectRenderer renderer, final String objName,
+                                         final String textureName) {
+        return new AssetLoader.Asset() {
+            private ObjectRenderer.Model model;
+
+            @Override
+            public void prepare() throws IOException {
+                model = renderer.prepare(HelloArActivity.this, objName, textureName);
+            }
+
+            @Override
+            public boolean upload() throws IOException {
+                return renderer.upload(HelloArActivity.this, model);
+            }
+        };
+    }
+
+    // 资源加载的结果,在GL线程上回调
+    private final AssetLoader.Listener assetListener = new AssetLoader.Listener() {
+        @Override
+        public void onAssetLoaded(String name) {
+            Logger.d(TAG, "asset %s loaded", name);
+            if (PLANE_ASSET.equals(name)) {
+                isPlaneAssetLoaded = true;
+            }
         }
-        try {
-            planeRenderer.createOnGlThread(/*context=*/ this, "trigrid.png");
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to read plane texture");
+
+        @Override
+        public void onAssetFailed(String name, Exception e) {
+            Logger.e(TAG, e, "failed to load asset %s", name);
         }
-        pointCloud.createOnGlThread(/*context=*/ this);
-    }
+
+        @Override
+        public void onAllAssetsLoaded() {
+            isAssetsLoaded = true;
+            startupTimer.markInteractive(System.nanoTime());
+        }
+    };
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         displayRotationHelper.onSurfaceChanged(width, height);
-        GLES20.glViewport(0, 0, width, height);
+        this.gl.glViewport(0, 0, width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        // Clear screen to notify driver it should not load any pixels from previous frame.
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        long frameStart = profiler.begin();
+        this.gl.beginFrame();
+        glDiagnostics.beginFrame();
+        drawFrame();
+        glDiagnostics.endFrame();
+        profiler.end(FrameProfiler.STAGE_FRAME, frameStart);
+        profiler.count(FrameProfiler.COUNTER_GL_CALLS_ISSUED, this.gl.getIssuedCalls());
+        profiler.count(FrameProfiler.COUNTER_GL_CALLS_ELIDED, this.gl.getElidedCalls());
+        profiler.endFrame();
+
+        if (isTraceCapturing && profiler.isTraceComplete()) {
+            isTraceCapturing = false;
+            writeTraceInBackground();
+        }
+    }
 
+    private void drawFrame() {
+        // Clear screen to notify driver it should not load any pixels from previous frame.
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        frameArena.beginFrame();
 
-        if (isFirstDrawComplete && pressTime > 300) {
-            longPressDraw();
-            return;
+        if (!isAssetsLoaded) {
+            long uploadStart = profiler.begin();
+            assetLoader.drain();
+            profiler.end(FrameProfiler.STAGE_ASSETS, uploadStart);
         }
 
         if (session == null) {
@@ -374,15 +577,20 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             // camera framerate.
             //从ARSession获取当前帧。 当配置设置为UpdateMode.BLOCKING（默认情况下）时，
             // 这会将渲染限制为相机帧速率。
+            long stageStart = profiler.begin();
             Frame frame = session.update();
+            // ARCore在update中会更新相机纹理,绑定状态可能已经变了
+            gl.invalidateSharedState();
+            profiler.end(FrameProfiler.STAGE_SESSION_UPDATE, stageStart);
             Camera camera = frame.getCamera();
+            // 最新一份完整的游戏状态,不会阻塞游戏线程
+            JumpGameState state = gameLoop.latest();
 
             // Handle taps. Handling only one tap per frame, as taps are usually low frequency
             // compared to frame rate.
-            if (!isFirstDrawComplete) {
-                MotionEvent tap = queuedSingleTaps.poll();
-                if (tap != null && camera.getTrackingState() == TrackingState.TRACKING) {
-                    for (HitResult hit : frame.hitTest(tap)) {
+            if (!state.isInGame()) {
+                if (queuedSingleTaps.poll(tap) && camera.getTrackingState() == TrackingState.TRACKING) {
+                    for (HitResult hit : frame.hitTest(tap.x, tap.y)) {
                         // Check if any plane was hit, and if it was hit inside the plane polygon
                         //检查是否有任何平面被检测到，以及是否在平面多边形内部检测
                         Trackable trackable = hit.getTrackable();
@@ -390,9 +598,8 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
                         if ((trackable instanceof Plane && ((Plane) trackable).isPoseInPolygon(hit.getHitPose()))) {
 
                             hitAnchor = hit.createAnchor();
+                            isStartPending = true;
                             isGameOver = false;
-                            Logger.d(TAG, "产生新的tap，第" + n + "次游戏开始了！");
-                            n++;
                             break;
                         }
                     }
@@ -400,7 +607,10 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             }
 
             // 1、Draw background.绘制背景
+            stageStart = profiler.begin();
             backgroundRenderer.draw(frame);
+            profiler.end(FrameProfiler.STAGE_BACKGROUND, stageStart);
+            startupTimer.markFirstFrame(System.nanoTime());
 
             // If not tracking, don't draw 3d objects.
             if (camera.getTrackingState() == TrackingState.PAUSED) {
@@ -408,21 +618,31 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             }
 
             // Get projection matrix.
-            float[] projmtx = new float[16];
+            float[] projmtx = frameArena.mat4();
             camera.getProjectionMatrix(projmtx, 0, 0.1f, 100.0f);
 
             // Get camera matrix and draw.
-            float[] viewmtx = new float[16];
+            float[] viewmtx = frameArena.mat4();
             camera.getViewMatrix(viewmtx, 0);
 
             //根据图像的平均强度计算照明
             // Compute lighting from average intensity of the image.
             final float lightIntensity = frame.getLightEstimate().getPixelIntensity();
-
+            Collection<Plane> allPlanes = session.getAllTrackables(Plane.class);
+
+            // 锚点被追踪到之后,以锚点的位置开始新的一局
+            // 桌子和小机器人加载完成之前先不开始,点击会保留到加载完成
+            boolean isStartRequested = isAssetsLoaded && isGameStart && isStartPending && hitAnchor != null
+                    && hitAnchor.getTrackingState() == TrackingState.TRACKING;
+            TraceRecorder recorder = sessionRecorder;
+            if (recorder != null) {
+                recorder.recordFrame(System.nanoTime(), camera, projmtx, viewmtx, lightIntensity,
+                        allPlanes, hitAnchor, isStartRequested);
+            }
 
             // Check if we detected at least one plane. If so, hide the loading message.
             if (messageSnackbar != null) {
-                for (Plane plane : session.getAllTrackables(Plane.class)) {
+                for (Plane plane : allPlanes) {
                     if (plane.getType() == com.google.ar.core.Plane.Type.HORIZONTAL_UPWARD_FACING
                             && plane.getTrackingState() == TrackingState.TRACKING) {
                         hideLoadingMessage();
@@ -443,48 +663,53 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             }
 
             // 3、Visualize planes.绘制检测到的平面
-            planeRenderer.drawPlanes(
-                    session.getAllTrackables(Plane.class), camera.getDisplayOrientedPose(), projmtx);
-
-            if (virtualModelMatrixList.size() >= 20) {
-                virtualModelMatrixList.remove(0);
+            if (isPlaneAssetLoaded) {
+                stageStart = profiler.begin();
+                long planeUploads = planeRenderer.getMeshCache().getMissCount();
+                planeList.clear();
+                for (Plane plane : allPlanes) {
+                    planeList.add(plane);
+                }
+                float[] cameraPose = frameArena.mat4();
+                camera.getDisplayOrientedPose().toMatrix(cameraPose, 0);
+                planeRenderer.drawPlanes(planeList, ArCorePlaneSource.INSTANCE, cameraPose, projmtx, frameArena);
+                profiler.end(FrameProfiler.STAGE_PLANES, stageStart);
+                // 平面没有变化时直接用GPU上的网格,这里应该是0
+                profiler.count(FrameProfiler.COUNTER_PLANE_MESH_UPLOADS,
+                        planeRenderer.getMeshCache().getMissCount() - planeUploads);
+                profiler.count(FrameProfiler.COUNTER_PLANES_REGISTERED,
+                        planeRenderer.getPlaneRegistry().size());
             }
-            if (hitAnchor == null) {
-                return;
+
+            // 2、开始新的一局
+            if (isStartRequested) {
+                isStartPending = false;
+                hitAnchor.getPose().toMatrix(anchorMatrix, 0);
+                hitAnchor = null;
+                gameLoop.requestStart(anchorMatrix);
+                if (profiler.isEnabled() && !isTraceWriting) {
+                    profiler.captureTrace(TRACE_FRAMES);
+                    isTraceCapturing = true;
+                }
             }
-            if (hitAnchor.getTrackingState() != TrackingState.TRACKING) {
+
+            // 4、根据最新的状态绘制桌子和小机器人
+            if (!state.isInGame()) {
                 return;
             }
-            if (virtualModelMatrixList.size() == 0) {
-                playVoice(R.raw.game_start);
-                hitAnchor.getPose().toMatrix(boxObjectModelMatrix1, 0);
-                virtualObject.updateModelMatrix(boxObjectModelMatrix1, virtualObjectScaleFactor);
-                virtualObject.draw(viewmtx, projmtx, lightIntensity);
-                virtualModelMatrixList.add(boxObjectModelMatrix1);
-
-                hitAnchor.getPose().toMatrix(penguinModelMatrix, 0);
-                translateM(penguinModelMatrix, 0, 0, robotY, 0);
-                robot.updateModelMatrix(rotateRobot(penguinModelMatrix), robotScaleFactor);
-                robot.draw(viewmtx, projmtx, lightIntensity);
-                robotModelMatrixList.add(penguinModelMatrix);
-
-
-                hitAnchor.getPose().toMatrix(boxObjectModelMatrix2, 0);
-                translateM(boxObjectModelMatrix2, 0, 0.45f, 0f, 0f);
-                virtualObject.updateModelMatrix(boxObjectModelMatrix2, virtualObjectScaleFactor);
-                virtualObject.draw(viewmtx, projmtx, lightIntensity);
-                virtualModelMatrixList.add(boxObjectModelMatrix2);
-                isFirstDrawComplete = true;
-
-            } else {
-                for (int i = 0; i < virtualModelMatrixList.size(); i++) {
-                    virtualObject.updateModelMatrix(virtualModelMatrixList.get(i), virtualObjectScaleFactor);
-                    virtualObject.draw(viewmtx, projmtx, lightIntensity);
-                }
-                float[] robotModelMatrixNew = robotModelMatrixList.get(0);
-                robot.updateModelMatrix(rotateRobot(robotModelMatrixNew), robotScaleFactor);
-                robot.draw(viewmtx, projmtx, lightIntensity);
-            }
+            stageStart = profiler.begin();
+            frustum.set(projmtx, viewmtx);
+            virtualObject.resetDrawCounts();
+            robot.resetDrawCounts();
+            // 所有桌子合并成一两次绘制,转动手机之后身后的桌子被剔除
+            virtualObject.draw(state.platforms, virtualObjectScaleFactor, viewmtx, projmtx, lightIntensity);
+            robot.updateModelMatrix(rotateRobot(state.robotMatrix, state.direction), robotScaleFactor);
+            robot.draw(viewmtx, projmtx, lightIntensity);
+            profiler.end(FrameProfiler.STAGE_OBJECTS, stageStart);
+            profiler.count(FrameProfiler.COUNTER_OBJECTS_DRAWN,
+                    virtualObject.getDrawnCount() + robot.getDrawnCount());
+            profiler.count(FrameProfiler.COUNTER_OBJECTS_CULLED,
+                    virtualObject.getCulledCount() + robot.getCulledCount());
 
         } catch (Throwable t) {
             // Avoid crashing the application due to unhandled exceptions.
@@ -493,17 +718,45 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
     }
 
-    private float[] rotateRobot(float[] robotModelMatrix) {
+    /**
+     * 把抓取到的trace写到应用的files目录下,用chrome://tracing打开。
+     * 写完之前不会开始新的抓取,所以这里读取的数据不会被GL线程修改。
+     */
+    private void writeTraceInBackground() {
+        isTraceWriting = true;
+        final File file = new File(getFilesDir(), "frame_trace_" + System.currentTimeMillis() + ".json");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Writer writer = null;
+                try {
+                    writer = new FileWriter(file);
+                    profiler.writeChromeTrace(writer);
+                    Logger.i(TAG, "frame trace saved to %s", file.getAbsolutePath());
+                } catch (IOException e) {
+                    Logger.e(TAG, e, "failed to write frame trace");
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                    isTraceWriting = false;
+                }
+            }
+        }, "WeAr-TraceWriter").start();
+    }
+
+    private float[] rotateRobot(float[] robotModelMatrix, boolean direction) {
         System.arraycopy(robotModelMatrix, 0, penguinRotateMatrix, 0, robotModelMatrix.length);
         if (direction) {
             robotRotateAngle = -90;
-            rotateM(penguinRotateMatrix, 0, robotRotateAngle, 0f, 1f, 0f);
-            return penguinRotateMatrix;
         } else {
             robotRotateAngle = -180;
-            rotateM(penguinRotateMatrix, 0, robotRotateAngle, 0f, 1f, 0f);
-            return penguinRotateMatrix;
         }
+        Mat4.rotateY(penguinRotateMatrix, robotRotateAngle);
+        return penguinRotateMatrix;
     }
 
     private void gameStartTip() {
@@ -523,251 +776,50 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
     }
 
-
-    private void longPressDraw() {
-        Logger.d(TAG, "longPressDraw执行");
-        if (session == null) {
-            return;
+    // 游戏事件,在游戏线程上回调
+    private final JumpGameEngine.Listener gameListener = new JumpGameEngine.Listener() {
+        @Override
+        public void onGameStarted() {
+            Logger.d(TAG, "产生新的tap，第" + n + "次游戏开始了！");
+            n++;
+            jumpfailNum = 1;
+            jumpSuccessNum = 1;
+            playVoice(SoundBank.GAME_START);
         }
-        // Notify ARCore session that the view size changed so that the perspective matrix and
-        // the video background can be properly adjusted.
-        displayRotationHelper.updateSessionIfNeeded(session);
-
-        try {
-            session.setCameraTextureName(backgroundRenderer.getTextureId());
-
-            Frame frame = session.update();
-            Camera camera = frame.getCamera();
-
-            backgroundRenderer.draw(frame);
-
-            // If not tracking, don't draw 3d objects.
-            if (camera.getTrackingState() == TrackingState.PAUSED) {
-                return;
-            }
-
-            // Get projection matrix.
-            float[] projmtxNew = new float[16];
-            camera.getProjectionMatrix(projmtxNew, 0, 0.1f, 100.0f);
 
-            // Get camera matrix and draw.
-            float[] viewmtxNew = new float[16];
-            camera.getViewMatrix(viewmtxNew, 0);
-
-            // Compute lighting from average intensity of the image.
-            final float lightIntensityNew = frame.getLightEstimate().getPixelIntensity();
-
-            // Check if we detected at least one plane. If so, hide the loading message.
-            if (messageSnackbar != null) {
-                for (Plane plane : session.getAllTrackables(Plane.class)) {
-                    if (plane.getType() == com.google.ar.core.Plane.Type.HORIZONTAL_UPWARD_FACING
-                            && plane.getTrackingState() == TrackingState.TRACKING) {
-                        hideLoadingMessage();
-                        break;
-                    }
+        @Override
+        public void onJumpLanded(final int score) {
+            Logger.d(TAG, "小机器人跳起后的位置符合要求，第" + jumpSuccessNum + "次落在桌子范围内");
+            jumpSuccessNum++;
+            playVoice(SoundBank.JUMP_SUCCESS);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    gameScore = score;
+                    scoreTx.setText(gameScore + "");
                 }
-            }
-
-            planeRenderer.drawPlanes(
-                    session.getAllTrackables(Plane.class), camera.getDisplayOrientedPose(), projmtxNew);
-
-            drawOriginVirtual(viewmtxNew, projmtxNew, lightIntensityNew);
-            drawRobotAnimation(viewmtxNew, projmtxNew, lightIntensityNew);
-
-        } catch (Throwable t) {
-            // Avoid crashing the application due to unhandled exceptions.
-            Log.e(TAG, "Exception on the OpenGL thread", t);
+            });
         }
-    }
-
-
-    private void drawRobotAnimation(float[] viewmtxNew, float[] projmtxNew, float lightIntensityNew) {
-
-        float[] lastVirtualModelMatrix = virtualModelMatrixList.get(virtualModelMatrixList.size() - 1);
-        float[] robotModelMatrix = robotModelMatrixList.get(0);
-        System.arraycopy(robotModelMatrix, 0, penguinModelMatrixTemp, 0, robotModelMatrix.length);
-        System.arraycopy(lastVirtualModelMatrix, 0, boxObjectModelMatrixTemp, 0, lastVirtualModelMatrix.length);
-
-        float X1 = robotModelMatrix[12];
-        float Z1 = robotModelMatrix[14];
-
-        float X2 = lastVirtualModelMatrix[12];
-        float Z2 = lastVirtualModelMatrix[14];
-
-        Logger.d("X1=" + X1);
-        Logger.d("X2=" + X2);
-        Logger.d("Z1=" + Z1);
-        Logger.d("Z2=" + Z2);
-
-
-        if (direction) {
-            Logger.d("X轴方向");
-            if (translateStride <= jumpDistance) {
-                translateM(penguinModelMatrixTemp, 0, translateStride, yTranslateStride, 0);
-                rotateM(penguinModelMatrixTemp, 0, zRotateStride, 0f, 1f, 0f);
-                Logger.d("translateM中的xTranslateStride=" + translateStride);
-                Logger.d("translateM中的yTranslateStride=" + yTranslateStride);
-                Logger.d("rotateM中的zRotateStride=" + zRotateStride);
-                robotX = penguinModelMatrixTemp[12];
-                robotZ = penguinModelMatrixTemp[14];
-                Logger.d("robotX = penguinModelMatrixTemp[12])=" + robotX);
-                Logger.d("robotZ = penguinModelMatrixTemp[14])=" + robotZ);
-
-                robot.updateModelMatrix(rotateRobot(penguinModelMatrixTemp), robotScaleFactor);
-                System.arraycopy(penguinModelMatrixTemp, 0, penguinAnimationModelMatrixTemp, 0, penguinModelMatrixTemp.length);
-                robot.draw(viewmtxNew, projmtxNew, lightIntensityNew);
-                changeStride();
-
-            } else {
-                if ((X2 - halfWidthOftheBox) <= robotX && robotX <= (X2 + halfWidthOftheBox)
-                        && (Z2 - halfWidthOftheBox) <= robotZ && robotZ <= (Z2 + halfWidthOftheBox)) {
-                    Logger.d("小机器人跳起后的位置符合要求，第" + jumpSuccessNum + "次落在桌子范围内");
-                    jumpSuccessNum++;
-                    Logger.d("X2 - halfWidthOftheBox=" + (X2 - halfWidthOftheBox));
-                    Logger.d("robotX=" + robotX);
-                    Logger.d("X2 + halfWidthOftheBox=" + (X2 + halfWidthOftheBox));
-                    Logger.d(".............");
-                    Logger.d("Z2 - halfWidthOftheBox=" + (Z2 - halfWidthOftheBox));
-                    Logger.d("robotZ=" + robotZ);
-                    Logger.d("Z2 + halfWidthOftheBox=" + (Z2 + halfWidthOftheBox));
-                    drawNewVirturalObject(boxObjectModelMatrixTemp, viewmtxNew, projmtxNew, lightIntensityNew);
-                    updateRobotModelMatrix(penguinAnimationModelMatrixTemp, robotModelMatrix);
-                    playVoice(R.raw.jump_success);
-                } else {
-                    Logger.d(TAG, "小机器人跳起后的位置不符合要求，第" + jumpfailNum + "次落在桌子范围之外");
-                    jumpfailNum++;
-                    Logger.d(TAG, "X2 - halfWidthOftheBox=" + (X2 - halfWidthOftheBox));
-                    Logger.d(TAG, "robotX=" + robotX);
-                    Logger.d(TAG, "X2 + halfWidthOftheBox=" + (X2 + halfWidthOftheBox));
-                    Logger.d(".............");
-                    Logger.d("Z2 - halfWidthOftheBox=" + (Z2 - halfWidthOftheBox));
-                    Logger.d("robotZ=" + robotZ);
-                    Logger.d("Z2 + halfWidthOftheBox=" + (Z2 + halfWidthOftheBox));
-
-                    isFirstDrawComplete = false;
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            gameOver(mContext);
-                        }
-                    });
-                }
-            }
-
-        } else {
-            Logger.d("Z轴方向");
-            if (translateStride <= jumpDistance) {
-                translateM(penguinModelMatrixTemp, 0, 0, yTranslateStride, translateStride);
-                rotateM(penguinModelMatrixTemp, 0, zRotateStride, 0f, 1f, 0f);
-                Logger.d(TAG, "translateM中的xTranslateStride=" + translateStride);
-                Logger.d(TAG, "translateM中的yTranslateStride=" + yTranslateStride);
-                Logger.d(TAG, "rotateM中的zRotateStride=" + zRotateStride);
-                robotX = penguinModelMatrixTemp[12];
-                robotZ = penguinModelMatrixTemp[14];
-                Logger.d("robotX = penguinModelMatrixTemp[12])=" + robotX);
-                Logger.d("robotZ = penguinModelMatrixTemp[14])=" + robotZ);
-
-                robot.updateModelMatrix(rotateRobot(penguinModelMatrixTemp), robotScaleFactor);
-                System.arraycopy(penguinModelMatrixTemp, 0, penguinAnimationModelMatrixTemp, 0, penguinModelMatrixTemp.length);
-                robot.draw(viewmtxNew, projmtxNew, lightIntensityNew);
-                changeStride();
-
-            } else {
-                if ((X2 - halfWidthOftheBox) <= robotX && robotX <= (X2 + halfWidthOftheBox)
-                        && (Z2 - halfWidthOftheBox) <= robotZ && robotZ <= (Z2 + halfWidthOftheBox)) {
-                    Logger.d(TAG, "小机器人跳起后的位置符合要求，第" + jumpSuccessNum + "次落在桌子范围内");
-                    jumpSuccessNum++;
-                    Logger.d(TAG, "X2 - halfWidthOftheBox=" + (X2 - halfWidthOftheBox));
-                    Logger.d(TAG, "robotX=" + robotX);
-                    Logger.d(TAG, "X2 + halfWidthOftheBox=" + (X2 + halfWidthOftheBox));
-                    Logger.d(".............");
-                    Logger.d("Z2 - halfWidthOftheBox=" + (Z2 - halfWidthOftheBox));
-                    Logger.d("robotZ=" + robotZ);
-                    Logger.d("Z2 + halfWidthOftheBox=" + (Z2 + halfWidthOftheBox));
-
-
-                    drawNewVirturalObject(boxObjectModelMatrixTemp, viewmtxNew, projmtxNew, lightIntensityNew);
-                    updateRobotModelMatrix(penguinAnimationModelMatrixTemp, robotModelMatrix);
-                    playVoice(R.raw.jump_success);
-                } else {
-                    Logger.d(TAG, "小机器人跳起后的位置不符合要求，第" + jumpfailNum + "次落在桌子范围之外");
-                    jumpfailNum++;
-                    Logger.d(TAG, "X2 - halfWidthOftheBox=" + (X2 - halfWidthOftheBox));
-                    Logger.d(TAG, "robotX=" + robotX);
-                    Logger.d(TAG, "X2 + halfWidthOftheBox=" + (X2 + halfWidthOftheBox));
-                    Logger.d(".............");
-                    Logger.d("Z2 - halfWidthOftheBox=" + (Z2 - halfWidthOftheBox));
-                    Logger.d("robotZ=" + robotZ);
-                    Logger.d("Z2 + halfWidthOftheBox=" + (Z2 + halfWidthOftheBox));
-
-
-                    isFirstDrawComplete = false;
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            gameOver(mContext);
-                        }
-                    });
 
+        @Override
+        public void onGameOver(final int score) {
+            Logger.d(TAG, "小机器人跳起后的位置不符合要求，第" + jumpfailNum + "次落在桌子范围之外");
+            jumpfailNum++;
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    gameScore = score;
+                    gameOver(mContext);
                 }
-            }
-        }
-    }
-
-    private void changeStride() {
-        jumpDistance = pressTime * 0.39589f / 1000;
-        Logger.d("jumpDistance=" + jumpDistance);
-        zRotateAngle = (float) (360 * 0.02 / jumpDistance);
-        float a = jumpDistance - translateStride;
-        if (a >= 0.02) {
-            translateStride = (float) (translateStride + 0.02);
-            Logger.d(TAG, "a >= 0.02，translateStride = (float) (translateStride + 0.02)=" + translateStride);
-        } else {
-            if (!xTranslateStrideComplete) {
-                Logger.d(TAG, "a >= 0.02条件不满足时，translateStride=" + translateStride);
-                Logger.d(TAG, "jumpDistance-translateStride=" + a);
-                translateStride = translateStride + a;
-                xTranslateStrideComplete = true;
-            } else {
-                translateStride = (float) (translateStride + 0.02);
-                Logger.d(TAG, "前面两个条件都不满足，translateStride = (float) (translateStride + 0.02)执行到");
-            }
-        }
-
-        if (zRotateStride < 360) {
-            float angle = 360 - zRotateStride;
-            if (angle >= zRotateAngle) {
-                zRotateStride = zRotateStride + zRotateAngle;
-            } else {
-                Logger.d(TAG, "angle >= zRotateAngle不满足时，zRotateStride=" + zRotateStride);
-                Logger.d(TAG, "360 - zRotateStride=" + (360 - zRotateStride));
-                zRotateStride = zRotateStride + angle;
-
-            }
+            });
         }
-
-        yTranslateStride = (float) (-0.8 * translateStride * translateStride / jumpDistance / jumpDistance + 0.8 * translateStride / jumpDistance + 0.1);
-
-
-    }
-
-    private void updateRobotModelMatrix(float[] robotAnimationModelMatrixNew, float[] originRobotModelMatrix) {
-
-        float[] tempMatrix = new float[16];
-        float destY = robotAnimationModelMatrixNew[13];
-        float origY = originRobotModelMatrix[13];
-        translateM(robotAnimationModelMatrixNew, 0, 0f, -(destY - origY), 0);
-        System.arraycopy(robotAnimationModelMatrixNew, 0, tempMatrix, 0, robotAnimationModelMatrixNew.length);
-        robotModelMatrixList.set(0, tempMatrix);
-
-
-    }
+    };
 
     private void gameOver(Context context) {
         if (maxGameScore < gameScore) {
             maxGameScore = gameScore;
         }
-        playVoice(R.raw.game_over);
+        playVoice(SoundBank.GAME_OVER);
         AlertDialog.Builder normalDialog =
                 new AlertDialog.Builder(context);
         normalDialog.setTitle("游戏失败");
@@ -787,93 +839,7 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
     private void reset() {
         scoreTx.setText("0");
-        translateStride = 0;
-        yTranslateStride = 0;
-        zRotateStride = 0;
-        zRotateAngle = 0;
-        pressTime = 0;
         gameScore = 0;
-        direction = true;
-        xTranslateStrideComplete = false;
-
-
-        virtualModelMatrixList.clear();
-        robotModelMatrixList.clear();
-        hitAnchor = null;
-
-        jumpfailNum = 1;
-        jumpSuccessNum = 1;
-    }
-
-    private void drawNewVirturalObject(float[] virtualObjectModelMatrix, float[] viewmtxNew,
-                                       float[] projmtxNew, float lightIntensityNew) {
-        randomOrientation = (int) (2 + Math.random() * 10);
-        double n = Math.random();
-        if (n <= 0.1) {
-            randomTranslateValue = (float) (0.30 + n);
-        }
-        if (n > 0.1 && n <= 0.2) {
-            randomTranslateValue = (float) (0.20 + n);
-        }
-        if (n > 0.2 && n < 0.5) {
-            randomTranslateValue = (float) (0.1 + n);
-        }
-        if (n >= 0.5 && n < 0.7) {
-            randomTranslateValue = (float) (n - 0.2);
-        }
-        if (n >= 0.7) {
-            randomTranslateValue = (float) (n - 0.4);
-        }
-
-        gameScore++;
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                scoreTx.setText(gameScore + "");
-            }
-        });
-
-        float[] virtualObjectModelMatrixNew = new float[16];
-        System.arraycopy(virtualObjectModelMatrix, 0, virtualObjectModelMatrixNew, 0, virtualObjectModelMatrix.length);
-        //随机数可以被2整除，就往X轴方向跳；否则往Z轴跳。
-        if (randomOrientation % 2 == 0) {
-            Logger.d(TAG, "新桌子在X轴方向");
-            translateM(virtualObjectModelMatrixNew, 0, 1 * randomTranslateValue, 0f, 0f);
-            virtualObject.updateModelMatrix(virtualObjectModelMatrixNew, virtualObjectScaleFactor);
-            virtualObject.draw(viewmtxNew, projmtxNew, lightIntensityNew);
-            virtualModelMatrixList.add(virtualObjectModelMatrixNew);
-            direction = true;
-
-        } else {
-            Logger.d(TAG, "新桌子在Z轴方向");
-            translateM(virtualObjectModelMatrixNew, 0, 0f, 0f, 1 * randomTranslateValue);
-            virtualObject.updateModelMatrix(virtualObjectModelMatrixNew, virtualObjectScaleFactor);
-            virtualObject.draw(viewmtxNew, projmtxNew, lightIntensityNew);
-            virtualModelMatrixList.add(virtualObjectModelMatrixNew);
-            direction = false;
-        }
-
-        resetStride();
-
-
-    }
-
-    private void resetStride() {
-        translateStride = 0;
-        yTranslateStride = 0;
-        zRotateStride = 0;
-        zRotateAngle = 0;
-        pressTime = 0;
-        xTranslateStrideComplete = false;
-    }
-
-
-    private void drawOriginVirtual(float[] viewmtxNew, float[] projmtxNew, float lightIntensityNew) {
-        for (int i = 0; i < virtualModelMatrixList.size(); i++) {
-            virtualObject.updateModelMatrix(virtualModelMatrixList.get(i), virtualObjectScaleFactor);
-            virtualObject.draw(viewmtxNew, projmtxNew, lightIntensityNew);
-        }
-
     }
 
     private void showSnackbarMessage(String message, boolean finishOnDismiss) {
@@ -928,34 +894,37 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
                 });
     }
 
-    private void playVoice(int resId) {
-        soundPool = new SoundPool(1, AudioManager.STREAM_SYSTEM, 1);
-        soundId = soundPool.load(mContext, resId, 1);
-        soundPool.setOnLoadCompleteListener(new LoadListener(soundId));
+    private void loadSounds() {
+        if (soundBank != null) {
+            return;
+        }
+        SoundBank bank = new SoundBank(new SoundPoolSink(this, MAX_VOICES), MAX_VOICES);
+        bank.load(SoundBank.LONG_PRESS, R.raw.long_press);
+        bank.load(SoundBank.GAME_START, R.raw.game_start);
+        bank.load(SoundBank.JUMP_SUCCESS, R.raw.jump_success);
+        bank.load(SoundBank.GAME_OVER, R.raw.game_over);
+        soundBank = bank;
     }
 
-
-    private static final class LoadListener implements SoundPool.OnLoadCompleteListener {
-        private int soundId;
-
-        public LoadListener(int soundId) {
-            this.soundId = soundId;
+    private void releaseSounds() {
+        SoundBank bank = soundBank;
+        if (bank != null) {
+            soundBank = null;
+            bank.release();
         }
+    }
 
-        @Override
-        public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
-            soundPool.play(soundId, 1, 1, 1, 0, 1);
-
+    private void playVoice(int sound) {
+        SoundBank bank = soundBank;
+        if (bank != null) {
+            bank.play(sound);
         }
-
     }
 
-    private void releaseVoiceUnloop() {
-        if (soundPool != null && soundId > 0) {
-            soundPool.stop(soundId);
-            soundPool.release();
-            soundPool.setOnLoadCompleteListener(null);
-            soundPool = null;
+    private void stopVoice(int sound) {
+        SoundBank bank = soundBank;
+        if (bank != null) {
+            bank.stop(sound);
         }
     }
 }
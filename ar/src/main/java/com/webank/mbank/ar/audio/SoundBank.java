@@ -0,0 +1,134 @@
+package com.webank.mbank.ar.audio;
+
+/**
+ * 游戏音效,启动时把所有音效解码一次,之后按编号直接播放
+ * <p>
+ * 同时播放的声音数量有上限,超过时停掉最早开始的那个(voice stealing)。
+ * 可以在任意线程调用,{@link #release()} 之后所有调用都会被忽略。
+ */
+public class SoundBank {
+    public static final int LONG_PRESS = 0;
+    public static final int GAME_START = 1;
+    public static final int JUMP_SUCCESS = 2;
+    public static final int GAME_OVER = 3;
+    public static final int SOUND_COUNT = 4;
+
+    private final SoundSink sink;
+    // 每个音效对应的样本id,0表示没有加载
+    private final int[] samples = new int[SOUND_COUNT];
+
+    // 正在播放的声音,按开始的先后顺序组成环形队列
+    private final int[] voiceStreams;
+    private final int[] voiceSounds;
+    private int oldestVoice;
+    private int voiceCount;
+
+    private boolean released;
+    private int playCount;
+    private int droppedCount;
+    private int stolenCount;
+
+    /**
+     * @param maxVoices 同时播放的声音上限,应该和sink的上限一致
+     */
+    public SoundBank(SoundSink sink, int maxVoices) {
+        if (maxVoices <= 0) {
+            throw new IllegalArgumentException("maxVoices must be positive: " + maxVoices);
+        }
+        this.sink = sink;
+        voiceStreams = new int[maxVoices];
+        voiceSounds = new int[maxVoices];
+    }
+
+    /**
+     * 开始解码一个音效,启动时每个音效调用一次
+     *
+     * @param sound 音效编号,比如 {@link #LONG_PRESS}
+     * @param resId 音效的资源id
+     */
+    public synchronized void load(int sound, int resId) {
+        if (released) {
+            return;
+        }
+        samples[sound] = sink.load(resId);
+    }
+
+    /**
+     * 播放一个音效,还没有解码完成时不会发声
+     *
+     * @return 是否开始播放
+     */
+    public synchronized boolean play(int sound) {
+        if (released || samples[sound] == 0) {
+            droppedCount++;
+            return false;
+        }
+        if (voiceCount == voiceStreams.length) {
+            // 停掉最早的声音,给新的声音让出位置
+            sink.stop(voiceStreams[oldestVoice]);
+            oldestVoice = (oldestVoice + 1) % voiceStreams.length;
+            voiceCount--;
+            stolenCount++;
+        }
+        int streamId = sink.play(samples[sound], 1f);
+        if (streamId == 0) {
+            droppedCount++;
+            return false;
+        }
+        int slot = (oldestVoice + voiceCount) % voiceStreams.length;
+        voiceStreams[slot] = streamId;
+        voiceSounds[slot] = sound;
+        voiceCount++;
+        playCount++;
+        return true;
+    }
+
+    /** 停止某个音效所有正在播放的声音,比如抬起手指时停止按压的声音 */
+    public synchronized void stop(int sound) {
+        if (released) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < voiceCount; i++) {
+            int slot = (oldestVoice + i) % voiceStreams.length;
+            if (voiceSounds[slot] == sound) {
+                sink.stop(voiceStreams[slot]);
+            } else {
+                int target = (oldestVoice + kept) % voiceStreams.length;
+                voiceStreams[target] = voiceStreams[slot];
+                voiceSounds[target] = voiceSounds[slot];
+                kept++;
+            }
+        }
+        voiceCount = kept;
+    }
+
+    /** 停止所有声音并释放解码好的样本,在onPause中调用 */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        voiceCount = 0;
+        sink.release();
+    }
+
+    public synchronized int getVoiceCount() {
+        return voiceCount;
+    }
+
+    /** 成功开始播放的次数 */
+    public synchronized int getPlayCount() {
+        return playCount;
+    }
+
+    /** 因为没有解码完成或者已经释放而没有播放的次数 */
+    public synchronized int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** 因为超过同时播放的上限而被停掉的声音数 */
+    public synchronized int getStolenCount() {
+        return stolenCount;
+    }
+}
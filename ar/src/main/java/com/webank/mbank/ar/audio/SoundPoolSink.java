@@ -0,0 +1,85 @@
+package com.webank.mbank.ar.audio;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.util.SparseBooleanArray;
+
+/**
+ * 基于 {@link SoundPool} 的音频输出,所有音效共用一个长期存在的SoundPool
+ * <p>
+ * 样本在后台解码,解码完成前调用 {@link #play(int, float)} 不会发声。
+ */
+public class SoundPoolSink implements SoundSink {
+    private final Context context;
+    private final SoundPool soundPool;
+    // 已经解码完成的样本,在主线程回调中写入,在UI线程和游戏线程读取
+    private final SparseBooleanArray loaded = new SparseBooleanArray();
+
+    public SoundPoolSink(Context context, int maxStreams) {
+        this.context = context.getApplicationContext();
+        soundPool = createSoundPool(maxStreams);
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                if (status == 0) {
+                    synchronized (loaded) {
+                        loaded.put(sampleId, true);
+                    }
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("deprecation")
+    private static SoundPool createSoundPool(int maxStreams) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return createSoundPoolV21(maxStreams);
+        }
+        return new SoundPool(maxStreams, AudioManager.STREAM_SYSTEM, 0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static SoundPool createSoundPoolV21(int maxStreams) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_GAME)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        return new SoundPool.Builder()
+                .setMaxStreams(maxStreams)
+                .setAudioAttributes(attributes)
+                .build();
+    }
+
+    @Override
+    public int load(int resId) {
+        return soundPool.load(context, resId, 1);
+    }
+
+    @Override
+    public int play(int sampleId, float volume) {
+        synchronized (loaded) {
+            if (!loaded.get(sampleId)) {
+                return 0;
+            }
+        }
+        return soundPool.play(sampleId, volume, volume, 1, 0, 1f);
+    }
+
+    @Override
+    public void stop(int streamId) {
+        soundPool.stop(streamId);
+    }
+
+    @Override
+    public void release() {
+        soundPool.setOnLoadCompleteListener(null);
+        soundPool.release();
+        synchronized (loaded) {
+            loaded.clear();
+        }
+    }
+}
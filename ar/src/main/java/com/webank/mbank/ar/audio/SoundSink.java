@@ -0,0 +1,27 @@
+package com.webank.mbank.ar.audio;
+
+/**
+ * 音频输出,{@link SoundBank} 通过它加载和播放音效
+ * <p>
+ * 设备上是 {@link SoundPoolSink},测试中可以换成不发声的实现来统计触发到播放的延迟。
+ */
+public interface SoundSink {
+    /**
+     * 开始异步解码一个音效
+     *
+     * @return 样本id,失败时返回0
+     */
+    int load(int resId);
+
+    /**
+     * 播放已经解码好的样本
+     *
+     * @return 声音流的id,样本还没有解码完成或者播放失败时返回0
+     */
+    int play(int sampleId, float volume);
+
+    void stop(int streamId);
+
+    /** 释放所有样本,之后不能再使用 */
+    void release();
+}
@@ -0,0 +1,18 @@
+package com.webank.mbank.ar.game;
+
+/**
+ * {@link InputEventRing} 中的一条输入记录,只包含基本类型,可以反复使用
+ */
+public class InputEvent {
+    // 和 MotionEvent 中的取值一致
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+
+    public int action;
+    public float x;
+    public float y;
+    /** 事件发生的时间,和 {@link System#nanoTime()} 同一个时间基准 */
+    public long eventNanos;
+    /** 抬起事件对应的按压时长,没有对应的按下事件或者不是抬起事件时为0 */
+    public long pressNanos;
+}
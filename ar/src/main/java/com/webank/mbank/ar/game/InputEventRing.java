@@ -0,0 +1,120 @@
+package com.webank.mbank.ar.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的单生产者单消费者输入队列,一个线程(UI线程)写入,另一个线程(GL或游戏线程)读取。
+ * <p>
+ * 数据按字段存放在预先分配的基本类型数组中,写入和读取都不会分配内存,
+ * 也不会持有会被系统回收复用的 MotionEvent。
+ * <p>
+ * 队列总是给抬起事件预留一个位置:队列快满时丢弃的只会是按下事件,
+ * 每次按下之后的那一次抬起一定能写入,不会因为丢失抬起而让游戏一直停在按压状态。
+ */
+public class InputEventRing {
+    private final int mask;
+    private final int[] actions;
+    private final float[] xs;
+    private final float[] ys;
+    private final long[] eventNanos;
+    private final long[] pressNanos;
+
+    // 下一个写入的位置,只由生产者修改
+    private final AtomicLong head = new AtomicLong();
+    // 下一个读取的位置,只由消费者修改
+    private final AtomicLong tail = new AtomicLong();
+
+    // 只被生产者访问
+    private long lastDownNanos = -1;
+    private volatile int droppedCount;
+
+    /**
+     * @param capacity 队列长度,必须是2的幂并且不小于2
+     */
+    public InputEventRing(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two >= 2: " + capacity);
+        }
+        mask = capacity - 1;
+        actions = new int[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        eventNanos = new long[capacity];
+        pressNanos = new long[capacity];
+    }
+
+    /**
+     * 生产者:写入一个事件,抬起事件会带上和上一次按下之间的时长
+     *
+     * @param action {@link InputEvent#ACTION_DOWN} 或 {@link InputEvent#ACTION_UP}
+     * @return 队列已满而丢弃时返回false
+     */
+    public boolean offer(int action, float x, float y, long nanos) {
+        long press = 0;
+        int limit = mask;
+        if (action == InputEvent.ACTION_DOWN) {
+            lastDownNanos = nanos;
+        } else if (action == InputEvent.ACTION_UP) {
+            if (lastDownNanos >= 0) {
+                press = nanos - lastDownNanos;
+                lastDownNanos = -1;
+            }
+            // 只有抬起事件可以用掉预留的最后一个位置
+            limit = mask + 1;
+        }
+
+        long h = head.get();
+        if (h - tail.get() >= limit) {
+            droppedCount++;
+            return false;
+        }
+        int i = (int) h & mask;
+        actions[i] = action;
+        xs[i] = x;
+        ys[i] = y;
+        eventNanos[i] = nanos;
+        pressNanos[i] = press;
+        // 先写数据再发布位置,消费者看到新的head时一定能看到完整的数据
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * 消费者:按写入顺序取出一个事件
+     *
+     * @param out 用来接收数据的记录
+     * @return 队列为空时返回false
+     */
+    public boolean poll(InputEvent out) {
+        long t = tail.get();
+        if (t == head.get()) {
+            return false;
+        }
+        int i = (int) t & mask;
+        out.action = actions[i];
+        out.x = xs[i];
+        out.y = ys[i];
+        out.eventNanos = eventNanos[i];
+        out.pressNanos = pressNanos[i];
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /** 消费者:丢弃所有还没有读取的事件 */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /** 因为队列已满而丢弃的事件数 */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+}
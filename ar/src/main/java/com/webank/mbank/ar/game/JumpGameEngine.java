@@ -0,0 +1,284 @@
+package com.webank.mbank.ar.game;
+
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.math.TransformRing;
+
+import java.util.Random;
+
+/**
+ * 跳一跳的游戏逻辑,不依赖任何Android和OpenGL的类,可以直接在JVM上测试和压测。
+ * <p>
+ * 按固定的时间步长推进({@link #TICK_NANOS}),{@link #update(long)} 根据经过的真实时间决定执行多少步,
+ * 所以不管是30帧还是60帧,跳跃的速度和落点都是一样的。
+ * 所有状态都写在预先分配好的 {@link JumpGameState} 中,推进过程中不会分配内存。
+ * <p>
+ * 非线程安全,需要在同一个线程上调用。
+ */
+public class JumpGameEngine {
+
+    /** 固定步长:60Hz */
+    public static final long TICK_NANOS = 1000000000L / 60;
+    /** 一次最多补偿的时间,防止卡顿之后一次推进太多步 */
+    private static final long MAX_FRAME_NANOS = 250000000L;
+
+    /** 长按超过这个时间才会起跳 */
+    public static final long MIN_PRESS_NANOS = 300000000L;
+    /** 每按1毫秒跳出的距离 */
+    public static final float DISTANCE_PER_PRESS_MS = 0.39589f / 1000;
+    /** 水平方向的速度,原来每帧移动0.02,ARCore默认30帧,即每秒0.6 */
+    public static final float JUMP_SPEED_PER_SECOND = 0.6f;
+    private static final float STRIDE_PER_TICK = JUMP_SPEED_PER_SECOND * TICK_NANOS / 1e9f;
+    /** 抛物线的高度系数以及起跳时的抬升 */
+    private static final float JUMP_ARC = 0.8f;
+    private static final float JUMP_LIFT = 0.1f;
+
+    /** 桌子宽度的一半,用于判断是否落在桌子上 */
+    public static final float HALF_WIDTH_OF_THE_BOX = 0.09f;
+    /** 小机器人相对桌子的高度 */
+    public static final float ROBOT_Y = 0.14f;
+    /** 第二张桌子相对第一张的距离 */
+    public static final float SECOND_BOX_OFFSET = 0.45f;
+
+    /**
+     * 游戏事件回调,在调用 {@link #update(long)} 等方法的线程上同步回调
+     */
+    public interface Listener {
+        void onGameStarted();
+
+        void onJumpLanded(int score);
+
+        void onGameOver(int score);
+    }
+
+    private final JumpGameState state = new JumpGameState();
+    private final Random random;
+    private Listener listener;
+
+    // 起跳前小机器人的模型矩阵
+    private final float[] robotBaseMatrix = new float[16];
+    // 计算新桌子位置用的临时矩阵
+    private final float[] platformMatrix = new float[16];
+
+    private long lastUpdateNanos = -1;
+    private long accumulatorNanos;
+    private long pressDownNanos = -1;
+
+    private float jumpDistance;
+    private float translateStride;
+
+    public JumpGameEngine() {
+        this(new Random());
+    }
+
+    public JumpGameEngine(Random random) {
+        this.random = random;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** 当前的状态,只在调用线程上读取;跨线程请使用 {@link JumpGameState#copyFrom(JumpGameState)} */
+    public JumpGameState getState() {
+        return state;
+    }
+
+    /**
+     * 以锚点的位置开始一局新游戏
+     *
+     * @param anchorMatrix 点击平面生成的锚点的模型矩阵
+     */
+    public void start(float[] anchorMatrix) {
+        state.platforms.clear();
+        state.score = 0;
+        state.direction = true;
+
+        state.platforms.push(anchorMatrix);
+
+        Mat4.copy(anchorMatrix, robotBaseMatrix);
+        Mat4.translate(robotBaseMatrix, 0, ROBOT_Y, 0);
+        Mat4.copy(robotBaseMatrix, state.robotMatrix);
+
+        Mat4.copy(anchorMatrix, platformMatrix);
+        Mat4.translate(platformMatrix, SECOND_BOX_OFFSET, 0f, 0f);
+        state.platforms.push(platformMatrix);
+
+        resetStride();
+        pressDownNanos = -1;
+        accumulatorNanos = 0;
+        state.phase = JumpGameState.PHASE_READY;
+        if (listener != null) {
+            listener.onGameStarted();
+        }
+    }
+
+    /** 结束当前这一局,回到等待开始的状态 */
+    public void reset() {
+        state.phase = JumpGameState.PHASE_IDLE;
+        state.platforms.clear();
+        state.score = 0;
+        state.direction = true;
+        pressDownNanos = -1;
+        resetStride();
+    }
+
+    /** 手指按下 */
+    public void press(long eventNanos) {
+        if (state.phase == JumpGameState.PHASE_READY) {
+            pressDownNanos = eventNanos;
+        }
+    }
+
+    /**
+     * 手指抬起,按压时间足够长就起跳
+     *
+     * @return 是否起跳
+     */
+    public boolean release(long eventNanos) {
+        if (state.phase != JumpGameState.PHASE_READY || pressDownNanos < 0) {
+            return false;
+        }
+        long pressNanos = eventNanos - pressDownNanos;
+        pressDownNanos = -1;
+        if (pressNanos <= MIN_PRESS_NANOS) {
+            return false;
+        }
+        jump(pressNanos);
+        return true;
+    }
+
+    /** 按照按压时长直接起跳 */
+    public void jump(long pressNanos) {
+        resetStride();
+        jumpDistance = pressNanos / 1000000f * DISTANCE_PER_PRESS_MS;
+        state.phase = JumpGameState.PHASE_JUMPING;
+    }
+
+    /**
+     * 推进游戏到指定的时间点
+     *
+     * @param nowNanos 单调递增的时间,比如 {@link System#nanoTime()}
+     * @return 本次执行的步数
+     */
+    public int update(long nowNanos) {
+        if (lastUpdateNanos < 0) {
+            lastUpdateNanos = nowNanos;
+            return 0;
+        }
+        long elapsed = nowNanos - lastUpdateNanos;
+        lastUpdateNanos = nowNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        accumulatorNanos += Math.min(elapsed, MAX_FRAME_NANOS);
+        int ticks = 0;
+        while (accumulatorNanos >= TICK_NANOS) {
+            accumulatorNanos -= TICK_NANOS;
+            tick();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /** 推进一个固定步长 */
+    public void tick() {
+        if (state.phase != JumpGameState.PHASE_JUMPING) {
+            return;
+        }
+        translateStride = Math.min(translateStride + STRIDE_PER_TICK, jumpDistance);
+        float progress = jumpDistance > 0 ? translateStride / jumpDistance : 1f;
+        float lift = -JUMP_ARC * progress * progress + JUMP_ARC * progress + JUMP_LIFT;
+
+        float[] robot = state.robotMatrix;
+        Mat4.copy(robotBaseMatrix, robot);
+        if (state.direction) {
+            Mat4.translate(robot, translateStride, lift, 0);
+        } else {
+            Mat4.translate(robot, 0, lift, translateStride);
+        }
+        Mat4.rotateY(robot, 360 * progress);
+
+        if (translateStride >= jumpDistance) {
+            land();
+        }
+    }
+
+    private void land() {
+        TransformRing platforms = state.platforms;
+        float[] robot = state.robotMatrix;
+        if (isOnPlatform(robot[12], robot[14], platforms.getArray(), platforms.lastOffset())) {
+            // 落地后把小机器人放回桌面的高度,作为下一次起跳的位置
+            float destY = robot[13];
+            float origY = robotBaseMatrix[13];
+            Mat4.translate(robot, 0f, -(destY - origY), 0);
+            Mat4.copy(robot, robotBaseMatrix);
+
+            state.score++;
+            addNextPlatform();
+            resetStride();
+            state.phase = JumpGameState.PHASE_READY;
+            if (listener != null) {
+                listener.onJumpLanded(state.score);
+            }
+        } else {
+            resetStride();
+            state.phase = JumpGameState.PHASE_OVER;
+            if (listener != null) {
+                listener.onGameOver(state.score);
+            }
+        }
+    }
+
+    /** 判断落点是否在桌子的范围内 */
+    public static boolean isOnPlatform(float x, float z, float[] platform) {
+        return isOnPlatform(x, z, platform, 0);
+    }
+
+    /** 同 {@link #isOnPlatform(float, float, float[])},桌子的矩阵位于offset处 */
+    public static boolean isOnPlatform(float x, float z, float[] platforms, int offset) {
+        float centerX = platforms[offset + 12];
+        float centerZ = platforms[offset + 14];
+        return (centerX - HALF_WIDTH_OF_THE_BOX) <= x && x <= (centerX + HALF_WIDTH_OF_THE_BOX)
+                && (centerZ - HALF_WIDTH_OF_THE_BOX) <= z && z <= (centerZ + HALF_WIDTH_OF_THE_BOX);
+    }
+
+    /** 在最新的一张桌子旁边追加一张,满了以后覆盖最早的那张 */
+    private void addNextPlatform() {
+        int randomOrientation = (int) (2 + random.nextDouble() * 10);
+        float distance = nextDistance(random.nextDouble());
+
+        float[] next = platformMatrix;
+        state.platforms.get(state.platforms.size() - 1, next);
+        //随机数可以被2整除,就往X轴方向跳;否则往Z轴跳。
+        if (randomOrientation % 2 == 0) {
+            Mat4.translate(next, distance, 0f, 0f);
+            state.direction = true;
+        } else {
+            Mat4.translate(next, 0f, 0f, distance);
+            state.direction = false;
+        }
+        state.platforms.push(next);
+    }
+
+    /** 下一张桌子的距离,保持和原来的分布一致 */
+    static float nextDistance(double n) {
+        if (n <= 0.1) {
+            return (float) (0.30 + n);
+        }
+        if (n <= 0.2) {
+            return (float) (0.20 + n);
+        }
+        if (n < 0.5) {
+            return (float) (0.1 + n);
+        }
+        if (n < 0.7) {
+            return (float) (n - 0.2);
+        }
+        return (float) (n - 0.4);
+    }
+
+    private void resetStride() {
+        translateStride = 0;
+        jumpDistance = 0;
+    }
+}
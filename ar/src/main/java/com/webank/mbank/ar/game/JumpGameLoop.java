@@ -0,0 +1,141 @@
+package com.webank.mbank.ar.game;
+
+import com.webank.mbank.ar.profiling.FrameProfiler;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在单独的线程上运行 {@link JumpGameEngine},每个固定步长推进一次,
+ * 并通过 {@link TripleBuffer} 把状态快照发布给渲染线程。
+ * <p>
+ * 引擎只会在游戏线程上被访问;其他线程只通过这里的方法提交输入,或者读取快照,
+ * 所以渲染线程上 session.update() 的卡顿不会影响游戏的推进。
+ * {@link JumpGameEngine.Listener} 的回调也发生在游戏线程上。
+ */
+public class JumpGameLoop implements Runnable {
+    private static final String THREAD_NAME = "WeAr-GameLoop";
+    // 一个步长内最多能收到的输入事件数
+    private static final int INPUT_CAPACITY = 64;
+
+    private final JumpGameEngine engine;
+    private final TripleBuffer<JumpGameState> snapshots =
+            new TripleBuffer<>(new JumpGameState(), new JumpGameState(), new JumpGameState());
+
+    // UI线程提交过来的触摸,由游戏线程在每一步开始时按顺序取走
+    private final InputEventRing input = new InputEventRing(INPUT_CAPACITY);
+    private final InputEvent event = new InputEvent();
+    private final AtomicReference<float[]> pendingStart = new AtomicReference<>();
+
+    private volatile boolean running;
+    private volatile int publishedPhase = JumpGameState.PHASE_IDLE;
+    private Thread thread;
+    private FrameProfiler profiler;
+
+    public JumpGameLoop(JumpGameEngine engine) {
+        this.engine = engine;
+    }
+
+    /** 记录每一步的耗时,需要在 {@link #start()} 之前设置 */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, THREAD_NAME);
+        thread.start();
+    }
+
+    /** 停止游戏线程并等待其退出 */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /** 以锚点位置开始新的一局,可以在任意线程调用 */
+    public void requestStart(float[] anchorMatrix) {
+        float[] copy = new float[16];
+        System.arraycopy(anchorMatrix, 0, copy, 0, 16);
+        pendingStart.set(copy);
+    }
+
+    /** 手指按下,只能在一个线程(UI线程)上调用 */
+    public void press(float x, float y, long eventNanos) {
+        input.offer(InputEvent.ACTION_DOWN, x, y, eventNanos);
+    }
+
+    /** 手指抬起,和 {@link #press(float, float, long)} 在同一个线程上调用,不会被丢弃 */
+    public void release(float x, float y, long eventNanos) {
+        input.offer(InputEvent.ACTION_UP, x, y, eventNanos);
+    }
+
+    /** 最近一次发布的快照是否处于游戏中,可以在任意线程调用 */
+    public boolean isInGame() {
+        int phase = publishedPhase;
+        return phase == JumpGameState.PHASE_READY || phase == JumpGameState.PHASE_JUMPING;
+    }
+
+    /**
+     * 渲染线程:最新一份完整的快照,不会阻塞。
+     * 返回的对象在下一次调用之前不会被修改,只能被同一个线程读取。
+     */
+    public JumpGameState latest() {
+        return snapshots.latest();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            step(System.nanoTime());
+
+            nextTick += JumpGameEngine.TICK_NANOS;
+            long now = System.nanoTime();
+            if (nextTick - now < -JumpGameEngine.TICK_NANOS) {
+                // 落后太多(比如线程被挂起),不再追赶,引擎内部会按真实经过的时间补上
+                nextTick = now;
+            }
+            while (running && nextTick - (now = System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, nextTick - now);
+            }
+        }
+    }
+
+    /** 处理输入、推进引擎并发布快照,只在游戏线程上调用 */
+    void step(long nowNanos) {
+        long stageStart = profiler != null ? profiler.begin() : 0;
+        float[] anchor = pendingStart.getAndSet(null);
+        if (anchor != null) {
+            engine.start(anchor);
+        }
+        while (input.poll(event)) {
+            if (event.action == InputEvent.ACTION_DOWN) {
+                engine.press(event.eventNanos);
+            } else if (event.action == InputEvent.ACTION_UP) {
+                engine.release(event.eventNanos);
+            }
+        }
+        engine.update(nowNanos);
+
+        JumpGameState snapshot = snapshots.back();
+        snapshot.copyFrom(engine.getState());
+        publishedPhase = snapshot.phase;
+        snapshots.publish();
+        if (profiler != null) {
+            profiler.end(FrameProfiler.STAGE_GAME, stageStart);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.webank.mbank.ar.game;
+
+import com.webank.mbank.ar.math.TransformRing;
+
+/**
+ * 跳一跳游戏的状态快照,所有数组都是预先分配好的,由 {@link JumpGameEngine} 写入,渲染线程只读。
+ * 矩阵均为列主序的4x4矩阵,与OpenGL一致。
+ */
+public class JumpGameState {
+    /** 还没有开始游戏,等待点击平面 */
+    public static final int PHASE_IDLE = 0;
+    /** 小机器人站在桌子上,等待长按 */
+    public static final int PHASE_READY = 1;
+    /** 小机器人正在空中 */
+    public static final int PHASE_JUMPING = 2;
+    /** 没有落在桌子上,游戏结束 */
+    public static final int PHASE_OVER = 3;
+
+    /** 最多保留的桌子数量,超过后丢弃最早的桌子 */
+    public static final int MAX_PLATFORMS = 20;
+
+    public int phase = PHASE_IDLE;
+    public int score;
+    /** true:往X轴方向跳;false:往Z轴方向跳 */
+    public boolean direction = true;
+
+    /** 小机器人当前的模型矩阵(跳跃动画中会不断变化),不包含朝向的旋转 */
+    public final float[] robotMatrix = new float[16];
+
+    /** 桌子的模型矩阵,从最早的到最新的,最新的一个是小机器人要跳上去的桌子 */
+    public final TransformRing platforms = new TransformRing(MAX_PLATFORMS);
+
+    public boolean isInGame() {
+        return phase == PHASE_READY || phase == PHASE_JUMPING;
+    }
+
+    /** 拷贝另一份快照的内容,不会产生新的对象 */
+    public void copyFrom(JumpGameState other) {
+        phase = other.phase;
+        score = other.score;
+        direction = other.direction;
+        System.arraycopy(other.robotMatrix, 0, robotMatrix, 0, 16);
+        platforms.copyFrom(other.platforms);
+    }
+}
@@ -0,0 +1,55 @@
+package com.webank.mbank.ar.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无锁的三缓冲,一个线程写、一个线程读。
+ * <p>
+ * 写线程总是写 {@link #back()},写完调用 {@link #publish()} 和中间的缓冲交换;
+ * 读线程调用 {@link #latest()} 拿到最新一份写完整的数据,读的过程中写线程不会碰到这份数据。
+ * 双方都不会阻塞,写得比读快时中间的数据会被直接覆盖。
+ * <p>
+ * 写线程拿到的back可能是两次之前的旧数据,需要整份重写。
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    // 中间的缓冲里有读线程还没拿走的新数据
+    private static final int DIRTY = 4;
+
+    private final Object[] buffers;
+    // 中间缓冲的下标以及DIRTY标志,是读写双方唯一共享的状态
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // 只被写线程访问
+    private int back = 0;
+    // 只被读线程访问
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[]{first, second, third};
+    }
+
+    /** 写线程:当前可以写的缓冲 */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /** 写线程:发布back中的数据,并换一个新的back */
+    public void publish() {
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+
+    /** 读线程:是否有还没读过的新数据 */
+    public boolean hasUpdate() {
+        return (middle.get() & DIRTY) != 0;
+    }
+
+    /** 读线程:最新一份完整的数据,在下一次调用之前都不会被写线程修改 */
+    @SuppressWarnings("unchecked")
+    public T latest() {
+        if (hasUpdate()) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+}
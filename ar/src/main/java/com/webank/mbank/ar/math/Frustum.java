@@ -0,0 +1,117 @@
+package com.webank.mbank.ar.math;
+
+/**
+ * 视锥体,用于剔除完全在屏幕外的物体。
+ * <p>
+ * 每帧用 {@link #set(float[], float[])} 从 projection * view 中提取6个平面(Gribb-Hartmann方法),
+ * 平面的法线指向视锥体内部并归一化,所以点到平面的有符号距离就是世界坐标系中的距离。
+ * 测试是保守的:和视锥体相交或者只是靠近角落的物体都算可见,只有确定完全在某个平面外侧的
+ * 物体才会被剔除。不分配内存,不是线程安全的。
+ */
+public final class Frustum {
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int TOP = 3;
+    public static final int NEAR = 4;
+    public static final int FAR = 5;
+    public static final int PLANE_COUNT = 6;
+
+    // 每个平面4个数 a, b, c, d,点在内侧时 a*x + b*y + c*z + d >= 0
+    private final float[] planes = new float[PLANE_COUNT * 4];
+    private final float[] viewProjection = new float[16];
+
+    /**
+     * 从相机的投影矩阵和视图矩阵提取平面,每帧调用一次
+     */
+    public void set(float[] projection, float[] view) {
+        Mat4.multiply(viewProjection, projection, view);
+        setFromMatrix(viewProjection);
+    }
+
+    /**
+     * 从 projection * view 提取平面。裁剪空间中可见的点满足 -w <= x, y, z <= w,
+     * 每个不等式对应矩阵第4行加上或减去第1、2、3行。
+     */
+    public void setFromMatrix(float[] m) {
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            int row = i / 2;
+            float sign = i % 2 == 0 ? 1f : -1f;
+            float a = m[3] + sign * m[row];
+            float b = m[7] + sign * m[4 + row];
+            float c = m[11] + sign * m[8 + row];
+            float d = m[15] + sign * m[12 + row];
+            float length = (float) Math.sqrt(a * a + b * b + c * c);
+            float scale = length > 0f ? 1f / length : 0f;
+            planes[4 * i] = a * scale;
+            planes[4 * i + 1] = b * scale;
+            planes[4 * i + 2] = c * scale;
+            planes[4 * i + 3] = d * scale;
+        }
+    }
+
+    /** 点到第plane个平面的有符号距离,内侧为正 */
+    public float distance(int plane, float x, float y, float z) {
+        int p = 4 * plane;
+        return planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3];
+    }
+
+    /** 包围球是否和视锥体相交 */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            if (distance(i, x, y, z) < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 世界坐标系中的轴对齐包围盒是否和视锥体相交 */
+    public boolean intersectsBox(float[] min, float[] max) {
+        return intersectsBox(
+                0.5f * (min[0] + max[0]), 0.5f * (min[1] + max[1]), 0.5f * (min[2] + max[2]),
+                0.5f * (max[0] - min[0]), 0.5f * (max[1] - min[1]), 0.5f * (max[2] - min[2]));
+    }
+
+    /**
+     * 模型坐标系中的包围盒经过model变换之后是否和视锥体相交。
+     * <p>
+     * 变换后的包围盒用包住它的轴对齐包围盒近似:中心直接变换,半边长是各轴半边长乘以矩阵
+     * 元素的绝对值之和(Arvo的方法),比包围球更贴近细长的物体。
+     *
+     * @param model  列主序的模型矩阵,包括缩放,从offset开始
+     * @param boundsMin 模型坐标系中包围盒的最小角
+     * @param boundsMax 模型坐标系中包围盒的最大角
+     */
+    public boolean intersectsBox(float[] model, int offset, float[] boundsMin, float[] boundsMax) {
+        float cx = 0.5f * (boundsMin[0] + boundsMax[0]);
+        float cy = 0.5f * (boundsMin[1] + boundsMax[1]);
+        float cz = 0.5f * (boundsMin[2] + boundsMax[2]);
+        float ex = 0.5f * (boundsMax[0] - boundsMin[0]);
+        float ey = 0.5f * (boundsMax[1] - boundsMin[1]);
+        float ez = 0.5f * (boundsMax[2] - boundsMin[2]);
+        float[] m = model;
+        int o = offset;
+        return intersectsBox(
+                m[o] * cx + m[o + 4] * cy + m[o + 8] * cz + m[o + 12],
+                m[o + 1] * cx + m[o + 5] * cy + m[o + 9] * cz + m[o + 13],
+                m[o + 2] * cx + m[o + 6] * cy + m[o + 10] * cz + m[o + 14],
+                Math.abs(m[o]) * ex + Math.abs(m[o + 4]) * ey + Math.abs(m[o + 8]) * ez,
+                Math.abs(m[o + 1]) * ex + Math.abs(m[o + 5]) * ey + Math.abs(m[o + 9]) * ez,
+                Math.abs(m[o + 2]) * ex + Math.abs(m[o + 6]) * ey + Math.abs(m[o + 10]) * ez);
+    }
+
+    private boolean intersectsBox(float cx, float cy, float cz, float ex, float ey, float ez) {
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            int p = 4 * i;
+            // 包围盒在平面法线方向上的投影半径
+            float radius = Math.abs(planes[p]) * ex
+                    + Math.abs(planes[p + 1]) * ey
+                    + Math.abs(planes[p + 2]) * ez;
+            if (distance(i, cx, cy, cz) < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
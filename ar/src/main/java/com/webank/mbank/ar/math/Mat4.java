@@ -0,0 +1,239 @@
+package com.webank.mbank.ar.math;
+
+/**
+ * 纯Java实现的4x4矩阵工具,不依赖android.opengl.Matrix,可以直接在JVM上运行和测试。
+ * 矩阵的存储方式与OpenGL一致:列主序(column-major)的float[16]。
+ * <p>
+ * 模型矩阵、视图矩阵和它们的乘积都是仿射矩阵(最后一行是0, 0, 0, 1),名字里带Affine的方法
+ * 只计算前三行,乘法次数从64次降到36次;只有投影矩阵需要完整的4x4乘法。
+ */
+public final class Mat4 {
+
+    private Mat4() {
+    }
+
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = 0f;
+        }
+        m[0] = 1f;
+        m[5] = 1f;
+        m[10] = 1f;
+        m[15] = 1f;
+    }
+
+    public static void copy(float[] src, float[] dst) {
+        System.arraycopy(src, 0, dst, 0, 16);
+    }
+
+    /**
+     * 在矩阵自身的坐标系下平移,等价于 {@code android.opengl.Matrix.translateM(m, 0, x, y, z)}
+     */
+    public static void translate(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+    }
+
+    /**
+     * 在矩阵自身的坐标系下绕Y轴旋转,等价于 {@code android.opengl.Matrix.rotateM(m, 0, degrees, 0, 1, 0)}
+     */
+    public static void rotateY(float[] m, float degrees) {
+        double radians = Math.toRadians(degrees);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        for (int i = 0; i < 4; i++) {
+            float x = m[i];
+            float z = m[8 + i];
+            m[i] = c * x - s * z;
+            m[8 + i] = s * x + c * z;
+        }
+    }
+
+    /**
+     * 由平移和单位四元数构造刚体变换矩阵,与 {@code com.google.ar.core.Pose.toMatrix(m, 0)} 一致
+     */
+    public static void setFromPose(float[] m, float tx, float ty, float tz,
+                                   float qx, float qy, float qz, float qw) {
+        m[0] = 1 - 2 * (qy * qy + qz * qz);
+        m[1] = 2 * (qx * qy + qz * qw);
+        m[2] = 2 * (qx * qz - qy * qw);
+        m[3] = 0f;
+        m[4] = 2 * (qx * qy - qz * qw);
+        m[5] = 1 - 2 * (qx * qx + qz * qz);
+        m[6] = 2 * (qy * qz + qx * qw);
+        m[7] = 0f;
+        m[8] = 2 * (qx * qz + qy * qw);
+        m[9] = 2 * (qy * qz - qx * qw);
+        m[10] = 1 - 2 * (qx * qx + qy * qy);
+        m[11] = 0f;
+        m[12] = tx;
+        m[13] = ty;
+        m[14] = tz;
+        m[15] = 1f;
+    }
+
+    /**
+     * result = lhs * rhs,等价于 {@code android.opengl.Matrix.multiplyMM(result, 0, lhs, 0, rhs, 0)}。
+     * result不能和lhs、rhs是同一个数组。
+     */
+    public static void multiply(float[] result, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; col++) {
+            float r0 = rhs[col * 4];
+            float r1 = rhs[col * 4 + 1];
+            float r2 = rhs[col * 4 + 2];
+            float r3 = rhs[col * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                result[col * 4 + row] =
+                        lhs[row] * r0 + lhs[4 + row] * r1 + lhs[8 + row] * r2 + lhs[12 + row] * r3;
+            }
+        }
+    }
+
+    /**
+     * result = m * v,等价于 {@code android.opengl.Matrix.multiplyMV(result, 0, m, 0, v, 0)}。
+     * result不能和v是同一个数组。
+     */
+    public static void multiplyVec(float[] result, float[] m, float[] v) {
+        for (int row = 0; row < 4; row++) {
+            result[row] = m[row] * v[0] + m[4 + row] * v[1] + m[8 + row] * v[2] + m[12 + row] * v[3];
+        }
+    }
+
+    /**
+     * 两个仿射矩阵相乘,result = lhs * rhs,结果与 {@link #multiply} 相同,但只计算前三行。
+     * result不能和lhs、rhs是同一个数组。
+     */
+    public static void multiplyAffine(float[] result, float[] lhs, float[] rhs) {
+        multiplyAffineScaled(result, 0, lhs, rhs, 0, 1f);
+    }
+
+    /**
+     * result = lhs * rhs * scale(s),rhs位于rhsOffset,结果写到resultOffset处。
+     * 缩放直接乘到rhs的前三列上,不需要单独构造缩放矩阵再做一次乘法。
+     * lhs和rhs都必须是仿射矩阵,result不能和lhs、rhs是同一个数组。
+     */
+    public static void multiplyAffineScaled(float[] result, int resultOffset, float[] lhs,
+                                            float[] rhs, int rhsOffset, float scale) {
+        float l0 = lhs[0], l1 = lhs[1], l2 = lhs[2];
+        float l4 = lhs[4], l5 = lhs[5], l6 = lhs[6];
+        float l8 = lhs[8], l9 = lhs[9], l10 = lhs[10];
+        for (int col = 0; col < 3; col++) {
+            int r = rhsOffset + col * 4;
+            float r0 = rhs[r] * scale;
+            float r1 = rhs[r + 1] * scale;
+            float r2 = rhs[r + 2] * scale;
+            int o = resultOffset + col * 4;
+            result[o] = l0 * r0 + l4 * r1 + l8 * r2;
+            result[o + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+            result[o + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+            result[o + 3] = 0f;
+        }
+        float t0 = rhs[rhsOffset + 12];
+        float t1 = rhs[rhsOffset + 13];
+        float t2 = rhs[rhsOffset + 14];
+        result[resultOffset + 12] = l0 * t0 + l4 * t1 + l8 * t2 + lhs[12];
+        result[resultOffset + 13] = l1 * t0 + l5 * t1 + l9 * t2 + lhs[13];
+        result[resultOffset + 14] = l2 * t0 + l6 * t1 + l10 * t2 + lhs[14];
+        result[resultOffset + 15] = 1f;
+    }
+
+    /**
+     * 对连续存放的count个仿射矩阵逐个计算 lhs * m * scale(s),比如 {@link TransformRing} 中的一段。
+     * 第i个矩阵位于 {@code matrices[offset + 16 * i]},结果写到 {@code result[resultOffset + 16 * i]}。
+     */
+    public static void multiplyAffineBatch(float[] result, int resultOffset, float[] lhs,
+                                           float[] matrices, int offset, int count, float scale) {
+        for (int i = 0; i < count; i++) {
+            multiplyAffineScaled(result, resultOffset + 16 * i, lhs, matrices, offset + 16 * i, scale);
+        }
+    }
+
+    /**
+     * 任意矩阵乘仿射矩阵,result = lhs * rhs,比如投影矩阵乘视图矩阵。rhs的最后一行是0, 0, 0, 1,
+     * 乘法次数从64次降到48次。result不能和lhs、rhs是同一个数组。
+     */
+    public static void multiplyByAffine(float[] result, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; col++) {
+            float r0 = rhs[col * 4];
+            float r1 = rhs[col * 4 + 1];
+            float r2 = rhs[col * 4 + 2];
+            for (int row = 0; row < 4; row++) {
+                result[col * 4 + row] = lhs[row] * r0 + lhs[4 + row] * r1 + lhs[8 + row] * r2;
+            }
+        }
+        for (int row = 0; row < 4; row++) {
+            result[12 + row] += lhs[12 + row];
+        }
+    }
+
+    /**
+     * 一次遍历同时得到 modelView = view * model 和 modelViewProjection = projection * modelView:
+     * 每算出modelView的一列,马上用它算出MVP的同一列,不需要再从内存中读回modelView。
+     * view和model必须是仿射矩阵,结果与先后调用两次 {@link #multiply} 相同。输出不能和输入是同一个数组。
+     */
+    public static void modelViewProjection(float[] modelView, float[] modelViewProjection,
+                                           float[] projection, float[] view, float[] model) {
+        float v0 = view[0], v1 = view[1], v2 = view[2];
+        float v4 = view[4], v5 = view[5], v6 = view[6];
+        float v8 = view[8], v9 = view[9], v10 = view[10];
+        for (int col = 0; col < 4; col++) {
+            int c = col * 4;
+            float m0 = model[c];
+            float m1 = model[c + 1];
+            float m2 = model[c + 2];
+            float x = v0 * m0 + v4 * m1 + v8 * m2;
+            float y = v1 * m0 + v5 * m1 + v9 * m2;
+            float z = v2 * m0 + v6 * m1 + v10 * m2;
+            if (col == 3) {
+                x += view[12];
+                y += view[13];
+                z += view[14];
+            }
+            modelView[c] = x;
+            modelView[c + 1] = y;
+            modelView[c + 2] = z;
+            modelView[c + 3] = col == 3 ? 1f : 0f;
+            for (int row = 0; row < 4; row++) {
+                float value = projection[row] * x + projection[4 + row] * y + projection[8 + row] * z;
+                modelViewProjection[c + row] = col == 3 ? value + projection[12 + row] : value;
+            }
+        }
+    }
+
+    /**
+     * 方向向量的变换,result的xyz = m的左上3x3 * v的xyz,w为0,
+     * 等价于 {@code android.opengl.Matrix.multiplyMV} 乘一个w为0的向量。
+     * m位于offset处,result不能和v是同一个数组。
+     */
+    public static void transformDirection(float[] result, float[] m, int offset, float[] v) {
+        float x = v[0];
+        float y = v[1];
+        float z = v[2];
+        result[0] = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z;
+        result[1] = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z;
+        result[2] = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z;
+        result[3] = 0f;
+    }
+
+    /**
+     * 刚体变换(只有旋转和平移,比如相机的Pose)的逆矩阵:旋转部分转置,平移为 -R^T * t。
+     * 在误差范围内等价于 {@code android.opengl.Matrix.invertM},但不需要求一般矩阵的逆。
+     * result不能和m是同一个数组。
+     */
+    public static void invertRigid(float[] result, float[] m) {
+        float tx = m[12];
+        float ty = m[13];
+        float tz = m[14];
+        for (int col = 0; col < 3; col++) {
+            result[col * 4] = m[col];
+            result[col * 4 + 1] = m[4 + col];
+            result[col * 4 + 2] = m[8 + col];
+            result[col * 4 + 3] = 0f;
+        }
+        result[12] = -(m[0] * tx + m[1] * ty + m[2] * tz);
+        result[13] = -(m[4] * tx + m[5] * ty + m[6] * tz);
+        result[14] = -(m[8] * tx + m[9] * ty + m[10] * tz);
+        result[15] = 1f;
+    }
+}
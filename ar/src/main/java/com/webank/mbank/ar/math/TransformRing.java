@@ -0,0 +1,122 @@
+package com.webank.mbank.ar.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 固定容量的4x4矩阵环形队列,所有矩阵连续存放在同一个float[]中。
+ * <p>
+ * 追加和淘汰最早的矩阵都是O(1),不会移动其他矩阵,也不会产生新的对象;
+ * 按下标遍历时访问的是连续的内存,可以直接整块写入GL的缓冲区。
+ * 第i个矩阵(0是最早的)位于 {@code getArray()} 的 {@code offset(i)} 处,列主序。
+ * <p>
+ * 不是线程安全的。
+ */
+public class TransformRing {
+    public static final int MATRIX_SIZE = 16;
+
+    private final float[] data;
+    private final int capacity;
+    // 最早的矩阵所在的槽位
+    private int start;
+    private int size;
+
+    public TransformRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        data = new float[capacity * MATRIX_SIZE];
+    }
+
+    /**
+     * 追加一个矩阵,满了以后覆盖最早的那个
+     *
+     * @return 新矩阵在 {@link #getArray()} 中的偏移,调用方直接写入这16个float
+     */
+    public int push() {
+        int slot;
+        if (size == capacity) {
+            slot = start;
+            start = (start + 1) % capacity;
+        } else {
+            slot = (start + size) % capacity;
+            size++;
+        }
+        return slot * MATRIX_SIZE;
+    }
+
+    /**
+     * 追加一个矩阵的拷贝
+     *
+     * @return 新矩阵在 {@link #getArray()} 中的偏移
+     */
+    public int push(float[] matrix) {
+        int offset = push();
+        System.arraycopy(matrix, 0, data, offset, MATRIX_SIZE);
+        return offset;
+    }
+
+    /** 第index个矩阵在 {@link #getArray()} 中的偏移,0是最早的矩阵 */
+    public int offset(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        int slot = start + index;
+        if (slot >= capacity) {
+            slot -= capacity;
+        }
+        return slot * MATRIX_SIZE;
+    }
+
+    /** 最新的矩阵的偏移 */
+    public int lastOffset() {
+        return offset(size - 1);
+    }
+
+    /** 把第index个矩阵拷贝到out中 */
+    public void get(int index, float[] out) {
+        System.arraycopy(data, offset(index), out, 0, MATRIX_SIZE);
+    }
+
+    /** 存放所有矩阵的数组,只能通过 {@link #offset(int)} 访问 */
+    public float[] getArray() {
+        return data;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    /** 拷贝另一个同样容量的队列的内容,不会产生新的对象 */
+    public void copyFrom(TransformRing other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("capacity " + other.capacity + " != " + capacity);
+        }
+        // 只拷贝有效的部分,最多分成两段
+        int first = Math.min(other.size, capacity - other.start);
+        System.arraycopy(other.data, other.start * MATRIX_SIZE, data, 0, first * MATRIX_SIZE);
+        if (first < other.size) {
+            System.arraycopy(other.data, 0, data, first * MATRIX_SIZE, (other.size - first) * MATRIX_SIZE);
+        }
+        start = 0;
+        size = other.size;
+    }
+
+    /** 按从早到晚的顺序把所有矩阵写入dst,比如用于上传到GL的缓冲区 */
+    public void writeTo(FloatBuffer dst) {
+        int first = Math.min(size, capacity - start);
+        dst.put(data, start * MATRIX_SIZE, first * MATRIX_SIZE);
+        if (first < size) {
+            dst.put(data, 0, (size - first) * MATRIX_SIZE);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.webank.mbank.ar.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * 把32位索引的网格拆成若干块,每块最多 maxVertices 个顶点,可以用16位索引绘制。
+ * <p>
+ * OpenGL ES 2.0 默认只支持 GL_UNSIGNED_SHORT 索引,设备不支持 OES_element_index_uint
+ * 时,超过65536个顶点的模型需要拆开。每块的顶点在新的顶点数组中是连续的,索引相对于块的
+ * 第一个顶点,绘制一块时把顶点属性的偏移指向 {@link #firstVertex} 即可,三角形的顺序不变。
+ * 被多块共用的顶点会复制到每一块中。
+ */
+public class MeshChunks {
+    public final int chunkCount;
+    /** 每块在新顶点数组中的第一个顶点和顶点数 */
+    public final int[] firstVertex;
+    public final int[] vertexCount;
+    /** 每块在 {@link #indices} 中的第一个索引和索引数 */
+    public final int[] firstIndex;
+    public final int[] indexCount;
+    /** 新顶点数组中每个顶点对应的原顶点 */
+    public final int[] vertexMap;
+    public final int totalVertexCount;
+    /** 相对于所在块第一个顶点的索引,本机字节序的direct buffer */
+    public final ShortBuffer indices;
+
+    private MeshChunks(int chunkCount, int[] firstVertex, int[] vertexCount, int[] firstIndex,
+                       int[] indexCount, int[] vertexMap, int totalVertexCount,
+                       ShortBuffer indices) {
+        this.chunkCount = chunkCount;
+        this.firstVertex = firstVertex;
+        this.vertexCount = vertexCount;
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.vertexMap = vertexMap;
+        this.totalVertexCount = totalVertexCount;
+        this.indices = indices;
+    }
+
+    /**
+     * 按三角形的顺序贪心地拆分,当前块放不下下一个三角形的新顶点时开始新的一块
+     *
+     * @param indices     从position到limit,每3个一个三角形
+     * @param vertexCount 原网格的顶点数
+     * @param maxVertices 每块最多的顶点数,至少为3,16位索引时为65536
+     */
+    public static MeshChunks split(IntBuffer indices, int vertexCount, int maxVertices) {
+        if (maxVertices < 3) {
+            throw new IllegalArgumentException("maxVertices " + maxVertices);
+        }
+        int start = indices.position();
+        int count = indices.remaining() / 3 * 3;
+
+        // 原顶点在当前块中的下标,chunkOf记录它属于哪一块,避免每块都清空数组
+        int[] local = new int[vertexCount];
+        int[] chunkOf = new int[vertexCount];
+        Arrays.fill(chunkOf, -1);
+
+        int[] vertexMap = new int[Math.max(vertexCount, 16)];
+        ShortBuffer out = ByteBuffer.allocateDirect(2 * count)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        int[] firstVertex = new int[4];
+        int[] chunkVertices = new int[4];
+        int[] firstIndex = new int[4];
+        int[] chunkIndices = new int[4];
+
+        int chunk = 0;
+        int total = 0;
+        int used = 0;
+        for (int t = 0; t < count; t += 3) {
+            int added = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices.get(start + t + k);
+                if (chunkOf[v] != chunk && !repeats(indices, start + t, k)) {
+                    added++;
+                }
+            }
+            if (used + added > maxVertices) {
+                chunk++;
+                used = 0;
+                if (chunk == firstVertex.length) {
+                    firstVertex = Arrays.copyOf(firstVertex, chunk * 2);
+                    chunkVertices = Arrays.copyOf(chunkVertices, chunk * 2);
+                    firstIndex = Arrays.copyOf(firstIndex, chunk * 2);
+                    chunkIndices = Arrays.copyOf(chunkIndices, chunk * 2);
+                }
+                firstVertex[chunk] = total;
+                firstIndex[chunk] = t;
+            }
+            for (int k = 0; k < 3; k++) {
+                int v = indices.get(start + t + k);
+                if (chunkOf[v] != chunk) {
+                    chunkOf[v] = chunk;
+                    local[v] = used++;
+                    if (total == vertexMap.length) {
+                        vertexMap = Arrays.copyOf(vertexMap, total * 2);
+                    }
+                    vertexMap[total++] = v;
+                }
+                out.put((short) local[v]);
+            }
+            chunkVertices[chunk] = used;
+            chunkIndices[chunk] += 3;
+        }
+        out.rewind();
+        int chunkCount = count > 0 ? chunk + 1 : 0;
+        return new MeshChunks(chunkCount, firstVertex, chunkVertices, firstIndex, chunkIndices,
+                vertexMap, total, out);
+    }
+
+    // 同一个三角形中前面已经出现过的顶点不重复计数
+    private static boolean repeats(IntBuffer indices, int triangle, int k) {
+        int v = indices.get(triangle + k);
+        for (int i = 0; i < k; i++) {
+            if (indices.get(triangle + i) == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按 {@link #vertexMap} 复制顶点,对任何交错布局都适用
+     *
+     * @param vertices 原顶点,从position开始
+     * @param stride   每个顶点的字节数
+     * @return 本机字节序的direct buffer
+     */
+    public ByteBuffer gatherVertices(ByteBuffer vertices, int stride) {
+        ByteBuffer source = vertices.duplicate();
+        int start = source.position();
+        ByteBuffer out = ByteBuffer.allocateDirect(totalVertexCount * stride)
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < totalVertexCount; i++) {
+            int from = start + vertexMap[i] * stride;
+            source.limit(from + stride);
+            source.position(from);
+            out.put(source);
+        }
+        out.rewind();
+        return out;
+    }
+}
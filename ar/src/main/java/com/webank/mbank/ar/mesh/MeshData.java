@@ -0,0 +1,144 @@
+package com.webank.mbank.ar.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjUtils;
+
+/**
+ * 内存中的三角形网格:交错存放的顶点(位置、纹理坐标、法线)加上三角形索引
+ * <p>
+ * 每个顶点 {@link #FLOATS_PER_VERTEX} 个float,和 {@link MeshFile} 中的顶点块以及
+ * ObjectRenderer 上传到GPU的布局一致。只在加载和离线处理时使用,不依赖Android。
+ */
+public class MeshData {
+    public static final int POSITION_OFFSET = 0;
+    public static final int TEXCOORD_OFFSET = 3;
+    public static final int NORMAL_OFFSET = 5;
+    public static final int FLOATS_PER_VERTEX = 8;
+    public static final int BYTES_PER_VERTEX = FLOATS_PER_VERTEX * 4;
+
+    /** vertexCount * FLOATS_PER_VERTEX 个float */
+    public final float[] vertices;
+    public final int vertexCount;
+    /** 每3个一个三角形 */
+    public final int[] indices;
+    public final int indexCount;
+
+    public MeshData(float[] vertices, int vertexCount, int[] indices, int indexCount) {
+        if (vertices.length < vertexCount * FLOATS_PER_VERTEX || indices.length < indexCount) {
+            throw new IllegalArgumentException("arrays shorter than the counts");
+        }
+        this.vertices = vertices;
+        this.vertexCount = vertexCount;
+        this.indices = indices;
+        this.indexCount = indexCount;
+    }
+
+    /**
+     * 把OBJ转换成可以直接渲染的网格:三角化,并且每个不同的(v, vt, vn)组合对应一个顶点。
+     * 缺少纹理坐标或者法线时填0。
+     */
+    public static MeshData fromObj(Obj obj) {
+        Obj renderable = ObjUtils.convertToRenderable(obj);
+        IntBuffer faceIndices = ObjData.getFaceVertexIndices(renderable, 3);
+        FloatBuffer positions = ObjData.getVertices(renderable);
+        FloatBuffer texCoords = ObjData.getTexCoords(renderable, 2);
+        FloatBuffer normals = ObjData.getNormals(renderable);
+
+        int vertexCount = positions.limit() / 3;
+        float[] vertices = new float[vertexCount * FLOATS_PER_VERTEX];
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * FLOATS_PER_VERTEX;
+            for (int i = 0; i < 3; i++) {
+                vertices[base + POSITION_OFFSET + i] = positions.get(v * 3 + i);
+            }
+            if (texCoords.limit() >= (v + 1) * 2) {
+                vertices[base + TEXCOORD_OFFSET] = texCoords.get(v * 2);
+                vertices[base + TEXCOORD_OFFSET + 1] = texCoords.get(v * 2 + 1);
+            }
+            if (normals.limit() >= (v + 1) * 3) {
+                for (int i = 0; i < 3; i++) {
+                    vertices[base + NORMAL_OFFSET + i] = normals.get(v * 3 + i);
+                }
+            }
+        }
+        int[] indices = new int[faceIndices.limit()];
+        faceIndices.get(indices);
+        return new MeshData(vertices, vertexCount, indices, indices.length);
+    }
+
+    /** 所有顶点位置的包围盒 */
+    public void computeBounds(float[] min, float[] max) {
+        for (int i = 0; i < 3; i++) {
+            min[i] = vertexCount > 0 ? Float.POSITIVE_INFINITY : 0f;
+            max[i] = vertexCount > 0 ? Float.NEGATIVE_INFINITY : 0f;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * FLOATS_PER_VERTEX + POSITION_OFFSET;
+            for (int i = 0; i < 3; i++) {
+                min[i] = Math.min(min[i], vertices[base + i]);
+                max[i] = Math.max(max[i], vertices[base + i]);
+            }
+        }
+    }
+
+    /** 所有纹理坐标的包围框 */
+    public void computeTexCoordBounds(float[] min, float[] max) {
+        for (int i = 0; i < 2; i++) {
+            min[i] = vertexCount > 0 ? Float.POSITIVE_INFINITY : 0f;
+            max[i] = vertexCount > 0 ? Float.NEGATIVE_INFINITY : 0f;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * FLOATS_PER_VERTEX + TEXCOORD_OFFSET;
+            for (int i = 0; i < 2; i++) {
+                min[i] = Math.min(min[i], vertices[base + i]);
+                max[i] = Math.max(max[i], vertices[base + i]);
+            }
+        }
+    }
+
+    /** 最大的顶点下标 */
+    public int maxIndex() {
+        int max = -1;
+        for (int i = 0; i < indexCount; i++) {
+            max = Math.max(max, indices[i]);
+        }
+        return max;
+    }
+
+    /** 本机字节序的direct buffer,可以直接传给glBufferData */
+    public ByteBuffer toVertexBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * BYTES_PER_VERTEX)
+                .order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(vertices, 0, vertexCount * FLOATS_PER_VERTEX);
+        return buffer;
+    }
+
+    /** 16位索引的direct buffer,调用方需要保证 {@link #maxIndex()} 不超过65535 */
+    public ShortBuffer toShortIndexBuffer() {
+        ShortBuffer buffer = ByteBuffer.allocateDirect(2 * indexCount)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        for (int i = 0; i < indexCount; i++) {
+            buffer.put((short) indices[i]);
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    /** 32位索引的direct buffer */
+    public IntBuffer toIntIndexBuffer() {
+        IntBuffer buffer = ByteBuffer.allocateDirect(4 * indexCount)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        buffer.put(indices, 0, indexCount);
+        buffer.rewind();
+        return buffer;
+    }
+}
@@ -0,0 +1,203 @@
+package com.webank.mbank.ar.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 二进制网格文件,由tools模块的 {@code ObjToMesh} 从OBJ生成,运行时不需要解析就可以直接上传到GPU。
+ * <p>
+ * 小端序(和Android设备一致),各个块都按4字节对齐:
+ * <pre>
+ * 文件头(HEADER_SIZE字节):
+ *   int   MAGIC
+ *   short VERSION
+ *   short flags        {@link #FLAG_QUANTIZED}
+ *   int   vertexCount
+ *   int   indexCount
+ *   short vertexStride 每个顶点的字节数
+ *   short indexSize    每个索引的字节数,2或4
+ *   float boundsMin[3], boundsMax[3]
+ *   float texCoordMin[2], texCoordMax[2]
+ *   int   lodCount     至少为1
+ * LOD表: lodCount * 12 字节,每级 int firstIndex, int indexCount, float error,
+ *        第0级是原网格,error是简化后相对原网格的误差(模型空间的距离)
+ * 顶点块: vertexCount * vertexStride 字节,布局同 {@link MeshData},
+ *        量化时同 {@link MeshQuantizer},所有LOD共用
+ * 索引块: indexCount * indexSize 字节,每3个一个三角形,各级LOD的索引依次排列
+ * </pre>
+ * 通过 {@link #wrap(ByteBuffer)} 读取,顶点块和索引块都是原buffer的视图,不会拷贝数据,
+ * 所以可以直接映射assets中的文件。
+ */
+public class MeshFile {
+    public static final int MAGIC = 0x48534d57; // "WMSH"
+    public static final short VERSION = 3;
+    public static final int HEADER_SIZE = 64;
+    /** LOD表中每一级的字节数 */
+    public static final int LOD_ENTRY_SIZE = 12;
+    /** 顶点按 {@link MeshQuantizer} 量化,用包围盒和纹理坐标的包围框还原 */
+    public static final int FLAG_QUANTIZED = 1;
+    /** 运行时优先加载的文件扩展名,没有时才解析同名的.obj */
+    public static final String EXTENSION = ".wmesh";
+
+    private final ByteBuffer data;
+    private final int flags;
+    private final int vertexCount;
+    private final int indexCount;
+    private final int vertexStride;
+    private final int indexSize;
+    private final float[] boundsMin = new float[3];
+    private final float[] boundsMax = new float[3];
+    private final float[] texCoordMin = new float[2];
+    private final float[] texCoordMax = new float[2];
+    private final int[] lodFirstIndex;
+    private final int[] lodIndexCount;
+    private final float[] lodError;
+
+    private MeshFile(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.remaining() < HEADER_SIZE) {
+            throw new IOException("truncated mesh header");
+        }
+        int start = data.position();
+        if (data.getInt(start) != MAGIC) {
+            throw new IOException("not a mesh file");
+        }
+        int version = data.getShort(start + 4);
+        if (version != VERSION) {
+            throw new IOException("unsupported mesh version " + version);
+        }
+        flags = data.getShort(start + 6);
+        vertexCount = data.getInt(start + 8);
+        indexCount = data.getInt(start + 12);
+        vertexStride = data.getShort(start + 16);
+        indexSize = data.getShort(start + 18);
+        for (int i = 0; i < 3; i++) {
+            boundsMin[i] = data.getFloat(start + 20 + 4 * i);
+            boundsMax[i] = data.getFloat(start + 32 + 4 * i);
+        }
+        for (int i = 0; i < 2; i++) {
+            texCoordMin[i] = data.getFloat(start + 44 + 4 * i);
+            texCoordMax[i] = data.getFloat(start + 52 + 4 * i);
+        }
+        int lodCount = data.getInt(start + 60);
+        if (lodCount < 1 || data.remaining() < HEADER_SIZE + (long) lodCount * LOD_ENTRY_SIZE) {
+            throw new IOException("bad lod count " + lodCount);
+        }
+        lodFirstIndex = new int[lodCount];
+        lodIndexCount = new int[lodCount];
+        lodError = new float[lodCount];
+        for (int i = 0; i < lodCount; i++) {
+            int entry = start + HEADER_SIZE + i * LOD_ENTRY_SIZE;
+            lodFirstIndex[i] = data.getInt(entry);
+            lodIndexCount[i] = data.getInt(entry + 4);
+            lodError[i] = data.getFloat(entry + 8);
+            if (lodFirstIndex[i] < 0 || lodIndexCount[i] < 0
+                    || (long) lodFirstIndex[i] + lodIndexCount[i] > indexCount) {
+                throw new IOException("bad lod " + i);
+            }
+        }
+        int expectedStride = isQuantized() ? MeshQuantizer.BYTES_PER_VERTEX : MeshData.BYTES_PER_VERTEX;
+        if (vertexStride != expectedStride) {
+            throw new IOException("bad vertex stride " + vertexStride);
+        }
+        if (indexSize != 2 && indexSize != 4) {
+            throw new IOException("bad index size " + indexSize);
+        }
+        long expected = vertexOffset() + (long) vertexCount * vertexStride + (long) indexCount * indexSize;
+        if (vertexCount < 0 || indexCount < 0 || data.remaining() < expected) {
+            throw new IOException("truncated mesh, expected " + expected + " bytes");
+        }
+    }
+
+    /**
+     * 读取文件头
+     *
+     * @param data 从position开始的整个文件,比如映射的文件或者读入内存的direct buffer
+     * @throws IOException 不是网格文件、版本不支持或者文件不完整
+     */
+    public static MeshFile wrap(ByteBuffer data) throws IOException {
+        return new MeshFile(data.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isQuantized() {
+        return (flags & FLAG_QUANTIZED) != 0;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getVertexStride() {
+        return vertexStride;
+    }
+
+    public int getIndexSize() {
+        return indexSize;
+    }
+
+    public float[] getBoundsMin() {
+        return boundsMin;
+    }
+
+    public float[] getBoundsMax() {
+        return boundsMax;
+    }
+
+    public float[] getTexCoordMin() {
+        return texCoordMin;
+    }
+
+    public float[] getTexCoordMax() {
+        return texCoordMax;
+    }
+
+    public int getLodCount() {
+        return lodFirstIndex.length;
+    }
+
+    /** 第level级LOD在索引块中的第一个索引 */
+    public int getLodFirstIndex(int level) {
+        return lodFirstIndex[level];
+    }
+
+    public int getLodIndexCount(int level) {
+        return lodIndexCount[level];
+    }
+
+    /** 第level级LOD相对原网格的误差,模型空间中的距离 */
+    public float getLodError(int level) {
+        return lodError[level];
+    }
+
+    /** 顶点块的视图,可以直接传给glBufferData */
+    public ByteBuffer getVertices() {
+        return slice(data.position() + vertexOffset(), vertexCount * vertexStride);
+    }
+
+    /** 索引块的视图,包含所有LOD,可以直接传给glBufferData */
+    public ByteBuffer getIndices() {
+        return slice(data.position() + vertexOffset() + vertexCount * vertexStride,
+                indexCount * indexSize);
+    }
+
+    private int vertexOffset() {
+        return HEADER_SIZE + lodFirstIndex.length * LOD_ENTRY_SIZE;
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        // slice之后字节序会变回大端,需要重新设置
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,139 @@
+package com.webank.mbank.ar.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 量化的交错顶点布局,每个顶点 {@link #BYTES_PER_VERTEX} 字节,是 {@link MeshData} 的一半:
+ * <pre>
+ *   short position[3] + 1个short填充  按包围盒归一化到[-1, 1]
+ *   byte  normal[3] + 1个byte填充     有符号归一化
+ *   short texCoord[2]                 按纹理坐标的包围框归一化到[0, 1],无符号
+ * </pre>
+ * GPU按OpenGL ES 2.0的归一化规则把整数转换成[-1, 1]或[0, 1]的浮点数,顶点着色器再用
+ * {@link #positionScale}、{@link #positionOffset} 和 {@link #texCoordTransform} 得到的uniform
+ * 还原。这里的 decode 方法按同样的规则解码,用来测试精度。
+ */
+public final class MeshQuantizer {
+    public static final int POSITION_OFFSET = 0;
+    public static final int NORMAL_OFFSET = 8;
+    public static final int TEXCOORD_OFFSET = 12;
+    public static final int BYTES_PER_VERTEX = 16;
+
+    private MeshQuantizer() {
+    }
+
+    /**
+     * 按 {@link #BYTES_PER_VERTEX} 的布局写入所有顶点
+     *
+     * @param boundsMin    {@link MeshData#computeBounds} 得到的包围盒
+     * @param texCoordMin  {@link MeshData#computeTexCoordBounds} 得到的包围框
+     * @param out          从position开始写,使用out的字节序
+     */
+    public static void quantize(MeshData mesh, float[] boundsMin, float[] boundsMax,
+                                float[] texCoordMin, float[] texCoordMax, ByteBuffer out) {
+        float[] v = mesh.vertices;
+        for (int i = 0; i < mesh.vertexCount; i++) {
+            int base = i * MeshData.FLOATS_PER_VERTEX;
+            for (int k = 0; k < 3; k++) {
+                float center = (boundsMin[k] + boundsMax[k]) * 0.5f;
+                float halfExtent = (boundsMax[k] - boundsMin[k]) * 0.5f;
+                float f = halfExtent > 0f
+                        ? (v[base + MeshData.POSITION_OFFSET + k] - center) / halfExtent : 0f;
+                out.putShort((short) encodeSigned(f, 0xffff));
+            }
+            out.putShort((short) 0);
+            for (int k = 0; k < 3; k++) {
+                out.put((byte) encodeSigned(v[base + MeshData.NORMAL_OFFSET + k], 0xff));
+            }
+            out.put((byte) 0);
+            for (int k = 0; k < 2; k++) {
+                float extent = texCoordMax[k] - texCoordMin[k];
+                float t = extent > 0f
+                        ? (v[base + MeshData.TEXCOORD_OFFSET + k] - texCoordMin[k]) / extent : 0f;
+                out.putShort((short) Math.round(clamp(t, 0f, 1f) * 0xffff));
+            }
+        }
+    }
+
+    /**
+     * 量化后本机字节序的direct buffer,可以直接传给glBufferData
+     *
+     * @param boundsMin 等4个数组用来返回包围盒和纹理坐标的包围框,还原时需要
+     */
+    public static ByteBuffer toVertexBuffer(MeshData mesh, float[] boundsMin, float[] boundsMax,
+                                            float[] texCoordMin, float[] texCoordMax) {
+        mesh.computeBounds(boundsMin, boundsMax);
+        mesh.computeTexCoordBounds(texCoordMin, texCoordMax);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(mesh.vertexCount * BYTES_PER_VERTEX)
+                .order(ByteOrder.nativeOrder());
+        quantize(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax, buffer);
+        buffer.rewind();
+        return buffer;
+    }
+
+    /** 着色器中 position = a_Position * scale + offset 的scale,w为0 */
+    public static void positionScale(float[] boundsMin, float[] boundsMax, float[] out) {
+        for (int k = 0; k < 3; k++) {
+            out[k] = (boundsMax[k] - boundsMin[k]) * 0.5f;
+        }
+        out[3] = 0f;
+    }
+
+    /** 着色器中 position = a_Position * scale + offset 的offset,w为1 */
+    public static void positionOffset(float[] boundsMin, float[] boundsMax, float[] out) {
+        for (int k = 0; k < 3; k++) {
+            out[k] = (boundsMin[k] + boundsMax[k]) * 0.5f;
+        }
+        out[3] = 1f;
+    }
+
+    /** 着色器中 texCoord = a_TexCoord * xy + zw */
+    public static void texCoordTransform(float[] texCoordMin, float[] texCoordMax, float[] out) {
+        out[0] = texCoordMax[0] - texCoordMin[0];
+        out[1] = texCoordMax[1] - texCoordMin[1];
+        out[2] = texCoordMin[0];
+        out[3] = texCoordMin[1];
+    }
+
+    public static void decodePosition(ByteBuffer vertices, int vertex,
+                                      float[] boundsMin, float[] boundsMax, float[] out) {
+        int base = vertex * BYTES_PER_VERTEX + POSITION_OFFSET;
+        for (int k = 0; k < 3; k++) {
+            float f = decodeSigned(vertices.getShort(base + 2 * k), 0xffff);
+            out[k] = f * (boundsMax[k] - boundsMin[k]) * 0.5f
+                    + (boundsMin[k] + boundsMax[k]) * 0.5f;
+        }
+    }
+
+    /** 和着色器一样,解码后没有重新归一化 */
+    public static void decodeNormal(ByteBuffer vertices, int vertex, float[] out) {
+        int base = vertex * BYTES_PER_VERTEX + NORMAL_OFFSET;
+        for (int k = 0; k < 3; k++) {
+            out[k] = decodeSigned(vertices.get(base + k), 0xff);
+        }
+    }
+
+    public static void decodeTexCoord(ByteBuffer vertices, int vertex,
+                                      float[] texCoordMin, float[] texCoordMax, float[] out) {
+        int base = vertex * BYTES_PER_VERTEX + TEXCOORD_OFFSET;
+        for (int k = 0; k < 2; k++) {
+            float t = (vertices.getShort(base + 2 * k) & 0xffff) / (float) 0xffff;
+            out[k] = t * (texCoordMax[k] - texCoordMin[k]) + texCoordMin[k];
+        }
+    }
+
+    // ES 2.0中有符号归一化整数c对应的浮点数是 (2c + 1) / (2^n - 1),max = 2^n - 1
+    private static int encodeSigned(float f, int max) {
+        int c = Math.round((clamp(f, -1f, 1f) * max - 1f) * 0.5f);
+        return Math.max(-(max + 1) / 2, Math.min((max - 1) / 2, c));
+    }
+
+    private static float decodeSigned(int c, int max) {
+        return (2f * c + 1f) / max;
+    }
+
+    private static float clamp(float f, float min, float max) {
+        return f < min ? min : (f > max ? max : f);
+    }
+}
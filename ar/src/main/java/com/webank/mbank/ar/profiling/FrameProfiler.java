@@ -0,0 +1,249 @@
+package com.webank.mbank.ar.profiling;
+
+import com.webank.mbank.ar.utils.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按阶段统计每帧耗时的性能分析器。
+ * <p>
+ * 用法:
+ * <pre>
+ *     long start = profiler.begin();
+ *     session.update();
+ *     profiler.end(FrameProfiler.STAGE_SESSION_UPDATE, start);
+ * </pre>
+ * 每个阶段的耗时记录在预先分配好的 {@link LogLinearHistogram} 中,定期通过 {@link Logger.Reporter}
+ * 上报p50/p95/p99/max;每帧的计数(比如画了多少个物体)通过 {@link #count(int, long)} 同样统计和上报;
+ * 也可以通过 {@link #captureTrace(int)} 抓取一段连续的帧,
+ * 再用 {@link #writeChromeTrace(Writer)} 导出为Chrome trace_event格式(chrome://tracing 打开)。
+ * <p>
+ * 关闭时 {@link #begin()} 和 {@link #end(int, long)} 只有一次volatile读;开启时每个阶段两次
+ * {@link System#nanoTime()} 加几次原子操作,不分配内存。可以在多个线程上同时记录。
+ */
+public class FrameProfiler {
+    private static final String TAG = "FrameProfiler";
+
+    public static final int STAGE_FRAME = 0;
+    public static final int STAGE_SESSION_UPDATE = 1;
+    public static final int STAGE_BACKGROUND = 2;
+    public static final int STAGE_PLANES = 3;
+    public static final int STAGE_OBJECTS = 4;
+    /** 游戏逻辑,在游戏线程上记录 */
+    public static final int STAGE_GAME = 5;
+    /** 在GL线程上上传后台加载好的资源 */
+    public static final int STAGE_ASSETS = 6;
+    public static final int STAGE_COUNT = 7;
+
+    /** 每帧画出的物体数 */
+    public static final int COUNTER_OBJECTS_DRAWN = 0;
+    /** 每帧被视锥剔除、没有画的物体数 */
+    public static final int COUNTER_OBJECTS_CULLED = 1;
+    /** 每帧真正发给驱动的GL调用数 */
+    public static final int COUNTER_GL_CALLS_ISSUED = 2;
+    /** 每帧因为和当前状态相同而省掉的GL调用数 */
+    public static final int COUNTER_GL_CALLS_ELIDED = 3;
+    /** 每帧重新细分并上传网格的平面数,平面没有变化时为0 */
+    public static final int COUNTER_PLANE_MESH_UPLOADS = 4;
+    /** 每帧登记的平面数,死掉的平面会被移除,长时间运行时应该保持平稳 */
+    public static final int COUNTER_PLANES_REGISTERED = 5;
+    public static final int COUNTER_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "frame", "session.update", "background", "planes", "objects", "game", "assets"
+    };
+    private static final String[] COUNTER_NAMES = {
+            "objects.drawn", "objects.culled", "gl.calls.issued", "gl.calls.elided",
+            "planes.mesh.uploads", "planes.registered"
+    };
+    // trace中的线程id,游戏逻辑在单独的线程上
+    private static final int[] STAGE_THREADS = {1, 1, 1, 1, 1, 2, 1};
+
+    private static final long DEFAULT_EXPORT_INTERVAL_NANOS = 10000000000L;
+    // 抓取trace时每帧最多记录的事件数
+    private static final int MAX_EVENTS_PER_FRAME = 32;
+
+    private final LogLinearHistogram[] histograms = new LogLinearHistogram[STAGE_COUNT];
+    private final LogLinearHistogram[] counters = new LogLinearHistogram[COUNTER_COUNT];
+    private volatile boolean enabled;
+    private long exportIntervalNanos = DEFAULT_EXPORT_INTERVAL_NANOS;
+    private long lastExportNanos;
+
+    // trace,capture期间预先分配
+    private volatile int traceFramesRemaining;
+    private final AtomicInteger traceCursor = new AtomicInteger();
+    private int[] traceStages = new int[0];
+    private long[] traceStarts = new long[0];
+    private long[] traceDurations = new long[0];
+
+    public FrameProfiler() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LogLinearHistogram();
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters[i] = new LogLinearHistogram();
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        lastExportNanos = System.nanoTime();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setExportInterval(long intervalNanos) {
+        exportIntervalNanos = intervalNanos;
+    }
+
+    /** 阶段开始,返回开始时间;关闭时返回0 */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** 阶段结束 */
+    public void end(int stage, long startNanos) {
+        if (!enabled || startNanos == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        histograms[stage].record(duration);
+        if (traceFramesRemaining > 0) {
+            int slot = traceCursor.getAndIncrement();
+            if (slot < traceStages.length) {
+                traceStages[slot] = stage;
+                traceStarts[slot] = startNanos;
+                traceDurations[slot] = duration;
+            }
+        }
+    }
+
+    /** 记录这一帧的计数,每帧每个计数调用一次 */
+    public void count(int counter, long value) {
+        if (enabled) {
+            counters[counter].record(value);
+        }
+    }
+
+    /** 一帧结束,在渲染线程上调用;到了上报间隔就上报一次 */
+    public void endFrame() {
+        if (!enabled) {
+            return;
+        }
+        if (traceFramesRemaining > 0) {
+            traceFramesRemaining--;
+        }
+        long now = System.nanoTime();
+        if (now - lastExportNanos >= exportIntervalNanos) {
+            lastExportNanos = now;
+            export();
+        }
+    }
+
+    public LogLinearHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public LogLinearHistogram getCounter(int counter) {
+        return counters[counter];
+    }
+
+    public static String getCounterName(int counter) {
+        return COUNTER_NAMES[counter];
+    }
+
+    /** 通过Logger.Reporter上报各阶段的统计数据(微秒)和每帧的计数,然后清空重新统计 */
+    public void export() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LogLinearHistogram histogram = histograms[i];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            Logger.report(TAG, "%s count=%d p50=%dus p95=%dus p99=%dus max=%dus",
+                    STAGE_NAMES[i],
+                    histogram.getCount(),
+                    histogram.getPercentile(50) / 1000,
+                    histogram.getPercentile(95) / 1000,
+                    histogram.getPercentile(99) / 1000,
+                    histogram.getMax() / 1000);
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            LogLinearHistogram counter = counters[i];
+            if (counter.getCount() == 0) {
+                continue;
+            }
+            Logger.report(TAG, "%s frames=%d p50=%d p95=%d max=%d",
+                    COUNTER_NAMES[i],
+                    counter.getCount(),
+                    counter.getPercentile(50),
+                    counter.getPercentile(95),
+                    counter.getMax());
+            counter.reset();
+        }
+        Logger.flushReport();
+    }
+
+    /**
+     * 开始抓取接下来frames帧的trace,会丢弃上一次抓取的结果。
+     * 在渲染线程上调用。
+     */
+    public void captureTrace(int frames) {
+        int capacity = frames * MAX_EVENTS_PER_FRAME;
+        if (traceStages.length != capacity) {
+            traceStages = new int[capacity];
+            traceStarts = new long[capacity];
+            traceDurations = new long[capacity];
+        }
+        traceCursor.set(0);
+        traceFramesRemaining = frames;
+    }
+
+    /** 抓取的帧数已经够了,可以导出 */
+    public boolean isTraceComplete() {
+        return traceFramesRemaining == 0 && traceStages.length > 0;
+    }
+
+    /** 导出为Chrome trace_event格式的JSON,时间单位为微秒 */
+    public void writeChromeTrace(Writer out) throws IOException {
+        int count = Math.min(traceCursor.get(), traceStages.length);
+        long origin = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            origin = Math.min(origin, traceStarts[i]);
+        }
+        out.write("{\"traceEvents\":[");
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,"
+                + "\"args\":{\"name\":\"GLThread\"}},");
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,"
+                + "\"args\":{\"name\":\"GameLoop\"}}");
+        for (int i = 0; i < count; i++) {
+            out.write(',');
+            int stage = traceStages[i];
+            out.write("{\"name\":\"");
+            out.write(STAGE_NAMES[stage]);
+            out.write("\",\"cat\":\"frame\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(STAGE_THREADS[stage]));
+            out.write(",\"ts\":");
+            out.write(toMicros(traceStarts[i] - origin));
+            out.write(",\"dur\":");
+            out.write(toMicros(traceDurations[i]));
+            out.write('}');
+        }
+        out.write("],\"displayTimeUnit\":\"ms\"}");
+        out.flush();
+    }
+
+    private static String toMicros(long nanos) {
+        long fraction = nanos % 1000;
+        String padding = fraction < 10 ? "00" : fraction < 100 ? "0" : "";
+        return (nanos / 1000) + "." + padding + fraction;
+    }
+}
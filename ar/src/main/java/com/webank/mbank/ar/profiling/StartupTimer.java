@@ -0,0 +1,68 @@
+package com.webank.mbank.ar.profiling;
+
+import com.webank.mbank.ar.utils.Logger;
+
+/**
+ * 启动耗时:从启动到画出第一帧相机画面(time to first frame),以及到所有资源加载完成、
+ * 可以开始游戏(time to interactive)。
+ * <p>
+ * 两个时间都有了之后通过 {@link Logger.Reporter} 上报一次。只在GL线程上调用,时间都是
+ * {@link System#nanoTime()}。
+ */
+public class StartupTimer {
+    private static final String TAG = "StartupTimer";
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private long startNanos;
+    private long firstFrameNanos = -1;
+    private long interactiveNanos = -1;
+    private boolean reported;
+
+    /** 开始计时,比如在Activity.onCreate中 */
+    public void start(long nowNanos) {
+        startNanos = nowNanos;
+        firstFrameNanos = -1;
+        interactiveNanos = -1;
+        reported = false;
+    }
+
+    /** 画出了一帧,只记录第一次 */
+    public void markFirstFrame(long nowNanos) {
+        if (firstFrameNanos < 0) {
+            firstFrameNanos = nowNanos;
+            reportIfDone();
+        }
+    }
+
+    /** 资源加载完成,只记录第一次 */
+    public void markInteractive(long nowNanos) {
+        if (interactiveNanos < 0) {
+            interactiveNanos = nowNanos;
+            reportIfDone();
+        }
+    }
+
+    /** 还没有画出第一帧时返回-1 */
+    public long getTimeToFirstFrameMillis() {
+        return firstFrameNanos < 0 ? -1 : (firstFrameNanos - startNanos) / NANOS_PER_MILLI;
+    }
+
+    /** 资源还没有加载完成时返回-1 */
+    public long getTimeToInteractiveMillis() {
+        return interactiveNanos < 0 ? -1 : (interactiveNanos - startNanos) / NANOS_PER_MILLI;
+    }
+
+    public boolean isReported() {
+        return reported;
+    }
+
+    private void reportIfDone() {
+        if (reported || firstFrameNanos < 0 || interactiveNanos < 0) {
+            return;
+        }
+        reported = true;
+        Logger.report(TAG, "ttff=%dms tti=%dms",
+                getTimeToFirstFrameMillis(), getTimeToInteractiveMillis());
+        Logger.flushReport();
+    }
+}
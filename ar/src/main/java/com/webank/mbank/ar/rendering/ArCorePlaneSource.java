@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import com.google.ar.core.Plane;
+import com.google.ar.core.TrackingState;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Reads the planes of an ARCore session for {@link PlaneRenderer}. ARCore returns the same {@link
+ * Plane} object for a plane every frame.
+ * 只有这个类依赖ARCore，PlaneRenderer本身可以在JVM上回放trace。
+ */
+public final class ArCorePlaneSource implements PlaneRenderer.PlaneSource<Plane> {
+  public static final ArCorePlaneSource INSTANCE = new ArCorePlaneSource();
+
+  private ArCorePlaneSource() {}
+
+  @Override
+  public PlaneRegistry.State getState(Plane plane) {
+    return lifecycleState(plane);
+  }
+
+  @Override
+  public void getCenterPose(Plane plane, float[] matrix) {
+    plane.getCenterPose().toMatrix(matrix, 0);
+  }
+
+  @Override
+  public float getExtentX(Plane plane) {
+    return plane.getExtentX();
+  }
+
+  @Override
+  public float getExtentZ(Plane plane) {
+    return plane.getExtentZ();
+  }
+
+  @Override
+  public FloatBuffer getPolygon(Plane plane) {
+    return plane.getPolygon();
+  }
+
+  /** Maps the state ARCore reports for {@code plane} to its {@link PlaneRegistry} state. */
+  public static PlaneRegistry.State lifecycleState(Plane plane) {
+    TrackingState trackingState = plane.getTrackingState();
+    if (trackingState == TrackingState.STOPPED) {
+      return PlaneRegistry.State.STOPPED;
+    }
+    if (plane.getSubsumedBy() != null) {
+      return PlaneRegistry.State.SUBSUMED;
+    }
+    return trackingState == TrackingState.TRACKING
+        ? PlaneRegistry.State.TRACKING
+        : PlaneRegistry.State.PAUSED;
+  }
+}
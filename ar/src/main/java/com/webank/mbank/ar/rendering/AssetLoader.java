@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads assets in two halves: decoding and parsing on a background executor, then uploading on the
+ * GL thread a few steps per frame, so frames keep being drawn while assets stream in.
+ * 后台线程解码和解析资源，GL线程每帧在时间预算内上传一部分，加载时也能正常出帧。
+ *
+ * <p>{@link #submit}, {@link #drain} and the listener callbacks all run on the GL thread; only
+ * {@link Asset#prepare} runs on the executor. A loader belongs to one GL context, so after a
+ * context loss a new one is created and the assets are submitted again.
+ */
+public class AssetLoader {
+  /** One asset, prepared once on the background executor and then uploaded in steps. */
+  public interface Asset {
+    /** Decodes and parses on the background executor. Must not make GL calls. */
+    void prepare() throws Exception;
+
+    /**
+     * Does the next step of the upload on the GL thread, for example one texture or one program.
+     *
+     * @return True once the asset is fully uploaded.
+     */
+    boolean upload() throws Exception;
+  }
+
+  /** Called on the GL thread from {@link #drain}. */
+  public interface Listener {
+    void onAssetLoaded(String name);
+
+    void onAssetFailed(String name, Exception e);
+
+    /** All submitted assets are loaded or failed. */
+    void onAllAssetsLoaded();
+  }
+
+  private static final class Entry {
+    final String name;
+    final Asset asset;
+    Exception error;
+
+    Entry(String name, Asset asset) {
+      this.name = name;
+      this.asset = asset;
+    }
+  }
+
+  private final Executor executor;
+  private final long frameBudgetNanos;
+  private final ConcurrentLinkedQueue<Entry> prepared = new ConcurrentLinkedQueue<>();
+  private Listener listener;
+
+  // Only accessed on the GL thread.
+  private int submitted;
+  private int finished;
+  private Entry uploading;
+  private boolean completeReported;
+
+  /**
+   * @param executor Runs {@link Asset#prepare}, typically a single background thread.
+   * @param frameBudgetNanos GL time {@link #drain} may spend per frame. At least one upload step is
+   *     done per call, so a step longer than the budget still makes progress.
+   */
+  public AssetLoader(Executor executor, long frameBudgetNanos) {
+    this.executor = executor;
+    this.frameBudgetNanos = frameBudgetNanos;
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /** Queues {@code asset} for preparation. Assets are uploaded in the order they get prepared. */
+  public void submit(String name, Asset asset) {
+    final Entry entry = new Entry(name, asset);
+    submitted++;
+    completeReported = false;
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              entry.asset.prepare();
+            } catch (Exception e) {
+              entry.error = e;
+            }
+            prepared.offer(entry);
+          }
+        });
+  }
+
+  /**
+   * Uploads prepared assets until the frame budget is spent. Call once per frame on the GL thread.
+   *
+   * @return True once every submitted asset is loaded or has failed.
+   */
+  public boolean drain() {
+    long start = now();
+    do {
+      if (uploading == null) {
+        uploading = prepared.poll();
+        if (uploading == null) {
+          break;
+        }
+        if (uploading.error != null) {
+          fail(uploading, uploading.error);
+          continue;
+        }
+      }
+      try {
+        if (uploading.asset.upload()) {
+          finished++;
+          Entry done = uploading;
+          uploading = null;
+          if (listener != null) {
+            listener.onAssetLoaded(done.name);
+          }
+        }
+      } catch (Exception e) {
+        fail(uploading, e);
+      }
+    } while (now() - start < frameBudgetNanos);
+
+    boolean complete = isComplete();
+    if (complete && !completeReported) {
+      completeReported = true;
+      if (listener != null) {
+        listener.onAllAssetsLoaded();
+      }
+    }
+    return complete;
+  }
+
+  private void fail(Entry entry, Exception e) {
+    finished++;
+    uploading = null;
+    if (listener != null) {
+      listener.onAssetFailed(entry.name, e);
+    }
+  }
+
+  /** Whether every submitted asset is loaded or has failed. */
+  public boolean isComplete() {
+    return finished == submitted;
+  }
+
+  /** Assets not yet loaded or failed. */
+  public int getPendingCount() {
+    return submitted - finished;
+  }
+
+  // Overridden by tests.
+  long now() {
+    return System.nanoTime();
+  }
+}
@@ -39,6 +39,10 @@ public class BackgroundRenderer {
   private static final int TEXCOORDS_PER_VERTEX = 2;
   private static final int FLOAT_SIZE = 4;
 
+  private final GlBackend gl;
+  private final ShaderCache shaders;
+  private final GlDiagnostics diagnostics;
+
   private FloatBuffer quadVertices;
   private FloatBuffer quadTexCoord;
   private FloatBuffer quadTexCoordTransformed;
@@ -49,7 +53,23 @@ public class BackgroundRenderer {
   private int quadTexCoordParam;
   private int textureId = -1;
 
-  public BackgroundRenderer() {}
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   */
+  public BackgroundRenderer(GlBackend gl) {
+    this(gl, new ShaderCache(gl), new GlDiagnostics(gl));
+  }
+
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   * @param shaders Where the program is linked or loaded from.
+   * @param diagnostics Checks for GL errors while drawing.
+   */
+  public BackgroundRenderer(GlBackend gl, ShaderCache shaders, GlDiagnostics diagnostics) {
+    this.gl = gl;
+    this.shaders = shaders;
+    this.diagnostics = diagnostics;
+  }
 
   public int getTextureId() {
     return textureId;
@@ -66,15 +86,15 @@ public class BackgroundRenderer {
   public void createOnGlThread(Context context) {
     // Generate the background texture.创建纹理对象，并设置环绕参数
     int[] textures = new int[1];
-    GLES20.glGenTextures(1, textures, 0);
+    gl.glGenTextures(1, textures, 0);
     //通过将textureId设置为全局变量，保存纹理索引，用于后续传递给session
     textureId = textures[0];
     int textureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-    GLES20.glBindTexture(textureTarget, textureId);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    gl.glBindTexture(textureTarget, textureId);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -100,24 +120,17 @@ public class BackgroundRenderer {
     bbTexCoordsTransformed.order(ByteOrder.nativeOrder());
     quadTexCoordTransformed = bbTexCoordsTransformed.asFloatBuffer();
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, R.raw.screenquad_vertex);
-    int fragmentShader =
-        ShaderUtil.loadGLShader(
-            TAG, context, GLES20.GL_FRAGMENT_SHADER, R.raw.screenquad_fragment_oes);
-
-    quadProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(quadProgram, vertexShader);
-    GLES20.glAttachShader(quadProgram, fragmentShader);
-    GLES20.glLinkProgram(quadProgram);
-    GLES20.glUseProgram(quadProgram);
+    ShaderCache.Program program =
+        shaders.get(context, R.raw.screenquad_vertex, R.raw.screenquad_fragment_oes, "");
+    quadProgram = program.getId();
+    gl.glUseProgram(quadProgram);
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    quadPositionParam = GLES20.glGetAttribLocation(quadProgram, "a_Position");
-    quadTexCoordParam = GLES20.glGetAttribLocation(quadProgram, "a_TexCoord");
+    quadPositionParam = program.getAttribLocation("a_Position");
+    quadTexCoordParam = program.getAttribLocation("a_TexCoord");
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
   }
 
   /**
@@ -140,19 +153,19 @@ public class BackgroundRenderer {
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
     // to be drawn first.
     //无需测试或写入深度，屏幕四边形具有任意深度，并且预计将首先绘制。
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDepthMask(false);
+    gl.glDisable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(false);
 
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
 
-    GLES20.glUseProgram(quadProgram);
+    gl.glUseProgram(quadProgram);
 
     // Set the vertex positions.
-    GLES20.glVertexAttribPointer(
+    gl.glVertexAttribPointer(
         quadPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadVertices);
 
     // Set the texture coordinates.
-    GLES20.glVertexAttribPointer(
+    gl.glVertexAttribPointer(
         quadTexCoordParam,
         TEXCOORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
@@ -161,20 +174,20 @@ public class BackgroundRenderer {
         quadTexCoordTransformed);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(quadPositionParam);
-    GLES20.glEnableVertexAttribArray(quadTexCoordParam);
+    gl.glEnableVertexAttribArray(quadPositionParam);
+    gl.glEnableVertexAttribArray(quadTexCoordParam);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(quadPositionParam);
-    GLES20.glDisableVertexAttribArray(quadTexCoordParam);
+    gl.glDisableVertexAttribArray(quadPositionParam);
+    gl.glDisableVertexAttribArray(quadTexCoordParam);
 
     // Restore the depth state for further drawing.
-    GLES20.glDepthMask(true);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(true);
+    gl.glEnable(GLES20.GL_DEPTH_TEST);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    diagnostics.check(TAG, "Draw");
   }
 
   private static final float[] QUAD_COORDS =
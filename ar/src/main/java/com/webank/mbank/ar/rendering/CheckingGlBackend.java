@@ -0,0 +1,395 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * Forwards calls to another backend and, in {@link GlDiagnostics.Mode#STRICT} mode, reads the
+ * errors after each one, so that every error is attributed to the call that raised it.
+ * 严格模式下每个GL调用之后都检查错误，记录出错的调用和调用它的位置。
+ *
+ * <p>Created by {@link GlDiagnostics#wrap}. In the other modes each call costs one field read on
+ * top of the delegate's.
+ */
+public class CheckingGlBackend implements GlBackend {
+  private final GlBackend delegate;
+  private final GlDiagnostics diagnostics;
+
+  CheckingGlBackend(GlBackend delegate, GlDiagnostics diagnostics) {
+    this.delegate = delegate;
+    this.diagnostics = diagnostics;
+  }
+
+  /** Reads every error raised by {@code call}, if checking calls. */
+  private void check(String call) {
+    if (diagnostics.getMode() != GlDiagnostics.Mode.STRICT) {
+      return;
+    }
+    int error;
+    while ((error = delegate.glGetError()) != GLES20.GL_NO_ERROR) {
+      diagnostics.onCallError(call, error);
+    }
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    delegate.glActiveTexture(texture);
+    check("glActiveTexture");
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    delegate.glAttachShader(program, shader);
+    check("glAttachShader");
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    delegate.glBindBuffer(target, buffer);
+    check("glBindBuffer");
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    delegate.glBindTexture(target, texture);
+    check("glBindTexture");
+  }
+
+  @Override
+  public void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+    delegate.glBlendFuncSeparate(srcRgb, dstRgb, srcAlpha, dstAlpha);
+    check("glBlendFuncSeparate");
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    delegate.glBufferData(target, size, data, usage);
+    check("glBufferData");
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    delegate.glBufferSubData(target, offset, size, data);
+    check("glBufferSubData");
+  }
+
+  @Override
+  public void glClear(int mask) {
+    delegate.glClear(mask);
+    check("glClear");
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    delegate.glClearColor(red, green, blue, alpha);
+    check("glClearColor");
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    delegate.glColorMask(red, green, blue, alpha);
+    check("glColorMask");
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+    check("glCompressedTexImage2D");
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    delegate.glCompileShader(shader);
+    check("glCompileShader");
+  }
+
+  @Override
+  public int glCreateProgram() {
+    int result = delegate.glCreateProgram();
+    check("glCreateProgram");
+    return result;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    int result = delegate.glCreateShader(type);
+    check("glCreateShader");
+    return result;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    delegate.glDeleteBuffers(n, buffers, offset);
+    check("glDeleteBuffers");
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    delegate.glDeleteProgram(program);
+    check("glDeleteProgram");
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    delegate.glDeleteShader(shader);
+    check("glDeleteShader");
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    delegate.glDepthMask(flag);
+    check("glDepthMask");
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    delegate.glDisable(cap);
+    check("glDisable");
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    delegate.glDisableVertexAttribArray(index);
+    check("glDisableVertexAttribArray");
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    delegate.glDrawArrays(mode, first, count);
+    check("glDrawArrays");
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    delegate.glDrawElements(mode, count, type, offset);
+    check("glDrawElements");
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    delegate.glDrawElements(mode, count, type, indices);
+    check("glDrawElements");
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    delegate.glEnable(cap);
+    check("glEnable");
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    delegate.glEnableVertexAttribArray(index);
+    check("glEnableVertexAttribArray");
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    delegate.glGenBuffers(n, buffers, offset);
+    check("glGenBuffers");
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    delegate.glGenTextures(n, textures, offset);
+    check("glGenTextures");
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    delegate.glGenerateMipmap(target);
+    check("glGenerateMipmap");
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    int result = delegate.glGetAttribLocation(program, name);
+    check("glGetAttribLocation");
+    return result;
+  }
+
+  @Override
+  public int glGetError() {
+    // Not checked, the caller is reading the errors itself.
+    return delegate.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    delegate.glGetIntegerv(pname, params, offset);
+    check("glGetIntegerv");
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    check("glGetProgramBinary");
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    String result = delegate.glGetProgramInfoLog(program);
+    check("glGetProgramInfoLog");
+    return result;
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    delegate.glGetProgramiv(program, pname, params, offset);
+    check("glGetProgramiv");
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    String result = delegate.glGetShaderInfoLog(shader);
+    check("glGetShaderInfoLog");
+    return result;
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    delegate.glGetShaderiv(shader, pname, params, offset);
+    check("glGetShaderiv");
+  }
+
+  @Override
+  public String glGetString(int name) {
+    String result = delegate.glGetString(name);
+    check("glGetString");
+    return result;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    int result = delegate.glGetUniformLocation(program, name);
+    check("glGetUniformLocation");
+    return result;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    delegate.glLinkProgram(program);
+    check("glLinkProgram");
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+    check("glProgramBinary");
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    delegate.glShaderSource(shader, string);
+    check("glShaderSource");
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    delegate.glTexParameteri(target, pname, param);
+    check("glTexParameteri");
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    delegate.glUniform1f(location, x);
+    check("glUniform1f");
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    delegate.glUniform1i(location, x);
+    check("glUniform1i");
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    delegate.glUniform4f(location, x, y, z, w);
+    check("glUniform4f");
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    delegate.glUniform4fv(location, count, v, offset);
+    check("glUniform4fv");
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+    check("glUniformMatrix2fv");
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+    check("glUniformMatrix4fv");
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    delegate.glUseProgram(program);
+    check("glUseProgram");
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    check("glVertexAttribPointer");
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    check("glVertexAttribPointer");
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    delegate.glViewport(x, y, width, height);
+    check("glViewport");
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    delegate.texImage2D(target, level, bitmap, border);
+    check("texImage2D");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+/**
+ * Frame-scoped scratch storage for matrices and vectors.
+ * 每帧复用的临时矩阵/向量池，避免在渲染循环中分配内存。
+ *
+ * <p>Call {@link #beginFrame()} once at the top of every frame, then take as many scratch arrays as
+ * needed with {@link #mat4()} and {@link #vec4()}. Arrays handed out during a frame are recycled by
+ * the next {@link #beginFrame()}, so they must not be kept across frames. Their contents are
+ * undefined when handed out. The pool only grows while warming up; once it has seen the largest
+ * frame, steady-state rendering does not allocate.
+ *
+ * <p>Not thread safe; owned by the GL thread.
+ */
+public class FrameArena {
+  private static final int MAT4_SIZE = 16;
+  private static final int VEC4_SIZE = 4;
+
+  private float[][] mat4Slots;
+  private float[][] vec4Slots;
+  private int mat4Used;
+  private int vec4Used;
+  private int growCount;
+
+  public FrameArena() {
+    this(8, 4);
+  }
+
+  public FrameArena(int initialMat4Slots, int initialVec4Slots) {
+    mat4Slots = allocate(Math.max(1, initialMat4Slots), MAT4_SIZE);
+    vec4Slots = allocate(Math.max(1, initialVec4Slots), VEC4_SIZE);
+  }
+
+  /** Recycles every array handed out during the previous frame. */
+  public void beginFrame() {
+    mat4Used = 0;
+    vec4Used = 0;
+  }
+
+  /** Returns a scratch 4x4 matrix valid until the next {@link #beginFrame()}. */
+  public float[] mat4() {
+    if (mat4Used == mat4Slots.length) {
+      mat4Slots = grow(mat4Slots, MAT4_SIZE);
+    }
+    return mat4Slots[mat4Used++];
+  }
+
+  /** Returns a scratch 4-component vector valid until the next {@link #beginFrame()}. */
+  public float[] vec4() {
+    if (vec4Used == vec4Slots.length) {
+      vec4Slots = grow(vec4Slots, VEC4_SIZE);
+    }
+    return vec4Slots[vec4Used++];
+  }
+
+  /** Number of times the pool had to grow. Stays constant once rendering reaches steady state. */
+  public int getGrowCount() {
+    return growCount;
+  }
+
+  private float[][] grow(float[][] slots, int size) {
+    growCount++;
+    float[][] grown = new float[slots.length * 2][];
+    System.arraycopy(slots, 0, grown, 0, slots.length);
+    for (int i = slots.length; i < grown.length; i++) {
+      grown[i] = new float[size];
+    }
+    return grown;
+  }
+
+  private static float[][] allocate(int count, int size) {
+    float[][] slots = new float[count][];
+    for (int i = 0; i < count; i++) {
+      slots[i] = new float[size];
+    }
+    return slots;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The subset of OpenGL ES 2.0 used by the renderers.
+ * 渲染器使用的OpenGL ES 2.0接口，所有GL调用都通过它发出，方便在JVM上测试和压测。
+ *
+ * <p>Methods mirror {@link android.opengl.GLES20} one to one, and take the same {@code GLES20}
+ * constants. {@link Gles20Backend} forwards to the real driver, {@link NoOpGlBackend} does nothing
+ * and {@link RecordingGlBackend} counts the calls made through it.
+ *
+ * <p>Implementations are not thread safe; all calls must come from the GL thread.
+ */
+public interface GlBackend {
+  void glActiveTexture(int texture);
+
+  void glAttachShader(int program, int shader);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindTexture(int target, int texture);
+
+  void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glColorMask(boolean red, boolean green, boolean blue, boolean alpha);
+
+  void glCompileShader(int shader);
+
+  void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteProgram(int program);
+
+  void glDeleteShader(int shader);
+
+  void glDepthMask(boolean flag);
+
+  void glDisable(int cap);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  /** Draws from the bound element array buffer, {@code offset} is in bytes. */
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  /** Draws from client-side indices, which are re-sent to the GPU on every call. */
+  void glDrawElements(int mode, int count, int type, Buffer indices);
+
+  void glEnable(int cap);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glGenerateMipmap(int target);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetError();
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+
+  /**
+   * Reads back a linked program, see {@link #glProgramBinary}. OpenGL ES 3.0 and API 18 or later
+   * only.
+   */
+  void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary);
+
+  String glGetProgramInfoLog(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetString(int name);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glLinkProgram(int program);
+
+  /**
+   * Loads a program saved by {@link #glGetProgramBinary} in place of linking it; check {@code
+   * GL_LINK_STATUS} afterwards. OpenGL ES 3.0 and API 18 or later only.
+   */
+  void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+  void glShaderSource(int shader, String string);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUseProgram(int program);
+
+  /** Sources the attribute from the bound array buffer, {@code offset} is in bytes. */
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset);
+
+  /** Sources the attribute from client memory, which is re-sent to the GPU on every draw. */
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+  void glViewport(int x, int y, int width, int height);
+
+  /** Uploads a bitmap to the bound texture, see {@link android.opengl.GLUtils#texImage2D}. */
+  void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.opengl.GLES20;
+
+import com.webank.mbank.ar.utils.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks for GL errors at the checkpoints of the draw paths, as often as its {@link Mode} allows.
+ * 按模式检查绘制过程中的GL错误,出错时只计数和上报,不中断这一帧。
+ *
+ * <p>Each {@code glGetError} may stall the pipeline, so renderers call {@link #check} instead of
+ * {@link ShaderUtil#checkGLError} while drawing, and while uploading assets, which {@link
+ * AssetLoader#drain} does mid-frame. Errors are counted per error code and per
+ * checkpoint, and reported through {@link Logger.Reporter} from {@link #endFrame} once per report
+ * interval.
+ *
+ * <p>{@link Mode#STRICT} checks after every call made through the backend returned by {@link
+ * #wrap}, and records the call and where it was made from.
+ *
+ * <p>Must be used on the GL thread.
+ */
+public class GlDiagnostics {
+  private static final String TAG = "GlDiagnostics";
+
+  /** How often errors are checked for. */
+  public enum Mode {
+    /** Never calls {@code glGetError}. */
+    OFF,
+    /**
+     * Checks once at the end of every {@link #setSampleInterval N}th frame. Once an error is seen,
+     * the following frames each check one more checkpoint, halving the range of checkpoints that
+     * may have caused it until the failing pass is found.
+     */
+    SAMPLED,
+    /**
+     * Checks after every call made through a {@link #wrap wrapped backend}, and keeps the call
+     * stack of the first error of each call site. Without one, checks at every checkpoint instead.
+     */
+    STRICT
+  }
+
+  private static final int DEFAULT_SAMPLE_INTERVAL = 60;
+  private static final long DEFAULT_REPORT_INTERVAL_NANOS = 10000000000L;
+  private static final String END_OF_FRAME = "End of frame";
+  // GL_INVALID_ENUM to GL_INVALID_FRAMEBUFFER_OPERATION, and one more for other codes.
+  private static final int FIRST_ERROR = GLES20.GL_INVALID_ENUM;
+  private static final int ERROR_CODES = GLES20.GL_INVALID_FRAMEBUFFER_OPERATION - FIRST_ERROR + 2;
+
+  private final GlBackend gl;
+  // Whether STRICT checks are made by a CheckingGlBackend rather than at the checkpoints.
+  private boolean callsChecked;
+  private Mode mode = Mode.OFF;
+  private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+  private long reportIntervalNanos = DEFAULT_REPORT_INTERVAL_NANOS;
+  private long lastReportNanos = System.nanoTime();
+
+  private long frame;
+  // Checkpoints passed so far in this frame.
+  private int checkpoint;
+  private boolean sampling;
+
+  // The error first shows at a checkpoint in (bisectLow, bisectHigh]; -1 is the frame start and
+  // the number of checkpoints in the frame is its end.
+  private boolean bisecting;
+  private int bisectLow;
+  private int bisectHigh;
+  private int bisectMiddle;
+  private int middleError;
+  private String middleTag;
+  private String middleLabel;
+  private String highSite;
+
+  private final long[] errorCounts = new long[ERROR_CODES];
+  private long errorCount;
+  private long reportedErrorCount;
+  private final Map<String, Site> sites = new HashMap<>();
+
+  /** @param gl Backend {@code glGetError} is called on, below any state caching. */
+  public GlDiagnostics(GlBackend gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Returns a backend forwarding to {@code delegate} that checks for errors after every call in
+   * {@link Mode#STRICT} mode. Renderers should issue their calls through it, with any state cache
+   * on top so that only the calls reaching the driver are checked.
+   */
+  public GlBackend wrap(GlBackend delegate) {
+    callsChecked = true;
+    return new CheckingGlBackend(delegate, this);
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+    bisecting = false;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** Number of frames between two checks in {@link Mode#SAMPLED} mode. */
+  public void setSampleInterval(int frames) {
+    sampleInterval = Math.max(1, frames);
+  }
+
+  public void setReportInterval(long intervalNanos) {
+    reportIntervalNanos = intervalNanos;
+  }
+
+  /** Call before the first GL call of a frame. */
+  public void beginFrame() {
+    frame++;
+    checkpoint = 0;
+    sampling = false;
+    if (mode != Mode.SAMPLED) {
+      return;
+    }
+    if (bisecting) {
+      // Errors left from the previous frame would show at the first checkpoint checked.
+      drain();
+      bisectMiddle = (bisectLow + bisectHigh) / 2;
+      middleError = GLES20.GL_NO_ERROR;
+    } else {
+      sampling = frame % sampleInterval == 0;
+    }
+  }
+
+  /**
+   * A checkpoint in a draw path. Checks for errors raised since the previous checkpoint when the
+   * mode asks for it, and otherwise makes no GL call.
+   *
+   * @param tag Renderer the checkpoint is in.
+   * @param label What was done before it, such as "After draw".
+   */
+  public void check(String tag, String label) {
+    if (mode == Mode.OFF) {
+      return;
+    }
+    int index = checkpoint++;
+    if (mode == Mode.STRICT) {
+      if (callsChecked) {
+        return;
+      }
+      int error = drain();
+      if (error != GLES20.GL_NO_ERROR) {
+        recordSite(tag + ": " + label, error, new Throwable(tag + ": " + label));
+      }
+    } else if (bisecting && index == bisectMiddle) {
+      middleTag = tag;
+      middleLabel = label;
+      middleError = drain();
+    }
+  }
+
+  /** Call after the last GL call of a frame; reports the errors once per report interval. */
+  public void endFrame() {
+    if (mode == Mode.SAMPLED) {
+      if (bisecting) {
+        endBisectingFrame();
+      } else if (sampling) {
+        int error = drain();
+        if (error != GLES20.GL_NO_ERROR) {
+          if (checkpoint == 0) {
+            recordSite(TAG + ": " + END_OF_FRAME, error, null);
+          } else {
+            // Find the pass over the next frames, assuming it keeps failing.
+            bisecting = true;
+            bisectLow = -1;
+            bisectHigh = checkpoint;
+            highSite = TAG + ": " + END_OF_FRAME;
+          }
+        }
+      }
+    } else if (mode == Mode.STRICT && !callsChecked) {
+      int error = drain();
+      if (error != GLES20.GL_NO_ERROR) {
+        recordSite(TAG + ": " + END_OF_FRAME, error, new Throwable(END_OF_FRAME));
+      }
+    }
+
+    long now = System.nanoTime();
+    if (errorCount != reportedErrorCount && now - lastReportNanos >= reportIntervalNanos) {
+      lastReportNanos = now;
+      report();
+    }
+  }
+
+  private void endBisectingFrame() {
+    int lastError = drain();
+    if (checkpoint < bisectHigh) {
+      // The frame took another path, e.g. fewer planes were drawn; start over on the next error.
+      bisecting = false;
+      return;
+    }
+    if (middleError != GLES20.GL_NO_ERROR) {
+      bisectHigh = bisectMiddle;
+      highSite = middleTag + ": " + middleLabel;
+      lastError = middleError;
+    } else if (lastError != GLES20.GL_NO_ERROR) {
+      bisectLow = bisectMiddle;
+    } else {
+      // Did not happen again.
+      bisecting = false;
+      return;
+    }
+    if (bisectHigh - bisectLow <= 1) {
+      bisecting = false;
+      // The failing pass is the one right before this checkpoint.
+      recordSite(highSite, lastError, null);
+    }
+  }
+
+  /** Reads all pending errors, counting each, and returns the last one. */
+  private int drain() {
+    int lastError = GLES20.GL_NO_ERROR;
+    int error;
+    while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
+      count(error);
+      lastError = error;
+    }
+    return lastError;
+  }
+
+  private void count(int error) {
+    int index = error - FIRST_ERROR;
+    errorCounts[index >= 0 && index < ERROR_CODES - 1 ? index : ERROR_CODES - 1]++;
+    errorCount++;
+  }
+
+  /**
+   * Records an error read by a {@link CheckingGlBackend} right after {@code call}, at the site
+   * named {@code call + " at " + caller}, the caller being the first frame outside the backends.
+   */
+  void onCallError(String call, int error) {
+    count(error);
+    Throwable stack = new Throwable(call);
+    String caller = "unknown";
+    for (StackTraceElement frame : stack.getStackTrace()) {
+      String className = frame.getClassName();
+      // Backends are named *GlBackend; a state cache may issue the call from a helper.
+      if (!className.endsWith("GlBackend") && !className.equals(GlDiagnostics.class.getName())) {
+        caller = frame.toString();
+        break;
+      }
+    }
+    recordSite(call + " at " + caller, error, stack);
+  }
+
+  /** @param stack Where the error was seen, kept for the first error of the site, or null. */
+  private void recordSite(String name, int error, Throwable stack) {
+    Site site = sites.get(name);
+    if (site == null) {
+      site = new Site();
+      site.stack = stack;
+      sites.put(name, site);
+    }
+    site.count++;
+    site.lastError = error;
+  }
+
+  /** Reports the error counts and the checkpoints they were found at through the Reporter. */
+  public void report() {
+    for (int i = 0; i < ERROR_CODES; i++) {
+      if (errorCounts[i] > 0) {
+        Logger.report(TAG, "glError %s count=%d",
+            i < ERROR_CODES - 1 ? "0x" + Integer.toHexString(FIRST_ERROR + i) : "other",
+            errorCounts[i]);
+      }
+    }
+    for (Map.Entry<String, Site> entry : sites.entrySet()) {
+      Site site = entry.getValue();
+      Logger.report(TAG, site.stack, "%s count=%d last=0x%x",
+          entry.getKey(), site.count, site.lastError);
+    }
+    Logger.flushReport();
+    reportedErrorCount = errorCount;
+  }
+
+  /** Number of errors read since this was created. */
+  public long getErrorCount() {
+    return errorCount;
+  }
+
+  /** Number of times {@code error} was read since this was created. */
+  public long getErrorCount(int error) {
+    int index = error - FIRST_ERROR;
+    return index >= 0 && index < ERROR_CODES - 1 ? errorCounts[index] : 0;
+  }
+
+  /**
+   * Number of times an error was attributed to the checkpoint named {@code tag + ": " + label},
+   * that is to the pass between it and the previous checkpoint, or to a call checked by a {@link
+   * #wrap wrapped backend}, named as in {@link #onCallError}.
+   */
+  public int getSiteCount(String site) {
+    Site found = sites.get(site);
+    return found != null ? found.count : 0;
+  }
+
+  /** Whether a sampled error is being narrowed down to a pass. */
+  public boolean isBisecting() {
+    return bisecting;
+  }
+
+  private static final class Site {
+    int count;
+    int lastError;
+    // Where the first error was seen, in STRICT mode.
+    Throwable stack;
+  }
+}
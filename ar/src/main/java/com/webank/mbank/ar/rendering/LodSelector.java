@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+/**
+ * Picks the level of detail of a model from how much of the viewport height its bounding sphere
+ * covers. Level {@code i > 0} is used below {@code FIRST_THRESHOLD / 2^(i-1)} of the viewport,
+ * so each level, with half the triangles of the previous one, takes over at half the size.
+ * 按模型在屏幕上的大小选择LOD，带滞后区间，避免在阈值附近来回切换。
+ *
+ * <p>A level only changes once the size is {@link #HYSTERESIS} past the threshold, so a model
+ * hovering around a threshold does not pop between levels every frame. Not thread safe.
+ */
+public class LodSelector {
+  // Fraction of the viewport height below which level 1 is used.
+  static final float FIRST_THRESHOLD = 0.25f;
+  // Relative margin around each threshold.
+  static final float HYSTERESIS = 0.15f;
+
+  private final float[] center = new float[] {0f, 0f, 0f, 1f};
+  private final float[] viewCenter = new float[4];
+  private float radius;
+  private int levelCount = 1;
+  private int level;
+
+  /**
+   * @param levelCount Number of levels, level 0 being the most detailed.
+   * @param boundsMin Minimum corner of the model space bounding box.
+   * @param boundsMax Maximum corner of the model space bounding box.
+   */
+  public void setLevels(int levelCount, float[] boundsMin, float[] boundsMax) {
+    this.levelCount = Math.max(levelCount, 1);
+    float radiusSquared = 0f;
+    for (int i = 0; i < 3; i++) {
+      center[i] = 0.5f * (boundsMin[i] + boundsMax[i]);
+      float half = 0.5f * (boundsMax[i] - boundsMin[i]);
+      radiusSquared += half * half;
+    }
+    radius = (float) Math.sqrt(radiusSquared);
+    level = 0;
+  }
+
+  public int getLevelCount() {
+    return levelCount;
+  }
+
+  /** The level picked by the last {@link #select} call. */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Picks the level for a draw.
+   *
+   * @param modelView The model-view matrix of the draw, including any model scale.
+   * @param projection The projection matrix.
+   * @return The level to draw.
+   */
+  public int select(float[] modelView, float[] projection) {
+    if (levelCount == 1) {
+      return 0;
+    }
+    return selectForSize(projectedSize(modelView, projection));
+  }
+
+  /**
+   * Picks the level for a model covering {@code size} of the viewport height, moving at most
+   * as far as the hysteresis allows from the previous level.
+   */
+  public int selectForSize(float size) {
+    while (level + 1 < levelCount && size < threshold(level + 1) * (1f - HYSTERESIS)) {
+      level++;
+    }
+    while (level > 0 && size > threshold(level) * (1f + HYSTERESIS)) {
+      level--;
+    }
+    return level;
+  }
+
+  private static float threshold(int level) {
+    return FIRST_THRESHOLD / (1 << (level - 1));
+  }
+
+  /**
+   * Fraction of the viewport height covered by the bounding sphere, or {@link Float#MAX_VALUE} when
+   * the camera is inside it.
+   */
+  float projectedSize(float[] modelView, float[] projection) {
+    for (int row = 0; row < 3; row++) {
+      viewCenter[row] =
+          modelView[row] * center[0]
+              + modelView[4 + row] * center[1]
+              + modelView[8 + row] * center[2]
+              + modelView[12 + row];
+    }
+    // The largest column scale bounds how much the model matrix grows the sphere.
+    float scaleSquared = 0f;
+    for (int column = 0; column < 3; column++) {
+      float x = modelView[4 * column];
+      float y = modelView[4 * column + 1];
+      float z = modelView[4 * column + 2];
+      scaleSquared = Math.max(scaleSquared, x * x + y * y + z * z);
+    }
+    float viewRadius = radius * (float) Math.sqrt(scaleSquared);
+    float depth = -viewCenter[2];
+    if (depth <= viewRadius) {
+      return Float.MAX_VALUE;
+    }
+    // projection[5] maps view space height at unit depth to NDC, whose height is 2.
+    return viewRadius * projection[5] / depth;
+  }
+}
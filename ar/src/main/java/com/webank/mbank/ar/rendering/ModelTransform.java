@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Mat4;
+
+/**
+ * The per-draw matrix math of {@link ObjectRenderer}: the scaled model matrix, model-view and
+ * model-view-projection matrices, and the light direction in view space.
+ * 物体每次绘制时在CPU上的矩阵计算，不依赖GL，可以在JVM上测试和压测。
+ *
+ * <p>All matrices are preallocated and column-major. Not thread safe.
+ */
+public class ModelTransform {
+  // Note: the last component must be zero to avoid applying the translational part of the matrix.
+  private static final float[] LIGHT_DIRECTION = new float[] {0.250f, 0.866f, 0.433f, 0.0f};
+
+  final float[] modelMatrix = new float[16];
+  final float[] modelViewMatrix = new float[16];
+  final float[] modelViewProjectionMatrix = new float[16];
+  final float[] viewLightDirection = new float[4];
+
+  public ModelTransform() {
+    Mat4.setIdentity(modelMatrix);
+  }
+
+  /**
+   * Sets the model matrix, applying {@code scaleFactor} before {@code modelMatrix}.
+   *
+   * @param modelMatrix A 4x4 model-to-world transformation matrix, stored in column-major order.
+   * @param scaleFactor A separate scaling factor to apply before the {@code modelMatrix}.
+   */
+  public void setModel(float[] modelMatrix, float scaleFactor) {
+    setModel(modelMatrix, 0, scaleFactor);
+  }
+
+  /**
+   * Same as {@link #setModel(float[], float)}, with the model matrix stored at {@code offset}, for
+   * example in a {@link com.webank.mbank.ar.math.TransformRing}.
+   */
+  public void setModel(float[] modelMatrix, int offset, float scaleFactor) {
+    // model * scale(s) only scales the first three columns, no need for a full multiply.
+    for (int i = 0; i < 12; i++) {
+      this.modelMatrix[i] = modelMatrix[offset + i] * scaleFactor;
+    }
+    for (int i = 12; i < 16; i++) {
+      this.modelMatrix[i] = modelMatrix[offset + i];
+    }
+  }
+
+  /**
+   * Builds the ModelView and ModelViewProjection matrices and the view space light direction for
+   * the current model matrix.
+   */
+  public void update(float[] cameraView, float[] cameraPerspective) {
+    // The view and model matrices are affine, so both products are built in one pass.
+    Mat4.modelViewProjection(
+        modelViewMatrix, modelViewProjectionMatrix, cameraPerspective, cameraView, modelMatrix);
+    updateLightDirection(modelViewMatrix, 0);
+  }
+
+  /**
+   * Builds only the ModelView matrix and the view space light direction, for when the projection
+   * is applied on the GPU.
+   */
+  public void updateModelView(float[] cameraView) {
+    updateModelView(cameraView, modelViewMatrix, 0);
+    updateLightDirection(modelViewMatrix, 0);
+  }
+
+  /**
+   * Writes the ModelView matrix of the current model matrix to {@code out} at {@code offset}, for
+   * example straight into the uniform array of an instanced draw. The light direction is left as
+   * it is.
+   */
+  public void updateModelView(float[] cameraView, float[] out, int offset) {
+    Mat4.multiplyAffineScaled(out, offset, cameraView, modelMatrix, 0, 1f);
+  }
+
+  /** Sets the view space light direction from the ModelView matrix at {@code offset}. */
+  public void updateLightDirection(float[] modelView, int offset) {
+    Mat4.transformDirection(viewLightDirection, modelView, offset, LIGHT_DIRECTION);
+    normalizeVec3(viewLightDirection);
+  }
+
+  public float[] getModelMatrix() {
+    return modelMatrix;
+  }
+
+  public float[] getModelViewMatrix() {
+    return modelViewMatrix;
+  }
+
+  public float[] getModelViewProjectionMatrix() {
+    return modelViewProjectionMatrix;
+  }
+
+  /** Normalized light direction in view space, xyz. */
+  public float[] getViewLightDirection() {
+    return viewLightDirection;
+  }
+
+  private static void normalizeVec3(float[] v) {
+    float reciprocalLength = 1.0f / (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    v[0] *= reciprocalLength;
+    v[1] *= reciprocalLength;
+    v[2] *= reciprocalLength;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * Does nothing, so that the CPU side of the renderers can be benchmarked and tested on a plain JVM.
+ * 空实现，用于在JVM上测试和压测渲染器在CPU上的开销。
+ *
+ * <p>Object names are handed out from a counter and every status query reports success, so
+ * renderers can go through their normal setup.
+ */
+public class NoOpGlBackend implements GlBackend {
+  private int nextName;
+
+  @Override
+  public void glActiveTexture(int texture) {}
+
+  @Override
+  public void glAttachShader(int program, int shader) {}
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {}
+
+  @Override
+  public void glBindTexture(int target, int texture) {}
+
+  @Override
+  public void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {}
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {}
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {}
+
+  @Override
+  public void glClear(int mask) {}
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {}
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {}
+
+  @Override
+  public void glCompileShader(int shader) {}
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {}
+
+  @Override
+  public int glCreateProgram() {
+    return ++nextName;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return ++nextName;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {}
+
+  @Override
+  public void glDeleteProgram(int program) {}
+
+  @Override
+  public void glDeleteShader(int shader) {}
+
+  @Override
+  public void glDepthMask(boolean flag) {}
+
+  @Override
+  public void glDisable(int cap) {}
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {}
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {}
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {}
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {}
+
+  @Override
+  public void glEnable(int cap) {}
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {}
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    for (int i = 0; i < n; i++) {
+      buffers[offset + i] = ++nextName;
+    }
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    for (int i = 0; i < n; i++) {
+      textures[offset + i] = ++nextName;
+    }
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {}
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return 0;
+  }
+
+  @Override
+  public int glGetError() {
+    return GLES20.GL_NO_ERROR;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    params[offset] = 0;
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    // No binary, so nothing is saved.
+    length[lengthOffset] = 0;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return "";
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    // Report success for every query, e.g. GL_LINK_STATUS.
+    params[offset] = GLES20.GL_TRUE;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    // Report success for every query, e.g. GL_COMPILE_STATUS.
+    params[offset] = GLES20.GL_TRUE;
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return "";
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return 0;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {}
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {}
+
+  @Override
+  public void glShaderSource(int shader, String string) {}
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {}
+
+  @Override
+  public void glUniform1f(int location, float x) {}
+
+  @Override
+  public void glUniform1i(int location, int x) {}
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {}
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {}
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {}
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {}
+
+  @Override
+  public void glUseProgram(int program) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {}
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {}
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {}
+}
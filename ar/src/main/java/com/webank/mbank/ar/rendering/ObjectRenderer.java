@@ -15,26 +15,32 @@
 package com.webank.mbank.ar.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
-
 import com.webank.mbank.ar.R;
-
+import com.webank.mbank.ar.math.Frustum;
+import com.webank.mbank.ar.math.TransformRing;
+import com.webank.mbank.ar.mesh.MeshChunks;
+import com.webank.mbank.ar.mesh.MeshData;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.mesh.MeshQuantizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 
 import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
 import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
 
 
 
@@ -58,53 +64,136 @@ public class ObjectRenderer {
 
   private static final int COORDS_PER_VERTEX = 3;
 
-  // Note: the last component must be zero to avoid applying the translational part of the matrix.
-  private static final float[] LIGHT_DIRECTION = new float[] {0.250f, 0.866f, 0.433f, 0.0f};
-  private final float[] viewLightDirection = new float[4];
+  // Interleaved vertex layout, see MeshData.
+  private static final int VERTEX_STRIDE = MeshData.BYTES_PER_VERTEX;
+  private static final int POSITION_OFFSET = 4 * MeshData.POSITION_OFFSET;
+  private static final int TEXCOORD_OFFSET = 4 * MeshData.TEXCOORD_OFFSET;
+  private static final int NORMAL_OFFSET = 4 * MeshData.NORMAL_OFFSET;
+  private static final float[] UNQUANTIZED_POSITION_SCALE = {1f, 1f, 1f, 1f};
+  private static final float[] UNQUANTIZED_POSITION_OFFSET = {0f, 0f, 0f, 0f};
+  private static final float[] UNQUANTIZED_TEXCOORD_TRANSFORM = {1f, 1f, 0f, 0f};
+
+  // Size of the u_ModelView array in object_instanced_vertex.shader. 24 mat4s plus the projection
+  // use 100 of the 128 vertex uniform vectors every GLES 2.0 device supports, leaving room for the
+  // dequantization vectors.
+  static final int MAX_INSTANCES_PER_DRAW = 24;
+  // Vertices addressable with GL_UNSIGNED_SHORT indices.
+  private static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+
+  private final GlBackend gl;
+  private final ShaderCache shaders;
+  private final GlDiagnostics diagnostics;
+
+  // Model, model-view and model-view-projection matrices and the view space light direction.
+  private final ModelTransform transform = new ModelTransform();
+
+  // Model-view matrices of the instances in the current batch, uploaded as one uniform array.
+  private final float[] instanceModelViews = new float[16 * MAX_INSTANCES_PER_DRAW];
 
   // Object vertex buffer variables.
   private int vertexBufferId;
-  private int verticesBaseAddress;
-  private int texCoordsBaseAddress;
-  private int normalsBaseAddress;
   private int indexBufferId;
   private int indexCount;
+  private int indexType = GLES20.GL_UNSIGNED_SHORT;
+
+  // Levels of detail sharing the vertex buffer, as index ranges of the index buffer. indexCount is
+  // that of level 0, which instanced and chunked draws use.
+  // 多级LOD共用顶点，只是索引范围不同；单个物体绘制时按屏幕大小选择。
+  private int lodCount = 1;
+  private int[] lodFirstIndex = new int[] {0};
+  private int[] lodIndexCount = new int[] {0};
+  private final LodSelector lodSelector = new LodSelector();
+  // Set by setLevelsOfDetail for the next upload, null for a single level of all indices.
+  private int[] pendingLodFirstIndex;
+  private int[] pendingLodIndexCount;
+  private float[] pendingBoundsMin;
+  private float[] pendingBoundsMax;
+
+  // Model space bounds of the loaded mesh, tested against the culling frustum before each draw.
+  // 加载时计算一次包围盒，绘制前变换到世界坐标系和视锥体比较，完全在外面的物体不画。
+  private final float[] boundsMin = new float[3];
+  private final float[] boundsMax = new float[3];
+  private Frustum cullingFrustum;
+  private int drawnCount;
+  private int culledCount;
+
+  // Meshes over 65536 vertices without 32-bit index support are drawn in chunks, see MeshChunks.
+  // 不支持32位索引时，大模型分块绘制。
+  private int chunkCount = 1;
+  private int[] chunkFirstVertex;
+  private int[] chunkFirstIndex;
+  private int[] chunkIndexCount;
+
+  // Vertex layout of the loaded mesh, and how the vertex shader restores quantized attributes:
+  // position = a_Position * positionScale + positionOffset, texCoord = a_TexCoord * xy + zw.
+  // 量化的顶点在着色器中还原，未量化时为单位变换。
+  private boolean quantizationEnabled;
+  private boolean quantized;
+  private int vertexStride = VERTEX_STRIDE;
+  private final float[] positionScale = UNQUANTIZED_POSITION_SCALE.clone();
+  private final float[] positionOffset = UNQUANTIZED_POSITION_OFFSET.clone();
+  private final float[] texCoordTransform = UNQUANTIZED_TEXCOORD_TRANSFORM.clone();
+
+  // The mesh repeated once per instance of a batch, each copy tagged with its instance id.
+  // 每个实例一份网格，带上实例编号，一次绘制多个物体。
+  private boolean instancingEnabled;
+  private int instanceBatchSize;
+  private int instanceVertexBufferId;
+  private int instanceIdsBaseAddress;
+  private int instanceIndexBufferId;
 
-  private int program;
   private final int[] textures = new int[1];
+  // Whether prepare() may load ETC1 KTX textures instead of PNGs.
+  private boolean compressedTexturesSupported;
 
-  // Shader location: model view projection matrix.
-  private int modelViewUniform;
-  private int modelViewProjectionUniform;
-
-  // Shader location: object attributes.
-  private int positionAttribute;
-  private int normalAttribute;
-  private int texCoordAttribute;
-
-  // Shader location: texture sampler.
-  private int textureUniform;
-
-  // Shader location: environment properties.
-  private int lightingParametersUniform;
-
-  // Shader location: material properties.
-  private int materialParametersUniform;
+  private final ShaderProgram singleProgram = new ShaderProgram();
+  private final ShaderProgram instancedProgram = new ShaderProgram();
 
   private BlendMode blendMode = null;
 
-  // Temporary matrices allocated here to reduce number of allocations for each frame.
-  private final float[] modelMatrix = new float[16];
-  private final float[] modelViewMatrix = new float[16];
-  private final float[] modelViewProjectionMatrix = new float[16];
-
   // Set some default material properties to use for lighting.
   private float ambient = 0.3f;
   private float diffuse = 1.0f;
   private float specular = 1.0f;
   private float specularPower = 6.0f;
 
-  public ObjectRenderer() {}
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   */
+  public ObjectRenderer(GlBackend gl) {
+    this(gl, new ShaderCache(gl), new GlDiagnostics(gl));
+  }
+
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   * @param shaders Shares the object programs with the other renderers using it.
+   * @param diagnostics Checks for GL errors while drawing.
+   */
+  public ObjectRenderer(GlBackend gl, ShaderCache shaders, GlDiagnostics diagnostics) {
+    this.gl = gl;
+    this.shaders = shaders;
+    this.diagnostics = diagnostics;
+  }
+
+  /**
+   * Texture and mesh of a model, decoded and parsed off the GL thread by {@link #prepare} and
+   * uploaded in steps by {@link #upload}.
+   * 在后台线程准备好的纹理和网格。
+   */
+  public static final class Model {
+    private TextureData texture;
+    private ByteBuffer vertices;
+    private int vertexCount;
+    private Buffer indices;
+    private boolean quantized;
+    private float[] boundsMin;
+    private float[] boundsMax;
+    private float[] texCoordMin;
+    private float[] texCoordMax;
+    private int[] lodFirstIndex;
+    private int[] lodIndexCount;
+    private int uploadStep;
+  }
 
   /**
    * Creates and initializes OpenGL resources needed for rendering the model.
@@ -115,137 +204,499 @@ public class ObjectRenderer {
    */
   public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
       throws IOException {
+    compressedTexturesSupported = TextureData.isEtc1Supported(gl);
+    Model model = prepare(context, objAssetName, diffuseTextureAssetName);
+    while (!upload(context, model)) {
+      // Upload every step at once.
+    }
+  }
+
+  /**
+   * Decodes the texture and reads the mesh without touching GL, so it can run on any thread. Call
+   * {@link #setQuantizationEnabled} before.
+   *
+   * @param objAssetName Name of the OBJ file containing the model geometry. A binary mesh with the
+   *     same name is used instead when there is one.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map. A KTX
+   *     file with the same name is used instead when there is one and {@link
+   *     #setCompressedTexturesSupported} was set.
+   */
+  public Model prepare(Context context, String objAssetName, String diffuseTextureAssetName)
+      throws IOException {
+    Model model = new Model();
     // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(diffuseTextureAssetName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    textureBitmap.recycle();
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
-
-    // Read the obj file.
-    InputStream objInputStream = context.getAssets().open(objAssetName);
-    Obj obj = ObjReader.read(objInputStream);
-
-    // Prepare the Obj so that its structure is suitable for
-    // rendering with OpenGL:准备Obj，使其结构适合用OpenGL进行渲染：
-    // 1. Triangulate it对其进行三角测量
-    // 2. Make sure that texture coordinates are not ambiguous
-    // 3. Make sure that normals（法线） are not ambiguous
-    // 4. Convert it to single-indexed data将其转换为单索引数据
-    obj = ObjUtils.convertToRenderable(obj);
-
-    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-    // that OpenGL understands.
-
-    // Obtain the data from the OBJ, as direct buffers:
-    //返回obj面处的顶点索引，返回类型为IntBuffer
-    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-    FloatBuffer vertices = ObjData.getVertices(obj);
-    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-    FloatBuffer normals = ObjData.getNormals(obj);
-
-    /*//debug start
-    int[] verticesArray = ObjData.getFaceVertexIndicesArray(obj);
-    for (int i = 0; i < verticesArray.length; i++) {
-      System.out.println("VertexIndicesArray["+i+"]="+verticesArray[i]);
+    model.texture =
+        TextureData.load(context.getAssets(), diffuseTextureAssetName, compressedTexturesSupported);
+
+    // Prefer the binary mesh next to the OBJ, which uploads without any parsing.
+    // 优先加载预先转换好的二进制网格，不需要解析文本。
+    String meshAssetName = meshAssetName(objAssetName);
+    ByteBuffer meshBytes = openAsset(context.getAssets(), meshAssetName);
+    if (meshBytes != null) {
+      readMeshFile(MeshFile.wrap(meshBytes), model);
+    } else {
+      // Read the obj file.
+      InputStream objInputStream = context.getAssets().open(objAssetName);
+      Obj obj = ObjReader.read(objInputStream);
+      objInputStream.close();
+
+      // Prepare the Obj so that its structure is suitable for
+      // rendering with OpenGL:准备Obj，使其结构适合用OpenGL进行渲染：
+      // 1. Triangulate it对其进行三角测量
+      // 2. Make sure that texture coordinates are not ambiguous
+      // 3. Make sure that normals（法线） are not ambiguous
+      // 4. Convert it to single-indexed data将其转换为单索引数据
+      // and interleave positions, texture coordinates and normals per vertex.
+      MeshData mesh = MeshData.fromObj(obj);
+
+      // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
+      // that OpenGL understands.
+      // Convert int indices to shorts for GL ES 2.0 compatibility, unless they do not fit.
+      model.indices =
+          mesh.maxIndex() < MAX_SHORT_INDEXED_VERTICES
+              ? mesh.toShortIndexBuffer()
+              : mesh.toIntIndexBuffer();
+      model.vertexCount = mesh.vertexCount;
+      model.quantized = quantizationEnabled;
+      if (quantizationEnabled) {
+        model.boundsMin = new float[3];
+        model.boundsMax = new float[3];
+        model.texCoordMin = new float[2];
+        model.texCoordMax = new float[2];
+        model.vertices =
+            MeshQuantizer.toVertexBuffer(
+                mesh, model.boundsMin, model.boundsMax, model.texCoordMin, model.texCoordMax);
+      } else {
+        model.vertices = mesh.toVertexBuffer();
+      }
     }
-    //debug end*/
+    return model;
+  }
 
-    // Convert int indices to shorts for GL ES 2.0 compatibility
-    ShortBuffer indices =
-        ByteBuffer.allocateDirect(2 * wideIndices.limit())
-            .order(ByteOrder.nativeOrder())
-            .asShortBuffer();
+  private static void readMeshFile(MeshFile meshFile, Model model) {
+    int lods = meshFile.getLodCount();
+    model.lodFirstIndex = new int[lods];
+    model.lodIndexCount = new int[lods];
+    for (int i = 0; i < lods; i++) {
+      model.lodFirstIndex[i] = meshFile.getLodFirstIndex(i);
+      model.lodIndexCount[i] = meshFile.getLodIndexCount(i);
+    }
+    ByteBuffer fileIndices = meshFile.getIndices();
+    model.indices =
+        meshFile.getIndexSize() == 2 ? fileIndices.asShortBuffer() : fileIndices.asIntBuffer();
+    model.vertices = meshFile.getVertices();
+    model.vertexCount = meshFile.getVertexCount();
+    model.quantized = meshFile.isQuantized();
+    model.boundsMin = meshFile.getBoundsMin();
+    model.boundsMax = meshFile.getBoundsMax();
+    model.texCoordMin = meshFile.getTexCoordMin();
+    model.texCoordMax = meshFile.getTexCoordMax();
+  }
+
+  /**
+   * Uploads the next part of a prepared model on the GL thread: the texture, the mesh, then each
+   * shader program, so that a loader can spread them over frames.
+   * 每次上传一部分，加载器可以把上传分散到多帧。
+   *
+   * @return True once the model is ready to draw.
+   */
+  public boolean upload(Context context, Model model) throws IOException {
+    switch (model.uploadStep++) {
+      case 0:
+        uploadTexture(model.texture);
+        model.texture = null;
+        return false;
+      case 1:
+        loadModelMesh(model);
+        return false;
+      case 2:
+        singleProgram.load(shaders.get(context, R.raw.object_vertex, R.raw.object_fragment, ""));
+        diagnostics.check(TAG, "Program parameters");
+        return instanceBatchSize <= 1;
+      default:
+        instancedProgram.load(
+            shaders.get(context, R.raw.object_instanced_vertex, R.raw.object_fragment, ""));
+        diagnostics.check(TAG, "Program parameters");
+        return true;
+    }
+  }
+
+  private void loadModelMesh(Model model) {
+    if (model.lodFirstIndex != null) {
+      setLevelsOfDetail(
+          model.lodFirstIndex, model.lodIndexCount, model.boundsMin, model.boundsMax);
+    }
+    if (model.quantized) {
+      loadQuantizedMesh(model.vertices, model.vertexCount, model.indices, model.boundsMin,
+          model.boundsMax, model.texCoordMin, model.texCoordMax);
+    } else {
+      loadMesh(model.vertices, model.vertexCount, model.indices);
+    }
+    model.vertices = null;
+    model.indices = null;
+  }
+
+  /** Uploads a binary mesh right away, as {@link #upload} does with a prepared one. */
+  void loadMesh(MeshFile meshFile) {
+    Model model = new Model();
+    readMeshFile(meshFile, model);
+    loadModelMesh(model);
+  }
+
+  private void uploadTexture(TextureData texture) {
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glGenTextures(textures.length, textures, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    texture.upload(gl);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    diagnostics.check(TAG, "Texture loading");
+  }
+
+  /** {@code model.obj} becomes {@code model.wmesh}. */
+  static String meshAssetName(String objAssetName) {
+    int dot = objAssetName.lastIndexOf('.');
+    return (dot > 0 ? objAssetName.substring(0, dot) : objAssetName) + MeshFile.EXTENSION;
+  }
+
+  /**
+   * Maps an uncompressed asset straight from the APK, or reads a compressed one into a direct
+   * buffer. Used for binary meshes and compressed textures.
+   *
+   * @return The asset's bytes, or null if there is no such asset.
+   */
+  static ByteBuffer openAsset(AssetManager assets, String name) throws IOException {
+    try {
+      AssetFileDescriptor fd = assets.openFd(name);
+      FileInputStream in = fd.createInputStream();
+      try {
+        return in.getChannel()
+            .map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      // Missing, or compressed in the APK, which cannot be mapped.
+    }
+    InputStream in;
+    try {
+      in = assets.open(name);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] chunk = new byte[16 * 1024];
+      int n;
+      while ((n = in.read(chunk)) > 0) {
+        bytes.write(chunk, 0, n);
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+      buffer.put(bytes.toByteArray()).rewind();
+      return buffer;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Enables {@link #draw(TransformRing, float, float[], float[], float)} to batch instances into
+   * few draw calls. Must be called before uploading the model, since batching keeps a copy of
+   * the mesh per instance of a batch on the GPU; leave it off for large models drawn once.
+   */
+  public void setInstancingEnabled(boolean instancingEnabled) {
+    this.instancingEnabled = instancingEnabled;
+  }
+
+  /**
+   * Quantizes meshes loaded from OBJ to the 16 bytes per vertex layout of {@link MeshQuantizer},
+   * half the size of float vertices. Must be called before {@link #prepare}. Binary meshes
+   * are used in whichever layout they were converted to.
+   */
+  public void setQuantizationEnabled(boolean quantizationEnabled) {
+    this.quantizationEnabled = quantizationEnabled;
+  }
+
+  /**
+   * Loads the ETC1 KTX texture next to the PNG when there is one. Must be called before {@link
+   * #prepare}, with the result of {@link TextureData#isEtc1Supported} on the GL thread.
+   * {@link #createOnGlThread} queries it itself.
+   */
+  public void setCompressedTexturesSupported(boolean compressedTexturesSupported) {
+    this.compressedTexturesSupported = compressedTexturesSupported;
+  }
+
+  /**
+   * Sets the levels of detail of the next {@link #loadMesh} call, as index ranges of its indices,
+   * level 0 being the most detailed. Null for a single level drawing all indices.
+   *
+   * @param boundsMin Minimum corner of the model space bounding box, for the projected size.
+   * @param boundsMax Maximum corner of the model space bounding box.
+   */
+  void setLevelsOfDetail(
+      int[] firstIndex, int[] indexCount, float[] boundsMin, float[] boundsMax) {
+    pendingLodFirstIndex = firstIndex;
+    pendingLodIndexCount = indexCount;
+    pendingBoundsMin = boundsMin;
+    pendingBoundsMax = boundsMax;
+  }
+
+  /** Takes the levels of {@link #setLevelsOfDetail}, or a single level of all indices. */
+  private void applyLevelsOfDetail(int allIndexCount) {
+    if (pendingLodFirstIndex == null) {
+      lodCount = 1;
+      lodFirstIndex = new int[] {0};
+      lodIndexCount = new int[] {allIndexCount};
+      lodSelector.setLevels(1, new float[3], new float[3]);
+    } else {
+      lodCount = pendingLodFirstIndex.length;
+      lodFirstIndex = pendingLodFirstIndex.clone();
+      lodIndexCount = pendingLodIndexCount.clone();
+      lodSelector.setLevels(lodCount, pendingBoundsMin, pendingBoundsMax);
+    }
+    pendingLodFirstIndex = null;
+    pendingLodIndexCount = null;
+  }
+
+  /** Number of levels of detail of the loaded mesh. */
+  int getLodCount() {
+    return lodCount;
+  }
+
+  /** Level drawn by the last {@link #draw(float[], float[], float)}. */
+  int getLodLevel() {
+    return lodSelector.getLevel();
+  }
+
+  /**
+   * Uploads the mesh, and the per-instance copies when instancing is enabled.
+   *
+   * @param vertices Interleaved vertices laid out as in {@link MeshData}, uploaded as they are.
+   * @param indices Triangle indices, a {@link ShortBuffer} uploaded as it is, or an {@link
+   *     IntBuffer} for meshes over 65536 vertices. Those use {@code OES_element_index_uint} where
+   *     available, and are split into {@link MeshChunks} drawn one by one otherwise.
+   */
+  void loadMesh(ByteBuffer vertices, int vertexCount, Buffer indices) {
+    quantized = false;
+    vertexStride = VERTEX_STRIDE;
+    System.arraycopy(UNQUANTIZED_POSITION_SCALE, 0, positionScale, 0, 4);
+    System.arraycopy(UNQUANTIZED_POSITION_OFFSET, 0, positionOffset, 0, 4);
+    System.arraycopy(UNQUANTIZED_TEXCOORD_TRANSFORM, 0, texCoordTransform, 0, 4);
+    computeBounds(vertices, vertexCount);
+    uploadMesh(vertices, vertexCount, indices);
+  }
+
+  /** Bounds of the float positions in {@code vertices}, laid out as in {@link MeshData}. */
+  private void computeBounds(ByteBuffer vertices, int vertexCount) {
+    for (int i = 0; i < 3; i++) {
+      boundsMin[i] = vertexCount > 0 ? Float.MAX_VALUE : 0f;
+      boundsMax[i] = vertexCount > 0 ? -Float.MAX_VALUE : 0f;
+    }
+    int position = vertices.position() + 4 * MeshData.POSITION_OFFSET;
+    for (int v = 0; v < vertexCount; v++, position += VERTEX_STRIDE) {
+      for (int i = 0; i < 3; i++) {
+        float value = vertices.getFloat(position + 4 * i);
+        boundsMin[i] = Math.min(boundsMin[i], value);
+        boundsMax[i] = Math.max(boundsMax[i], value);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #loadMesh}, with vertices quantized as in {@link MeshQuantizer} against the
+   * given bounds, which the vertex shader uses to restore them.
+   */
+  void loadQuantizedMesh(ByteBuffer vertices, int vertexCount, Buffer indices,
+      float[] boundsMin, float[] boundsMax, float[] texCoordMin, float[] texCoordMax) {
+    quantized = true;
+    vertexStride = MeshQuantizer.BYTES_PER_VERTEX;
+    MeshQuantizer.positionScale(boundsMin, boundsMax, positionScale);
+    MeshQuantizer.positionOffset(boundsMin, boundsMax, positionOffset);
+    MeshQuantizer.texCoordTransform(texCoordMin, texCoordMax, texCoordTransform);
+    System.arraycopy(boundsMin, 0, this.boundsMin, 0, 3);
+    System.arraycopy(boundsMax, 0, this.boundsMax, 0, 3);
+    uploadMesh(vertices, vertexCount, indices);
+  }
 
-    //检测wideIndices是否已经全部取完
-    while (wideIndices.hasRemaining()) {
-      indices.put((short) wideIndices.get());
+  private void uploadMesh(ByteBuffer vertices, int vertexCount, Buffer indices) {
+    chunkCount = 1;
+    applyLevelsOfDetail(indices.remaining());
+    if (indices instanceof IntBuffer && !isElementIndexUintSupported()) {
+      // 16位索引放不下，拆成多块，每块单独绘制；只保留最精细的一级LOD。
+      IntBuffer lod0 = ((IntBuffer) indices).duplicate();
+      lod0.position(lod0.position() + lodFirstIndex[0]);
+      lod0.limit(lod0.position() + lodIndexCount[0]);
+      MeshChunks chunks = MeshChunks.split(lod0, vertexCount, MAX_SHORT_INDEXED_VERTICES);
+      applyLevelsOfDetail(chunks.indices.remaining());
+      vertices = chunks.gatherVertices(vertices, vertexStride);
+      vertexCount = chunks.totalVertexCount;
+      indices = chunks.indices;
+      chunkCount = chunks.chunkCount;
+      chunkFirstVertex = chunks.firstVertex;
+      chunkFirstIndex = chunks.firstIndex;
+      chunkIndexCount = chunks.indexCount;
     }
-    //倒回缓冲区
-    indices.rewind();
+    indexType = indices instanceof IntBuffer ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT;
+    int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
 
     int[] buffers = new int[2];
     //在CPU中创建两个buffer，用于存储数据并传递给GPU，提高效率
-    GLES20.glGenBuffers(2, buffers, 0);
+    gl.glGenBuffers(2, buffers, 0);
     vertexBufferId = buffers[0];
     indexBufferId = buffers[1];
 
     // Load vertex buffer
-    //计算各种类型数据的大小，方便后续在内存中存放
-    verticesBaseAddress = 0;
-    texCoordsBaseAddress = verticesBaseAddress + 4 * vertices.limit();
-    normalsBaseAddress = texCoordsBaseAddress + 4 * texCoords.limit();
-    //计算中的数据大小，方便后续开闭内存空间
-    final int totalBytes = normalsBaseAddress + 4 * normals.limit();
-
     //指定GPU使用的buffer：类型+buffer
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-    //在绑定的buffer中，开辟一块大小为totalBytes的内存
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-    //在上述开辟的内存中，先存放4 * vertices.limit()大小的顶点数据，然后存放4 * texCoords.limit()大小的纹理坐标数据
-    //最后存放4 * normals.limit()大小的法线数据
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, verticesBaseAddress, 4 * vertices.limit(), vertices);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, texCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, normalsBaseAddress, 4 * normals.limit(), normals);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+    //每个顶点的位置、纹理坐标和法线交错存放，整块直接上传
+    gl.glBufferData(
+        GLES20.GL_ARRAY_BUFFER, vertexCount * vertexStride, vertices, GLES20.GL_STATIC_DRAW);
     //通过上述操作，已经成功把 CPU 端保存的数据传递给 GPU 端, 保存在指定的 buffer object 中。
     // 所以可以将vertexBufferId这个buffer与GPU解绑
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     //将indexBufferId这个buffer与GPU绑定
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    indexCount = indices.limit();
-    //在indexBuffer中开辟2 * indexCount的内存块，并存放indices数据
-    GLES20.glBufferData(
-        GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * indexCount, indices, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+    //在indexBuffer中开辟indexSize * 索引数的内存块，并存放所有LOD的indices数据
+    gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+        indexSize * indices.remaining(), indices, GLES20.GL_STATIC_DRAW);
+    indexCount = lodIndexCount[0];
     //buffer与GPU解绑
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    diagnostics.check(TAG, "OBJ buffer load");
+
+    instanceBatchSize =
+        instancingEnabled && indexType == GLES20.GL_UNSIGNED_SHORT && chunkCount == 1
+            ? Math.min(MAX_INSTANCES_PER_DRAW, MAX_SHORT_INDEXED_VERTICES / Math.max(vertexCount, 1))
+            : 0;
+    if (instanceBatchSize > 1) {
+      loadInstancedMesh(vertices, vertexCount, (ShortBuffer) indices);
+    }
+  }
+
+  /** Whether the driver takes {@code GL_UNSIGNED_INT} indices, which ES 2.0 leaves optional. */
+  private boolean isElementIndexUintSupported() {
+    String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    return extensions != null && extensions.contains("GL_OES_element_index_uint");
+  }
+
+  /** Number of draw calls per drawn object. */
+  int getChunkCount() {
+    return chunkCount;
+  }
+
+  /**
+   * Repeats the mesh {@link #instanceBatchSize} times. Copy {@code i} has every vertex tagged with
+   * instance id {@code i} and its indices shifted by {@code i * vertexCount}, so drawing the first
+   * {@code n * indexCount} indices draws {@code n} instances.
+   */
+  private void loadInstancedMesh(ByteBuffer vertices, int vertexCount, ShortBuffer indices) {
+    int copies = instanceBatchSize;
+    FloatBuffer instanceIds =
+        ByteBuffer.allocateDirect(4 * vertexCount * copies)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    ShortBuffer instanceIndices =
+        ByteBuffer.allocateDirect(2 * indexCount * copies)
+            .order(ByteOrder.nativeOrder())
+            .asShortBuffer();
+    int firstIndex = indices.position() + lodFirstIndex[0];
+    for (int i = 0; i < copies; i++) {
+      for (int v = 0; v < vertexCount; v++) {
+        instanceIds.put(i);
+      }
+      for (int k = 0; k < indexCount; k++) {
+        instanceIndices.put((short) ((indices.get(firstIndex + k) & 0xffff) + i * vertexCount));
+      }
+    }
+    instanceIds.rewind();
+    instanceIndices.rewind();
+
+    int vertexBytes = vertexCount * vertexStride;
+    instanceIdsBaseAddress = vertexBytes * copies;
+    int totalBytes = instanceIdsBaseAddress + 4 * instanceIds.limit();
+
+    int[] buffers = new int[2];
+    gl.glGenBuffers(2, buffers, 0);
+    instanceVertexBufferId = buffers[0];
+    instanceIndexBufferId = buffers[1];
+
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, instanceVertexBufferId);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
+    for (int i = 0; i < copies; i++) {
+      gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, vertexBytes * i, vertexBytes, vertices);
+    }
+    gl.glBufferSubData(
+        GLES20.GL_ARRAY_BUFFER, instanceIdsBaseAddress, 4 * instanceIds.limit(), instanceIds);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, instanceIndexBufferId);
+    gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+        2 * instanceIndices.limit(), instanceIndices, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
-    final int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, R.raw.object_vertex);
-    final int fragmentShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, R.raw.object_fragment);
+    diagnostics.check(TAG, "Instanced buffer load");
+  }
 
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
-    GLES20.glUseProgram(program);
+  /**
+   * The dequantization uniforms depend on the mesh, and the programs are shared with other
+   * renderers, so they are set with the rest of the draw state.
+   */
+  private void setDequantization(ShaderProgram shader) {
+    gl.glUniform4fv(shader.positionScale, 1, positionScale, 0);
+    gl.glUniform4fv(shader.positionOffset, 1, positionOffset, 0);
+    gl.glUniform4fv(shader.texCoordTransform, 1, texCoordTransform, 0);
+  }
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+  /** Uses programs that are already linked in place of the shader steps of {@link #upload}. */
+  void loadPrograms(int singleProgramId, int instancedProgramId) {
+    singleProgram.load(new ShaderCache.Program(gl, singleProgramId));
+    instancedProgram.load(new ShaderCache.Program(gl, instancedProgramId));
+  }
 
-    modelViewUniform = GLES20.glGetUniformLocation(program, "u_ModelView");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(program, "u_ModelViewProjection");
+  /**
+   * Number of instances {@link #draw(TransformRing, float, float[], float[], float)} draws per draw
+   * call, 0 when instances are drawn one by one.
+   */
+  int getInstanceBatchSize() {
+    return instanceBatchSize;
+  }
 
-    positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
-    normalAttribute = GLES20.glGetAttribLocation(program, "a_Normal");
-    texCoordAttribute = GLES20.glGetAttribLocation(program, "a_TexCoord");
+  /**
+   * Skips draws of models whose bounds are fully outside {@code frustum}, before any GL call. The
+   * frustum is read at draw time, so it is set once and updated every frame with {@link
+   * Frustum#set}. Null, the default, draws everything.
+   * 设置之后每帧更新视锥体即可，画不到的物体不产生GL调用。
+   */
+  public void setCullingFrustum(Frustum frustum) {
+    cullingFrustum = frustum;
+  }
 
-    textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+  /** Models drawn since the last {@link #resetDrawCounts}, each instance counting once. */
+  public int getDrawnCount() {
+    return drawnCount;
+  }
 
-    lightingParametersUniform = GLES20.glGetUniformLocation(program, "u_LightingParameters");
-    materialParametersUniform = GLES20.glGetUniformLocation(program, "u_MaterialParameters");
+  /** Models skipped by the culling frustum since the last {@link #resetDrawCounts}. */
+  public int getCulledCount() {
+    return culledCount;
+  }
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+  /** Starts counting drawn and culled models afresh, typically once per frame. */
+  public void resetDrawCounts() {
+    drawnCount = 0;
+    culledCount = 0;
+  }
 
-    //创建单位矩阵，并保存在modelMatrix中
-    Matrix.setIdentityM(modelMatrix, 0);
+  /** Whether the model at the current {@link #transform} is outside the culling frustum. */
+  private boolean isCulled() {
+    if (cullingFrustum == null
+        || cullingFrustum.intersectsBox(transform.modelMatrix, 0, boundsMin, boundsMax)) {
+      return false;
+    }
+    culledCount++;
+    return true;
   }
 
   /**
@@ -265,12 +716,15 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scaleFactor;
-    scaleMatrix[5] = scaleFactor;
-    scaleMatrix[10] = scaleFactor;
-    Matrix.multiplyMM(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+    transform.setModel(modelMatrix, scaleFactor);
+  }
+
+  /**
+   * Same as {@link #updateModelMatrix(float[], float)}, reading the model matrix at {@code offset},
+   * for example from a {@link com.webank.mbank.ar.math.TransformRing}.
+   */
+  public void updateModelMatrix(float[] modelMatrix, int offset, float scaleFactor) {
+    transform.setModel(modelMatrix, offset, scaleFactor);
   }
 
   /**
@@ -303,96 +757,288 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void draw(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
+    if (isCulled()) {
+      return;
+    }
+    drawnCount++;
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    diagnostics.check(TAG, "Before draw");
 
     // Build the ModelView and ModelViewProjection matrices
     // for calculating object position and light.
+    transform.update(cameraView, cameraPerspective);
 
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    // Fewer triangles once the model covers little of the screen.
+    int level = lodSelector.select(transform.modelViewMatrix, cameraPerspective);
 
-    GLES20.glUseProgram(program);
+    bind(singleProgram, vertexBufferId, 0, indexBufferId);
+    drawCurrentTransform(lightIntensity, level);
+    unbind(singleProgram);
 
-    // Set the lighting environment properties.
+    diagnostics.check(TAG, "After draw");
+  }
 
-    Matrix.multiplyMV(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
-    normalizeVec3(viewLightDirection);
-    GLES20.glUniform4f(
-        lightingParametersUniform,
+  /**
+   * Draws one instance of the model per matrix in {@code modelMatrices}.
+   * 一次绘制多个物体，比如所有的桌子。
+   *
+   * <p>With instancing enabled the instances are drawn {@link #MAX_INSTANCES_PER_DRAW} per draw
+   * call, with their model-view matrices uploaded as a uniform array. The lighting direction of the
+   * first instance is used for the whole batch, so instances should share their orientation, as
+   * the platforms do. Otherwise, or for a single instance, GL state is set up once and each
+   * instance only updates its matrices before its draw call.
+   *
+   * @param modelMatrices Model-to-world matrices of the instances.
+   * @param scaleFactor Scaling applied before each model matrix.
+   * <p>Instances outside the culling frustum are skipped, and batches are packed with the
+   * visible ones only.
+   *
+   * @see #draw(float[], float[], float)
+   * @see #setInstancingEnabled(boolean)
+   * @see #setCullingFrustum(Frustum)
+   */
+  public void draw(TransformRing modelMatrices, float scaleFactor, float[] cameraView,
+      float[] cameraPerspective, float lightIntensity) {
+    int count = modelMatrices.size();
+    if (count == 0) {
+      return;
+    }
+
+    float[] models = modelMatrices.getArray();
+    // Programs are bound at the first visible instance, so a fully culled list makes no GL calls.
+    boolean bound = false;
+    if (instanceBatchSize > 1 && count > 1) {
+      int batch = 0;
+      for (int i = 0; i < count; i++) {
+        transform.setModel(models, modelMatrices.offset(i), scaleFactor);
+        if (isCulled()) {
+          continue;
+        }
+        drawnCount++;
+        if (!bound) {
+          diagnostics.check(TAG, "Before draw");
+          bind(instancedProgram, instanceVertexBufferId, instanceIdsBaseAddress,
+              instanceIndexBufferId);
+          gl.glUniformMatrix4fv(instancedProgram.projection, 1, false, cameraPerspective, 0);
+          bound = true;
+        }
+        transform.updateModelView(cameraView, instanceModelViews, 16 * batch);
+        if (batch == 0) {
+          transform.updateLightDirection(instanceModelViews, 0);
+          setLighting(instancedProgram, lightIntensity);
+        }
+        if (++batch == instanceBatchSize) {
+          drawInstances(batch);
+          batch = 0;
+        }
+      }
+      if (batch > 0) {
+        drawInstances(batch);
+      }
+      if (bound) {
+        unbind(instancedProgram);
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        transform.setModel(models, modelMatrices.offset(i), scaleFactor);
+        if (isCulled()) {
+          continue;
+        }
+        drawnCount++;
+        if (!bound) {
+          diagnostics.check(TAG, "Before draw");
+          bind(singleProgram, vertexBufferId, 0, indexBufferId);
+          bound = true;
+        }
+        transform.update(cameraView, cameraPerspective);
+        drawCurrentTransform(lightIntensity, 0);
+      }
+      if (bound) {
+        unbind(singleProgram);
+      }
+    }
+
+    if (bound) {
+      diagnostics.check(TAG, "After draw");
+    }
+  }
+
+  /** Draws the first {@code batch} copies with the model-views gathered in instanceModelViews. */
+  private void drawInstances(int batch) {
+    gl.glUniformMatrix4fv(instancedProgram.modelView, batch, false, instanceModelViews, 0);
+    gl.glDrawElements(GLES20.GL_TRIANGLES, batch * indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+  }
+
+  /**
+   * Sets the per-draw uniforms of {@link #singleProgram} from {@link #transform} and draws the
+   * given level of detail.
+   */
+  private void drawCurrentTransform(float lightIntensity, int level) {
+    setLighting(singleProgram, lightIntensity);
+    // Set the ModelViewProjection matrix in the shader.
+    gl.glUniformMatrix4fv(singleProgram.modelView, 1, false, transform.modelViewMatrix, 0);
+    gl.glUniformMatrix4fv(
+        singleProgram.modelViewProjection, 1, false, transform.modelViewProjectionMatrix, 0);
+    if (chunkCount == 1) {
+      int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+      gl.glDrawElements(GLES20.GL_TRIANGLES, lodIndexCount[level], indexType,
+          indexSize * lodFirstIndex[level]);
+      return;
+    }
+    for (int c = 0; c < chunkCount; c++) {
+      // ES 2.0 has no base vertex, so the attributes are pointed at the chunk's first vertex.
+      gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+      setAttributePointers(singleProgram, chunkFirstVertex[c] * vertexStride);
+      gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+      gl.glDrawElements(GLES20.GL_TRIANGLES, chunkIndexCount[c], GLES20.GL_UNSIGNED_SHORT,
+          2 * chunkFirstIndex[c]);
+    }
+  }
+
+  private void setLighting(ShaderProgram shader, float lightIntensity) {
+    float[] viewLightDirection = transform.viewLightDirection;
+    gl.glUniform4f(
+        shader.lightingParameters,
         viewLightDirection[0],
         viewLightDirection[1],
         viewLightDirection[2],
         lightIntensity);
+  }
 
+  /** Sets up everything that stays the same across the draw calls of one {@code draw}. */
+  private void bind(
+      ShaderProgram shader, int vertexBuffer, int instanceIdsBase, int indexBuffer) {
+    gl.glUseProgram(shader.program);
 
     // Set the object material properties.
-    GLES20.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
+    gl.glUniform4f(shader.materialParameters, ambient, diffuse, specular, specularPower);
+    setDequantization(shader);
 
     // Attach the object texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(shader.texture, 0);
 
     // Set the vertex attributes.
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-
-    GLES20.glVertexAttribPointer(
-        positionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, verticesBaseAddress);
-    GLES20.glVertexAttribPointer(normalAttribute, 3, GLES20.GL_FLOAT, false, 0, normalsBaseAddress);
-    GLES20.glVertexAttribPointer(
-        texCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, texCoordsBaseAddress);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    setAttributePointers(shader, 0);
+    if (shader.instanceId >= 0) {
+      gl.glVertexAttribPointer(shader.instanceId, 1, GLES20.GL_FLOAT, false, 0, instanceIdsBase);
+    }
 
-    // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glEnableVertexAttribArray(normalAttribute);
-    GLES20.glEnableVertexAttribArray(texCoordAttribute);
+    gl.glEnableVertexAttribArray(shader.position);
+    gl.glEnableVertexAttribArray(shader.normal);
+    gl.glEnableVertexAttribArray(shader.texCoord);
+    if (shader.instanceId >= 0) {
+      gl.glEnableVertexAttribArray(shader.instanceId);
+    }
 
 //    if (blendMode != null) {
-//      GLES20.glDepthMask(false);
-//      GLES20.glEnable(GLES20.GL_BLEND);
+//      gl.glDepthMask(false);
+//      gl.glEnable(GLES20.GL_BLEND);
 //      switch (blendMode) {
 //        case Shadow:
 //          // Multiplicative blending function for Shadow.
-//          GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+//          gl.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 //          break;
 //        case Grid:
 //          // Grid, additive blending function.
-//          GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+//          gl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 //          break;
 //      }
 //    }
 
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+  }
+
+  /** Points the vertex attributes at the bound array buffer, starting {@code base} bytes in. */
+  private void setAttributePointers(ShaderProgram shader, int base) {
+    if (quantized) {
+      gl.glVertexAttribPointer(shader.position, COORDS_PER_VERTEX, GLES20.GL_SHORT, true,
+          vertexStride, base + MeshQuantizer.POSITION_OFFSET);
+      gl.glVertexAttribPointer(shader.normal, 3, GLES20.GL_BYTE, true, vertexStride,
+          base + MeshQuantizer.NORMAL_OFFSET);
+      gl.glVertexAttribPointer(shader.texCoord, 2, GLES20.GL_UNSIGNED_SHORT, true, vertexStride,
+          base + MeshQuantizer.TEXCOORD_OFFSET);
+    } else {
+      gl.glVertexAttribPointer(shader.position, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
+          vertexStride, base + POSITION_OFFSET);
+      gl.glVertexAttribPointer(
+          shader.normal, 3, GLES20.GL_FLOAT, false, vertexStride, base + NORMAL_OFFSET);
+      gl.glVertexAttribPointer(
+          shader.texCoord, 2, GLES20.GL_FLOAT, false, vertexStride, base + TEXCOORD_OFFSET);
+    }
+  }
+
+  private void unbind(ShaderProgram shader) {
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
 //    if (blendMode != null) {
-//      GLES20.glDisable(GLES20.GL_BLEND);
-//      GLES20.glDepthMask(true);
+//      gl.glDisable(GLES20.GL_BLEND);
+//      gl.glDepthMask(true);
 //    }
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glDisableVertexAttribArray(normalAttribute);
-    GLES20.glDisableVertexAttribArray(texCoordAttribute);
-
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glDisableVertexAttribArray(shader.position);
+    gl.glDisableVertexAttribArray(shader.normal);
+    gl.glDisableVertexAttribArray(shader.texCoord);
+    if (shader.instanceId >= 0) {
+      gl.glDisableVertexAttribArray(shader.instanceId);
+    }
 
-    ShaderUtil.checkGLError(TAG, "After draw");
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
   }
 
-  private static void normalizeVec3(float[] v) {
-    float reciprocalLength = 1.0f / (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
-    v[0] *= reciprocalLength;
-    v[1] *= reciprocalLength;
-    v[2] *= reciprocalLength;
-  }
+  /** A linked object program and its shader locations, -1 for those it does not use. */
+  private static final class ShaderProgram {
+    int program;
 
+    // Shader location: model view (projection) matrices.
+    int modelView;
+    int modelViewProjection;
+    int projection;
+
+    // Shader location: dequantization of the vertex attributes.
+    int positionScale;
+    int positionOffset;
+    int texCoordTransform;
+
+    // Shader location: object attributes.
+    int position;
+    int normal;
+    int texCoord;
+    int instanceId = -1;
+
+    // Shader location: texture sampler.
+    int texture;
+
+    // Shader location: environment and material properties.
+    int lightingParameters;
+    int materialParameters;
+
+    void load(ShaderCache.Program program) {
+      this.program = program.getId();
+      modelView = program.getUniformLocation("u_ModelView");
+      modelViewProjection = program.getUniformLocation("u_ModelViewProjection");
+      projection = program.getUniformLocation("u_Projection");
+
+      positionScale = program.getUniformLocation("u_PositionScale");
+      positionOffset = program.getUniformLocation("u_PositionOffset");
+      texCoordTransform = program.getUniformLocation("u_TexCoordTransform");
+
+      position = program.getAttribLocation("a_Position");
+      normal = program.getAttribLocation("a_Normal");
+      texCoord = program.getAttribLocation("a_TexCoord");
+      instanceId = program.getAttribLocation("a_InstanceId");
+
+      texture = program.getUniformLocation("u_Texture");
+
+      lightingParameters = program.getUniformLocation("u_LightingParameters");
+      materialParameters = program.getUniformLocation("u_MaterialParameters");
+    }
+  }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the tessellated mesh of each plane in GPU buffers, and tessellates and uploads it again
+ * only when the plane's polygon or extents change.
+ * 每个平面细分后的网格保存在VBO/IBO中，多边形没有变化时不再细分和上传。
+ *
+ * <p>Changes are detected with a fingerprint of the polygon and extents, which costs one pass over
+ * the polygon's floats. Not thread safe; must be used on the GL thread.
+ */
+public class PlaneMeshCache {
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
+
+  private final GlBackend gl;
+  private final PlaneTessellator tessellator;
+  private final Map<Object, Mesh> meshes = new HashMap<>();
+  private final int[] bufferNames = new int[2];
+
+  private long hitCount;
+  private long missCount;
+
+  public PlaneMeshCache(GlBackend gl) {
+    this(gl, new PlaneTessellator());
+  }
+
+  PlaneMeshCache(GlBackend gl, PlaneTessellator tessellator) {
+    this.gl = gl;
+    this.tessellator = tessellator;
+  }
+
+  /**
+   * Returns the mesh of {@code plane}, tessellating and uploading it first if this is a new plane
+   * or its polygon or extents changed. Leaves {@code GL_ARRAY_BUFFER} and {@code
+   * GL_ELEMENT_ARRAY_BUFFER} bound to the mesh's buffers when it uploads.
+   *
+   * @param plane Identifies the plane, such as an ARCore {@code Plane}.
+   * @param boundary The plane's polygon as {@code (x, z)} pairs, or null for an empty mesh.
+   */
+  public Mesh get(Object plane, float extentX, float extentZ, FloatBuffer boundary) {
+    long fingerprint = fingerprint(extentX, extentZ, boundary);
+    Mesh mesh = meshes.get(plane);
+    if (mesh != null && mesh.fingerprint == fingerprint) {
+      hitCount++;
+      return mesh;
+    }
+    missCount++;
+    if (mesh == null) {
+      mesh = new Mesh();
+      gl.glGenBuffers(2, bufferNames, 0);
+      mesh.vertexBufferId = bufferNames[0];
+      mesh.indexBufferId = bufferNames[1];
+      meshes.put(plane, mesh);
+    }
+    mesh.fingerprint = fingerprint;
+    upload(mesh, extentX, extentZ, boundary);
+    return mesh;
+  }
+
+  private void upload(Mesh mesh, float extentX, float extentZ, FloatBuffer boundary) {
+    tessellator.tessellate(extentX, extentZ, boundary);
+    FloatBuffer vertices = tessellator.getVertices();
+    ShortBuffer indices = tessellator.getIndices();
+    vertices.rewind();
+    indices.rewind();
+    int vertexBytes = BYTES_PER_FLOAT * vertices.limit();
+    int indexBytes = BYTES_PER_SHORT * indices.limit();
+    mesh.indexCount = indices.limit();
+
+    // Polygons usually change by a few vertices, so the buffers are reallocated only when they
+    // grow, with room to spare.
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.vertexBufferId);
+    if (vertexBytes > mesh.vertexCapacity) {
+      mesh.vertexCapacity = Math.max(vertexBytes * 2, mesh.vertexCapacity);
+      gl.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.vertexCapacity, null, GLES20.GL_DYNAMIC_DRAW);
+    }
+    if (vertexBytes > 0) {
+      gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, vertexBytes, vertices);
+    }
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBufferId);
+    if (indexBytes > mesh.indexCapacity) {
+      mesh.indexCapacity = Math.max(indexBytes * 2, mesh.indexCapacity);
+      gl.glBufferData(
+          GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexCapacity, null, GLES20.GL_DYNAMIC_DRAW);
+    }
+    if (indexBytes > 0) {
+      gl.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, indexBytes, indices);
+    }
+  }
+
+  /** Deletes the GPU buffers of {@code plane}, if it has any. */
+  public void release(Object plane) {
+    Mesh mesh = meshes.remove(plane);
+    if (mesh != null) {
+      bufferNames[0] = mesh.vertexBufferId;
+      bufferNames[1] = mesh.indexBufferId;
+      gl.glDeleteBuffers(2, bufferNames, 0);
+    }
+  }
+
+  /**
+   * Forgets every mesh without deleting its buffers, which went away with the previous context.
+   * Call when a new context is created.
+   */
+  public void invalidate() {
+    meshes.clear();
+  }
+
+  /** Number of planes with a mesh in GPU buffers. */
+  public int size() {
+    return meshes.size();
+  }
+
+  /** Number of requests served from the GPU buffers without tessellating. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Number of requests that tessellated and uploaded a mesh. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** A hash of the extents and every coordinate of the polygon. */
+  static long fingerprint(float extentX, float extentZ, FloatBuffer boundary) {
+    // FNV-1a over the raw bits, one int at a time.
+    long hash = 0xcbf29ce484222325L;
+    hash = (hash ^ Float.floatToRawIntBits(extentX)) * 0x100000001b3L;
+    hash = (hash ^ Float.floatToRawIntBits(extentZ)) * 0x100000001b3L;
+    if (boundary == null) {
+      return hash;
+    }
+    int count = boundary.limit();
+    hash = (hash ^ count) * 0x100000001b3L;
+    for (int i = 0; i < count; i++) {
+      hash = (hash ^ Float.floatToRawIntBits(boundary.get(i))) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * The GPU buffers of one plane: {@code (x, z, alpha)} vertices and triangle strip indices.
+   * 一个平面在GPU上的顶点和索引。
+   */
+  public static final class Mesh {
+    int vertexBufferId;
+    int indexBufferId;
+    int vertexCapacity;
+    int indexCapacity;
+    int indexCount;
+    long fingerprint;
+
+    public int getVertexBufferId() {
+      return vertexBufferId;
+    }
+
+    public int getIndexBufferId() {
+      return indexBufferId;
+    }
+
+    /** Number of {@code GL_UNSIGNED_SHORT} indices to draw as a triangle strip. */
+    public int getIndexCount() {
+      return indexCount;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the lifecycle of each plane and gives every live plane a small index, used to pick its
+ * color and grid angle. Planes that are subsumed, stopped or no longer reported are evicted at the
+ * end of the frame, and their index is given to the next new plane.
+ * 平面被合并、停止追踪或不再出现时释放它的下标和GPU资源，长时间运行时条目数不会一直增长。
+ *
+ * <p>Every plane the session reports must be passed to {@link #update} between {@link
+ * #beginFrame} and {@link #endFrame}; planes that were not are evicted as well. Not thread safe;
+ * must be used on the GL thread.
+ */
+public class PlaneRegistry {
+  /** Where a plane is in its lifecycle. */
+  public enum State {
+    /** First seen in this frame. */
+    NEW,
+    TRACKING,
+    /** Not tracked right now, but may be again; keeps its index. */
+    PAUSED,
+    /** Merged into another plane; evicted at the end of the frame. */
+    SUBSUMED,
+    /** Will never be tracked again; evicted at the end of the frame. */
+    STOPPED
+  }
+
+  /** Called from {@link #endFrame} for each evicted plane. */
+  public interface Listener {
+    /** Releases what was kept for {@code plane}, such as its mesh buffers. */
+    void onPlaneEvicted(Object plane);
+  }
+
+  private static final class Entry {
+    Object plane;
+    int index;
+    State state;
+    long lastSeenFrame;
+  }
+
+  private final Listener listener;
+  private final Map<Object, Entry> entries = new HashMap<>();
+  // Same entries as the map, so they can be swept without an iterator.
+  private final ArrayList<Entry> live = new ArrayList<>();
+  // Entries of evicted planes, reused for new planes.
+  private final ArrayList<Entry> free = new ArrayList<>();
+  private final BitSet usedIndices = new BitSet();
+
+  private long frame;
+  private long evictedCount;
+
+  /** @param listener Told about evicted planes, or null. */
+  public PlaneRegistry(Listener listener) {
+    this.listener = listener;
+  }
+
+  /** Call before the first {@link #update} of a frame. */
+  public void beginFrame() {
+    frame++;
+  }
+
+  /**
+   * Records the state of {@code plane} in this frame.
+   *
+   * @param plane Identifies the plane, such as an ARCore {@code Plane}.
+   * @param state As reported by the session; {@link State#NEW} is the same as {@link
+   *     State#TRACKING}.
+   * @return The plane's index, stable for as long as it is live and the lowest free one when it
+   *     is new, or -1 if the plane is subsumed or stopped.
+   */
+  public int update(Object plane, State state) {
+    Entry entry = entries.get(plane);
+    if (state == State.SUBSUMED || state == State.STOPPED) {
+      // Dead planes stay in the session's list for a while; they are not registered again.
+      if (entry != null) {
+        entry.state = state;
+        entry.lastSeenFrame = frame;
+      }
+      return -1;
+    }
+    if (entry == null) {
+      entry = free.isEmpty() ? new Entry() : free.remove(free.size() - 1);
+      entry.plane = plane;
+      entry.index = usedIndices.nextClearBit(0);
+      entry.state = State.NEW;
+      usedIndices.set(entry.index);
+      entries.put(plane, entry);
+      live.add(entry);
+    } else {
+      entry.state = state == State.PAUSED ? State.PAUSED : State.TRACKING;
+    }
+    entry.lastSeenFrame = frame;
+    return entry.index;
+  }
+
+  /** Evicts the planes that are subsumed, stopped or were not updated in this frame. */
+  public void endFrame() {
+    for (int i = live.size() - 1; i >= 0; i--) {
+      Entry entry = live.get(i);
+      if (entry.lastSeenFrame == frame
+          && entry.state != State.SUBSUMED
+          && entry.state != State.STOPPED) {
+        continue;
+      }
+      int last = live.size() - 1;
+      live.set(i, live.get(last));
+      live.remove(last);
+      entries.remove(entry.plane);
+      usedIndices.clear(entry.index);
+      evictedCount++;
+      if (listener != null) {
+        listener.onPlaneEvicted(entry.plane);
+      }
+      // Do not keep the plane alive.
+      entry.plane = null;
+      free.add(entry);
+    }
+  }
+
+  /** The state of {@code plane}, or null if it is not registered. */
+  public State getState(Object plane) {
+    Entry entry = entries.get(plane);
+    return entry != null ? entry.state : null;
+  }
+
+  /** The index of {@code plane}, or -1 if it is not registered. */
+  public int getIndex(Object plane) {
+    Entry entry = entries.get(plane);
+    return entry != null ? entry.index : -1;
+  }
+
+  /** Number of registered planes. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Number of planes evicted since this was created. */
+  public long getEvictedCount() {
+    return evictedCount;
+  }
+}
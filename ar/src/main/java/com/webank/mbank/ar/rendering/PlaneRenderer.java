@@ -15,58 +15,32 @@
 package com.webank.mbank.ar.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
 
-import com.google.ar.core.Camera;
-import com.google.ar.core.Plane;
-import com.google.ar.core.Pose;
-import com.google.ar.core.TrackingState;
 import com.webank.mbank.ar.R;
+import com.webank.mbank.ar.math.Mat4;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 
-/** Renders the detected AR planes. */
+/**
+ * Renders the detected AR planes. Planes are read through a {@link PlaneSource}, {@link
+ * ArCorePlaneSource} for the planes of an ARCore session.
+ */
 public class PlaneRenderer {
   private static final String TAG = PlaneRenderer.class.getSimpleName();
 
   private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
-  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
-  private static final int COORDS_PER_VERTEX = 3; // x, z, alpha
-
-  private static final int VERTS_PER_BOUNDARY_VERT = 2;
-  private static final int INDICES_PER_BOUNDARY_VERT = 3;
-  private static final int INITIAL_BUFFER_BOUNDARY_VERTS = 64;
-
-  private static final int INITIAL_VERTEX_BUFFER_SIZE_BYTES =
-      BYTES_PER_FLOAT * COORDS_PER_VERTEX * VERTS_PER_BOUNDARY_VERT * INITIAL_BUFFER_BOUNDARY_VERTS;
+  private static final int COORDS_PER_VERTEX = PlaneTessellator.COORDS_PER_VERTEX;
 
-  private static final int INITIAL_INDEX_BUFFER_SIZE_BYTES =
-      BYTES_PER_SHORT
-          * INDICES_PER_BOUNDARY_VERT
-          * INDICES_PER_BOUNDARY_VERT
-          * INITIAL_BUFFER_BOUNDARY_VERTS;
+  private static final int INITIAL_SORTED_PLANES = 8;
 
-  private static final float FADE_RADIUS_M = 0.25f;
   private static final float DOTS_PER_METER = 10.0f;
   private static final float EQUILATERAL_TRIANGLE_SCALE = (float) (1 / Math.sqrt(3));
 
@@ -77,6 +51,10 @@ public class PlaneRenderer {
   // occlusionShrink: occluded planes will fade out between alpha = 0 and 1/occlusionShrink
   private static final float[] GRID_CONTROL = {0.2f, 0.4f, 2.0f, 1.5f};
 
+  private final GlBackend gl;
+  private final ShaderCache shaders;
+  private final GlDiagnostics diagnostics;
+
   private int planeProgram;
   private final int[] textures = new int[1];
 
@@ -90,14 +68,8 @@ public class PlaneRenderer {
   private int gridControlUniform;
   private int planeUvMatrixUniform;
 
-  private FloatBuffer vertexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
-          .order(ByteOrder.nativeOrder())
-          .asFloatBuffer();
-  private ShortBuffer indexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_INDEX_BUFFER_SIZE_BYTES)
-          .order(ByteOrder.nativeOrder())
-          .asShortBuffer();
+  // Tessellated planes in GPU buffers, rebuilt only when a plane's polygon changes.
+  private final PlaneMeshCache meshCache;
 
   // Temporary lists/matrices allocated here to reduce number of allocations for each frame.
   private final float[] modelMatrix = new float[16];
@@ -107,9 +79,37 @@ public class PlaneRenderer {
   private final float[] planeAngleUvMatrix =
       new float[4]; // 2x2 rotation matrix applied to uv coords.
 
-  private final Map<Plane, Integer> planeIndexMap = new HashMap<>();
+  private SortablePlane[] sortedPlanes = newSortablePlanes(INITIAL_SORTED_PLANES);
+
+  // Gives each live plane the same color and angle every frame, and frees its mesh once dead.
+  private final PlaneRegistry registry;
 
-  public PlaneRenderer() {}
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   */
+  public PlaneRenderer(GlBackend gl) {
+    this(gl, new ShaderCache(gl), new GlDiagnostics(gl));
+  }
+
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   * @param shaders Where the program is linked or loaded from.
+   * @param diagnostics Checks for GL errors while drawing.
+   */
+  public PlaneRenderer(GlBackend gl, ShaderCache shaders, GlDiagnostics diagnostics) {
+    this.gl = gl;
+    this.shaders = shaders;
+    this.diagnostics = diagnostics;
+    meshCache = new PlaneMeshCache(gl);
+    registry =
+        new PlaneRegistry(
+            new PlaneRegistry.Listener() {
+              @Override
+              public void onPlaneEvicted(Object plane) {
+                meshCache.release(plane);
+              }
+            });
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -119,272 +119,253 @@ public class PlaneRenderer {
    * @param gridDistanceTextureName Name of the PNG file containing the grid texture.
    */
   public void createOnGlThread(Context context, String gridDistanceTextureName) throws IOException {
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, R.raw.plane_vertex);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, R.raw.plane_fragment);
-
-    planeProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(planeProgram, vertexShader);
-    GLES20.glAttachShader(planeProgram, passthroughShader);
-    GLES20.glLinkProgram(planeProgram);
-    GLES20.glUseProgram(planeProgram);
-
-    ShaderUtil.checkGLError(TAG, "Program creation");
-
-    // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(gridDistanceTextureName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
-
-    planeXZPositionAlphaAttribute = GLES20.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
-
-    planeModelUniform = GLES20.glGetUniformLocation(planeProgram, "u_Model");
-    planeModelViewProjectionUniform =
-        GLES20.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
-    textureUniform = GLES20.glGetUniformLocation(planeProgram, "u_Texture");
-    lineColorUniform = GLES20.glGetUniformLocation(planeProgram, "u_lineColor");
-    dotColorUniform = GLES20.glGetUniformLocation(planeProgram, "u_dotColor");
-    gridControlUniform = GLES20.glGetUniformLocation(planeProgram, "u_gridControl");
-    planeUvMatrixUniform = GLES20.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
-
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    createOnGlThread(
+        context,
+        decodeTexture(context, gridDistanceTextureName, TextureData.isEtc1Supported(gl)));
   }
 
-  /** Updates the plane model transform matrix and extents. */
-  private void updatePlaneParameters(
-      float[] planeMatrix, float extentX, float extentZ, FloatBuffer boundary) {
-    System.arraycopy(planeMatrix, 0, modelMatrix, 0, 16);
-    if (boundary == null) {
-      vertexBuffer.limit(0);
-      indexBuffer.limit(0);
-      return;
-    }
+  /**
+   * Reads the grid texture without touching GL, so it can run on any thread.
+   * 可以在后台线程读取，再交给 {@link #createOnGlThread(Context, TextureData)} 上传。
+   *
+   * @param gridDistanceTextureName Name of the PNG file containing the grid texture. A KTX file
+   *     with the same name is used instead when there is one and {@code compressedSupported}.
+   * @param compressedSupported Result of {@link TextureData#isEtc1Supported} on the GL thread.
+   */
+  public static TextureData decodeTexture(
+      Context context, String gridDistanceTextureName, boolean compressedSupported)
+      throws IOException {
+    return TextureData.load(context.getAssets(), gridDistanceTextureName, compressedSupported);
+  }
 
-    // Generate a new set of vertices and a corresponding triangle strip index set so that
-    // the plane boundary polygon has a fading edge. This is done by making a copy of the
-    // boundary polygon vertices and scaling it down around center to push it inwards. Then
-    // the index buffer is setup accordingly.
-    boundary.rewind();
-    int boundaryVertices = boundary.limit() / 2;
-    int numVertices;
-    int numIndices;
-
-    numVertices = boundaryVertices * VERTS_PER_BOUNDARY_VERT;
-    // drawn as GL_TRIANGLE_STRIP with 3n-2 triangles (n-2 for fill, 2n for perimeter).
-    numIndices = boundaryVertices * INDICES_PER_BOUNDARY_VERT;
-
-    if (vertexBuffer.capacity() < numVertices * COORDS_PER_VERTEX) {
-      int size = vertexBuffer.capacity();
-      while (size < numVertices * COORDS_PER_VERTEX) {
-        size *= 2;
-      }
-      vertexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_FLOAT * size)
-              .order(ByteOrder.nativeOrder())
-              .asFloatBuffer();
-    }
-    vertexBuffer.rewind();
-    vertexBuffer.limit(numVertices * COORDS_PER_VERTEX);
+  /**
+   * Same as {@link #createOnGlThread(Context, String)} with a texture from {@link
+   * #decodeTexture}, which is released once uploaded.
+   */
+  public void createOnGlThread(Context context, TextureData texture) throws IOException {
+    loadProgram(shaders.get(context, R.raw.plane_vertex, R.raw.plane_fragment, ""));
 
-    if (indexBuffer.capacity() < numIndices) {
-      int size = indexBuffer.capacity();
-      while (size < numIndices) {
-        size *= 2;
-      }
-      indexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_SHORT * size)
-              .order(ByteOrder.nativeOrder())
-              .asShortBuffer();
-    }
-    indexBuffer.rewind();
-    indexBuffer.limit(numIndices);
-
-    // Note: when either dimension of the bounding box is smaller than 2*FADE_RADIUS_M we
-    // generate a bunch of 0-area triangles.  These don't get rendered though so it works
-    // out ok.
-    float xScale = Math.max((extentX - 2 * FADE_RADIUS_M) / extentX, 0.0f);
-    float zScale = Math.max((extentZ - 2 * FADE_RADIUS_M) / extentZ, 0.0f);
-
-    while (boundary.hasRemaining()) {
-      float x = boundary.get();
-      float z = boundary.get();
-      vertexBuffer.put(x);
-      vertexBuffer.put(z);
-      vertexBuffer.put(0.0f);
-      vertexBuffer.put(x * xScale);
-      vertexBuffer.put(z * zScale);
-      vertexBuffer.put(1.0f);
-    }
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glGenTextures(textures.length, textures, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
 
-    // step 1, perimeter
-    indexBuffer.put((short) ((boundaryVertices - 1) * 2));
-    for (int i = 0; i < boundaryVertices; ++i) {
-      indexBuffer.put((short) (i * 2));
-      indexBuffer.put((short) (i * 2 + 1));
-    }
-    indexBuffer.put((short) 1);
-    // This leaves us on the interior edge of the perimeter between the inset vertices
-    // for boundary verts n-1 and 0.
-
-    // step 2, interior:
-    for (int i = 1; i < boundaryVertices / 2; ++i) {
-      indexBuffer.put((short) ((boundaryVertices - 1 - i) * 2 + 1));
-      indexBuffer.put((short) (i * 2 + 1));
-    }
-    if (boundaryVertices % 2 != 0) {
-      indexBuffer.put((short) ((boundaryVertices / 2) * 2 + 1));
-    }
+    texture.upload(gl);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    diagnostics.check(TAG, "Texture loading");
+  }
+
+  /**
+   * Uses a program that is already linked in place of the shader step of {@link
+   * #createOnGlThread(Context, TextureData)}, without a grid texture.
+   */
+  void loadProgram(int programId) {
+    loadProgram(new ShaderCache.Program(gl, programId));
+  }
+
+  private void loadProgram(ShaderCache.Program program) {
+    // Buffers of the previous context are gone.
+    meshCache.invalidate();
+
+    planeProgram = program.getId();
+    gl.glUseProgram(planeProgram);
+
+    diagnostics.check(TAG, "Program creation");
+
+    planeXZPositionAlphaAttribute = program.getAttribLocation("a_XZPositionAlpha");
+
+    planeModelUniform = program.getUniformLocation("u_Model");
+    planeModelViewProjectionUniform = program.getUniformLocation("u_ModelViewProjection");
+    textureUniform = program.getUniformLocation("u_Texture");
+    lineColorUniform = program.getUniformLocation("u_lineColor");
+    dotColorUniform = program.getUniformLocation("u_dotColor");
+    gridControlUniform = program.getUniformLocation("u_gridControl");
+    planeUvMatrixUniform = program.getUniformLocation("u_PlaneUvMatrix");
+
+    diagnostics.check(TAG, "Program parameters");
+  }
+
+  /** Updates the plane model transform matrix and extents. */
+  private PlaneMeshCache.Mesh updatePlaneParameters(
+      Object plane, float[] planeMatrix, float extentX, float extentZ, FloatBuffer boundary) {
+    System.arraycopy(planeMatrix, 0, modelMatrix, 0, 16);
+    return meshCache.get(plane, extentX, extentZ, boundary);
   }
 
-  private void draw(float[] cameraView, float[] cameraPerspective) {
+  private void draw(PlaneMeshCache.Mesh mesh, float[] cameraView, float[] cameraPerspective) {
     // Build the ModelView and ModelViewProjection matrices
     // for calculating cube position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    Mat4.modelViewProjection(
+        modelViewMatrix, modelViewProjectionMatrix, cameraPerspective, cameraView, modelMatrix);
 
     // Set the position of the plane
-    vertexBuffer.rewind();
-    GLES20.glVertexAttribPointer(
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getVertexBufferId());
+    gl.glVertexAttribPointer(
         planeXZPositionAlphaAttribute,
         COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
         false,
         BYTES_PER_FLOAT * COORDS_PER_VERTEX,
-        vertexBuffer);
+        0);
 
     // Set the Model and ModelViewProjection matrices in the shader.
-    GLES20.glUniformMatrix4fv(planeModelUniform, 1, false, modelMatrix, 0);
-    GLES20.glUniformMatrix4fv(
+    gl.glUniformMatrix4fv(planeModelUniform, 1, false, modelMatrix, 0);
+    gl.glUniformMatrix4fv(
         planeModelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
 
-    indexBuffer.rewind();
-    GLES20.glDrawElements(
-        GLES20.GL_TRIANGLE_STRIP, indexBuffer.limit(), GLES20.GL_UNSIGNED_SHORT, indexBuffer);
-    ShaderUtil.checkGLError(TAG, "Drawing plane");
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexBufferId());
+    gl.glDrawElements(
+        GLES20.GL_TRIANGLE_STRIP, mesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+    diagnostics.check(TAG, "Drawing plane");
+  }
+
+  /** The GPU meshes of the planes, with their hit and miss counts. */
+  public PlaneMeshCache getMeshCache() {
+    return meshCache;
+  }
+
+  /** The planes that were given a color, with their lifecycle. */
+  public PlaneRegistry getPlaneRegistry() {
+    return registry;
   }
 
   static class SortablePlane {
-    final float distance;
-    final Plane plane;
+    float distance;
+    Object plane;
+    int index;
+  }
 
-    SortablePlane(float distance, Plane plane) {
-      this.distance = distance;
-      this.plane = plane;
-    }
+  /**
+   * Reads the planes passed to {@link #drawPlanes}, so that they can come from an ARCore session or
+   * from a recorded trace.
+   *
+   * @param <P> Type of the planes. Each plane must be the same object for as long as it lives, as
+   *     it keys the plane's color and mesh.
+   */
+  public interface PlaneSource<P> {
+    PlaneRegistry.State getState(P plane);
+
+    /** Writes the plane's center pose to {@code matrix} as a column-major 4x4 matrix. */
+    void getCenterPose(P plane, float[] matrix);
+
+    float getExtentX(P plane);
+
+    float getExtentZ(P plane);
+
+    /** The plane's polygon as {@code (x, z)} pairs around its center. */
+    FloatBuffer getPolygon(P plane);
   }
 
   /**
-   * Draws the collection of tracked planes, with closer planes hiding more distant ones.
+   * Draws the list of tracked planes, with closer planes hiding more distant ones.
    *
-   * @param allPlanes The collection of planes to draw.
-   * @param cameraPose The pose of the camera, as returned by {@link Camera#getPose()}
-   * @param cameraPerspective The projection matrix, as returned by {@link
-   *     Camera#getProjectionMatrix(float[], int, float, float)}
+   * @param allPlanes The list of planes to draw. Must be every plane of the session, as planes
+   *     missing from it are evicted from the {@link #getPlaneRegistry registry}.
+   * @param source Reads the planes.
+   * @param cameraPose The pose of the camera as a 4x4 matrix, as written by {@code
+   *     Camera.getDisplayOrientedPose().toMatrix()}.
+   * @param cameraPerspective The projection matrix, as returned by {@code
+   *     Camera.getProjectionMatrix(float[], int, float, float)}
+   * @param arena Scratch storage of the current frame.
    */
-  public void drawPlanes(Collection<Plane> allPlanes, Pose cameraPose, float[] cameraPerspective) {
+  public <P> void drawPlanes(
+      List<? extends P> allPlanes,
+      PlaneSource<? super P> source,
+      float[] cameraPose,
+      float[] cameraPerspective,
+      FrameArena arena) {
     // Planes must be sorted by distance from camera so that we draw closer planes first, and
     // they occlude the farther planes.
-    List<SortablePlane> sortedPlanes = new ArrayList<>();
-    float[] normal = new float[3];
-    float cameraX = cameraPose.tx();
-    float cameraY = cameraPose.ty();
-    float cameraZ = cameraPose.tz();
-    for (Plane plane : allPlanes) {
-      if (plane.getTrackingState() != TrackingState.TRACKING || plane.getSubsumedBy() != null) {
+    float[] planeMatrix = arena.mat4();
+    float cameraX = cameraPose[12];
+    float cameraY = cameraPose[13];
+    float cameraZ = cameraPose[14];
+    int planeCount = 0;
+    registry.beginFrame();
+    // Indexed, so that no iterator is allocated every frame.
+    for (int i = 0; i < allPlanes.size(); i++) {
+      P plane = allPlanes.get(i);
+      // Back-facing and paused planes are registered too, so they keep their color.
+      PlaneRegistry.State state = source.getState(plane);
+      int planeIndex = registry.update(plane, state);
+      if (state != PlaneRegistry.State.TRACKING) {
         continue;
       }
 
-      Pose center = plane.getCenterPose();
-      // Get transformed Y axis of plane's coordinate system.
-      center.getTransformedAxis(1, 1.0f, normal, 0);
-      // Compute dot product of plane's normal with vector from camera to plane center.
+      // The second column is the transformed Y axis of plane's coordinate system, the fourth
+      // its center. Compute dot product of plane's normal with vector from camera to plane center.
+      source.getCenterPose(plane, planeMatrix);
       float distance =
-          (cameraX - center.tx()) * normal[0]
-              + (cameraY - center.ty()) * normal[1]
-              + (cameraZ - center.tz()) * normal[2];
+          (cameraX - planeMatrix[12]) * planeMatrix[4]
+              + (cameraY - planeMatrix[13]) * planeMatrix[5]
+              + (cameraZ - planeMatrix[14]) * planeMatrix[6];
       if (distance < 0) { // Plane is back-facing.
         continue;
       }
-      sortedPlanes.add(new SortablePlane(distance, plane));
+      insertSorted(planeCount++, distance, plane, planeIndex);
     }
-    Collections.sort(
-        sortedPlanes,
-        new Comparator<SortablePlane>() {
-          @Override
-          public int compare(SortablePlane a, SortablePlane b) {
-            return Float.compare(a.distance, b.distance);
-          }
-        });
-
-    float[] cameraView = new float[16];
-    cameraPose.inverse().toMatrix(cameraView, 0);
+    // Frees the meshes of planes that are gone.
+    registry.endFrame();
+
+    // The inverse of the camera pose is the view matrix. The pose is a rotation and a
+    // translation, so its inverse needs no general matrix inversion.
+    float[] cameraView = arena.mat4();
+    Mat4.invertRigid(cameraView, cameraPose);
 
     // Planes are drawn with additive blending, masked by the alpha channel for occlusion.
 
     // Start by clearing the alpha channel of the color buffer to 1.0.
-    GLES20.glClearColor(1, 1, 1, 1);
-    GLES20.glColorMask(false, false, false, true);
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-    GLES20.glColorMask(true, true, true, true);
+    gl.glClearColor(1, 1, 1, 1);
+    gl.glColorMask(false, false, false, true);
+    gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    gl.glColorMask(true, true, true, true);
 
     // Disable depth write.
-    GLES20.glDepthMask(false);
+    gl.glDepthMask(false);
 
     // Additive blending, masked by alpha channel, clearing alpha channel.
-    GLES20.glEnable(GLES20.GL_BLEND);
-    GLES20.glBlendFuncSeparate(
+    gl.glEnable(GLES20.GL_BLEND);
+    gl.glBlendFuncSeparate(
         GLES20.GL_DST_ALPHA, GLES20.GL_ONE, // RGB (src, dest)
         GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA); // ALPHA (src, dest)
 
     // Set up the shader.
-    GLES20.glUseProgram(planeProgram);
+    gl.glUseProgram(planeProgram);
 
     // Attach the texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
 
     // Shared fragment uniforms.
-    GLES20.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
+    gl.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
-
-    ShaderUtil.checkGLError(TAG, "Setting up to draw planes");
-
-    for (SortablePlane sortedPlane : sortedPlanes) {
-      Plane plane = sortedPlane.plane;
-      float[] planeMatrix = new float[16];
-      plane.getCenterPose().toMatrix(planeMatrix, 0);
-
-      updatePlaneParameters(
-          planeMatrix, plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
-
-      // Get plane index. Keep a map to assign same indices to same planes.
-      Integer planeIndex = planeIndexMap.get(plane);
-      if (planeIndex == null) {
-        planeIndex = planeIndexMap.size();
-        planeIndexMap.put(plane, planeIndex);
-      }
+    gl.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
+
+    diagnostics.check(TAG, "Setting up to draw planes");
+
+    for (int i = 0; i < planeCount; i++) {
+      @SuppressWarnings("unchecked")
+      P plane = (P) sortedPlanes[i].plane;
+      int planeIndex = sortedPlanes[i].index;
+      // Do not keep the plane alive after this frame.
+      sortedPlanes[i].plane = null;
+      source.getCenterPose(plane, planeMatrix);
+
+      PlaneMeshCache.Mesh mesh =
+          updatePlaneParameters(
+              plane,
+              planeMatrix,
+              source.getExtentX(plane),
+              source.getExtentZ(plane),
+              source.getPolygon(plane));
 
       // Set plane color. Computed deterministically from the Plane index.
       int colorIndex = planeIndex % PLANE_COLORS_RGBA.length;
       colorRgbaToFloat(planeColor, PLANE_COLORS_RGBA[colorIndex]);
-      GLES20.glUniform4fv(lineColorUniform, 1, planeColor, 0);
-      GLES20.glUniform4fv(dotColorUniform, 1, planeColor, 0);
+      gl.glUniform4fv(lineColorUniform, 1, planeColor, 0);
+      gl.glUniform4fv(dotColorUniform, 1, planeColor, 0);
 
       // Each plane will have its own angle offset from others, to make them easier to
       // distinguish. Compute a 2x2 rotation matrix from the angle.
@@ -395,17 +376,45 @@ public class PlaneRenderer {
       planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
       planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
       planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
-      GLES20.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
+      gl.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
 
-      draw(cameraView, cameraPerspective);
+      draw(mesh, cameraView, cameraPerspective);
     }
 
     // Clean up the state we set
-    GLES20.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-    GLES20.glDisable(GLES20.GL_BLEND);
-    GLES20.glDepthMask(true);
-    ShaderUtil.checkGLError(TAG, "Cleaning up after drawing planes");
+    gl.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glDisable(GLES20.GL_BLEND);
+    gl.glDepthMask(true);
+    diagnostics.check(TAG, "Cleaning up after drawing planes");
+  }
+
+  /**
+   * Inserts a plane into the first {@code count} entries of {@link #sortedPlanes}, keeping them
+   * ordered by distance. Only a handful of planes are tracked at any time, so an insertion sort over
+   * the reused entries is cheaper than sorting a freshly allocated list.
+   */
+  private void insertSorted(int count, float distance, Object plane, int index) {
+    if (count == sortedPlanes.length) {
+      SortablePlane[] grown = new SortablePlane[sortedPlanes.length * 2];
+      System.arraycopy(sortedPlanes, 0, grown, 0, sortedPlanes.length);
+      for (int i = sortedPlanes.length; i < grown.length; i++) {
+        grown[i] = new SortablePlane();
+      }
+      sortedPlanes = grown;
+    }
+    SortablePlane free = sortedPlanes[count];
+    int i = count;
+    while (i > 0 && sortedPlanes[i - 1].distance > distance) {
+      sortedPlanes[i] = sortedPlanes[i - 1];
+      i--;
+    }
+    free.distance = distance;
+    free.plane = plane;
+    free.index = index;
+    sortedPlanes[i] = free;
   }
 
   private static void colorRgbaToFloat(float[] planeColor, int colorRgba) {
@@ -415,6 +424,14 @@ public class PlaneRenderer {
     planeColor[3] = ((float) ((colorRgba >> 0) & 0xff)) / 255.0f;
   }
 
+  private static SortablePlane[] newSortablePlanes(int count) {
+    SortablePlane[] planes = new SortablePlane[count];
+    for (int i = 0; i < count; i++) {
+      planes[i] = new SortablePlane();
+    }
+    return planes;
+  }
+
   private static final int[] PLANE_COLORS_RGBA = {
     0xFFFFFFFF,
     0xF44336FF,
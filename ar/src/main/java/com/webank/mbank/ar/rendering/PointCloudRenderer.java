@@ -17,10 +17,11 @@ package com.webank.mbank.ar.rendering;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 
-import com.google.ar.core.PointCloud;
 import com.webank.mbank.ar.R;
+import com.webank.mbank.ar.math.Mat4;
+
+import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -29,13 +30,17 @@ import javax.microedition.khronos.opengles.GL10;
 
 /** Renders a point cloud. */
 public class PointCloudRenderer {
-  private static final String TAG = PointCloud.class.getSimpleName();
+  private static final String TAG = PointCloudRenderer.class.getSimpleName();
 
   private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
   private static final int FLOATS_PER_POINT = 4; // X,Y,Z,confidence.
   private static final int BYTES_PER_POINT = BYTES_PER_FLOAT * FLOATS_PER_POINT;
   private static final int INITIAL_BUFFER_POINTS = 1000;
 
+  private final GlBackend gl;
+  private final ShaderCache shaders;
+  private final GlDiagnostics diagnostics;
+
   private int vbo;
   private int vboSize;
 
@@ -49,9 +54,25 @@ public class PointCloudRenderer {
 
   // Keep track of the last point cloud rendered to avoid updating the VBO if point cloud
   // was not changed.
-  private PointCloud lastPointCloud = null;
+  private long lastTimestamp = -1;
 
-  public PointCloudRenderer() {}
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   */
+  public PointCloudRenderer(GlBackend gl) {
+    this(gl, new ShaderCache(gl), new GlDiagnostics(gl));
+  }
+
+  /**
+   * @param gl Backend through which all GL calls are issued.
+   * @param shaders Where the program is linked or loaded from.
+   * @param diagnostics Checks for GL errors while drawing.
+   */
+  public PointCloudRenderer(GlBackend gl, ShaderCache shaders, GlDiagnostics diagnostics) {
+    this.gl = gl;
+    this.shaders = shaders;
+    this.diagnostics = diagnostics;
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -60,72 +81,78 @@ public class PointCloudRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context) {
-    ShaderUtil.checkGLError(TAG, "before create");
+    createOnGlThread(shaders.get(context, R.raw.point_cloud_vertex, R.raw.passthrough_fragment, ""));
+  }
+
+  /**
+   * Uses a program that is already linked in place of the shader step of {@link
+   * #createOnGlThread(Context)}.
+   */
+  void loadProgram(int programId) {
+    createOnGlThread(new ShaderCache.Program(gl, programId));
+  }
+
+  private void createOnGlThread(ShaderCache.Program program) {
+    diagnostics.check(TAG, "before create");
 
     int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
+    gl.glGenBuffers(1, buffers, 0);
     //创建一个buffer，不断通过GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo)和GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
     //重复利用该buffer
     vbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
 
     vboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "buffer alloc");
+    diagnostics.check(TAG, "buffer alloc");
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, R.raw.point_cloud_vertex);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(
-            TAG, context, GLES20.GL_FRAGMENT_SHADER, R.raw.passthrough_fragment);
+    programName = program.getId();
+    gl.glUseProgram(programName);
 
-    programName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(programName, vertexShader);
-    GLES20.glAttachShader(programName, passthroughShader);
-    GLES20.glLinkProgram(programName);
-    GLES20.glUseProgram(programName);
+    diagnostics.check(TAG, "program");
 
-    ShaderUtil.checkGLError(TAG, "program");
+    positionAttribute = program.getAttribLocation("a_Position");
+    colorUniform = program.getUniformLocation("u_Color");
+    modelViewProjectionUniform = program.getUniformLocation("u_ModelViewProjection");
+    pointSizeUniform = program.getUniformLocation("u_PointSize");
 
-    positionAttribute = GLES20.glGetAttribLocation(programName, "a_Position");
-    colorUniform = GLES20.glGetUniformLocation(programName, "u_Color");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(programName, "u_ModelViewProjection");
-    pointSizeUniform = GLES20.glGetUniformLocation(programName, "u_PointSize");
-
-    ShaderUtil.checkGLError(TAG, "program  params");
+    diagnostics.check(TAG, "program  params");
   }
 
   /**
    * Updates the OpenGL buffer contents to the provided point. Repeated calls with the same point
    * cloud will be ignored.
    * 将OpenGL缓冲区内容更新为提供的点。使用同一个点云的重复呼叫将被忽略
+   *
+   * @param timestamp Identifies the point cloud, as returned by {@code PointCloud.getTimestamp()}.
+   * @param points X, Y, Z and confidence of each point, as returned by {@code
+   *     PointCloud.getPoints()}.
    */
-  public void update(PointCloud cloud) {
-    if (lastPointCloud == cloud) {
+  public void update(long timestamp, FloatBuffer points) {
+    if (lastTimestamp == timestamp) {
       // Redundant call.
       return;
     }
 
-    ShaderUtil.checkGLError(TAG, "before update");
+    diagnostics.check(TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-    lastPointCloud = cloud;
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    lastTimestamp = timestamp;
 
     // If the VBO is not large enough to fit the new point cloud, resize it.
-    numPoints = lastPointCloud.getPoints().remaining() / FLOATS_PER_POINT;
+    numPoints = points.remaining() / FLOATS_PER_POINT;
     if (numPoints * BYTES_PER_POINT > vboSize) {
       while (numPoints * BYTES_PER_POINT > vboSize) {
         vboSize *= 2;
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
     }
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, lastPointCloud.getPoints());
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, points);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "after update");
+    diagnostics.check(TAG, "after update");
   }
 
   /**
@@ -135,27 +162,28 @@ public class PointCloudRenderer {
    *     com.google.ar.core.Camera#getViewMatrix(float[], int)}.
    * @param cameraPerspective the camera projection matrix for this frame, typically from {@link
    *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
+   * @param arena scratch storage of the current frame.
    */
-  public void draw(float[] cameraView, float[] cameraPerspective) {
-    float[] modelViewProjection = new float[16];
-    Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+  public void draw(float[] cameraView, float[] cameraPerspective, FrameArena arena) {
+    float[] modelViewProjection = arena.mat4();
+    Mat4.multiplyByAffine(modelViewProjection, cameraPerspective, cameraView);
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    diagnostics.check(TAG, "Before draw");
 
-    GLES20.glUseProgram(programName);
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    gl.glUseProgram(programName);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
     //因为实际数据保存在 GPU 的 VBO 中,那么 pointer 就传入一个偏移,意思就是从 VBO 的某一位开始,
     // 从之后的那些数值读取 stride 或者 size 为一个单元,将 size 个数值为有效数据,顶点数个单元的值作为 attribute 的值。
-    GLES20.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
-    GLES20.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(pointSizeUniform, 5.0f);
+    gl.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
+    gl.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
+    gl.glUniform1f(pointSizeUniform, 5.0f);
 
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    diagnostics.check(TAG, "Draw");
   }
 }
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Counts the calls made through it and forwards them to another backend.
+ * 统计每帧的GL调用次数、上传的字节数和状态切换次数，再转发给另一个实现。
+ *
+ * <p>Wrap {@link NoOpGlBackend} to measure the GL traffic of a frame in a JVM test, or {@link
+ * Gles20Backend} to count on device. Counters cover everything since the last {@link
+ * #beginFrame()}. Bytes uploaded include buffer and texture uploads as well as client-side vertex
+ * and index arrays, which are re-sent on every draw.
+ */
+public class RecordingGlBackend implements GlBackend {
+  private final GlBackend delegate;
+
+  private int calls;
+  private int drawCalls;
+  private int stateChanges;
+  private int uniformUpdates;
+  private long bytesUploaded;
+
+  public RecordingGlBackend(GlBackend delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Resets all counters. */
+  public void beginFrame() {
+    calls = 0;
+    drawCalls = 0;
+    stateChanges = 0;
+    uniformUpdates = 0;
+    bytesUploaded = 0;
+  }
+
+  /** Number of GL calls of any kind. */
+  public int getCalls() {
+    return calls;
+  }
+
+  public int getDrawCalls() {
+    return drawCalls;
+  }
+
+  /** Binds, enables, blend/depth/color masks, vertex attribute setup and the like. */
+  public int getStateChanges() {
+    return stateChanges;
+  }
+
+  public int getUniformUpdates() {
+    return uniformUpdates;
+  }
+
+  public long getBytesUploaded() {
+    return bytesUploaded;
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    calls++;
+    stateChanges++;
+    delegate.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    calls++;
+    delegate.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    calls++;
+    stateChanges++;
+    delegate.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    calls++;
+    stateChanges++;
+    delegate.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+    calls++;
+    stateChanges++;
+    delegate.glBlendFuncSeparate(srcRgb, dstRgb, srcAlpha, dstAlpha);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    calls++;
+    bytesUploaded += size;
+    delegate.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    calls++;
+    bytesUploaded += size;
+    delegate.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    calls++;
+    delegate.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    calls++;
+    stateChanges++;
+    delegate.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    calls++;
+    stateChanges++;
+    delegate.glColorMask(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    calls++;
+    bytesUploaded += imageSize;
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    calls++;
+    delegate.glCompileShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    calls++;
+    return delegate.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    calls++;
+    return delegate.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    calls++;
+    delegate.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    calls++;
+    delegate.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    calls++;
+    delegate.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    calls++;
+    stateChanges++;
+    delegate.glDepthMask(flag);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    calls++;
+    stateChanges++;
+    delegate.glDisable(cap);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    calls++;
+    stateChanges++;
+    delegate.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    calls++;
+    drawCalls++;
+    bytesUploaded += (long) count * bytesPerIndex(type);
+    delegate.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    calls++;
+    stateChanges++;
+    delegate.glEnable(cap);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    calls++;
+    stateChanges++;
+    delegate.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    calls++;
+    delegate.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    calls++;
+    delegate.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    calls++;
+    delegate.glGenerateMipmap(target);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    calls++;
+    return delegate.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    calls++;
+    return delegate.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    calls++;
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    calls++;
+    return delegate.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    calls++;
+    return delegate.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    calls++;
+    return delegate.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    calls++;
+    return delegate.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    calls++;
+    delegate.glLinkProgram(program);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    calls++;
+    bytesUploaded += length;
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    calls++;
+    delegate.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    calls++;
+    stateChanges++;
+    delegate.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    calls++;
+    uniformUpdates++;
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    calls++;
+    stateChanges++;
+    delegate.glUseProgram(program);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    calls++;
+    stateChanges++;
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    calls++;
+    stateChanges++;
+    bytesUploaded += bytesOf(ptr);
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    calls++;
+    stateChanges++;
+    delegate.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    calls++;
+    bytesUploaded += bitmap.getByteCount();
+    delegate.texImage2D(target, level, bitmap, border);
+  }
+
+  private static int bytesPerIndex(int type) {
+    switch (type) {
+      case GLES20.GL_UNSIGNED_BYTE:
+        return 1;
+      case GLES20.GL_UNSIGNED_SHORT:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  private static long bytesOf(Buffer buffer) {
+    if (buffer == null) {
+      return 0;
+    }
+    int elementSize = 4;
+    if (buffer instanceof ByteBuffer) {
+      elementSize = 1;
+    } else if (buffer instanceof ShortBuffer || buffer instanceof CharBuffer) {
+      elementSize = 2;
+    } else if (buffer instanceof LongBuffer || buffer instanceof DoubleBuffer) {
+      elementSize = 8;
+    }
+    return (long) buffer.remaining() * elementSize;
+  }
+}
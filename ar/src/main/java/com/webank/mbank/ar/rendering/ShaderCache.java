@@ -0,0 +1,359 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Links each combination of shaders once per context and shares the program between renderers.
+ * 每种着色器组合每个context只链接一次，多个渲染器共用同一个program，并把链接结果保存到磁盘。
+ *
+ * <p>Programs are keyed by their shader resources and defines, and remember their attribute and
+ * uniform locations. When the context supports program binaries (OpenGL ES 3.0 with {@code
+ * GL_OES_get_program_binary} and at least one binary format) and {@link #setBinaryDirectory} was
+ * called, linked programs are saved there and loaded with {@code
+ * glProgramBinary} on the next launch, skipping compilation and linking. Saved binaries are tied
+ * to the driver that produced them and to the exact shader source, and are recompiled when either
+ * changes or the driver rejects them.
+ *
+ * <p>Must be used on the GL thread.
+ */
+public class ShaderCache {
+  private static final String TAG = ShaderCache.class.getSimpleName();
+
+  private static final int BINARY_MAGIC = 0x57534842; // "WSHB"
+  private static final String BINARY_EXTENSION = ".bin";
+  // GLES30.GL_PROGRAM_BINARY_LENGTH
+  private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+  // GLES30.GL_NUM_PROGRAM_BINARY_FORMATS
+  private static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+  private static final String PROGRAM_BINARY_EXTENSION = "GL_OES_get_program_binary";
+
+  private final GlBackend gl;
+  private final Map<String, Program> programs = new HashMap<>();
+  private File binaryDirectory;
+  /** Vendor, renderer and version of the current context, or null if binaries are unsupported. */
+  private String driver;
+
+  private int compiledCount;
+  private int binaryLoadCount;
+  private int sharedCount;
+
+  public ShaderCache(GlBackend gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Where linked programs are saved, such as {@link Context#getCodeCacheDir()}. Binaries need API
+   * 18; leave unset on older devices.
+   */
+  public void setBinaryDirectory(File directory) {
+    binaryDirectory = directory;
+  }
+
+  /**
+   * Forgets the programs of the previous context and checks whether this one supports program
+   * binaries. Call first thing in {@code onSurfaceCreated}.
+   */
+  public void onContextCreated() {
+    programs.clear();
+    String version = gl.glGetString(GLES20.GL_VERSION);
+    if (isProgramBinarySupported(version)) {
+      driver =
+          gl.glGetString(GLES20.GL_VENDOR)
+              + '|'
+              + gl.glGetString(GLES20.GL_RENDERER)
+              + '|'
+              + version;
+    } else {
+      driver = null;
+    }
+  }
+
+  /**
+   * Whether saved programs can be loaded: the entry points are those of OpenGL ES 3.0, and the
+   * driver must also advertise the extension and at least one format. Some drivers report no
+   * formats and reject every binary, which would make each launch load, delete and relink.
+   */
+  private boolean isProgramBinarySupported(String version) {
+    if (majorVersion(version) < 3) {
+      return false;
+    }
+    String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    if (extensions == null || !extensions.contains(PROGRAM_BINARY_EXTENSION)) {
+      return false;
+    }
+    int[] formats = new int[1];
+    gl.glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+    return formats[0] > 0;
+  }
+
+  /** The major version in a {@code GL_VERSION} string such as "OpenGL ES 3.2 V@258.0". */
+  static int majorVersion(String version) {
+    String prefix = "OpenGL ES ";
+    if (version == null || !version.startsWith(prefix) || version.length() <= prefix.length()) {
+      return 0;
+    }
+    return Character.digit(version.charAt(prefix.length()), 10);
+  }
+
+  /**
+   * Returns the program for the given shaders, linking or loading it the first time.
+   *
+   * @param defines Lines such as {@code "#define USE_FOG\n"} added in front of both shaders, or
+   *     an empty string.
+   * @throws RuntimeException If a shader does not compile or the program does not link.
+   */
+  public Program get(Context context, int vertexResId, int fragmentResId, String defines) {
+    String key = vertexResId + ":" + fragmentResId + ":" + defines;
+    Program program = programs.get(key);
+    if (program != null) {
+      sharedCount++;
+      return program;
+    }
+    return get(
+        key,
+        withDefines(ShaderUtil.readRawTextFile(context, vertexResId), defines),
+        withDefines(ShaderUtil.readRawTextFile(context, fragmentResId), defines));
+  }
+
+  /** Same as the public overload with the sources already read. */
+  Program get(String key, String vertexSource, String fragmentSource) {
+    Program program = programs.get(key);
+    if (program != null) {
+      sharedCount++;
+      return program;
+    }
+    File binary = binaryFile(vertexSource, fragmentSource);
+    int id = binary != null ? loadBinary(binary) : 0;
+    if (id != 0) {
+      binaryLoadCount++;
+    } else {
+      id = link(vertexSource, fragmentSource);
+      compiledCount++;
+      if (binary != null) {
+        saveBinary(id, binary);
+      }
+    }
+    program = new Program(gl, id);
+    programs.put(key, program);
+    return program;
+  }
+
+  /** Adds the defines after the {@code #version} line, which must come first, if there is one. */
+  static String withDefines(String source, String defines) {
+    if (defines.isEmpty()) {
+      return source;
+    }
+    if (source.startsWith("#version")) {
+      int end = source.indexOf('\n') + 1;
+      if (end > 0) {
+        return source.substring(0, end) + defines + source.substring(end);
+      }
+    }
+    return defines + source;
+  }
+
+  private int link(String vertexSource, String fragmentSource) {
+    int vertexShader = ShaderUtil.compileShader(gl, TAG, GLES20.GL_VERTEX_SHADER, vertexSource);
+    int fragmentShader =
+        ShaderUtil.compileShader(gl, TAG, GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+    int program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    // The shaders are freed along with the program.
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+
+    int[] status = new int[1];
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    if (status[0] == 0) {
+      Log.e(TAG, "Error linking program: " + gl.glGetProgramInfoLog(program));
+      gl.glDeleteProgram(program);
+      throw new RuntimeException("Error linking program.");
+    }
+    return program;
+  }
+
+  /** The file a program with these sources is saved to, or null if binaries are not used. */
+  private File binaryFile(String vertexSource, String fragmentSource) {
+    if (binaryDirectory == null || driver == null) {
+      return null;
+    }
+    long hash = fnv1a(fnv1a(0xcbf29ce484222325L, vertexSource), fragmentSource);
+    return new File(binaryDirectory, Long.toHexString(hash) + BINARY_EXTENSION);
+  }
+
+  private static long fnv1a(long hash, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    // Separates the two sources, so that moving text from one to the other changes the hash.
+    hash ^= 0xff;
+    return hash * 0x100000001b3L;
+  }
+
+  /** Loads a saved program, or returns 0 if there is none or it no longer matches the driver. */
+  private int loadBinary(File file) {
+    if (!file.isFile()) {
+      return 0;
+    }
+    int format;
+    byte[] bytes;
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        if (in.readInt() != BINARY_MAGIC || !driver.equals(in.readUTF())) {
+          // Saved by another driver version, which may not read it.
+          file.delete();
+          return 0;
+        }
+        format = in.readInt();
+        bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      file.delete();
+      return 0;
+    }
+
+    ByteBuffer binary = ByteBuffer.allocateDirect(bytes.length);
+    binary.put(bytes).position(0);
+    int program = gl.glCreateProgram();
+    gl.glProgramBinary(program, format, binary, bytes.length);
+    int[] status = new int[1];
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    if (status[0] == 0) {
+      // Drivers may reject binaries, e.g. after an update that kept the version string.
+      gl.glDeleteProgram(program);
+      file.delete();
+      return 0;
+    }
+    return program;
+  }
+
+  private void saveBinary(int program, File file) {
+    int[] length = new int[1];
+    gl.glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, length, 0);
+    if (length[0] <= 0) {
+      return;
+    }
+    ByteBuffer binary = ByteBuffer.allocateDirect(length[0]);
+    int[] format = new int[1];
+    gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+    if (length[0] <= 0) {
+      return;
+    }
+    byte[] bytes = new byte[length[0]];
+    binary.position(0);
+    binary.get(bytes);
+
+    // Written to a temporary file first, so that a crash never leaves half a binary behind.
+    File temporary = new File(file.getPath() + ".tmp");
+    try {
+      if (!binaryDirectory.isDirectory() && !binaryDirectory.mkdirs()) {
+        return;
+      }
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+      try {
+        out.writeInt(BINARY_MAGIC);
+        out.writeUTF(driver);
+        out.writeInt(format[0]);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+      if (!temporary.renameTo(file)) {
+        temporary.delete();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to save program binary", e);
+      temporary.delete();
+    }
+  }
+
+  /** Number of programs compiled from source since this cache was created. */
+  public int getCompiledCount() {
+    return compiledCount;
+  }
+
+  /** Number of programs loaded from saved binaries since this cache was created. */
+  public int getBinaryLoadCount() {
+    return binaryLoadCount;
+  }
+
+  /** Number of requests served with a program that was already linked in this context. */
+  public int getSharedCount() {
+    return sharedCount;
+  }
+
+  /**
+   * A linked program and the locations looked up in it so far.
+   * 已经链接好的program，查询过的location会被记住。
+   */
+  public static final class Program {
+    private final GlBackend gl;
+    private final int id;
+    private final Map<String, Integer> attributes = new HashMap<>();
+    private final Map<String, Integer> uniforms = new HashMap<>();
+
+    Program(GlBackend gl, int id) {
+      this.gl = gl;
+      this.id = id;
+    }
+
+    /** The name to pass to {@code glUseProgram}. */
+    public int getId() {
+      return id;
+    }
+
+    /** Same as {@code glGetAttribLocation}, asked of the driver once per name. */
+    public int getAttribLocation(String name) {
+      Integer location = attributes.get(name);
+      if (location == null) {
+        location = gl.glGetAttribLocation(id, name);
+        attributes.put(name, location);
+      }
+      return location;
+    }
+
+    /** Same as {@code glGetUniformLocation}, asked of the driver once per name. */
+    public int getUniformLocation(String name) {
+      Integer location = uniforms.get(name);
+      if (location == null) {
+        location = gl.glGetUniformLocation(id, name);
+        uniforms.put(name, location);
+      }
+      return location;
+    }
+  }
+}
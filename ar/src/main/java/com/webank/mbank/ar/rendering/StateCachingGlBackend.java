@@ -0,0 +1,916 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a shadow copy of the GL state and drops calls that would not change it.
+ * 记录GL状态的副本，去掉所有渲染器之间重复的状态切换，再转发给另一个实现。
+ *
+ * <p>Every renderer sets up the state it needs before drawing and resets it afterwards, which is
+ * simple and keeps them independent, but means most binds and uniform updates in a frame restore
+ * a value GL already has. This backend sits between the renderers and the driver:
+ *
+ * <ul>
+ *   <li>Program, uniform, viewport, clear color and vertex attribute pointer calls are forwarded
+ *       right away unless they repeat the current value. Uniforms are remembered per program.
+ *   <li>Texture and buffer bindings, the active texture unit, enables, vertex attribute arrays,
+ *       masks and the blend function are only recorded, and applied when a draw, clear or upload
+ *       needs them. A bind that is undone before the next draw never reaches the driver.
+ * </ul>
+ *
+ * <p>Call {@link #invalidate()} when the context is recreated and {@link #invalidateSharedState()}
+ * after other code, such as ARCore's {@code Session.update}, has made GL calls on the same
+ * context. Not thread safe; all calls must come from the GL thread.
+ */
+public class StateCachingGlBackend implements GlBackend {
+  static final int MAX_VERTEX_ATTRIBS = 16;
+  static final int MAX_TEXTURE_UNITS = 8;
+  static final int MAX_CACHED_UNIFORM_LOCATIONS = 32;
+
+  private static final int UNKNOWN = Integer.MIN_VALUE;
+  private static final int[] CAPS = {
+    GLES20.GL_BLEND,
+    GLES20.GL_CULL_FACE,
+    GLES20.GL_DEPTH_TEST,
+    GLES20.GL_DITHER,
+    GLES20.GL_POLYGON_OFFSET_FILL,
+    GLES20.GL_SAMPLE_ALPHA_TO_COVERAGE,
+    GLES20.GL_SAMPLE_COVERAGE,
+    GLES20.GL_SCISSOR_TEST,
+    GLES20.GL_STENCIL_TEST,
+  };
+  private static final int[] TEXTURE_TARGETS = {
+    GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_CUBE_MAP, GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+  };
+  private static final int POINTER_FIELDS = 6;
+
+  private final GlBackend delegate;
+
+  // Lazily applied state: what the renderers asked for and what the driver has.
+  private final int[] wantedCaps = new int[CAPS.length];
+  private final int[] appliedCaps = new int[CAPS.length];
+  private final int[] wantedAttribArrays = new int[MAX_VERTEX_ATTRIBS];
+  private final int[] appliedAttribArrays = new int[MAX_VERTEX_ATTRIBS];
+  private final int[] wantedTextures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGETS.length];
+  private final int[] appliedTextures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGETS.length];
+  private final int[] wantedBlendFunc = new int[4];
+  private final int[] appliedBlendFunc = new int[4];
+  private int wantedActiveTexture;
+  private int appliedActiveTexture;
+  private int wantedArrayBuffer;
+  private int appliedArrayBuffer;
+  private int wantedElementBuffer;
+  private int appliedElementBuffer;
+  private int wantedDepthMask;
+  private int appliedDepthMask;
+  private int wantedColorMask;
+  private int appliedColorMask;
+  /** Whether any wanted state may differ from the applied state. */
+  private boolean dirty;
+
+  // Eagerly applied state.
+  private int program;
+  private final int[] viewport = new int[4];
+  private final int[] clearColor = new int[4];
+  /** Buffer, size, type, normalized, stride and offset of each VBO sourced attribute. */
+  private final int[] pointers = new int[MAX_VERTEX_ATTRIBS * POINTER_FIELDS];
+  private final Map<Integer, ProgramUniforms> uniformsByProgram = new HashMap<>();
+  private ProgramUniforms uniforms;
+
+  private int requestedCalls;
+  private int issuedCalls;
+
+  public StateCachingGlBackend(GlBackend delegate) {
+    this.delegate = delegate;
+    invalidate();
+  }
+
+  /** Resets the call counters. */
+  public void beginFrame() {
+    requestedCalls = 0;
+    issuedCalls = 0;
+  }
+
+  /** Number of calls made to this backend since {@link #beginFrame()}. */
+  public int getRequestedCalls() {
+    return requestedCalls;
+  }
+
+  /** Number of calls forwarded to the driver since {@link #beginFrame()}. */
+  public int getIssuedCalls() {
+    return issuedCalls;
+  }
+
+  /** Number of calls dropped because they would not have changed anything. */
+  public int getElidedCalls() {
+    return requestedCalls - issuedCalls;
+  }
+
+  /**
+   * Forgets all state, including uniform values. Call when the GL context is (re)created, since
+   * the new context starts from defaults and every object name is reused.
+   */
+  public void invalidate() {
+    fill(wantedCaps);
+    fill(wantedAttribArrays);
+    fill(wantedTextures);
+    fill(wantedBlendFunc);
+    wantedActiveTexture = UNKNOWN;
+    wantedArrayBuffer = UNKNOWN;
+    wantedElementBuffer = UNKNOWN;
+    wantedDepthMask = UNKNOWN;
+    wantedColorMask = UNKNOWN;
+    uniformsByProgram.clear();
+    uniforms = null;
+    invalidateSharedState();
+  }
+
+  /**
+   * Forgets the bindings, enables and other context-wide state while keeping the uniform values of
+   * our programs, which only we change. Call after code outside the renderers has made GL calls,
+   * such as ARCore updating the camera texture in {@code Session.update}. Wanted state is applied
+   * again before the next draw.
+   */
+  public void invalidateSharedState() {
+    fill(appliedCaps);
+    fill(appliedAttribArrays);
+    fill(appliedTextures);
+    fill(appliedBlendFunc);
+    appliedActiveTexture = UNKNOWN;
+    appliedArrayBuffer = UNKNOWN;
+    appliedElementBuffer = UNKNOWN;
+    appliedDepthMask = UNKNOWN;
+    appliedColorMask = UNKNOWN;
+    dirty = true;
+    program = UNKNOWN;
+    fill(viewport);
+    fill(clearColor);
+    fill(pointers);
+  }
+
+  private static void fill(int[] values) {
+    Arrays.fill(values, UNKNOWN);
+  }
+
+  // Applying lazy state.
+
+  /** Applies everything a draw depends on. */
+  private void flushDrawState() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    for (int i = 0; i < CAPS.length; i++) {
+      int wanted = wantedCaps[i];
+      if (wanted != UNKNOWN && wanted != appliedCaps[i]) {
+        issuedCalls++;
+        if (wanted != 0) {
+          delegate.glEnable(CAPS[i]);
+        } else {
+          delegate.glDisable(CAPS[i]);
+        }
+        appliedCaps[i] = wanted;
+      }
+    }
+    flushMasks();
+    if (wantedBlendFunc[0] != UNKNOWN && !Arrays.equals(wantedBlendFunc, appliedBlendFunc)) {
+      issuedCalls++;
+      delegate.glBlendFuncSeparate(
+          wantedBlendFunc[0], wantedBlendFunc[1], wantedBlendFunc[2], wantedBlendFunc[3]);
+      System.arraycopy(wantedBlendFunc, 0, appliedBlendFunc, 0, 4);
+    }
+    for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+      int wanted = wantedAttribArrays[i];
+      if (wanted != UNKNOWN && wanted != appliedAttribArrays[i]) {
+        issuedCalls++;
+        if (wanted != 0) {
+          delegate.glEnableVertexAttribArray(i);
+        } else {
+          delegate.glDisableVertexAttribArray(i);
+        }
+        appliedAttribArrays[i] = wanted;
+      }
+    }
+    for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+      for (int t = 0; t < TEXTURE_TARGETS.length; t++) {
+        flushTexture(unit, t);
+      }
+    }
+    flushActiveTexture(wantedActiveTexture);
+    flushBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER);
+  }
+
+  private void flushMasks() {
+    if (wantedDepthMask != UNKNOWN && wantedDepthMask != appliedDepthMask) {
+      issuedCalls++;
+      delegate.glDepthMask(wantedDepthMask != 0);
+      appliedDepthMask = wantedDepthMask;
+    }
+    if (wantedColorMask != UNKNOWN && wantedColorMask != appliedColorMask) {
+      issuedCalls++;
+      delegate.glColorMask(
+          (wantedColorMask & 1) != 0,
+          (wantedColorMask & 2) != 0,
+          (wantedColorMask & 4) != 0,
+          (wantedColorMask & 8) != 0);
+      appliedColorMask = wantedColorMask;
+    }
+  }
+
+  private void flushActiveTexture(int texture) {
+    if (texture != UNKNOWN && texture != appliedActiveTexture) {
+      issuedCalls++;
+      delegate.glActiveTexture(texture);
+      appliedActiveTexture = texture;
+    }
+  }
+
+  private void flushTexture(int unit, int targetIndex) {
+    int slot = unit * TEXTURE_TARGETS.length + targetIndex;
+    int wanted = wantedTextures[slot];
+    if (wanted != UNKNOWN && wanted != appliedTextures[slot]) {
+      flushActiveTexture(GLES20.GL_TEXTURE0 + unit);
+      issuedCalls++;
+      delegate.glBindTexture(TEXTURE_TARGETS[targetIndex], wanted);
+      appliedTextures[slot] = wanted;
+    }
+  }
+
+  /** Applies the binding an upload or parameter change to {@code target} will act on. */
+  private void flushTextureTarget(int target) {
+    int unit = textureUnit(wantedActiveTexture);
+    int targetIndex = textureTargetIndex(target);
+    if (unit >= 0 && targetIndex >= 0) {
+      flushTexture(unit, targetIndex);
+    }
+    flushActiveTexture(wantedActiveTexture);
+  }
+
+  private void flushBuffer(int target) {
+    if (target == GLES20.GL_ARRAY_BUFFER) {
+      if (wantedArrayBuffer != UNKNOWN && wantedArrayBuffer != appliedArrayBuffer) {
+        issuedCalls++;
+        delegate.glBindBuffer(target, wantedArrayBuffer);
+        appliedArrayBuffer = wantedArrayBuffer;
+      }
+    } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+      if (wantedElementBuffer != UNKNOWN && wantedElementBuffer != appliedElementBuffer) {
+        issuedCalls++;
+        delegate.glBindBuffer(target, wantedElementBuffer);
+        appliedElementBuffer = wantedElementBuffer;
+      }
+    }
+  }
+
+  private static int capIndex(int cap) {
+    for (int i = 0; i < CAPS.length; i++) {
+      if (CAPS[i] == cap) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int textureTargetIndex(int target) {
+    for (int i = 0; i < TEXTURE_TARGETS.length; i++) {
+      if (TEXTURE_TARGETS[i] == target) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** The unit index of a {@code GL_TEXTUREi} constant, or -1 if it is not cached. */
+  private static int textureUnit(int texture) {
+    int unit = texture - GLES20.GL_TEXTURE0;
+    return texture != UNKNOWN && unit >= 0 && unit < MAX_TEXTURE_UNITS ? unit : -1;
+  }
+
+  // Lazily applied state changes.
+
+  @Override
+  public void glActiveTexture(int texture) {
+    requestedCalls++;
+    wantedActiveTexture = texture;
+    dirty = true;
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    requestedCalls++;
+    if (target == GLES20.GL_ARRAY_BUFFER) {
+      wantedArrayBuffer = buffer;
+    } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+      wantedElementBuffer = buffer;
+      dirty = true;
+    } else {
+      issuedCalls++;
+      delegate.glBindBuffer(target, buffer);
+    }
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    requestedCalls++;
+    int unit = textureUnit(wantedActiveTexture);
+    int targetIndex = textureTargetIndex(target);
+    if (unit < 0 || targetIndex < 0) {
+      // Units and targets past the cached ones are rare enough to pass straight through.
+      flushActiveTexture(wantedActiveTexture);
+      issuedCalls++;
+      delegate.glBindTexture(target, texture);
+      return;
+    }
+    wantedTextures[unit * TEXTURE_TARGETS.length + targetIndex] = texture;
+    dirty = true;
+  }
+
+  @Override
+  public void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+    requestedCalls++;
+    wantedBlendFunc[0] = srcRgb;
+    wantedBlendFunc[1] = dstRgb;
+    wantedBlendFunc[2] = srcAlpha;
+    wantedBlendFunc[3] = dstAlpha;
+    dirty = true;
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    requestedCalls++;
+    wantedColorMask = (red ? 1 : 0) | (green ? 2 : 0) | (blue ? 4 : 0) | (alpha ? 8 : 0);
+    dirty = true;
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    requestedCalls++;
+    wantedDepthMask = flag ? 1 : 0;
+    dirty = true;
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    setCap(cap, 0);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    setCap(cap, 1);
+  }
+
+  private void setCap(int cap, int enabled) {
+    requestedCalls++;
+    int i = capIndex(cap);
+    if (i < 0) {
+      issuedCalls++;
+      if (enabled != 0) {
+        delegate.glEnable(cap);
+      } else {
+        delegate.glDisable(cap);
+      }
+      return;
+    }
+    wantedCaps[i] = enabled;
+    dirty = true;
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    setAttribArray(index, 0);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    setAttribArray(index, 1);
+  }
+
+  private void setAttribArray(int index, int enabled) {
+    requestedCalls++;
+    if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+      issuedCalls++;
+      if (enabled != 0) {
+        delegate.glEnableVertexAttribArray(index);
+      } else {
+        delegate.glDisableVertexAttribArray(index);
+      }
+      return;
+    }
+    wantedAttribArrays[index] = enabled;
+    dirty = true;
+  }
+
+  // Calls that consume lazy state.
+
+  @Override
+  public void glClear(int mask) {
+    requestedCalls++;
+    // Masks, scissor and dither apply to clears.
+    flushDrawState();
+    issuedCalls++;
+    delegate.glClear(mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    requestedCalls++;
+    flushDrawState();
+    issuedCalls++;
+    delegate.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    requestedCalls++;
+    flushDrawState();
+    issuedCalls++;
+    delegate.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    requestedCalls++;
+    flushDrawState();
+    issuedCalls++;
+    delegate.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    requestedCalls++;
+    flushBuffer(target);
+    issuedCalls++;
+    delegate.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    requestedCalls++;
+    flushBuffer(target);
+    issuedCalls++;
+    delegate.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    requestedCalls++;
+    flushTextureTarget(target);
+    issuedCalls++;
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    requestedCalls++;
+    flushTextureTarget(target);
+    issuedCalls++;
+    delegate.glGenerateMipmap(target);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    requestedCalls++;
+    flushTextureTarget(target);
+    issuedCalls++;
+    delegate.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    requestedCalls++;
+    flushTextureTarget(target);
+    issuedCalls++;
+    delegate.texImage2D(target, level, bitmap, border);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    requestedCalls++;
+    if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+      int p = index * POINTER_FIELDS;
+      int norm = normalized ? 1 : 0;
+      if (pointers[p] != UNKNOWN
+          && pointers[p] == wantedArrayBuffer
+          && pointers[p + 1] == size
+          && pointers[p + 2] == type
+          && pointers[p + 3] == norm
+          && pointers[p + 4] == stride
+          && pointers[p + 5] == offset) {
+        return;
+      }
+      flushBuffer(GLES20.GL_ARRAY_BUFFER);
+      pointers[p] = wantedArrayBuffer;
+      pointers[p + 1] = size;
+      pointers[p + 2] = type;
+      pointers[p + 3] = norm;
+      pointers[p + 4] = stride;
+      pointers[p + 5] = offset;
+    } else {
+      flushBuffer(GLES20.GL_ARRAY_BUFFER);
+    }
+    issuedCalls++;
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    requestedCalls++;
+    // Client memory can change between calls, so these always go through.
+    flushBuffer(GLES20.GL_ARRAY_BUFFER);
+    if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+      pointers[index * POINTER_FIELDS] = UNKNOWN;
+    }
+    issuedCalls++;
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+  }
+
+  // Eagerly applied state changes.
+
+  @Override
+  public void glUseProgram(int program) {
+    requestedCalls++;
+    if (program == this.program) {
+      return;
+    }
+    this.program = program;
+    uniforms = uniformsFor(program);
+    issuedCalls++;
+    delegate.glUseProgram(program);
+  }
+
+  private ProgramUniforms uniformsFor(int program) {
+    ProgramUniforms cache = uniformsByProgram.get(program);
+    if (cache == null) {
+      cache = new ProgramUniforms();
+      uniformsByProgram.put(program, cache);
+    }
+    return cache;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    requestedCalls++;
+    // Linking resets every uniform to zero.
+    forgetUniforms(program);
+    issuedCalls++;
+    delegate.glLinkProgram(program);
+  }
+
+  private void forgetUniforms(int program) {
+    uniformsByProgram.remove(program);
+    if (program == this.program) {
+      uniforms = uniformsFor(program);
+    }
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    requestedCalls++;
+    if (location == -1 || (uniforms != null && uniforms.update(location, x, 0f, 0f, 0f))) {
+      return;
+    }
+    issuedCalls++;
+    delegate.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    requestedCalls++;
+    if (location == -1
+        || (uniforms != null && uniforms.update(location, Float.intBitsToFloat(x), 0f, 0f, 0f))) {
+      return;
+    }
+    issuedCalls++;
+    delegate.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    requestedCalls++;
+    if (location == -1 || (uniforms != null && uniforms.update(location, x, y, z, w))) {
+      return;
+    }
+    issuedCalls++;
+    delegate.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    requestedCalls++;
+    if (location == -1) {
+      return;
+    }
+    if (count == 1) {
+      if (uniforms != null
+          && uniforms.update(location, v[offset], v[offset + 1], v[offset + 2], v[offset + 3])) {
+        return;
+      }
+    } else if (uniforms != null) {
+      // Array elements have locations of their own that we cannot tell apart.
+      uniforms.clear();
+    }
+    issuedCalls++;
+    delegate.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    // Matrices change every draw; comparing them would cost more than it saves.
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    requestedCalls++;
+    if (viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height) {
+      return;
+    }
+    viewport[0] = x;
+    viewport[1] = y;
+    viewport[2] = width;
+    viewport[3] = height;
+    issuedCalls++;
+    delegate.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    requestedCalls++;
+    int r = Float.floatToRawIntBits(red);
+    int g = Float.floatToRawIntBits(green);
+    int b = Float.floatToRawIntBits(blue);
+    int a = Float.floatToRawIntBits(alpha);
+    if (clearColor[0] == r && clearColor[1] == g && clearColor[2] == b && clearColor[3] == a) {
+      return;
+    }
+    clearColor[0] = r;
+    clearColor[1] = g;
+    clearColor[2] = b;
+    clearColor[3] = a;
+    issuedCalls++;
+    delegate.glClearColor(red, green, blue, alpha);
+  }
+
+  // Everything else passes through.
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glCompileShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    requestedCalls++;
+    for (int i = 0; i < n; i++) {
+      int buffer = buffers[offset + i];
+      // Deleting a bound buffer binds 0 in its place, and the name can be handed out again.
+      if (appliedArrayBuffer == buffer) {
+        appliedArrayBuffer = 0;
+      }
+      if (wantedArrayBuffer == buffer) {
+        wantedArrayBuffer = 0;
+      }
+      if (appliedElementBuffer == buffer) {
+        appliedElementBuffer = 0;
+      }
+      if (wantedElementBuffer == buffer) {
+        wantedElementBuffer = 0;
+      }
+      for (int p = 0; p < pointers.length; p += POINTER_FIELDS) {
+        if (pointers[p] == buffer) {
+          pointers[p] = UNKNOWN;
+        }
+      }
+    }
+    issuedCalls++;
+    delegate.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    requestedCalls++;
+    forgetUniforms(program);
+    if (program == this.program) {
+      // The name can be handed out again once the deleted program is no longer in use.
+      this.program = UNKNOWN;
+    }
+    issuedCalls++;
+    delegate.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    requestedCalls++;
+    issuedCalls++;
+    return delegate.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    requestedCalls++;
+    // Like linking, loading a binary resets every uniform.
+    forgetUniforms(program);
+    issuedCalls++;
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    requestedCalls++;
+    issuedCalls++;
+    delegate.glShaderSource(shader, string);
+  }
+
+  /** The last value written to each of the first uniform locations of a program. */
+  private static final class ProgramUniforms {
+    private final int[] values = new int[MAX_CACHED_UNIFORM_LOCATIONS * 4];
+    private final boolean[] known = new boolean[MAX_CACHED_UNIFORM_LOCATIONS];
+
+    /** Stores the value and returns whether the location already had it. */
+    boolean update(int location, float x, float y, float z, float w) {
+      if (location < 0 || location >= MAX_CACHED_UNIFORM_LOCATIONS) {
+        return false;
+      }
+      int bx = Float.floatToRawIntBits(x);
+      int by = Float.floatToRawIntBits(y);
+      int bz = Float.floatToRawIntBits(z);
+      int bw = Float.floatToRawIntBits(w);
+      int i = location * 4;
+      if (known[location]
+          && values[i] == bx
+          && values[i + 1] == by
+          && values[i + 2] == bz
+          && values[i + 3] == bw) {
+        return true;
+      }
+      known[location] = true;
+      values[i] = bx;
+      values[i + 1] = by;
+      values[i + 2] = bz;
+      values[i + 3] = bw;
+      return false;
+    }
+
+    void clear() {
+      Arrays.fill(known, false);
+    }
+  }
+}
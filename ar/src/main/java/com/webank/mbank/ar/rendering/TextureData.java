@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import com.webank.mbank.ar.texture.Etc1;
+import com.webank.mbank.ar.texture.KtxFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A texture read off the GL thread, either an ETC1 KTX file with its prebuilt mip chain or a
+ * decoded PNG.
+ * 优先使用预先压缩好的ETC1纹理和mip链，设备不支持时退回PNG。
+ *
+ * <p>ETC1 textures take an eighth of the GPU memory and upload bandwidth of ARGB_8888 bitmaps and
+ * skip both the PNG decode and {@code glGenerateMipmap}. The KTX files are produced from the PNG
+ * assets by the tools module's {@code pngToKtx} task.
+ */
+public final class TextureData {
+  private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+
+  private KtxFile compressed;
+  private Bitmap bitmap;
+
+  private TextureData() {}
+
+  /**
+   * Whether ETC1 textures can be uploaded. Must be called on the GL thread; pass the result to
+   * {@link #load}, which may run on any thread.
+   */
+  public static boolean isEtc1Supported(GlBackend gl) {
+    String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    return extensions != null && extensions.contains(ETC1_EXTENSION);
+  }
+
+  /**
+   * Reads a texture without touching GL, so it can run on any thread.
+   *
+   * @param pngAssetName Name of the PNG file. A KTX file with the same name is used instead when
+   *     there is one and {@code compressedSupported}.
+   * @param compressedSupported Result of {@link #isEtc1Supported} on the GL thread.
+   * @throws IOException If neither the KTX file nor the PNG can be read.
+   */
+  public static TextureData load(
+      AssetManager assets, String pngAssetName, boolean compressedSupported) throws IOException {
+    TextureData texture = new TextureData();
+    if (compressedSupported) {
+      ByteBuffer bytes = ObjectRenderer.openAsset(assets, ktxAssetName(pngAssetName));
+      if (bytes != null) {
+        KtxFile file = KtxFile.wrap(bytes);
+        if (file.getInternalFormat() == Etc1.GL_ETC1_RGB8_OES) {
+          texture.compressed = file;
+          return texture;
+        }
+      }
+    }
+    InputStream in = assets.open(pngAssetName);
+    try {
+      texture.bitmap = BitmapFactory.decodeStream(in);
+    } finally {
+      in.close();
+    }
+    if (texture.bitmap == null) {
+      throw new IOException("Failed to decode " + pngAssetName);
+    }
+    return texture;
+  }
+
+  /** {@code texture.png} becomes {@code texture.ktx}. */
+  static String ktxAssetName(String pngAssetName) {
+    int dot = pngAssetName.lastIndexOf('.');
+    return (dot > 0 ? pngAssetName.substring(0, dot) : pngAssetName) + KtxFile.EXTENSION;
+  }
+
+  /** Whether the KTX file is used. */
+  public boolean isCompressed() {
+    return compressed != null;
+  }
+
+  /**
+   * Uploads every mip level to the texture bound to {@code GL_TEXTURE_2D} and sets trilinear
+   * filtering, then releases the CPU copy. Must be called on the GL thread, at most once.
+   */
+  public void upload(GlBackend gl) {
+    if (compressed != null) {
+      gl.glTexParameteri(
+          GLES20.GL_TEXTURE_2D,
+          GLES20.GL_TEXTURE_MIN_FILTER,
+          compressed.isMipmapComplete() ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+      gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+      for (int level = 0; level < compressed.getLevelCount(); level++) {
+        ByteBuffer data = compressed.getLevel(level);
+        gl.glCompressedTexImage2D(
+            GLES20.GL_TEXTURE_2D,
+            level,
+            compressed.getInternalFormat(),
+            compressed.getLevelWidth(level),
+            compressed.getLevelHeight(level),
+            0,
+            data.remaining(),
+            data);
+      }
+      compressed = null;
+    } else {
+      gl.glTexParameteri(
+          GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+      gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+      gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+      gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+      bitmap.recycle();
+      bitmap = null;
+    }
+  }
+}
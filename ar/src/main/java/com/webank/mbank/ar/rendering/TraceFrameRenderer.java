@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Frustum;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.trace.TraceFrame;
+import com.webank.mbank.ar.trace.TraceReplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+/**
+ * Draws replayed trace frames the way {@code HelloArActivity} draws live ones: the planes and the
+ * point cloud, then the platforms and the robot of the game state, with the recorded projection,
+ * view and light estimate.
+ * 回放trace时把每一帧交给真实的渲染器，配合 {@link NoOpGlBackend} 和 {@link RecordingGlBackend}
+ * 在JVM上统计每帧的GL调用和耗时。
+ *
+ * <p>Programs are stand-ins and nothing is read from Android resources, so this runs without a
+ * device. Traces do not record the point cloud, so an empty cloud is drawn.
+ */
+public class TraceFrameRenderer implements TraceReplayer.FrameConsumer {
+  // Same as HelloArActivity.
+  private static final float PLATFORM_SCALE = 0.0009f;
+  private static final float ROBOT_SCALE = 15f;
+
+  // Stand-in program names; no program is linked.
+  private static final int PLANE_PROGRAM = 1;
+  private static final int POINT_CLOUD_PROGRAM = 2;
+  private static final int OBJECT_PROGRAM = 3;
+  private static final int OBJECT_INSTANCED_PROGRAM = 4;
+
+  private final PlaneRenderer planeRenderer;
+  private final PointCloudRenderer pointCloud;
+  private final ObjectRenderer platforms;
+  private final ObjectRenderer robot;
+  private final Frustum frustum = new Frustum();
+  private final FrameArena arena = new FrameArena();
+
+  // Indexed by plane id, so that a plane is the same object in every frame it is recorded in.
+  private final ArrayList<ReplayedPlane> planesById = new ArrayList<>();
+  private final ArrayList<ReplayedPlane> planes = new ArrayList<>();
+
+  /**
+   * @param gl Backend through which all GL calls are issued, usually a {@link RecordingGlBackend}
+   *     around a {@link NoOpGlBackend}.
+   * @param platformMesh Mesh of the platforms, such as the converted {@code webox.wmesh}.
+   * @param robotMesh Mesh of the robot.
+   */
+  public TraceFrameRenderer(GlBackend gl, MeshFile platformMesh, MeshFile robotMesh) {
+    planeRenderer = new PlaneRenderer(gl);
+    planeRenderer.loadProgram(PLANE_PROGRAM);
+
+    pointCloud = new PointCloudRenderer(gl);
+    pointCloud.loadProgram(POINT_CLOUD_PROGRAM);
+    pointCloud.update(0, ByteBuffer.allocateDirect(0).order(ByteOrder.nativeOrder()).asFloatBuffer());
+
+    platforms = new ObjectRenderer(gl);
+    platforms.setInstancingEnabled(true);
+    robot = new ObjectRenderer(gl);
+    for (ObjectRenderer renderer : new ObjectRenderer[] {platforms, robot}) {
+      renderer.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+      renderer.setCullingFrustum(frustum);
+    }
+    platforms.loadMesh(platformMesh);
+    platforms.loadPrograms(OBJECT_PROGRAM, OBJECT_INSTANCED_PROGRAM);
+    robot.loadMesh(robotMesh);
+    robot.loadPrograms(OBJECT_PROGRAM, OBJECT_INSTANCED_PROGRAM);
+  }
+
+  @Override
+  public void onFrame(TraceFrame frame, JumpGameState state) {
+    arena.beginFrame();
+    // If not tracking, don't draw 3d objects.
+    if (frame.cameraTrackingState == TraceFrame.PAUSED) {
+      return;
+    }
+
+    planes.clear();
+    for (int i = 0; i < frame.planeCount; i++) {
+      planes.add(replayedPlane(frame.planes[i]));
+    }
+    float[] pose = frame.displayOrientedPose;
+    float[] cameraPose = arena.mat4();
+    Mat4.setFromPose(cameraPose, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+    planeRenderer.drawPlanes(
+        planes, ReplayedPlane.SOURCE, cameraPose, frame.projection, arena);
+
+    pointCloud.draw(frame.view, frame.projection, arena);
+
+    if (!state.isInGame()) {
+      return;
+    }
+    frustum.set(frame.projection, frame.view);
+    platforms.draw(
+        state.platforms, PLATFORM_SCALE, frame.view, frame.projection, frame.lightIntensity);
+    float[] robotMatrix = arena.mat4();
+    System.arraycopy(state.robotMatrix, 0, robotMatrix, 0, 16);
+    Mat4.rotateY(robotMatrix, state.direction ? -90 : -180);
+    robot.updateModelMatrix(robotMatrix, ROBOT_SCALE);
+    robot.draw(frame.view, frame.projection, frame.lightIntensity);
+  }
+
+  /** The plane renderer, for its mesh cache and registry. */
+  public PlaneRenderer getPlaneRenderer() {
+    return planeRenderer;
+  }
+
+  private ReplayedPlane replayedPlane(TraceFrame.TracePlane recorded) {
+    while (planesById.size() <= recorded.id) {
+      planesById.add(new ReplayedPlane());
+    }
+    ReplayedPlane plane = planesById.get(recorded.id);
+    plane.set(recorded);
+    return plane;
+  }
+
+  /** A recorded plane, updated from the trace every frame. */
+  private static final class ReplayedPlane {
+    static final PlaneRenderer.PlaneSource<ReplayedPlane> SOURCE =
+        new PlaneRenderer.PlaneSource<ReplayedPlane>() {
+          @Override
+          public PlaneRegistry.State getState(ReplayedPlane plane) {
+            return plane.state;
+          }
+
+          @Override
+          public void getCenterPose(ReplayedPlane plane, float[] matrix) {
+            System.arraycopy(plane.centerPose, 0, matrix, 0, 16);
+          }
+
+          @Override
+          public float getExtentX(ReplayedPlane plane) {
+            return plane.extentX;
+          }
+
+          @Override
+          public float getExtentZ(ReplayedPlane plane) {
+            return plane.extentZ;
+          }
+
+          @Override
+          public FloatBuffer getPolygon(ReplayedPlane plane) {
+            return plane.polygon;
+          }
+        };
+
+    final float[] centerPose = new float[16];
+    PlaneRegistry.State state;
+    float extentX;
+    float extentZ;
+    FloatBuffer polygon = FloatBuffer.allocate(0);
+
+    void set(TraceFrame.TracePlane recorded) {
+      switch (recorded.trackingState) {
+        case TraceFrame.TRACKING:
+          state = PlaneRegistry.State.TRACKING;
+          break;
+        case TraceFrame.PAUSED:
+          state = PlaneRegistry.State.PAUSED;
+          break;
+        default:
+          state = PlaneRegistry.State.STOPPED;
+          break;
+      }
+      float[] pose = recorded.centerPose;
+      Mat4.setFromPose(centerPose, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+      extentX = recorded.extentX;
+      extentZ = recorded.extentZ;
+      if (polygon.capacity() < recorded.polygonSize) {
+        polygon = FloatBuffer.allocate(recorded.polygonSize * 2);
+      }
+      polygon.clear();
+      polygon.put(recorded.polygon, 0, recorded.polygonSize);
+      polygon.flip();
+    }
+  }
+}
@@ -0,0 +1,312 @@
+package com.webank.mbank.ar.texture;
+
+import java.util.Arrays;
+
+/**
+ * ETC1 (OES_compressed_ETC1_RGB8_texture) 纹理压缩的编码和解码,不依赖Android。
+ * <p>
+ * 每个4x4的块压缩成8个字节,每个像素半个字节,是ARGB_8888的1/8。块分成两个2x4或者4x2的
+ * 子块,每个子块一个基础颜色和一张亮度修正表,每个像素从表中选一个修正值加到基础颜色的
+ * 三个通道上。没有透明通道。
+ * <p>
+ * 编码对每个块尝试两种分法、两种颜色模式(独立/差分)、若干候选基础颜色和8张修正表,
+ * 选误差最小的组合,速度适合离线转换。
+ */
+public final class Etc1 {
+    /** glCompressedTexImage2D 的 internalformat */
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int BYTES_PER_BLOCK = 8;
+
+    // 8张修正表,每张的4个修正值对应像素索引 0..3
+    private static final int[][] MODIFIERS = {
+            {2, 8, -2, -8},
+            {5, 17, -5, -17},
+            {9, 29, -9, -29},
+            {13, 42, -13, -42},
+            {18, 60, -18, -60},
+            {24, 80, -24, -80},
+            {33, 106, -33, -106},
+            {47, 183, -47, -183},
+    };
+
+    private Etc1() {
+    }
+
+    /** width * height 的图像压缩之后的字节数,不足4的边按4算 */
+    public static int encodedSize(int width, int height) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * BYTES_PER_BLOCK;
+    }
+
+    /**
+     * 压缩整张图像,边缘不足一个块的部分重复最后一行/列
+     *
+     * @param argb 按行存放的像素,忽略透明通道
+     */
+    public static byte[] encodeImage(int[] argb, int width, int height) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        byte[] out = new byte[blocksX * blocksY * BYTES_PER_BLOCK];
+        int[] block = new int[16];
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                for (int y = 0; y < 4; y++) {
+                    int sy = Math.min(by * 4 + y, height - 1);
+                    for (int x = 0; x < 4; x++) {
+                        int sx = Math.min(bx * 4 + x, width - 1);
+                        block[y * 4 + x] = argb[sy * width + sx];
+                    }
+                }
+                encodeBlock(block, out, (by * blocksX + bx) * BYTES_PER_BLOCK);
+            }
+        }
+        return out;
+    }
+
+    /** 解压整张图像,透明通道为0xff */
+    public static int[] decodeImage(byte[] data, int offset, int width, int height) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int[] out = new int[width * height];
+        int[] block = new int[16];
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                decodeBlock(data, offset + (by * blocksX + bx) * BYTES_PER_BLOCK, block);
+                for (int y = 0; y < 4 && by * 4 + y < height; y++) {
+                    for (int x = 0; x < 4 && bx * 4 + x < width; x++) {
+                        out[(by * 4 + y) * width + bx * 4 + x] = block[y * 4 + x];
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 压缩一个块
+     *
+     * @param pixels 16个像素,按行存放
+     */
+    public static void encodeBlock(int[] pixels, byte[] out, int offset) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] average = new int[6];
+        for (int flip = 0; flip < 2; flip++) {
+            subblockAverages(pixels, flip, average);
+
+            // 差分模式: 5位颜色,第二个子块相对第一个的差在[-4, 3]之内
+            Candidate[] first = candidates(pixels, flip, 0, average, 31);
+            Candidate[] second = candidates(pixels, flip, 1, average, 31);
+            for (Candidate a : first) {
+                for (Candidate b : second) {
+                    if (a.error + b.error >= bestError || !isDelta(a, b)) {
+                        continue;
+                    }
+                    long bits = 1L << 33 | (long) flip << 32;
+                    for (int c = 0; c < 3; c++) {
+                        bits |= (long) a.base[c] << (59 - 8 * c);
+                        bits |= (long) (b.base[c] - a.base[c] & 7) << (56 - 8 * c);
+                    }
+                    bestError = a.error + b.error;
+                    best = bits | a.bits(37) | b.bits(34);
+                }
+            }
+
+            // 独立模式: 两个子块各自4位颜色
+            Candidate a = bestOf(candidates(pixels, flip, 0, average, 15));
+            Candidate b = bestOf(candidates(pixels, flip, 1, average, 15));
+            if (a.error + b.error < bestError) {
+                long bits = (long) flip << 32;
+                for (int c = 0; c < 3; c++) {
+                    bits |= (long) a.base[c] << (60 - 8 * c);
+                    bits |= (long) b.base[c] << (56 - 8 * c);
+                }
+                bestError = a.error + b.error;
+                best = bits | a.bits(37) | b.bits(34);
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (best >>> (56 - 8 * i));
+        }
+    }
+
+    /** 解压一个块,16个像素按行存放 */
+    public static void decodeBlock(byte[] data, int offset, int[] pixels) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = bits << 8 | (data[offset + i] & 0xff);
+        }
+        boolean differential = (bits >>> 33 & 1) != 0;
+        int flip = (int) (bits >>> 32 & 1);
+        int[] first = new int[3];
+        int[] second = new int[3];
+        for (int c = 0; c < 3; c++) {
+            if (differential) {
+                int value = (int) (bits >>> (59 - 8 * c) & 31);
+                int delta = (int) (bits >>> (56 - 8 * c) & 7);
+                delta = delta >= 4 ? delta - 8 : delta;
+                first[c] = value << 3 | value >> 2;
+                int secondValue = value + delta;
+                second[c] = secondValue << 3 | secondValue >> 2;
+            } else {
+                int value1 = (int) (bits >>> (60 - 8 * c) & 15);
+                int value2 = (int) (bits >>> (56 - 8 * c) & 15);
+                first[c] = value1 * 17;
+                second[c] = value2 * 17;
+            }
+        }
+        int table1 = (int) (bits >>> 37 & 7);
+        int table2 = (int) (bits >>> 34 & 7);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                boolean inSecond = flip == 0 ? x >= 2 : y >= 2;
+                int[] color = inSecond ? second : first;
+                int[] table = MODIFIERS[inSecond ? table2 : table1];
+                int index = pixelIndex(bits, x, y);
+                int modifier = table[index];
+                pixels[y * 4 + x] = 0xff000000
+                        | clamp(color[0] + modifier) << 16
+                        | clamp(color[1] + modifier) << 8
+                        | clamp(color[2] + modifier);
+            }
+        }
+    }
+
+    /** 子块的一种基础颜色,以及和它误差最小的修正表 */
+    private static final class Candidate {
+        final int[] base = new int[3];
+        int table;
+        long indices;
+        long error = Long.MAX_VALUE;
+
+        long bits(int tableShift) {
+            return (long) table << tableShift | indices;
+        }
+    }
+
+    /**
+     * 子块的候选基础颜色:平均颜色,以及平均颜色减去各个修正值,像素正好等于平均颜色时
+     * 也能用最小的修正值精确还原
+     *
+     * @param max 颜色的最大值,差分模式31,独立模式15
+     */
+    private static Candidate[] candidates(int[] pixels, int flip, int sub, int[] average, int max) {
+        Candidate[] result = new Candidate[1 + 2 * MODIFIERS.length];
+        int count = 0;
+        for (int k = 0; k < result.length; k++) {
+            int delta = k == 0 ? 0 : MODIFIERS[(k - 1) / 2][(k - 1) % 2 == 0 ? 0 : 2];
+            Candidate candidate = new Candidate();
+            for (int c = 0; c < 3; c++) {
+                candidate.base[c] = quantize(clamp(average[sub * 3 + c] - delta), max);
+            }
+            boolean duplicate = false;
+            for (int i = 0; i < count && !duplicate; i++) {
+                duplicate = Arrays.equals(result[i].base, candidate.base);
+            }
+            if (!duplicate) {
+                fitTable(pixels, flip, sub, candidate, max);
+                result[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static Candidate bestOf(Candidate[] candidates) {
+        Candidate best = candidates[0];
+        for (Candidate candidate : candidates) {
+            if (candidate.error < best.error) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isDelta(Candidate first, Candidate second) {
+        for (int c = 0; c < 3; c++) {
+            int delta = second.base[c] - first.base[c];
+            if (delta < -4 || delta > 3) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 给子块选一张误差最小的修正表和每个像素的修正值 */
+    private static void fitTable(int[] pixels, int flip, int sub, Candidate candidate, int max) {
+        int[] color = new int[3];
+        for (int c = 0; c < 3; c++) {
+            int value = candidate.base[c];
+            color[c] = max == 15 ? value * 17 : value << 3 | value >> 2;
+        }
+        for (int t = 0; t < 8; t++) {
+            long error = 0;
+            long indices = 0;
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    if ((flip == 0 ? x >= 2 : y >= 2) != (sub == 1)) {
+                        continue;
+                    }
+                    int pixel = pixels[y * 4 + x];
+                    int pixelBest = 0;
+                    int pixelError = Integer.MAX_VALUE;
+                    for (int m = 0; m < 4; m++) {
+                        int e = error(pixel, color, MODIFIERS[t][m]);
+                        if (e < pixelError) {
+                            pixelError = e;
+                            pixelBest = m;
+                        }
+                    }
+                    error += pixelError;
+                    indices |= indexBits(pixelBest, x, y);
+                }
+            }
+            if (error < candidate.error) {
+                candidate.error = error;
+                candidate.table = t;
+                candidate.indices = indices;
+            }
+        }
+    }
+
+    // 像素索引的高位在第16+i位,低位在第i位,i按列排列
+    private static long indexBits(int index, int x, int y) {
+        int i = x * 4 + y;
+        return (long) (index >> 1) << (16 + i) | (long) (index & 1) << i;
+    }
+
+    private static int pixelIndex(long bits, int x, int y) {
+        int i = x * 4 + y;
+        return (int) ((bits >>> (16 + i) & 1) << 1 | (bits >>> i & 1));
+    }
+
+    private static int error(int pixel, int[] color, int modifier) {
+        int dr = ((pixel >> 16) & 0xff) - clamp(color[0] + modifier);
+        int dg = ((pixel >> 8) & 0xff) - clamp(color[1] + modifier);
+        int db = (pixel & 0xff) - clamp(color[2] + modifier);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /** 两个子块的平均颜色,average[0..2]是第一个子块 */
+    private static void subblockAverages(int[] pixels, int flip, int[] average) {
+        int[] sum = new int[6];
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int o = (flip == 0 ? x >= 2 : y >= 2) ? 3 : 0;
+                int pixel = pixels[y * 4 + x];
+                sum[o] += (pixel >> 16) & 0xff;
+                sum[o + 1] += (pixel >> 8) & 0xff;
+                sum[o + 2] += pixel & 0xff;
+            }
+        }
+        for (int c = 0; c < 6; c++) {
+            average[c] = (sum[c] + 4) / 8;
+        }
+    }
+
+    private static int quantize(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
@@ -0,0 +1,158 @@
+package com.webank.mbank.ar.texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * KTX 1.1 压缩纹理文件,由 {@link KtxWriter} 生成,包含整条预先生成的mip链,
+ * 运行时不需要解码,每一级直接传给glCompressedTexImage2D。
+ * <p>
+ * 只支持这里用到的情况:一张2D压缩纹理,没有数组和立方体贴图。格式:
+ * <pre>
+ * 文件头(HEADER_SIZE字节):
+ *   byte[12] IDENTIFIER
+ *   int   ENDIANNESS   按写入时的字节序读出来是0x04030201
+ *   int   glType, glTypeSize, glFormat  压缩纹理为0, 1, 0
+ *   int   glInternalFormat              比如 {@link Etc1#GL_ETC1_RGB8_OES}
+ *   int   glBaseInternalFormat
+ *   int   pixelWidth, pixelHeight, pixelDepth(0)
+ *   int   numberOfArrayElements(0), numberOfFaces(1)
+ *   int   numberOfMipmapLevels
+ *   int   bytesOfKeyValueData
+ * 键值数据: bytesOfKeyValueData 字节,忽略
+ * 每一级mipmap: int imageSize, imageSize字节的数据,补齐到4字节
+ * </pre>
+ * 通过 {@link #wrap(ByteBuffer)} 读取,每一级的数据都是原buffer的视图,不会拷贝。
+ */
+public class KtxFile {
+    public static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    public static final int ENDIANNESS = 0x04030201;
+    public static final int HEADER_SIZE = 64;
+    /** 运行时优先加载的文件扩展名,没有或者设备不支持时才解码同名的.png */
+    public static final String EXTENSION = ".ktx";
+    /** glBaseInternalFormat,GL_RGB */
+    public static final int GL_RGB = 0x1907;
+
+    private final ByteBuffer data;
+    private final int internalFormat;
+    private final int baseInternalFormat;
+    private final int width;
+    private final int height;
+    private final int[] levelOffset;
+    private final int[] levelSize;
+
+    private KtxFile(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.remaining() < HEADER_SIZE) {
+            throw new IOException("truncated ktx header");
+        }
+        int start = data.position();
+        for (int i = 0; i < IDENTIFIER.length; i++) {
+            if (data.get(start + i) != IDENTIFIER[i]) {
+                throw new IOException("not a ktx file");
+            }
+        }
+        if (data.getInt(start + 12) != ENDIANNESS) {
+            data.order(data.order() == ByteOrder.LITTLE_ENDIAN
+                    ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt(start + 12) != ENDIANNESS) {
+                throw new IOException("bad ktx endianness");
+            }
+        }
+        if (data.getInt(start + 16) != 0) {
+            throw new IOException("not a compressed texture");
+        }
+        internalFormat = data.getInt(start + 28);
+        baseInternalFormat = data.getInt(start + 32);
+        width = data.getInt(start + 36);
+        height = data.getInt(start + 40);
+        if (width <= 0 || height <= 0 || data.getInt(start + 44) != 0
+                || data.getInt(start + 48) > 1 || data.getInt(start + 52) != 1) {
+            throw new IOException("unsupported ktx texture " + width + "x" + height);
+        }
+        // 0表示由加载方生成mipmap,压缩纹理做不到,这里和1级一样处理
+        int levelCount = Math.max(data.getInt(start + 56), 1);
+        if (levelCount > Mipmaps.levelCount(width, height)) {
+            throw new IOException("bad mipmap level count " + levelCount);
+        }
+        int keyValueBytes = data.getInt(start + 60);
+        levelOffset = new int[levelCount];
+        levelSize = new int[levelCount];
+        long offset = HEADER_SIZE + (long) keyValueBytes;
+        for (int i = 0; i < levelCount; i++) {
+            if (keyValueBytes < 0 || data.remaining() < offset + 4) {
+                throw new IOException("truncated ktx level " + i);
+            }
+            int size = data.getInt(start + (int) offset);
+            if (size < 0 || data.remaining() < offset + 4 + size) {
+                throw new IOException("truncated ktx level " + i);
+            }
+            levelOffset[i] = (int) offset + 4;
+            levelSize[i] = size;
+            offset += 4 + ((size + 3) & ~3);
+        }
+    }
+
+    /**
+     * 读取文件头和每一级的位置
+     *
+     * @param data 从position开始的整个文件,比如映射的文件或者读入内存的direct buffer
+     * @throws IOException 不是KTX文件、不是压缩纹理或者文件不完整
+     */
+    public static KtxFile wrap(ByteBuffer data) throws IOException {
+        return new KtxFile(data.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public int getInternalFormat() {
+        return internalFormat;
+    }
+
+    public int getBaseInternalFormat() {
+        return baseInternalFormat;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levelOffset.length;
+    }
+
+    /** 第level级的宽度 */
+    public int getLevelWidth(int level) {
+        return Mipmaps.levelSize(width, level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Mipmaps.levelSize(height, level);
+    }
+
+    /** 第level级的数据,可以直接传给glCompressedTexImage2D */
+    public ByteBuffer getLevel(int level) {
+        ByteBuffer view = data.duplicate();
+        int offset = data.position() + levelOffset[level];
+        view.position(offset);
+        view.limit(offset + levelSize[level]);
+        return view.slice();
+    }
+
+    /** 是否包含直到1x1的完整mip链,可以使用mipmap过滤 */
+    public boolean isMipmapComplete() {
+        return getLevelCount() == Mipmaps.levelCount(width, height);
+    }
+
+    @Override
+    public String toString() {
+        return "KtxFile{" + width + "x" + height
+                + ", format=0x" + Integer.toHexString(internalFormat)
+                + ", levels=" + Arrays.toString(levelSize) + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.webank.mbank.ar.texture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 把图像压缩成ETC1并带上整条mip链,按 {@link KtxFile} 的格式写入输出流
+ */
+public final class KtxWriter {
+
+    private KtxWriter() {
+    }
+
+    /**
+     * 从argb生成直到1x1的mip链,每一级压缩成ETC1后写入
+     *
+     * @param argb 按行存放的像素,宽高都应该是2的幂,见 {@link Mipmaps#resize}
+     */
+    public static void writeEtc1(int[] argb, int width, int height, OutputStream out)
+            throws IOException {
+        int levelCount = Mipmaps.levelCount(width, height);
+        byte[][] levels = new byte[levelCount][];
+        int[] level = argb;
+        for (int i = 0; i < levelCount; i++) {
+            int w = Mipmaps.levelSize(width, i);
+            int h = Mipmaps.levelSize(height, i);
+            if (i > 0) {
+                level = Mipmaps.halve(level, Mipmaps.levelSize(width, i - 1),
+                        Mipmaps.levelSize(height, i - 1));
+            }
+            levels[i] = Etc1.encodeImage(level, w, h);
+        }
+        write(Etc1.GL_ETC1_RGB8_OES, KtxFile.GL_RGB, width, height, levels, out);
+    }
+
+    /**
+     * 写入已经压缩好的各级数据
+     *
+     * @param levels 第0级最大,每一级的宽高是上一级的一半
+     */
+    public static void write(int internalFormat, int baseInternalFormat, int width, int height,
+                             byte[][] levels, OutputStream out) throws IOException {
+        int size = KtxFile.HEADER_SIZE;
+        for (byte[] level : levels) {
+            size += 4 + ((level.length + 3) & ~3);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(KtxFile.IDENTIFIER);
+        buffer.putInt(KtxFile.ENDIANNESS);
+        buffer.putInt(0); // glType
+        buffer.putInt(1); // glTypeSize
+        buffer.putInt(0); // glFormat
+        buffer.putInt(internalFormat);
+        buffer.putInt(baseInternalFormat);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(0); // pixelDepth
+        buffer.putInt(0); // numberOfArrayElements
+        buffer.putInt(1); // numberOfFaces
+        buffer.putInt(levels.length);
+        buffer.putInt(0); // bytesOfKeyValueData
+        for (byte[] level : levels) {
+            buffer.putInt(level.length);
+            buffer.put(level);
+            buffer.position((buffer.position() + 3) & ~3);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+}
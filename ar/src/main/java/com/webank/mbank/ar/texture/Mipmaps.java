@@ -0,0 +1,97 @@
+package com.webank.mbank.ar.texture;
+
+/**
+ * 生成mipmap用的图像缩放,像素都是按行存放的ARGB
+ * <p>
+ * OpenGL ES 2.0中非2的幂的纹理不能使用mipmap,离线转换时先用 {@link #resize} 缩放到2的幂,
+ * 再用 {@link #halve} 逐级生成整条mip链。
+ */
+public final class Mipmaps {
+
+    private Mipmaps() {
+    }
+
+    /** 最接近size的2的幂,相同距离时取较大的 */
+    public static int nearestPowerOfTwo(int size) {
+        int upper = Integer.highestOneBit(Math.max(size, 1));
+        if (upper == size) {
+            return size;
+        }
+        upper <<= 1;
+        int lower = upper >> 1;
+        return size - lower < upper - size ? lower : upper;
+    }
+
+    /** 从width * height到底层1x1的级数 */
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /** 第level级的边长 */
+    public static int levelSize(int size, int level) {
+        return Math.max(size >> level, 1);
+    }
+
+    /**
+     * 双线性缩放到任意尺寸,缩小超过一半时会有混叠,生成mip链用 {@link #halve}
+     */
+    public static int[] resize(int[] argb, int width, int height, int newWidth, int newHeight) {
+        if (newWidth == width && newHeight == height) {
+            return argb.clone();
+        }
+        int[] out = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            float sy = Math.max((y + 0.5f) * height / newHeight - 0.5f, 0f);
+            int y0 = Math.min((int) sy, height - 1);
+            int y1 = Math.min(y0 + 1, height - 1);
+            float fy = sy - y0;
+            for (int x = 0; x < newWidth; x++) {
+                float sx = Math.max((x + 0.5f) * width / newWidth - 0.5f, 0f);
+                int x0 = Math.min((int) sx, width - 1);
+                int x1 = Math.min(x0 + 1, width - 1);
+                float fx = sx - x0;
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    float top = channel(argb[y0 * width + x0], shift) * (1 - fx)
+                            + channel(argb[y0 * width + x1], shift) * fx;
+                    float bottom = channel(argb[y1 * width + x0], shift) * (1 - fx)
+                            + channel(argb[y1 * width + x1], shift) * fx;
+                    pixel |= Math.round(top * (1 - fy) + bottom * fy) << shift;
+                }
+                out[y * newWidth + x] = pixel;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 缩小一级:每2x2个像素取平均,奇数边长时最后一行/列只和自己平均
+     */
+    public static int[] halve(int[] argb, int width, int height) {
+        int newWidth = Math.max(width / 2, 1);
+        int newHeight = Math.max(height / 2, 1);
+        int[] out = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            int y0 = Math.min(y * 2, height - 1);
+            int y1 = Math.min(y * 2 + 1, height - 1);
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = channel(argb[y0 * width + x0], shift)
+                            + channel(argb[y0 * width + x1], shift)
+                            + channel(argb[y1 * width + x0], shift)
+                            + channel(argb[y1 * width + x1], shift);
+                    pixel |= ((sum + 2) >> 2) << shift;
+                }
+                out[y * newWidth + x] = pixel;
+            }
+        }
+        return out;
+    }
+
+    private static int channel(int pixel, int shift) {
+        return (pixel >>> shift) & 0xff;
+    }
+}
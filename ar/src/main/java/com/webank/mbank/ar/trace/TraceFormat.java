@@ -0,0 +1,33 @@
+package com.webank.mbank.ar.trace;
+
+/**
+ * trace文件的二进制格式,大端序(DataOutputStream):
+ * <pre>
+ * 文件头: int MAGIC, short VERSION, long seed(游戏引擎的随机数种子)
+ * 每一帧:
+ *   byte   FRAME_MARKER
+ *   long   timestampNanos
+ *   byte   flags (FLAG_HAS_ANCHOR | FLAG_START_REQUESTED)
+ *   byte   cameraTrackingState
+ *   float  projection[16], view[16], displayOrientedPose[7], lightIntensity
+ *   [byte anchorTrackingState, float anchorPose[7]]      有锚点时
+ *   short  planeCount
+ *     int id, byte trackingState, byte type, float centerPose[7], float extentX, float extentZ
+ *     byte polygonChanged, [short polygonSize, float polygon[polygonSize]]
+ *   short  touchCount
+ *     byte action, float x, float y, long eventNanos
+ * </pre>
+ * 平面的多边形只在变化时才写入,没有变化时回放沿用上一次的多边形。
+ * 平面被移除后它的id会分配给新平面,新平面沿用同一个id的多边形记录。
+ */
+final class TraceFormat {
+    static final int MAGIC = 0x57415254; // "WART"
+    static final short VERSION = 1;
+    static final int FRAME_MARKER = 'F';
+
+    static final int FLAG_HAS_ANCHOR = 1;
+    static final int FLAG_START_REQUESTED = 1 << 1;
+
+    private TraceFormat() {
+    }
+}
@@ -0,0 +1,120 @@
+package com.webank.mbank.ar.trace;
+
+/**
+ * 一帧中游戏从ARCore的 Frame/Camera 读取到的全部数据,以及这一帧之前发生的触摸事件。
+ * <p>
+ * 不依赖任何Android和ARCore的类,录制和回放时都复用同一个对象,数组按需扩容。
+ * 位姿(pose)统一用7个float表示:tx, ty, tz, qx, qy, qz, qw。
+ */
+public class TraceFrame {
+    public static final int POSE_SIZE = 7;
+
+    /** 与 com.google.ar.core.TrackingState 的顺序一致 */
+    public static final int TRACKING = 0;
+    public static final int PAUSED = 1;
+    public static final int STOPPED = 2;
+
+    /** 与 android.view.MotionEvent 的取值一致 */
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+
+    /** 录制时的 System.nanoTime(),和触摸事件的时间在同一个时钟上 */
+    public long timestampNanos;
+
+    public int cameraTrackingState = TRACKING;
+    public final float[] projection = new float[16];
+    public final float[] view = new float[16];
+    public final float[] displayOrientedPose = new float[POSE_SIZE];
+    public float lightIntensity;
+
+    /** 平面,下标从0到planeCount-1 */
+    public TracePlane[] planes = new TracePlane[0];
+    public int planeCount;
+
+    /** 点击平面产生的、还没有用来开始游戏的锚点 */
+    public boolean hasAnchor;
+    public int anchorTrackingState = TRACKING;
+    public final float[] anchorPose = new float[POSE_SIZE];
+    /** 这一帧以anchorPose开始了新的一局 */
+    public boolean startRequested;
+
+    /** 触摸事件,下标从0到touchCount-1 */
+    public int touchCount;
+    public int[] touchActions = new int[4];
+    public float[] touchX = new float[4];
+    public float[] touchY = new float[4];
+    public long[] touchNanos = new long[4];
+
+    public void clear() {
+        planeCount = 0;
+        touchCount = 0;
+        hasAnchor = false;
+        startRequested = false;
+    }
+
+    /** 追加一个平面,复用之前分配的对象 */
+    public TracePlane addPlane() {
+        if (planeCount == planes.length) {
+            TracePlane[] grown = new TracePlane[Math.max(4, planes.length * 2)];
+            System.arraycopy(planes, 0, grown, 0, planes.length);
+            for (int i = planes.length; i < grown.length; i++) {
+                grown[i] = new TracePlane();
+            }
+            planes = grown;
+        }
+        return planes[planeCount++];
+    }
+
+    public void addTouch(int action, float x, float y, long eventNanos) {
+        if (touchCount == touchActions.length) {
+            int capacity = touchActions.length * 2;
+            touchActions = copyOf(touchActions, capacity);
+            touchX = copyOf(touchX, capacity);
+            touchY = copyOf(touchY, capacity);
+            long[] nanos = new long[capacity];
+            System.arraycopy(touchNanos, 0, nanos, 0, touchCount);
+            touchNanos = nanos;
+        }
+        touchActions[touchCount] = action;
+        touchX[touchCount] = x;
+        touchY[touchCount] = y;
+        touchNanos[touchCount] = eventNanos;
+        touchCount++;
+    }
+
+    private static int[] copyOf(int[] src, int capacity) {
+        int[] dst = new int[capacity];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    private static float[] copyOf(float[] src, int capacity) {
+        float[] dst = new float[capacity];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    /** 一个平面的数据 */
+    public static class TracePlane {
+        /** 录制时为每个平面分配的id,同一个平面在整个trace中不变 */
+        public int id;
+        public int trackingState = TRACKING;
+        /** com.google.ar.core.Plane.Type 的顺序 */
+        public int type;
+        public final float[] centerPose = new float[POSE_SIZE];
+        public float extentX;
+        public float extentZ;
+        /** 平面局部坐标系下的多边形顶点(x, z),有效长度为polygonSize */
+        public float[] polygon = new float[32];
+        public int polygonSize;
+
+        /** 保证多边形数组至少能放下size个float,内容不保留 */
+        public float[] ensurePolygonCapacity(int size) {
+            if (polygon.length < size) {
+                polygon = new float[Math.max(size, polygon.length * 2)];
+            }
+            polygonSize = size;
+            return polygon;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.webank.mbank.ar.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按顺序读取 {@link TraceWriter} 写入的trace。非线程安全。
+ */
+public class TraceReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+    // 每个平面最近一次读到的多边形,用于没有变化的帧
+    private final Map<Integer, float[]> lastPolygons = new HashMap<>();
+    private final long seed;
+
+    public TraceReader(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        int magic = in.readInt();
+        if (magic != TraceFormat.MAGIC) {
+            throw new IOException("not a trace file, magic=" + Integer.toHexString(magic));
+        }
+        int version = in.readShort();
+        if (version != TraceFormat.VERSION) {
+            throw new IOException("unsupported trace version " + version);
+        }
+        seed = in.readLong();
+    }
+
+    /** 录制时游戏引擎使用的随机数种子 */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * 读取下一帧到frame中
+     *
+     * @return 已经读到文件末尾时返回false
+     */
+    public boolean read(TraceFrame frame) throws IOException {
+        int marker = in.read();
+        if (marker < 0) {
+            return false;
+        }
+        if (marker != TraceFormat.FRAME_MARKER) {
+            throw new IOException("corrupted trace, unexpected marker " + marker);
+        }
+        try {
+            readFrame(frame);
+        } catch (EOFException e) {
+            throw new IOException("truncated trace", e);
+        }
+        return true;
+    }
+
+    private void readFrame(TraceFrame frame) throws IOException {
+        frame.clear();
+        frame.timestampNanos = in.readLong();
+        int flags = in.readByte();
+        frame.hasAnchor = (flags & TraceFormat.FLAG_HAS_ANCHOR) != 0;
+        frame.startRequested = (flags & TraceFormat.FLAG_START_REQUESTED) != 0;
+        frame.cameraTrackingState = in.readByte();
+        readFloats(frame.projection, 16);
+        readFloats(frame.view, 16);
+        readFloats(frame.displayOrientedPose, TraceFrame.POSE_SIZE);
+        frame.lightIntensity = in.readFloat();
+        if (frame.hasAnchor) {
+            frame.anchorTrackingState = in.readByte();
+            readFloats(frame.anchorPose, TraceFrame.POSE_SIZE);
+        }
+
+        int planeCount = in.readShort();
+        for (int i = 0; i < planeCount; i++) {
+            readPlane(frame.addPlane());
+        }
+
+        int touchCount = in.readShort();
+        for (int i = 0; i < touchCount; i++) {
+            int action = in.readByte();
+            float x = in.readFloat();
+            float y = in.readFloat();
+            frame.addTouch(action, x, y, in.readLong());
+        }
+    }
+
+    private void readPlane(TraceFrame.TracePlane plane) throws IOException {
+        plane.id = in.readInt();
+        plane.trackingState = in.readByte();
+        plane.type = in.readByte();
+        readFloats(plane.centerPose, TraceFrame.POSE_SIZE);
+        plane.extentX = in.readFloat();
+        plane.extentZ = in.readFloat();
+
+        float[] last = lastPolygons.get(plane.id);
+        if (in.readByte() == 0) {
+            if (last == null) {
+                throw new IOException("missing polygon for plane " + plane.id);
+            }
+            System.arraycopy(last, 0, plane.ensurePolygonCapacity(last.length), 0, last.length);
+            return;
+        }
+        int size = in.readShort();
+        readFloats(plane.ensurePolygonCapacity(size), size);
+        if (last == null || last.length != size) {
+            last = new float[size];
+            lastPolygons.put(plane.id, last);
+        }
+        System.arraycopy(plane.polygon, 0, last, 0, size);
+    }
+
+    private void readFloats(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.webank.mbank.ar.trace;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Camera;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.webank.mbank.ar.rendering.ArCorePlaneSource;
+import com.webank.mbank.ar.rendering.PlaneRegistry;
+import com.webank.mbank.ar.rendering.PlaneRenderer;
+import com.webank.mbank.ar.utils.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.util.Collection;
+
+/**
+ * 录制一局游戏的输入:每一帧从ARCore读到的数据以及触摸事件,写成 {@link TraceFormat} 格式,
+ * 之后可以用 {@link TraceReplayer} 在JVM上回放。
+ * <p>
+ * {@link #recordTouch(int, float, float, long)} 可以在任意线程调用,其余方法都在GL线程上调用。
+ * 写入失败后会停止录制,不会影响游戏。
+ * <p>
+ * 平面的id是它在 {@link PlaneRegistry} 中的下标:被合并、停止追踪或不再出现的平面会被移除,
+ * 它的id留给之后的新平面,所以长时间录制时记录的平面数不会一直增长。这些死掉的平面也不会被录制,
+ * 和 {@link PlaneRenderer} 一样不再绘制它们。
+ */
+public class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+
+    private final TraceWriter writer;
+    private final TraceFrame frame = new TraceFrame();
+    // UI线程上收到的触摸事件,在下一帧写入
+    private final TraceFrame pendingTouches = new TraceFrame();
+    private final PlaneRegistry planeIds = new PlaneRegistry(null);
+    private boolean failed;
+
+    /**
+     * @param seed 游戏引擎的随机数种子,见 {@link TraceWriter#TraceWriter(OutputStream, long)}
+     */
+    public TraceRecorder(OutputStream out, long seed) throws IOException {
+        writer = new TraceWriter(out, seed);
+    }
+
+    public void recordTouch(int action, float x, float y, long eventNanos) {
+        synchronized (pendingTouches) {
+            pendingTouches.addTouch(action, x, y, eventNanos);
+        }
+    }
+
+    /**
+     * 录制一帧
+     *
+     * @param anchor         还没有用来开始游戏的锚点,没有时传null
+     * @param startRequested 这一帧是否以anchor开始了新的一局
+     */
+    public void recordFrame(long nowNanos, Camera camera, float[] projection, float[] view,
+                            float lightIntensity, Collection<Plane> planes,
+                            Anchor anchor, boolean startRequested) {
+        if (failed) {
+            return;
+        }
+        frame.clear();
+        frame.timestampNanos = nowNanos;
+        frame.cameraTrackingState = camera.getTrackingState().ordinal();
+        System.arraycopy(projection, 0, frame.projection, 0, 16);
+        System.arraycopy(view, 0, frame.view, 0, 16);
+        copyPose(camera.getDisplayOrientedPose(), frame.displayOrientedPose);
+        frame.lightIntensity = lightIntensity;
+
+        if (anchor != null) {
+            frame.hasAnchor = true;
+            frame.anchorTrackingState = anchor.getTrackingState().ordinal();
+            copyPose(anchor.getPose(), frame.anchorPose);
+            frame.startRequested = startRequested;
+        }
+
+        planeIds.beginFrame();
+        for (Plane plane : planes) {
+            int id = planeIds.update(plane, ArCorePlaneSource.lifecycleState(plane));
+            if (id >= 0) {
+                recordPlane(plane, id, frame.addPlane());
+            }
+        }
+        planeIds.endFrame();
+
+        synchronized (pendingTouches) {
+            for (int i = 0; i < pendingTouches.touchCount; i++) {
+                frame.addTouch(pendingTouches.touchActions[i], pendingTouches.touchX[i],
+                        pendingTouches.touchY[i], pendingTouches.touchNanos[i]);
+            }
+            pendingTouches.touchCount = 0;
+        }
+
+        try {
+            writer.write(frame);
+        } catch (IOException e) {
+            failed = true;
+            Logger.e(TAG, e, "failed to write trace, recording stopped");
+        }
+    }
+
+    private void recordPlane(Plane plane, int id, TraceFrame.TracePlane out) {
+        out.id = id;
+        out.trackingState = plane.getTrackingState().ordinal();
+        out.type = plane.getType().ordinal();
+        copyPose(plane.getCenterPose(), out.centerPose);
+        out.extentX = plane.getExtentX();
+        out.extentZ = plane.getExtentZ();
+
+        FloatBuffer polygon = plane.getPolygon();
+        polygon.rewind();
+        int size = polygon.limit();
+        polygon.get(out.ensurePolygonCapacity(size), 0, size);
+    }
+
+    private static void copyPose(Pose pose, float[] out) {
+        pose.getTranslation(out, 0);
+        pose.getRotationQuaternion(out, 3);
+    }
+
+    public int getFrameCount() {
+        return writer.getFrameCount();
+    }
+
+    /** 结束录制,GL线程已经停止之后调用 */
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Logger.e(TAG, e, "failed to close trace");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.webank.mbank.ar.trace;
+
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.profiling.LogLinearHistogram;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 在JVM上回放 {@link TraceRecorder} 录制的trace:按录制时的时间把触摸事件和开局交给
+ * {@link JumpGameEngine},再把每一帧的数据和游戏状态交给 {@link FrameConsumer}(比如渲染)。
+ * <p>
+ * 引擎使用trace中记录的随机数种子,同一份trace每次回放的游戏过程完全一样,
+ * 可以逐帧对比不同版本的耗时和状态。
+ * <p>
+ * 命令行工具在tools模块的 {@code ReplayTrace} 中。
+ */
+public class TraceReplayer {
+
+    /** 每一帧回放完游戏逻辑之后回调 */
+    public interface FrameConsumer {
+        void onFrame(TraceFrame frame, JumpGameState state);
+    }
+
+    private final JumpGameEngine engine;
+    private final TraceFrame frame = new TraceFrame();
+    private final float[] anchorMatrix = new float[16];
+    private final LogLinearHistogram frameNanos = new LogLinearHistogram();
+    private FrameConsumer consumer;
+    private Writer report;
+
+    public TraceReplayer(JumpGameEngine engine) {
+        this.engine = engine;
+    }
+
+    public void setFrameConsumer(FrameConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /** 逐帧输出CSV:帧号、录制时间、回放耗时、阶段、得分、桌子数、状态校验和 */
+    public void setReport(Writer report) {
+        this.report = report;
+    }
+
+    /** 每一帧回放的耗时(纳秒),包括FrameConsumer */
+    public LogLinearHistogram getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * 回放整个trace
+     *
+     * @return 回放的帧数
+     */
+    public int replay(TraceReader reader) throws IOException {
+        if (report != null) {
+            report.write("frame,timestampNanos,replayNanos,phase,score,platformCount,checksum\n");
+        }
+        int frames = 0;
+        while (reader.read(frame)) {
+            long start = System.nanoTime();
+            step(frame);
+            JumpGameState state = engine.getState();
+            if (consumer != null) {
+                consumer.onFrame(frame, state);
+            }
+            long elapsed = System.nanoTime() - start;
+            frameNanos.record(elapsed);
+            if (report != null) {
+                report.write(frames + "," + frame.timestampNanos + "," + elapsed + "," + state.phase
+                        + "," + state.score + "," + state.platforms.size() + ","
+                        + Long.toHexString(checksum(state)) + "\n");
+            }
+            frames++;
+        }
+        if (report != null) {
+            report.flush();
+        }
+        return frames;
+    }
+
+    /** 和 JumpGameLoop.step 的顺序一致:开局、按下、抬起,最后推进到这一帧的时间 */
+    private void step(TraceFrame frame) {
+        if (frame.startRequested) {
+            float[] pose = frame.anchorPose;
+            Mat4.setFromPose(anchorMatrix, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+            engine.start(anchorMatrix);
+        }
+        for (int i = 0; i < frame.touchCount; i++) {
+            if (frame.touchActions[i] == TraceFrame.ACTION_DOWN) {
+                engine.press(frame.touchNanos[i]);
+            } else if (frame.touchActions[i] == TraceFrame.ACTION_UP) {
+                engine.release(frame.touchNanos[i]);
+            }
+        }
+        engine.update(frame.timestampNanos);
+    }
+
+    /** 游戏状态的校验和,用于逐帧对比两次回放的结果是否一致 */
+    public static long checksum(JumpGameState state) {
+        long hash = 17;
+        hash = hash * 31 + state.phase;
+        hash = hash * 31 + state.score;
+        hash = hash * 31 + (state.direction ? 1 : 0);
+        hash = hash * 31 + state.platforms.size();
+        hash = hash(hash, state.robotMatrix, 0);
+        for (int i = 0; i < state.platforms.size(); i++) {
+            hash = hash(hash, state.platforms.getArray(), state.platforms.offset(i));
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, float[] matrix, int offset) {
+        for (int i = 0; i < 16; i++) {
+            hash = hash * 31 + Float.floatToIntBits(matrix[offset + i]);
+        }
+        return hash;
+    }
+}
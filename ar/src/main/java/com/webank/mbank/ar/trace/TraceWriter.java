@@ -0,0 +1,121 @@
+package com.webank.mbank.ar.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 把 {@link TraceFrame} 按 {@link TraceFormat} 写入输出流。非线程安全。
+ */
+public class TraceWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    // 每个平面最近一次写入的多边形,没有变化时不重复写
+    private final Map<Integer, float[]> lastPolygons = new HashMap<>();
+    private int frameCount;
+
+    /**
+     * @param seed 录制时游戏引擎使用的随机数种子,回放时用它生成同样的桌子
+     */
+    public TraceWriter(OutputStream stream, long seed) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.writeInt(TraceFormat.MAGIC);
+        out.writeShort(TraceFormat.VERSION);
+        out.writeLong(seed);
+    }
+
+    public void write(TraceFrame frame) throws IOException {
+        out.writeByte(TraceFormat.FRAME_MARKER);
+        out.writeLong(frame.timestampNanos);
+        int flags = 0;
+        if (frame.hasAnchor) {
+            flags |= TraceFormat.FLAG_HAS_ANCHOR;
+        }
+        if (frame.startRequested) {
+            flags |= TraceFormat.FLAG_START_REQUESTED;
+        }
+        out.writeByte(flags);
+        out.writeByte(frame.cameraTrackingState);
+        writeFloats(frame.projection, 16);
+        writeFloats(frame.view, 16);
+        writeFloats(frame.displayOrientedPose, TraceFrame.POSE_SIZE);
+        out.writeFloat(frame.lightIntensity);
+        if (frame.hasAnchor) {
+            out.writeByte(frame.anchorTrackingState);
+            writeFloats(frame.anchorPose, TraceFrame.POSE_SIZE);
+        }
+
+        out.writeShort(frame.planeCount);
+        for (int i = 0; i < frame.planeCount; i++) {
+            writePlane(frame.planes[i]);
+        }
+
+        out.writeShort(frame.touchCount);
+        for (int i = 0; i < frame.touchCount; i++) {
+            out.writeByte(frame.touchActions[i]);
+            out.writeFloat(frame.touchX[i]);
+            out.writeFloat(frame.touchY[i]);
+            out.writeLong(frame.touchNanos[i]);
+        }
+        frameCount++;
+    }
+
+    private void writePlane(TraceFrame.TracePlane plane) throws IOException {
+        out.writeInt(plane.id);
+        out.writeByte(plane.trackingState);
+        out.writeByte(plane.type);
+        writeFloats(plane.centerPose, TraceFrame.POSE_SIZE);
+        out.writeFloat(plane.extentX);
+        out.writeFloat(plane.extentZ);
+
+        float[] last = lastPolygons.get(plane.id);
+        if (last != null && samePolygon(last, plane.polygon, plane.polygonSize)) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeShort(plane.polygonSize);
+        writeFloats(plane.polygon, plane.polygonSize);
+        if (last == null || last.length != plane.polygonSize) {
+            last = new float[plane.polygonSize];
+            lastPolygons.put(plane.id, last);
+        }
+        System.arraycopy(plane.polygon, 0, last, 0, plane.polygonSize);
+    }
+
+    private static boolean samePolygon(float[] last, float[] polygon, int size) {
+        if (last.length != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Float.floatToIntBits(last[i]) != Float.floatToIntBits(polygon[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeFloats(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -121,6 +121,13 @@ public class Logger {
         logLevel = level;
     }
 
+    /**
+     * 判断该级别的日志是否会被输出,热路径上先判断再拼接字符串,避免每帧产生垃圾对象
+     */
+    public static boolean isLoggable(int level) {
+        return proxys.size() > 0 || logLevel <= level;
+    }
+
     public static void closeLog() {
         logLevel = 10;
     }
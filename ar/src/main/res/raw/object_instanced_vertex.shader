@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Draws up to 24 instances of a mesh per draw call. The mesh is repeated once per instance and
+// a_InstanceId selects the instance's model-view matrix, see ObjectRenderer.MAX_INSTANCES_PER_DRAW.
+uniform mat4 u_ModelView[24];
+uniform mat4 u_Projection;
+
+// Restore quantized attributes, see ObjectRenderer.setDequantization. Identity for float vertices.
+uniform vec4 u_PositionScale;
+uniform vec4 u_PositionOffset;
+uniform vec4 u_TexCoordTransform;
+
+attribute vec4 a_Position;
+attribute vec3 a_Normal;
+attribute vec2 a_TexCoord;
+attribute float a_InstanceId;
+
+varying vec3 v_ViewPosition;
+varying vec3 v_ViewNormal;
+varying vec2 v_TexCoord;
+
+void main() {
+    mat4 modelView = u_ModelView[int(a_InstanceId)];
+    // w is 0 in the scale and 1 in the offset, so the position stays a point.
+    vec4 position = a_Position * u_PositionScale + u_PositionOffset;
+    vec4 viewPosition = modelView * position;
+    v_ViewPosition = viewPosition.xyz;
+    v_ViewNormal = normalize((modelView * vec4(a_Normal, 0.0)).xyz);
+    v_TexCoord = a_TexCoord * u_TexCoordTransform.xy + u_TexCoordTransform.zw;
+    gl_Position = u_Projection * viewPosition;
+}
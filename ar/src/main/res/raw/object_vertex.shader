@@ -16,6 +16,11 @@
 uniform mat4 u_ModelView;
 uniform mat4 u_ModelViewProjection;
 
+// Restore quantized attributes, see ObjectRenderer.setDequantization. Identity for float vertices.
+uniform vec4 u_PositionScale;
+uniform vec4 u_PositionOffset;
+uniform vec4 u_TexCoordTransform;
+
 attribute vec4 a_Position;
 attribute vec3 a_Normal;
 attribute vec2 a_TexCoord;
@@ -25,8 +30,10 @@ varying vec3 v_ViewNormal;
 varying vec2 v_TexCoord;
 
 void main() {
-    v_ViewPosition = (u_ModelView * a_Position).xyz;
+    // w is 0 in the scale and 1 in the offset, so the position stays a point.
+    vec4 position = a_Position * u_PositionScale + u_PositionOffset;
+    v_ViewPosition = (u_ModelView * position).xyz;
     v_ViewNormal = normalize((u_ModelView * vec4(a_Normal, 0.0)).xyz);
-    v_TexCoord = a_TexCoord;
-    gl_Position = u_ModelViewProjection * a_Position;
+    v_TexCoord = a_TexCoord * u_TexCoordTransform.xy + u_TexCoordTransform.zw;
+    gl_Position = u_ModelViewProjection * position;
 }
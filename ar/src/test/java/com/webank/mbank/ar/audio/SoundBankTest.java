@@ -0,0 +1,145 @@
+package com.webank.mbank.ar.audio;
+
+import com.webank.mbank.ar.profiling.LogLinearHistogram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用不发声的 {@link SoundSink} 检查加载、播放、抢占和释放,以及触发到播放的延迟
+ */
+public class SoundBankTest {
+    private static final int MAX_VOICES = 2;
+
+    private final FakeSink sink = new FakeSink();
+    private final SoundBank bank = new SoundBank(sink, MAX_VOICES);
+
+    @Test
+    public void decodesEachSoundOnce() throws Exception {
+        loadAll();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bank.play(SoundBank.LONG_PRESS));
+            bank.stop(SoundBank.LONG_PRESS);
+        }
+        assertEquals(SoundBank.SOUND_COUNT, sink.loads);
+        assertEquals(100, bank.getPlayCount());
+        assertEquals(0, bank.getVoiceCount());
+    }
+
+    @Test
+    public void dropsSoundsThatAreNotDecoded() throws Exception {
+        assertFalse(bank.play(SoundBank.GAME_START));
+        bank.load(SoundBank.GAME_START, 11);
+        sink.ready = false;
+        assertFalse(bank.play(SoundBank.GAME_START));
+        assertEquals(2, bank.getDroppedCount());
+        assertTrue(sink.playing.isEmpty());
+    }
+
+    @Test
+    public void stealsTheOldestVoice() throws Exception {
+        loadAll();
+        bank.play(SoundBank.LONG_PRESS);
+        bank.play(SoundBank.JUMP_SUCCESS);
+        int first = sink.playing.get(0);
+        bank.play(SoundBank.GAME_OVER);
+
+        assertEquals(MAX_VOICES, bank.getVoiceCount());
+        assertEquals(1, bank.getStolenCount());
+        assertFalse(sink.playing.contains(first));
+        assertEquals(MAX_VOICES, sink.playing.size());
+    }
+
+    @Test
+    public void stopOnlyStopsThatSound() throws Exception {
+        loadAll();
+        bank.play(SoundBank.JUMP_SUCCESS);
+        bank.play(SoundBank.LONG_PRESS);
+        int jump = sink.playing.get(0);
+        bank.stop(SoundBank.LONG_PRESS);
+
+        assertEquals(1, bank.getVoiceCount());
+        assertEquals(1, sink.playing.size());
+        assertEquals(jump, (int) sink.playing.get(0));
+
+        // 留下的声音仍然是最早的,会被先抢占
+        bank.play(SoundBank.GAME_START);
+        bank.play(SoundBank.GAME_OVER);
+        assertFalse(sink.playing.contains(jump));
+    }
+
+    @Test
+    public void releaseFreesTheSink() throws Exception {
+        loadAll();
+        bank.play(SoundBank.GAME_START);
+        bank.release();
+        assertTrue(sink.released);
+        assertFalse(bank.play(SoundBank.GAME_START));
+        bank.release();
+        assertEquals(1, sink.releases);
+    }
+
+    @Test
+    public void triggerToPlayLatency() throws Exception {
+        loadAll();
+        LogLinearHistogram latency = new LogLinearHistogram();
+        for (int i = 0; i < 20000; i++) {
+            long trigger = System.nanoTime();
+            bank.play(SoundBank.LONG_PRESS);
+            latency.record(sink.lastPlayNanos - trigger);
+            bank.stop(SoundBank.LONG_PRESS);
+        }
+        // 不再每次都创建SoundPool并解码,触发后立即交给输出
+        assertTrue("p50 " + latency.getPercentile(50), latency.getPercentile(50) < 1000000L);
+    }
+
+    private void loadAll() {
+        bank.load(SoundBank.LONG_PRESS, 10);
+        bank.load(SoundBank.GAME_START, 11);
+        bank.load(SoundBank.JUMP_SUCCESS, 12);
+        bank.load(SoundBank.GAME_OVER, 13);
+    }
+
+    private static final class FakeSink implements SoundSink {
+        final List<Integer> playing = new ArrayList<>();
+        boolean ready = true;
+        boolean released;
+        int loads;
+        int releases;
+        int nextStream = 1;
+        long lastPlayNanos;
+
+        @Override
+        public int load(int resId) {
+            loads++;
+            return resId;
+        }
+
+        @Override
+        public int play(int sampleId, float volume) {
+            lastPlayNanos = System.nanoTime();
+            if (!ready) {
+                return 0;
+            }
+            int stream = nextStream++;
+            playing.add(stream);
+            return stream;
+        }
+
+        @Override
+        public void stop(int streamId) {
+            playing.remove(Integer.valueOf(streamId));
+        }
+
+        @Override
+        public void release() {
+            released = true;
+            releases++;
+            playing.clear();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.webank.mbank.ar.game;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class InputEventRingTest {
+    private final InputEvent event = new InputEvent();
+
+    @Test
+    public void keepsOrderAndPressDuration() throws Exception {
+        InputEventRing ring = new InputEventRing(8);
+        assertFalse(ring.poll(event));
+        ring.offer(InputEvent.ACTION_DOWN, 1f, 2f, 1000L);
+        ring.offer(InputEvent.ACTION_UP, 3f, 4f, 801000L);
+
+        assertTrue(ring.poll(event));
+        assertEquals(InputEvent.ACTION_DOWN, event.action);
+        assertEquals(1f, event.x, 0f);
+        assertEquals(2f, event.y, 0f);
+        assertEquals(1000L, event.eventNanos);
+        assertEquals(0L, event.pressNanos);
+
+        assertTrue(ring.poll(event));
+        assertEquals(InputEvent.ACTION_UP, event.action);
+        assertEquals(801000L, event.eventNanos);
+        // 按压时长精确到纳秒
+        assertEquals(800000L, event.pressNanos);
+        assertFalse(ring.poll(event));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void wrapsAround() throws Exception {
+        InputEventRing ring = new InputEventRing(4);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ring.offer(InputEvent.ACTION_DOWN, i, 0f, i * 10L));
+            assertTrue(ring.offer(InputEvent.ACTION_UP, i, 0f, i * 10L + 7));
+            assertTrue(ring.poll(event));
+            assertEquals(i * 10L, event.eventNanos);
+            assertTrue(ring.poll(event));
+            assertEquals(7L, event.pressNanos);
+        }
+        assertEquals(0, ring.getDroppedCount());
+    }
+
+    @Test
+    public void neverDropsTheRelease() throws Exception {
+        InputEventRing ring = new InputEventRing(4);
+        // 最后一个位置留给抬起事件,多余的按下事件被丢弃
+        for (int i = 0; i < 10; i++) {
+            ring.offer(InputEvent.ACTION_DOWN, 0f, 0f, i);
+        }
+        assertEquals(7, ring.getDroppedCount());
+        assertTrue(ring.offer(InputEvent.ACTION_UP, 0f, 0f, 100L));
+
+        InputEvent last = new InputEvent();
+        while (ring.poll(event)) {
+            last.action = event.action;
+            last.pressNanos = event.pressNanos;
+        }
+        assertEquals(InputEvent.ACTION_UP, last.action);
+        // 按压时长从最后一次按下算起,即使那次按下被丢弃了
+        assertEquals(91L, last.pressNanos);
+    }
+
+    @Test
+    public void producerAndConsumerOnDifferentThreads() throws Exception {
+        final InputEventRing ring = new InputEventRing(16);
+        final int presses = 200000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < presses; i++) {
+                    long down = i * 1000L;
+                    while (!ring.offer(InputEvent.ACTION_DOWN, i, -i, down)) {
+                        Thread.yield();
+                    }
+                    if (!ring.offer(InputEvent.ACTION_UP, i, -i, down + i)) {
+                        failure.set(new AssertionError("release " + i + " dropped"));
+                        return;
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        int expectedPress = 0;
+        boolean expectDown = true;
+        while (expectedPress < presses && failure.get() == null) {
+            if (!ring.poll(event)) {
+                continue;
+            }
+            assertEquals(expectedPress, (int) event.x);
+            assertEquals(-expectedPress, (int) event.y);
+            if (expectDown) {
+                assertEquals(InputEvent.ACTION_DOWN, event.action);
+            } else {
+                assertEquals(InputEvent.ACTION_UP, event.action);
+                assertEquals(expectedPress, event.pressNanos);
+                expectedPress++;
+            }
+            expectDown = !expectDown;
+        }
+        producer.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        InputEventRing ring = new InputEventRing(64);
+        for (int i = 0; i < 100000; i++) {
+            pressAndDrain(ring, i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            pressAndDrain(ring, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private void pressAndDrain(InputEventRing ring, int i) {
+        ring.offer(InputEvent.ACTION_DOWN, i, i, i);
+        ring.offer(InputEvent.ACTION_UP, i, i, i + 1);
+        while (ring.poll(event)) {
+            assertTrue(event.eventNanos >= i);
+        }
+    }
+}
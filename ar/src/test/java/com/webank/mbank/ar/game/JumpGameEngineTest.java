@@ -0,0 +1,104 @@
+package com.webank.mbank.ar.game;
+
+import com.webank.mbank.ar.math.Mat4;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JumpGameEngineTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void jumpIsIndependentOfFrameRate() throws Exception {
+        JumpGameEngine at30 = startedEngine(7);
+        JumpGameEngine at60 = startedEngine(7);
+        JumpGameEngine at144 = startedEngine(7);
+
+        long press = 700 * MS;
+        runJump(at30, press, 1000000000L / 30);
+        runJump(at60, press, 1000000000L / 60);
+        runJump(at144, press, 1000000000L / 144);
+
+        assertArrayEquals(at60.getState().robotMatrix, at30.getState().robotMatrix, 0f);
+        assertArrayEquals(at60.getState().robotMatrix, at144.getState().robotMatrix, 0f);
+        assertEquals(at60.getState().phase, at30.getState().phase);
+        assertEquals(at60.getState().phase, at144.getState().phase);
+    }
+
+    @Test
+    public void landsOnSecondBoxWithMatchingPress() throws Exception {
+        JumpGameEngine engine = startedEngine(1);
+        // 第二张桌子在0.45处,按压 0.45 / DISTANCE_PER_PRESS_MS 毫秒刚好落在中心
+        long press = (long) (JumpGameEngine.SECOND_BOX_OFFSET / JumpGameEngine.DISTANCE_PER_PRESS_MS) * MS;
+        runJump(engine, press, 1000000000L / 30);
+
+        JumpGameState state = engine.getState();
+        assertEquals(JumpGameState.PHASE_READY, state.phase);
+        assertEquals(1, state.score);
+        assertEquals(3, state.platforms.size());
+        assertEquals(JumpGameEngine.SECOND_BOX_OFFSET, state.robotMatrix[12], 1e-3f);
+        assertEquals(JumpGameEngine.ROBOT_Y, state.robotMatrix[13], 1e-4f);
+    }
+
+    @Test
+    public void shortJumpEndsTheGame() throws Exception {
+        JumpGameEngine engine = startedEngine(1);
+        runJump(engine, 400 * MS, 1000000000L / 60);
+        assertEquals(JumpGameState.PHASE_OVER, engine.getState().phase);
+    }
+
+    @Test
+    public void pressShorterThanThresholdDoesNotJump() throws Exception {
+        JumpGameEngine engine = startedEngine(1);
+        engine.press(0);
+        assertFalse(engine.release(JumpGameEngine.MIN_PRESS_NANOS));
+        assertEquals(JumpGameState.PHASE_READY, engine.getState().phase);
+    }
+
+    @Test
+    public void keepsAtMostMaxPlatforms() throws Exception {
+        JumpGameEngine engine = startedEngine(3);
+        long now = 0;
+        engine.update(now);
+        for (int i = 0; i < 2 * JumpGameState.MAX_PLATFORMS; i++) {
+            JumpGameState state = engine.getState();
+            float[] robot = state.robotMatrix;
+            float[] target = state.platforms.getArray();
+            int last = state.platforms.lastOffset();
+            float distance = state.direction
+                    ? target[last + 12] - robot[12] : target[last + 14] - robot[14];
+            engine.jump((long) (distance / JumpGameEngine.DISTANCE_PER_PRESS_MS * MS));
+            while (engine.getState().phase == JumpGameState.PHASE_JUMPING) {
+                now += JumpGameEngine.TICK_NANOS;
+                engine.update(now);
+            }
+            assertEquals(JumpGameState.PHASE_READY, engine.getState().phase);
+        }
+        assertEquals(JumpGameState.MAX_PLATFORMS, engine.getState().platforms.size());
+        assertEquals(2 * JumpGameState.MAX_PLATFORMS, engine.getState().score);
+    }
+
+    private static JumpGameEngine startedEngine(long seed) {
+        JumpGameEngine engine = new JumpGameEngine(new Random(seed));
+        float[] anchor = new float[16];
+        Mat4.setIdentity(anchor);
+        engine.start(anchor);
+        return engine;
+    }
+
+    private static void runJump(JumpGameEngine engine, long pressNanos, long frameNanos) {
+        long now = 0;
+        engine.update(now);
+        engine.press(now);
+        assertTrue(engine.release(now + pressNanos));
+        // 在整秒的边界上比较,各个帧率走过的总时间一致
+        long end = now + 3000000000L;
+        while (now < end) {
+            now = Math.min(now + frameNanos, end);
+            engine.update(now);
+        }
+    }
+}
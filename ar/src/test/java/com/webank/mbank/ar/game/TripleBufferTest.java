@@ -0,0 +1,56 @@
+package com.webank.mbank.ar.game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+    @Test
+    public void readerSeesLatestPublished() throws Exception {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        assertFalse(buffer.hasUpdate());
+        for (long i = 1; i <= 3; i++) {
+            buffer.back()[0] = i;
+            buffer.publish();
+        }
+        assertTrue(buffer.hasUpdate());
+        assertEquals(3, buffer.latest()[0]);
+        assertFalse(buffer.hasUpdate());
+        // 没有新数据时继续返回同一份
+        assertEquals(3, buffer.latest()[0]);
+    }
+
+    @Test
+    public void readerNeverSeesTornOrStaleSnapshots() throws Exception {
+        final int fields = 64;
+        final long writes = 2000000;
+        final TripleBuffer<long[]> buffer =
+                new TripleBuffer<>(new long[fields], new long[fields], new long[fields]);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long i = 1; i <= writes; i++) {
+                    long[] back = buffer.back();
+                    for (int f = 0; f < fields; f++) {
+                        back[f] = i;
+                    }
+                    buffer.publish();
+                }
+            }
+        });
+        writer.start();
+
+        long last = 0;
+        while (last < writes) {
+            long[] front = buffer.latest();
+            long value = front[0];
+            for (int f = 1; f < fields; f++) {
+                assertEquals("torn snapshot", value, front[f]);
+            }
+            assertTrue("went backwards", value >= last);
+            last = value;
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,118 @@
+package com.webank.mbank.ar.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrustumTest {
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 100f;
+
+    @Test
+    public void extractsNormalizedPlanes() throws Exception {
+        Frustum frustum = perspective(90f);
+        // 相机看向-z,近平面和远平面到点的距离就是深度差
+        assertEquals(1f - NEAR, frustum.distance(Frustum.NEAR, 0f, 0f, -1f), 1e-4f);
+        assertEquals(FAR - 1f, frustum.distance(Frustum.FAR, 0f, 0f, -1f), 1e-3f);
+        // 90度视角的侧面和z轴成45度
+        float halfSqrt2 = (float) Math.sqrt(0.5);
+        assertEquals(halfSqrt2, frustum.distance(Frustum.LEFT, 0f, 0f, -1f), 1e-4f);
+        assertEquals(4 * halfSqrt2, frustum.distance(Frustum.RIGHT, -1f, 0f, -3f), 1e-4f);
+        assertEquals(0f, frustum.distance(Frustum.TOP, 0f, 2f, -2f), 1e-4f);
+        assertTrue(frustum.distance(Frustum.BOTTOM, 0f, -3f, -2f) < 0f);
+    }
+
+    @Test
+    public void cullsSpheresOutsideOnePlane() throws Exception {
+        Frustum frustum = perspective(90f);
+        assertTrue(frustum.intersectsSphere(0f, 0f, -5f, 0.5f));
+        // 相机身后
+        assertFalse(frustum.intersectsSphere(0f, 0f, 5f, 0.5f));
+        // 超出远平面
+        assertFalse(frustum.intersectsSphere(0f, 0f, -102f, 1f));
+        // 中心在左边外侧,但球和视锥体相交
+        assertTrue(frustum.intersectsSphere(-5.5f, 0f, -5f, 1f));
+        assertFalse(frustum.intersectsSphere(-7f, 0f, -5f, 1f));
+    }
+
+    @Test
+    public void followsCameraView() throws Exception {
+        float[] projection = perspectiveMatrix(60f);
+        // 相机向左转180度,原来身后的物体到了前面
+        float[] view = new float[16];
+        Mat4.setIdentity(view);
+        Mat4.rotateY(view, 180f);
+        Frustum frustum = new Frustum();
+        frustum.set(projection, view);
+        assertTrue(frustum.intersectsSphere(0f, 0f, 5f, 0.5f));
+        assertFalse(frustum.intersectsSphere(0f, 0f, -5f, 0.5f));
+    }
+
+    @Test
+    public void transformsBoxByModelMatrix() throws Exception {
+        Frustum frustum = perspective(90f);
+        float[] min = {-0.5f, -0.5f, -0.5f};
+        float[] max = {0.5f, 0.5f, 0.5f};
+
+        float[] model = new float[16];
+        Mat4.setIdentity(model);
+        Mat4.translate(model, 0f, 0f, -5f);
+        assertTrue(frustum.intersectsBox(model, 0, min, max));
+
+        Mat4.setIdentity(model);
+        Mat4.translate(model, 0f, 0f, 5f);
+        assertFalse(frustum.intersectsBox(model, 0, min, max));
+
+        // 放大10倍之后,左边外侧的盒子伸进了视锥体
+        Mat4.setIdentity(model);
+        Mat4.translate(model, -10f, 0f, -5f);
+        assertFalse(frustum.intersectsBox(model, 0, min, max));
+        for (int i = 0; i < 12; i++) {
+            model[i] *= 10f;
+        }
+        assertTrue(frustum.intersectsBox(model, 0, min, max));
+
+        // 矩阵可以放在数组中间,比如TransformRing
+        float[] models = new float[32];
+        Mat4.setIdentity(model);
+        Mat4.translate(model, 0f, 0f, -5f);
+        System.arraycopy(model, 0, models, 16, 16);
+        assertTrue(frustum.intersectsBox(models, 16, min, max));
+    }
+
+    @Test
+    public void rotatedBoxStaysConservative() throws Exception {
+        Frustum frustum = perspective(90f);
+        // 细长的盒子转45度之后,一端伸进视锥体
+        float[] min = {-4f, -0.1f, -0.1f};
+        float[] max = {4f, 0.1f, 0.1f};
+        float[] model = new float[16];
+        Mat4.setIdentity(model);
+        Mat4.translate(model, -5f, 0f, -2f);
+        Mat4.rotateY(model, 45f);
+        assertTrue(frustum.intersectsBox(model, 0, min, max));
+        // 世界坐标系中的包围盒
+        assertTrue(frustum.intersectsBox(new float[]{-1f, -1f, -3f}, new float[]{1f, 1f, -2f}));
+        assertFalse(frustum.intersectsBox(new float[]{-1f, -1f, 1f}, new float[]{1f, 1f, 2f}));
+    }
+
+    private static Frustum perspective(float fovyDegrees) {
+        float[] view = new float[16];
+        Mat4.setIdentity(view);
+        Frustum frustum = new Frustum();
+        frustum.set(perspectiveMatrix(fovyDegrees), view);
+        return frustum;
+    }
+
+    /** 和 android.opengl.Matrix.perspectiveM 一样,宽高比为1 */
+    private static float[] perspectiveMatrix(float fovyDegrees) {
+        float f = 1f / (float) Math.tan(Math.toRadians(fovyDegrees) / 2);
+        float[] m = new float[16];
+        m[0] = f;
+        m[5] = f;
+        m[10] = (FAR + NEAR) / (NEAR - FAR);
+        m[11] = -1f;
+        m[14] = 2f * FAR * NEAR / (NEAR - FAR);
+        return m;
+    }
+}
@@ -0,0 +1,149 @@
+package com.webank.mbank.ar.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 仿射矩阵的快速路径和完整的4x4乘法({@code android.opengl.Matrix.multiplyMM} 的等价实现)结果一致
+ */
+public class Mat4Test {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void affineMultiplyMatchesFullMultiply() throws Exception {
+        float[] view = view();
+        float[] model = model(0.45f, 30f);
+        float[] expected = new float[16];
+        Mat4.multiply(expected, view, model);
+
+        float[] actual = new float[16];
+        Mat4.multiplyAffine(actual, view, model);
+        assertMatrixEquals(expected, actual, 0);
+    }
+
+    @Test
+    public void scaleIsFusedIntoModel() throws Exception {
+        float[] view = view();
+        float[] model = model(-1.2f, 75f);
+        float[] scale = new float[16];
+        Mat4.setIdentity(scale);
+        scale[0] = scale[5] = scale[10] = 0.003f;
+        float[] scaledModel = new float[16];
+        Mat4.multiply(scaledModel, model, scale);
+        float[] expected = new float[16];
+        Mat4.multiply(expected, view, scaledModel);
+
+        // 写到数组中间,前后的数据不能被改动
+        float[] actual = new float[48];
+        float[] models = new float[32];
+        System.arraycopy(model, 0, models, 16, 16);
+        Mat4.multiplyAffineScaled(actual, 16, view, models, 16, 0.003f);
+        assertMatrixEquals(expected, actual, 16);
+        assertEquals(0f, actual[15], 0f);
+        assertEquals(0f, actual[32], 0f);
+    }
+
+    @Test
+    public void modelViewProjectionInOnePass() throws Exception {
+        float[] projection = projection();
+        float[] view = view();
+        float[] model = model(0.9f, -45f);
+        float[] expectedModelView = new float[16];
+        float[] expectedMvp = new float[16];
+        Mat4.multiply(expectedModelView, view, model);
+        Mat4.multiply(expectedMvp, projection, expectedModelView);
+
+        float[] modelView = new float[16];
+        float[] mvp = new float[16];
+        Mat4.modelViewProjection(modelView, mvp, projection, view, model);
+        assertMatrixEquals(expectedModelView, modelView, 0);
+        assertMatrixEquals(expectedMvp, mvp, 0);
+
+        float[] viewProjection = new float[16];
+        Mat4.multiplyByAffine(viewProjection, projection, view);
+        Mat4.multiply(expectedMvp, projection, view);
+        assertMatrixEquals(expectedMvp, viewProjection, 0);
+    }
+
+    @Test
+    public void batchTransformsContiguousMatrices() throws Exception {
+        float[] view = view();
+        TransformRing ring = new TransformRing(4);
+        for (int i = 0; i < 3; i++) {
+            ring.push(model(0.45f * i, 10f * i));
+        }
+        float[] result = new float[16 * 3];
+        Mat4.multiplyAffineBatch(result, 0, view, ring.getArray(), ring.offset(0), 3, 0.5f);
+
+        float[] expected = new float[16];
+        for (int i = 0; i < 3; i++) {
+            Mat4.multiplyAffineScaled(expected, 0, view, ring.getArray(), ring.offset(i), 0.5f);
+            assertMatrixEquals(expected, result, 16 * i);
+        }
+    }
+
+    @Test
+    public void transformsDirectionsWithoutTranslation() throws Exception {
+        float[] m = model(3f, 60f);
+        float[] direction = {0.250f, 0.866f, 0.433f, 0.0f};
+        float[] expected = new float[4];
+        Mat4.multiplyVec(expected, m, direction);
+
+        float[] actual = new float[4];
+        Mat4.transformDirection(actual, m, 0, direction);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i], actual[i], EPSILON);
+        }
+    }
+
+    @Test
+    public void invertsRigidTransforms() throws Exception {
+        float[] pose = new float[16];
+        // 绕(1, 2, 3)轴旋转40度
+        float half = (float) Math.toRadians(20);
+        float s = (float) Math.sin(half) / (float) Math.sqrt(14);
+        Mat4.setFromPose(pose, 0.3f, 1.5f, -2f, s, 2 * s, 3 * s, (float) Math.cos(half));
+
+        float[] inverse = new float[16];
+        Mat4.invertRigid(inverse, pose);
+        float[] product = new float[16];
+        Mat4.multiply(product, pose, inverse);
+        float[] identity = new float[16];
+        Mat4.setIdentity(identity);
+        assertMatrixEquals(identity, product, 0);
+    }
+
+    private static float[] model(float x, float degrees) {
+        float[] m = new float[16];
+        Mat4.setIdentity(m);
+        Mat4.translate(m, x, -0.3f, -0.8f);
+        Mat4.rotateY(m, degrees);
+        return m;
+    }
+
+    private static float[] view() {
+        float[] m = new float[16];
+        Mat4.setFromPose(m, 0.1f, -1.2f, -0.5f, 0.1f, 0.2f, 0f, (float) Math.sqrt(0.95));
+        return m;
+    }
+
+    /** 60度视角的透视投影 */
+    private static float[] projection() {
+        float f = 1.0f / (float) Math.tan(Math.toRadians(30));
+        float[] m = new float[16];
+        m[0] = f / 0.5625f;
+        m[5] = f;
+        m[8] = 0.02f;
+        m[10] = -(100f + 0.1f) / (100f - 0.1f);
+        m[11] = -1f;
+        m[14] = -2f * 100f * 0.1f / (100f - 0.1f);
+        return m;
+    }
+
+    private static void assertMatrixEquals(float[] expected, float[] actual, int offset) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals("element " + i, expected[i], actual[offset + i], EPSILON);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.webank.mbank.ar.math;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class TransformRingTest {
+
+    @Test
+    public void evictsOldestWithoutMovingOthers() throws Exception {
+        TransformRing ring = new TransformRing(3);
+        for (int i = 0; i < 3; i++) {
+            ring.push(matrix(i));
+        }
+        int secondOffset = ring.offset(1);
+        ring.push(matrix(3));
+
+        assertEquals(3, ring.size());
+        // 淘汰最早的矩阵,其余矩阵还在原来的位置
+        assertEquals(secondOffset, ring.offset(0));
+        assertEquals(1f, ring.getArray()[ring.offset(0)], 0f);
+        assertEquals(2f, ring.getArray()[ring.offset(1)], 0f);
+        assertEquals(3f, ring.getArray()[ring.lastOffset()], 0f);
+    }
+
+    @Test
+    public void copyAndUploadInOrder() throws Exception {
+        TransformRing ring = new TransformRing(4);
+        for (int i = 0; i < 10; i++) {
+            ring.push(matrix(i));
+        }
+        TransformRing copy = new TransformRing(4);
+        copy.copyFrom(ring);
+        FloatBuffer upload = FloatBuffer.allocate(4 * TransformRing.MATRIX_SIZE);
+        ring.writeTo(upload);
+
+        float[] out = new float[16];
+        for (int i = 0; i < 4; i++) {
+            copy.get(i, out);
+            assertEquals(6f + i, out[0], 0f);
+            assertEquals(6f + i, out[15], 0f);
+            assertEquals(6f + i, upload.get(i * TransformRing.MATRIX_SIZE), 0f);
+        }
+        ring.clear();
+        assertEquals(0, ring.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastSize() throws Exception {
+        TransformRing ring = new TransformRing(4);
+        ring.push(matrix(0));
+        ring.offset(1);
+    }
+
+    private static float[] matrix(float value) {
+        float[] m = new float[16];
+        for (int i = 0; i < 16; i++) {
+            m[i] = value;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,101 @@
+package com.webank.mbank.ar.mesh;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+public class MeshChunksTest {
+    private static final int SHORT_LIMIT = 65536;
+
+    @Test
+    public void smallMeshStaysInOneChunk() throws Exception {
+        IntBuffer indices = grid(100, 100);
+        MeshChunks chunks = MeshChunks.split(indices, 100 * 100, SHORT_LIMIT);
+        assertEquals(1, chunks.chunkCount);
+        assertEquals(100 * 100, chunks.totalVertexCount);
+        assertSameTriangles(indices, chunks);
+    }
+
+    @Test
+    public void largeMeshesFitShortIndices() throws Exception {
+        for (int rows : new int[]{200, 700, 1000}) {
+            // 10万、35万、50万个顶点
+            int columns = 500;
+            IntBuffer indices = grid(columns, rows);
+            MeshChunks chunks = MeshChunks.split(indices, columns * rows, SHORT_LIMIT);
+
+            assertTrue(chunks.chunkCount >= columns * rows / SHORT_LIMIT);
+            for (int c = 0; c < chunks.chunkCount; c++) {
+                assertTrue(chunks.vertexCount[c] <= SHORT_LIMIT);
+                assertEquals(c == 0 ? 0 : chunks.firstVertex[c - 1] + chunks.vertexCount[c - 1],
+                        chunks.firstVertex[c]);
+            }
+            assertSameTriangles(indices, chunks);
+            // 相邻的块只共用一行顶点
+            assertTrue(chunks.totalVertexCount < columns * rows + chunks.chunkCount * 2 * columns);
+        }
+    }
+
+    @Test
+    public void gathersVerticesOfEachChunk() throws Exception {
+        int vertexCount = 10;
+        IntBuffer indices = IntBuffer.wrap(new int[]{0, 1, 2, 2, 3, 4, 9, 8, 7});
+        MeshChunks chunks = MeshChunks.split(indices, vertexCount, 4);
+        assertEquals(3, chunks.chunkCount);
+
+        int stride = 8;
+        // 按字节复制,字节序保持不变
+        ByteBuffer vertices = ByteBuffer.allocate(vertexCount * stride).order(ByteOrder.nativeOrder());
+        for (int v = 0; v < vertexCount; v++) {
+            vertices.putInt(v * stride, v);
+            vertices.putInt(v * stride + 4, -v);
+        }
+        ByteBuffer gathered = chunks.gatherVertices(vertices, stride);
+        assertEquals(chunks.totalVertexCount * stride, gathered.remaining());
+        for (int i = 0; i < chunks.totalVertexCount; i++) {
+            assertEquals(chunks.vertexMap[i], gathered.getInt(i * stride));
+            assertEquals(-chunks.vertexMap[i], gathered.getInt(i * stride + 4));
+        }
+    }
+
+    @Test
+    public void repeatedVertexInTriangleCountsOnce() throws Exception {
+        IntBuffer indices = IntBuffer.wrap(new int[]{0, 1, 2, 3, 3, 4});
+        MeshChunks chunks = MeshChunks.split(indices, 5, 5);
+        assertEquals(1, chunks.chunkCount);
+        assertEquals(5, chunks.totalVertexCount);
+    }
+
+    private static void assertSameTriangles(IntBuffer indices, MeshChunks chunks) {
+        int total = 0;
+        for (int c = 0; c < chunks.chunkCount; c++) {
+            for (int i = 0; i < chunks.indexCount[c]; i++) {
+                int index = chunks.firstIndex[c] + i;
+                int local = chunks.indices.get(index) & 0xffff;
+                assertTrue(local < chunks.vertexCount[c]);
+                // 三角形的顺序和顶点都不变
+                assertEquals(indices.get(index), chunks.vertexMap[chunks.firstVertex[c] + local]);
+            }
+            total += chunks.indexCount[c];
+        }
+        assertEquals(indices.limit(), total);
+    }
+
+    /** columns * rows 个顶点的网格,每个格子两个三角形 */
+    private static IntBuffer grid(int columns, int rows) {
+        IntBuffer indices = IntBuffer.allocate((columns - 1) * (rows - 1) * 6);
+        for (int y = 0; y < rows - 1; y++) {
+            for (int x = 0; x < columns - 1; x++) {
+                int v = y * columns + x;
+                indices.put(v).put(v + 1).put(v + columns);
+                indices.put(v + 1).put(v + columns + 1).put(v + columns);
+            }
+        }
+        indices.rewind();
+        return indices;
+    }
+}
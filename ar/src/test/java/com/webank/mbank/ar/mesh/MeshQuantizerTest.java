@@ -0,0 +1,107 @@
+package com.webank.mbank.ar.mesh;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshQuantizerTest {
+    private static final int VERTICES = 2000;
+
+    private final float[] boundsMin = new float[3];
+    private final float[] boundsMax = new float[3];
+    private final float[] texCoordMin = new float[2];
+    private final float[] texCoordMax = new float[2];
+    private final float[] decoded = new float[3];
+
+    @Test
+    public void decodedAttributesMatchSource() throws Exception {
+        MeshData mesh = randomMesh(new Random(7));
+        ByteBuffer vertices =
+                MeshQuantizer.toVertexBuffer(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax);
+        assertEquals(mesh.vertexCount * MeshData.BYTES_PER_VERTEX / 2, vertices.remaining());
+
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            int base = v * MeshData.FLOATS_PER_VERTEX;
+
+            MeshQuantizer.decodePosition(vertices, v, boundsMin, boundsMax, decoded);
+            for (int k = 0; k < 3; k++) {
+                // 16位,误差不超过包围盒的1/65535
+                float tolerance = (boundsMax[k] - boundsMin[k]) / 65535f + 1e-6f;
+                assertEquals(mesh.vertices[base + MeshData.POSITION_OFFSET + k], decoded[k],
+                        tolerance);
+            }
+
+            MeshQuantizer.decodeNormal(vertices, v, decoded);
+            float dot = 0f;
+            float length = 0f;
+            for (int k = 0; k < 3; k++) {
+                dot += decoded[k] * mesh.vertices[base + MeshData.NORMAL_OFFSET + k];
+                length += decoded[k] * decoded[k];
+            }
+            // 着色器中重新归一化之后,和原来的法线夹角小于1度
+            assertTrue(dot / Math.sqrt(length) > Math.cos(Math.toRadians(1)));
+
+            MeshQuantizer.decodeTexCoord(vertices, v, texCoordMin, texCoordMax, decoded);
+            for (int k = 0; k < 2; k++) {
+                float tolerance = (texCoordMax[k] - texCoordMin[k]) / 65535f + 1e-6f;
+                assertEquals(mesh.vertices[base + MeshData.TEXCOORD_OFFSET + k], decoded[k],
+                        tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void boundsAreExact() throws Exception {
+        MeshData mesh = randomMesh(new Random(11));
+        ByteBuffer vertices =
+                MeshQuantizer.toVertexBuffer(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax);
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            MeshQuantizer.decodePosition(vertices, v, boundsMin, boundsMax, decoded);
+            for (int k = 0; k < 3; k++) {
+                assertTrue(decoded[k] >= boundsMin[k] - 1e-6f);
+                assertTrue(decoded[k] <= boundsMax[k] + 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void flatAxisDecodesToItsValue() throws Exception {
+        // 平面网格,y方向的包围盒大小为0
+        float[] vertices = new float[2 * MeshData.FLOATS_PER_VERTEX];
+        vertices[0] = -1f;
+        vertices[1] = 0.25f;
+        vertices[MeshData.FLOATS_PER_VERTEX] = 1f;
+        vertices[MeshData.FLOATS_PER_VERTEX + 1] = 0.25f;
+        MeshData mesh = new MeshData(vertices, 2, new int[0], 0);
+
+        ByteBuffer quantized =
+                MeshQuantizer.toVertexBuffer(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax);
+        MeshQuantizer.decodePosition(quantized, 1, boundsMin, boundsMax, decoded);
+        assertEquals(1f, decoded[0], 1e-4f);
+        assertEquals(0.25f, decoded[1], 0f);
+    }
+
+    private static MeshData randomMesh(Random random) {
+        float[] vertices = new float[VERTICES * MeshData.FLOATS_PER_VERTEX];
+        for (int v = 0; v < VERTICES; v++) {
+            int base = v * MeshData.FLOATS_PER_VERTEX;
+            vertices[base + MeshData.POSITION_OFFSET] = random.nextFloat() * 2f - 1f;
+            vertices[base + MeshData.POSITION_OFFSET + 1] = random.nextFloat() * 0.5f;
+            vertices[base + MeshData.POSITION_OFFSET + 2] = random.nextFloat() * 40f - 10f;
+            // 纹理坐标可以超出[0, 1],比如重复贴图
+            vertices[base + MeshData.TEXCOORD_OFFSET] = random.nextFloat() * 4f - 1f;
+            vertices[base + MeshData.TEXCOORD_OFFSET + 1] = random.nextFloat();
+            float x = (float) random.nextGaussian();
+            float y = (float) random.nextGaussian();
+            float z = (float) random.nextGaussian();
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            vertices[base + MeshData.NORMAL_OFFSET] = x / length;
+            vertices[base + MeshData.NORMAL_OFFSET + 1] = y / length;
+            vertices[base + MeshData.NORMAL_OFFSET + 2] = z / length;
+        }
+        return new MeshData(vertices, VERTICES, new int[0], 0);
+    }
+}
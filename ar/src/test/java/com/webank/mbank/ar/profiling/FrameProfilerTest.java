@@ -0,0 +1,141 @@
+package com.webank.mbank.ar.profiling;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameProfilerTest {
+    // 60帧的帧预算
+    private static final long FRAME_BUDGET_NANOS = 1000000000L / 60;
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        long previousUpper = -1;
+        for (int i = 0; i < 40 * LogLinearHistogram.SUB_BUCKETS && previousUpper < (1L << 40); i++) {
+            long upper = LogLinearHistogram.bucketUpperBound(i);
+            assertTrue(upper > previousUpper);
+            // 桶之间没有空隙
+            assertEquals(i, LogLinearHistogram.bucketIndex(previousUpper + 1));
+            assertEquals(i, LogLinearHistogram.bucketIndex(upper));
+            previousUpper = upper;
+        }
+    }
+
+    @Test
+    public void percentilesWithinRelativeError() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // 大致模拟帧耗时:几百微秒到几十毫秒
+            values[i] = (long) (Math.exp(random.nextGaussian() + 15));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        double[] percentiles = {50, 95, 99};
+        for (double percentile : percentiles) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(estimate >= exact);
+            assertTrue("p" + percentile, estimate - exact <= exact / LogLinearHistogram.SUB_BUCKETS);
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void disabledProfilerRecordsNothing() {
+        FrameProfiler profiler = new FrameProfiler();
+        long start = profiler.begin();
+        assertEquals(0, start);
+        profiler.end(FrameProfiler.STAGE_PLANES, start);
+        profiler.endFrame();
+        assertEquals(0, profiler.getHistogram(FrameProfiler.STAGE_PLANES).getCount());
+    }
+
+    @Test
+    public void countsPerFrameUntilExport() {
+        FrameProfiler profiler = new FrameProfiler();
+        profiler.count(FrameProfiler.COUNTER_OBJECTS_CULLED, 5);
+        assertEquals(0, profiler.getCounter(FrameProfiler.COUNTER_OBJECTS_CULLED).getCount());
+
+        profiler.setEnabled(true);
+        for (int frame = 0; frame < 10; frame++) {
+            profiler.count(FrameProfiler.COUNTER_OBJECTS_DRAWN, 3);
+            profiler.count(FrameProfiler.COUNTER_OBJECTS_CULLED, frame);
+        }
+        LogLinearHistogram culled = profiler.getCounter(FrameProfiler.COUNTER_OBJECTS_CULLED);
+        assertEquals(10, culled.getCount());
+        // 小的计数落在精确的桶里
+        assertEquals(4, culled.getPercentile(50));
+        assertEquals(9, culled.getMax());
+        assertEquals(3, profiler.getCounter(FrameProfiler.COUNTER_OBJECTS_DRAWN).getPercentile(95));
+
+        profiler.export();
+        assertEquals(0, culled.getCount());
+    }
+
+    @Test
+    public void enabledOverheadBelowOnePercentOfFrameBudget() {
+        FrameProfiler profiler = new FrameProfiler();
+        profiler.setEnabled(true);
+        profiler.setExportInterval(Long.MAX_VALUE);
+        int frames = 200000;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                long frameStart = profiler.begin();
+                for (int stage = FrameProfiler.STAGE_SESSION_UPDATE; stage <= FrameProfiler.STAGE_OBJECTS; stage++) {
+                    profiler.end(stage, profiler.begin());
+                }
+                profiler.end(FrameProfiler.STAGE_FRAME, frameStart);
+                profiler.endFrame();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / frames);
+        }
+        assertTrue("per frame overhead " + best + "ns", best < FRAME_BUDGET_NANOS / 100);
+    }
+
+    @Test
+    public void chromeTraceContainsCapturedFrames() throws Exception {
+        FrameProfiler profiler = new FrameProfiler();
+        profiler.setEnabled(true);
+        profiler.setExportInterval(Long.MAX_VALUE);
+        profiler.captureTrace(3);
+        for (int i = 0; i < 5; i++) {
+            long frameStart = profiler.begin();
+            profiler.end(FrameProfiler.STAGE_BACKGROUND, profiler.begin());
+            profiler.end(FrameProfiler.STAGE_FRAME, frameStart);
+            assertEquals(i >= 3, profiler.isTraceComplete());
+            profiler.endFrame();
+        }
+        assertTrue(profiler.isTraceComplete());
+
+        StringWriter writer = new StringWriter();
+        profiler.writeChromeTrace(writer);
+        String json = writer.toString();
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.endsWith("],\"displayTimeUnit\":\"ms\"}"));
+        // 只记录了抓取期间的3帧
+        assertEquals(3, count(json, "\"name\":\"frame\""));
+        assertEquals(3, count(json, "\"name\":\"background\""));
+        assertEquals(2, count(json, "\"ph\":\"M\""));
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,33 @@
+package com.webank.mbank.ar.profiling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupTimerTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void reportsOnceBothAreKnown() throws Exception {
+        StartupTimer timer = new StartupTimer();
+        timer.start(1000 * MS);
+        // 资源可能先于相机画面准备好
+        timer.markInteractive(1300 * MS);
+        assertFalse(timer.isReported());
+        assertEquals(-1, timer.getTimeToFirstFrameMillis());
+
+        timer.markFirstFrame(1450 * MS);
+        assertTrue(timer.isReported());
+        assertEquals(450, timer.getTimeToFirstFrameMillis());
+        assertEquals(300, timer.getTimeToInteractiveMillis());
+    }
+
+    @Test
+    public void keepsFirstMark() throws Exception {
+        StartupTimer timer = new StartupTimer();
+        timer.start(0);
+        timer.markFirstFrame(16 * MS);
+        timer.markFirstFrame(33 * MS);
+        assertEquals(16, timer.getTimeToFirstFrameMillis());
+    }
+}
@@ -0,0 +1,164 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * 后台准备、GL线程按预算分步上传
+ */
+public class AssetLoaderTest {
+    private static final long BUDGET = 4000000L;
+
+    // 手动执行的"后台线程"
+    private final List<Runnable> background = new ArrayList<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            background.add(command);
+        }
+    };
+    private final List<String> events = new ArrayList<>();
+    // 每个上传步骤让时钟前进的时间
+    private long stepNanos = 1000000L;
+    private long clock;
+
+    private final AssetLoader loader = new AssetLoader(executor, BUDGET) {
+        @Override
+        long now() {
+            return clock;
+        }
+    };
+
+    {
+        loader.setListener(new AssetLoader.Listener() {
+            @Override
+            public void onAssetLoaded(String name) {
+                events.add("loaded " + name);
+            }
+
+            @Override
+            public void onAssetFailed(String name, Exception e) {
+                events.add("failed " + name);
+            }
+
+            @Override
+            public void onAllAssetsLoaded() {
+                events.add("complete");
+            }
+        });
+    }
+
+    @Test
+    public void uploadsOnlyPreparedAssets() throws Exception {
+        FakeAsset asset = new FakeAsset(1);
+        loader.submit("box", asset);
+        assertFalse(asset.prepared);
+
+        // 还没有准备好,GL线程不等待
+        assertFalse(loader.drain());
+        assertEquals(0, asset.uploads);
+
+        runBackground();
+        assertTrue(asset.prepared);
+        assertTrue(loader.drain());
+        assertEquals(1, asset.uploads);
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void spreadsUploadsOverFrames() throws Exception {
+        // 10步,每步1ms,每帧预算4ms
+        FakeAsset asset = new FakeAsset(10);
+        loader.submit("robot", asset);
+        runBackground();
+
+        int frames = 0;
+        while (!loader.drain()) {
+            frames++;
+            assertEquals(Math.min(4 * frames, 10), asset.uploads);
+        }
+        assertEquals(2, frames);
+        assertEquals(10, asset.uploads);
+    }
+
+    @Test
+    public void slowStepStillMakesProgress() throws Exception {
+        stepNanos = 3 * BUDGET;
+        FakeAsset asset = new FakeAsset(3);
+        loader.submit("robot", asset);
+        runBackground();
+
+        loader.drain();
+        assertEquals(1, asset.uploads);
+        loader.drain();
+        assertEquals(2, asset.uploads);
+    }
+
+    @Test
+    public void failuresDoNotBlockOtherAssets() throws Exception {
+        FakeAsset missing = new FakeAsset(1);
+        missing.prepareError = new IOException("wepenguin.obj");
+        FakeAsset broken = new FakeAsset(2);
+        broken.uploadError = new IllegalStateException("link failed");
+        FakeAsset box = new FakeAsset(1);
+        loader.submit("robot", missing);
+        loader.submit("shader", broken);
+        loader.submit("box", box);
+        runBackground();
+
+        assertTrue(loader.drain());
+        assertEquals(0, missing.uploads);
+        assertEquals(1, box.uploads);
+        assertEquals(4, events.size());
+        assertEquals("failed robot", events.get(0));
+        assertEquals("failed shader", events.get(1));
+        assertEquals("loaded box", events.get(2));
+        // 全部完成只通知一次
+        assertEquals("complete", events.get(3));
+        loader.drain();
+        assertEquals(4, events.size());
+    }
+
+    private void runBackground() {
+        for (Runnable r : background) {
+            r.run();
+        }
+        background.clear();
+    }
+
+    private final class FakeAsset implements AssetLoader.Asset {
+        final int steps;
+        boolean prepared;
+        int uploads;
+        Exception prepareError;
+        RuntimeException uploadError;
+
+        FakeAsset(int steps) {
+            this.steps = steps;
+        }
+
+        @Override
+        public void prepare() throws Exception {
+            if (prepareError != null) {
+                throw prepareError;
+            }
+            prepared = true;
+        }
+
+        @Override
+        public boolean upload() {
+            assertTrue(prepared);
+            clock += stepNanos;
+            if (uploadError != null) {
+                throw uploadError;
+            }
+            return ++uploads == steps;
+        }
+    }
+}
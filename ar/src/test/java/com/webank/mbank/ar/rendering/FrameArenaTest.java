@@ -0,0 +1,191 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.math.TransformRing;
+import com.webank.mbank.ar.mesh.MeshData;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a frame drawn through the real renderers stays within the per-frame allocation
+ * budget once warmed up: the planes through {@link PlaneRenderer#drawPlanes}, then the platforms
+ * through {@link ObjectRenderer#draw(TransformRing, float, float[], float[], float)} and the robot,
+ * over {@link NoOpGlBackend}. The budget is read from {@code wear.frameAllocationBudgetBytes}.
+ */
+public class FrameArenaTest {
+    private static final int FRAMES = 10000;
+    // Slack for the allocation counter itself, independent of the number of frames.
+    private static final long MEASUREMENT_SLACK_BYTES = 4096;
+    private static final int PLATFORMS = 20;
+    private static final int PLANES = 4;
+
+    private final FrameArena arena = new FrameArena(2, 1);
+    private final GlBackend gl = new NoOpGlBackend();
+    private final ObjectRenderer objects = new ObjectRenderer(gl);
+    private final PlaneRenderer planeRenderer = new PlaneRenderer(gl);
+    private final ObjectRenderer robot = new ObjectRenderer(gl);
+    private final TransformRing platforms = new TransformRing(PLATFORMS);
+    private final List<TestPlane> planes = new ArrayList<>();
+    private final float[] robotMatrix = new float[16];
+
+    @Before
+    public void setUp() {
+        objects.setInstancingEnabled(true);
+        objects.loadMesh(cube(), 8, cubeIndices());
+        objects.loadPrograms(1, 2);
+        robot.loadMesh(cube(), 8, cubeIndices());
+        robot.loadPrograms(1, 2);
+        planeRenderer.loadProgram(3);
+
+        float[] model = new float[16];
+        for (int i = 0; i < PLATFORMS; i++) {
+            Mat4.setIdentity(model);
+            Mat4.translate(model, i * 0.3f, -1f, -2f);
+            platforms.push(model);
+        }
+        for (int i = 0; i < PLANES; i++) {
+            planes.add(new TestPlane(i));
+        }
+        Mat4.setIdentity(robotMatrix);
+        Mat4.translate(robotMatrix, 0f, -0.9f, -2f);
+    }
+
+    @Test
+    public void slotsAreRecycledEveryFrame() throws Exception {
+        arena.beginFrame();
+        float[] first = arena.mat4();
+        float[] second = arena.mat4();
+        assertNotSame(first, second);
+
+        arena.beginFrame();
+        assertSame(first, arena.mat4());
+        assertSame(second, arena.mat4());
+    }
+
+    @Test
+    public void growsOnlyWhileWarmingUp() throws Exception {
+        drawFrame();
+        int grown = arena.getGrowCount();
+        assertTrue(grown > 0);
+        for (int i = 0; i < 100; i++) {
+            drawFrame();
+        }
+        assertEquals(grown, arena.getGrowCount());
+    }
+
+    @Test
+    public void steadyStateFrameStaysWithinAllocationBudget() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long budget = Long.getLong("wear.frameAllocationBudgetBytes", 0);
+
+        // Warm up: let the arena, the plane meshes and the registry reach their high-water mark
+        // and the JIT settle.
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame();
+        }
+
+        objects.resetDrawCounts();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("frames allocated " + allocated + " bytes, budget is " + budget + " per frame",
+                allocated <= budget * FRAMES + MEASUREMENT_SLACK_BYTES);
+        // Every plane was drawn from its GPU mesh once uploaded.
+        assertEquals(PLANES, planeRenderer.getMeshCache().getMissCount());
+        assertEquals(PLATFORMS * FRAMES, objects.getDrawnCount());
+    }
+
+    /** The draw calls of one onDrawFrame, in the same order as HelloArActivity. */
+    private void drawFrame() {
+        arena.beginFrame();
+        float[] projection = arena.mat4();
+        Mat4.setIdentity(projection);
+        float[] view = arena.mat4();
+        Mat4.setIdentity(view);
+        float[] cameraPose = arena.mat4();
+        Mat4.setIdentity(cameraPose);
+        planeRenderer.drawPlanes(planes, TestPlane.SOURCE, cameraPose, projection, arena);
+
+        objects.draw(platforms, 0.5f, view, projection, 1f);
+        robot.updateModelMatrix(robotMatrix, 2f);
+        robot.draw(view, projection, 1f);
+    }
+
+    private static ByteBuffer cube() {
+        ByteBuffer vertices = ByteBuffer.allocateDirect(8 * MeshData.BYTES_PER_VERTEX)
+                .order(ByteOrder.nativeOrder());
+        for (int v = 0; v < 8; v++) {
+            for (int k = 0; k < 3; k++) {
+                vertices.putFloat(4 * (v * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET + k),
+                        (v >> k & 1) * 0.2f - 0.1f);
+            }
+        }
+        return vertices;
+    }
+
+    private static ShortBuffer cubeIndices() {
+        short[] indices = {0, 1, 3, 0, 3, 2, 4, 6, 7, 4, 7, 5};
+        ShortBuffer buffer = ByteBuffer.allocateDirect(2 * indices.length)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(indices).rewind();
+        return buffer;
+    }
+
+    /** A tracked plane one meter below the camera, with a square polygon. */
+    private static final class TestPlane {
+        static final PlaneRenderer.PlaneSource<TestPlane> SOURCE =
+                new PlaneRenderer.PlaneSource<TestPlane>() {
+                    @Override
+                    public PlaneRegistry.State getState(TestPlane plane) {
+                        return PlaneRegistry.State.TRACKING;
+                    }
+
+                    @Override
+                    public void getCenterPose(TestPlane plane, float[] matrix) {
+                        System.arraycopy(plane.centerPose, 0, matrix, 0, 16);
+                    }
+
+                    @Override
+                    public float getExtentX(TestPlane plane) {
+                        return 1f;
+                    }
+
+                    @Override
+                    public float getExtentZ(TestPlane plane) {
+                        return 1f;
+                    }
+
+                    @Override
+                    public FloatBuffer getPolygon(TestPlane plane) {
+                        return plane.polygon;
+                    }
+                };
+
+        final float[] centerPose = new float[16];
+        final FloatBuffer polygon = FloatBuffer.wrap(new float[]{
+                -0.5f, -0.5f, 0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.5f});
+
+        TestPlane(int index) {
+            Mat4.setIdentity(centerPose);
+            Mat4.translate(centerPose, index * 1.5f, -1f, 0f);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 关闭时不调用glGetError,抽样时通过二分找到出错的绘制步骤,严格模式下每个检查点都检查
+ */
+public class GlDiagnosticsTest {
+    private static final int GL_INVALID_ENUM = 0x0500;
+    private static final int GL_INVALID_OPERATION = 0x0502;
+    private static final String[] PASSES = {"a", "b", "c", "d", "e", "f", "g"};
+
+    private final ErrorDriver driver = new ErrorDriver();
+    private final GlDiagnostics diagnostics = new GlDiagnostics(driver);
+
+    @Test
+    public void offMakesNoCalls() {
+        driver.failingPass = "c";
+        for (int i = 0; i < 10; i++) {
+            drawFrame();
+        }
+        assertEquals(0, driver.errorQueries);
+        assertEquals(0, diagnostics.getErrorCount());
+    }
+
+    @Test
+    public void strictChecksEveryCheckpoint() {
+        diagnostics.setMode(GlDiagnostics.Mode.STRICT);
+        driver.failingPass = "c";
+        drawFrame();
+        drawFrame();
+        assertEquals(2, diagnostics.getSiteCount("Test: c"));
+        assertEquals(2, diagnostics.getErrorCount(GL_INVALID_OPERATION));
+        assertEquals(0, diagnostics.getErrorCount(GL_INVALID_ENUM));
+        // 每帧每个检查点一次,出错的检查点多一次,帧结束时再一次
+        assertEquals(2 * (PASSES.length + 1 + 1), driver.errorQueries);
+    }
+
+    @Test
+    public void sampledFindsFailingPassByBisection() {
+        diagnostics.setMode(GlDiagnostics.Mode.SAMPLED);
+        diagnostics.setSampleInterval(4);
+        driver.failingPass = "e";
+        for (int i = 0; i < 3; i++) {
+            drawFrame();
+        }
+        assertEquals(0, driver.errorQueries);
+
+        // 第4帧在结束时检查一次,发现错误
+        drawFrame();
+        assertTrue(diagnostics.isBisecting());
+        assertEquals(1, diagnostics.getErrorCount());
+
+        int frames = 0;
+        while (diagnostics.isBisecting()) {
+            drawFrame();
+            frames++;
+        }
+        assertEquals(1, diagnostics.getSiteCount("Test: e"));
+        // 8个区间,3帧就能找到
+        assertEquals(3, frames);
+    }
+
+    @Test
+    public void sampledGivesUpOnTransientErrors() {
+        diagnostics.setMode(GlDiagnostics.Mode.SAMPLED);
+        diagnostics.setSampleInterval(1);
+        driver.failingPass = "b";
+        drawFrame();
+        assertTrue(diagnostics.isBisecting());
+
+        driver.failingPass = null;
+        drawFrame();
+        assertFalse(diagnostics.isBisecting());
+        assertEquals(1, diagnostics.getErrorCount());
+        assertEquals(0, diagnostics.getSiteCount("Test: b"));
+    }
+
+    @Test
+    public void strictWithWrappedBackendChecksEveryCall() {
+        GlBackend backend = diagnostics.wrap(driver);
+        backend.glUseProgram(1);
+        backend.glDrawArrays(0, 0, 3);
+        // 其它模式下包装后的backend不调用glGetError
+        assertEquals(0, driver.errorQueries);
+
+        diagnostics.setMode(GlDiagnostics.Mode.STRICT);
+        driver.failDraws = true;
+        diagnostics.beginFrame();
+        backend.glUseProgram(1);
+        diagnostics.check("Test", "a");
+        StackTraceElement site = new Throwable().getStackTrace()[0]; backend.glDrawArrays(0, 0, 3);
+        diagnostics.check("Test", "b");
+        diagnostics.endFrame();
+
+        assertEquals(1, diagnostics.getSiteCount("glDrawArrays at " + site));
+        assertEquals(0, diagnostics.getSiteCount("Test: b"));
+        assertEquals(1, diagnostics.getErrorCount(GL_INVALID_OPERATION));
+        // 每个调用之后一次,出错的调用多一次;检查点和帧结束时不再检查
+        assertEquals(3, driver.errorQueries);
+    }
+
+    private void drawFrame() {
+        diagnostics.beginFrame();
+        for (String pass : PASSES) {
+            if (pass.equals(driver.failingPass)) {
+                driver.pending = GL_INVALID_OPERATION;
+            }
+            diagnostics.check("Test", pass);
+        }
+        diagnostics.endFrame();
+    }
+
+    /** 保存一个还没读取的错误 */
+    private static final class ErrorDriver extends NoOpGlBackend {
+        String failingPass;
+        boolean failDraws;
+        int pending;
+        int errorQueries;
+
+        @Override
+        public void glDrawArrays(int mode, int first, int count) {
+            if (failDraws) {
+                pending = GL_INVALID_OPERATION;
+            }
+        }
+
+        @Override
+        public int glGetError() {
+            errorQueries++;
+            int error = pending;
+            pending = 0;
+            return error;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Mat4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 按屏幕大小选择LOD,以及阈值附近的滞后
+ */
+public class LodSelectorTest {
+    private final LodSelector selector = new LodSelector();
+
+    @Test
+    public void smallerOnScreenUsesCoarserLevels() throws Exception {
+        selector.setLevels(4, new float[]{-1f, -1f, -1f}, new float[]{1f, 1f, 1f});
+        assertEquals(0, selector.selectForSize(0.5f));
+        assertEquals(1, selector.selectForSize(0.2f));
+        assertEquals(2, selector.selectForSize(0.1f));
+        assertEquals(3, selector.selectForSize(0.01f));
+        // 再近也不会超过最精细的一级
+        assertEquals(0, selector.selectForSize(2f));
+    }
+
+    @Test
+    public void doesNotPopAroundThreshold() throws Exception {
+        selector.setLevels(4, new float[]{-1f, -1f, -1f}, new float[]{1f, 1f, 1f});
+        float threshold = LodSelector.FIRST_THRESHOLD;
+        assertEquals(0, selector.selectForSize(threshold * 1.05f));
+        // 刚过阈值还不切换
+        assertEquals(0, selector.selectForSize(threshold * 0.95f));
+        assertEquals(1, selector.selectForSize(threshold * 0.8f));
+        // 回到阈值附近保持当前一级
+        assertEquals(1, selector.selectForSize(threshold * 1.05f));
+        assertEquals(1, selector.selectForSize(threshold * 0.95f));
+        assertEquals(0, selector.selectForSize(threshold * 1.2f));
+    }
+
+    @Test
+    public void projectedSizeFallsWithDistance() throws Exception {
+        selector.setLevels(4, new float[]{-0.1f, -0.1f, -0.1f}, new float[]{0.1f, 0.1f, 0.1f});
+        float[] projection = new float[16];
+        Mat4.setIdentity(projection);
+        projection[5] = 2f;
+
+        float near = selector.projectedSize(modelView(1f, 1f), projection);
+        float far = selector.projectedSize(modelView(2f, 1f), projection);
+        assertEquals(near / 2, far, 1e-5f);
+        // 模型矩阵的缩放同样起作用
+        assertEquals(2 * near, selector.projectedSize(modelView(1f, 2f), projection), 1e-5f);
+        // 相机在包围球内时用最精细的一级
+        assertEquals(0, selector.select(modelView(0.1f, 1f), projection));
+    }
+
+    @Test
+    public void singleLevelAlwaysSelectsIt() throws Exception {
+        selector.setLevels(1, new float[3], new float[3]);
+        assertEquals(0, selector.selectForSize(0f));
+    }
+
+    /** 放在相机前方distance处,缩放scale */
+    private static float[] modelView(float distance, float scale) {
+        float[] m = new float[16];
+        Mat4.setIdentity(m);
+        Mat4.translate(m, 0f, 0f, -distance);
+        for (int i = 0; i < 12; i++) {
+            m[i] *= scale;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,320 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Frustum;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.math.TransformRing;
+import com.webank.mbank.ar.mesh.MeshData;
+import com.webank.mbank.ar.mesh.MeshQuantizer;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量绘制桌子时的GL调用次数,每个实例的网格拷贝,按距离选择的LOD,以及视锥剔除
+ */
+public class ObjectRendererTest {
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    private static final int BOX_VERTICES = 24;
+    private static final int BOX_INDICES = 36;
+
+    private final IndexCapturingBackend noOp = new IndexCapturingBackend();
+    private final RecordingGlBackend gl = new RecordingGlBackend(noOp);
+    private final float[] view = identity();
+    private final float[] projection = identity();
+
+    @Test
+    public void drawsAllPlatformsInOneCall() throws Exception {
+        ObjectRenderer renderer = boxRenderer(true);
+        assertEquals(ObjectRenderer.MAX_INSTANCES_PER_DRAW, renderer.getInstanceBatchSize());
+
+        gl.beginFrame();
+        renderer.draw(platforms(1), 0.5f, view, projection, 1f);
+        int oneBox = gl.getCalls();
+
+        gl.beginFrame();
+        renderer.draw(platforms(20), 0.5f, view, projection, 1f);
+        assertEquals(1, gl.getDrawCalls());
+        // 20张桌子的调用次数和1张差不多
+        assertTrue(gl.getCalls() + " calls", gl.getCalls() <= oneBox + 4);
+
+        gl.beginFrame();
+        renderer.draw(platforms(ObjectRenderer.MAX_INSTANCES_PER_DRAW + 1), 0.5f, view, projection, 1f);
+        assertEquals(2, gl.getDrawCalls());
+    }
+
+    @Test
+    public void bindsStateOnceWithoutInstancing() throws Exception {
+        ObjectRenderer renderer = boxRenderer(false);
+        assertEquals(0, renderer.getInstanceBatchSize());
+
+        gl.beginFrame();
+        for (int i = 0; i < 20; i++) {
+            renderer.updateModelMatrix(identity(), 0.5f);
+            renderer.draw(view, projection, 1f);
+        }
+        int separate = gl.getCalls();
+
+        gl.beginFrame();
+        renderer.draw(platforms(20), 0.5f, view, projection, 1f);
+        assertEquals(20, gl.getDrawCalls());
+        // 每张桌子只更新矩阵和光照,材质、纹理和反量化参数每次绘制设置一次
+        assertEquals(20 * 3, gl.getUniformUpdates() - 5);
+        assertTrue(gl.getCalls() < separate / 3);
+    }
+
+    @Test
+    public void largeMeshesAreNotRepeated() throws Exception {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        renderer.setInstancingEnabled(true);
+        int vertices = 40000;
+        loadMesh(renderer, vertices, 3);
+        assertEquals(1, renderer.getInstanceBatchSize());
+    }
+
+    @Test
+    public void eachCopyIsShiftedAndTagged() throws Exception {
+        boxRenderer(true);
+        ShortBuffer indices = noOp.lastIndices;
+        assertEquals(BOX_INDICES * ObjectRenderer.MAX_INSTANCES_PER_DRAW, indices.limit());
+        for (int k = 0; k < BOX_INDICES; k++) {
+            assertEquals(indices.get(k) + BOX_VERTICES, indices.get(BOX_INDICES + k));
+        }
+    }
+
+    @Test
+    public void quantizedMeshHalvesVertexUpload() throws Exception {
+        boxRenderer(false);
+        int floatBytes = noOp.lastVertexBytes;
+
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        MeshData mesh = boxMesh();
+        float[] boundsMin = new float[3];
+        float[] boundsMax = new float[3];
+        float[] texCoordMin = new float[2];
+        float[] texCoordMax = new float[2];
+        renderer.loadQuantizedMesh(
+                MeshQuantizer.toVertexBuffer(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax),
+                mesh.vertexCount, mesh.toShortIndexBuffer(), boundsMin, boundsMax, texCoordMin,
+                texCoordMax);
+        assertEquals(floatBytes / 2, noOp.lastVertexBytes);
+
+        // 绘制时GL调用次数不变
+        gl.beginFrame();
+        renderer.updateModelMatrix(identity(), 0.5f);
+        renderer.draw(view, projection, 1f);
+        int quantizedCalls = gl.getCalls();
+        ObjectRenderer floats = boxRenderer(false);
+        gl.beginFrame();
+        floats.updateModelMatrix(identity(), 0.5f);
+        floats.draw(view, projection, 1f);
+        assertEquals(gl.getCalls(), quantizedCalls);
+    }
+
+    @Test
+    public void largeMeshUsesIntIndicesWhenSupported() throws Exception {
+        noOp.extensions = "GL_OES_rgb8_rgba8 GL_OES_element_index_uint";
+        ObjectRenderer renderer = largeRenderer(200000);
+        assertEquals(1, renderer.getChunkCount());
+        assertEquals(4 * noOp.lastIndexCount, noOp.lastIndexBytes);
+
+        gl.beginFrame();
+        renderer.updateModelMatrix(identity(), 0.5f);
+        renderer.draw(view, projection, 1f);
+        assertEquals(1, gl.getDrawCalls());
+    }
+
+    @Test
+    public void largeMeshIsSplitWithoutIntIndices() throws Exception {
+        ObjectRenderer renderer = largeRenderer(200000);
+        int chunks = renderer.getChunkCount();
+        assertTrue(chunks >= 4);
+        assertEquals(2 * noOp.lastIndexCount, noOp.lastIndexBytes);
+
+        gl.beginFrame();
+        renderer.updateModelMatrix(identity(), 0.5f);
+        renderer.draw(view, projection, 1f);
+        assertEquals(chunks, gl.getDrawCalls());
+    }
+
+    @Test
+    public void farModelDrawsCoarserLevel() throws Exception {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        MeshData mesh = mesh(BOX_VERTICES, BOX_INDICES + 18 + 6);
+        // 三级LOD依次放在索引中
+        renderer.setLevelsOfDetail(new int[]{0, 36, 54}, new int[]{36, 18, 6},
+                new float[]{-1f, -1f, -1f}, new float[]{1f, 1f, 1f});
+        renderer.loadMesh(mesh.toVertexBuffer(), BOX_VERTICES, mesh.toShortIndexBuffer());
+        assertEquals(3, renderer.getLodCount());
+        assertEquals(BOX_INDICES + 24, noOp.lastIndexCount);
+
+        drawAt(renderer, 2f);
+        assertEquals(0, renderer.getLodLevel());
+        assertEquals(36, noOp.lastDrawCount);
+        assertEquals(0, noOp.lastDrawOffset);
+
+        drawAt(renderer, 100f);
+        assertEquals(2, renderer.getLodLevel());
+        assertEquals(6, noOp.lastDrawCount);
+        assertEquals(2 * 54, noOp.lastDrawOffset);
+    }
+
+    @Test
+    public void chunkedMeshKeepsFinestLevel() throws Exception {
+        int vertexCount = 199998;
+        MeshData mesh = mesh(vertexCount, vertexCount + 3);
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        renderer.setLevelsOfDetail(new int[]{0, vertexCount}, new int[]{vertexCount, 3},
+                new float[]{-1f, -1f, -1f}, new float[]{1f, 1f, 1f});
+        renderer.loadMesh(mesh.toVertexBuffer(), vertexCount, mesh.toIntIndexBuffer());
+        // 分块时只上传第0级
+        assertEquals(1, renderer.getLodCount());
+        assertEquals(vertexCount, noOp.lastIndexCount);
+    }
+
+    @Test
+    public void culledPlatformsAreLeftOutOfBatches() throws Exception {
+        ObjectRenderer renderer = boxRenderer(true);
+        // 单位投影和视图矩阵的视锥体是[-1, 1]的立方体,x = 0, 0.45, 0.9的桌子可见
+        Frustum frustum = new Frustum();
+        frustum.set(projection, view);
+        renderer.setCullingFrustum(frustum);
+
+        gl.beginFrame();
+        renderer.draw(platforms(20), 0.5f, view, projection, 1f);
+        assertEquals(3, renderer.getDrawnCount());
+        assertEquals(17, renderer.getCulledCount());
+        assertEquals(1, gl.getDrawCalls());
+        assertEquals(3 * BOX_INDICES, noOp.lastDrawCount);
+
+        // 全部被剔除时不产生任何GL调用
+        renderer.resetDrawCounts();
+        float[] behind = identity();
+        Mat4.translate(behind, 0f, 0f, 5f);
+        TransformRing ring = new TransformRing(1);
+        ring.push(behind);
+        gl.beginFrame();
+        renderer.draw(ring, 0.5f, view, projection, 1f);
+        renderer.updateModelMatrix(behind, 1f);
+        renderer.draw(view, projection, 1f);
+        assertEquals(0, gl.getCalls());
+        assertEquals(0, renderer.getDrawnCount());
+        assertEquals(2, renderer.getCulledCount());
+    }
+
+    @Test
+    public void boundsComeFromVertices() throws Exception {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        MeshData mesh = mesh(3, 3);
+        // 三角形从x = 0伸到x = 3,包围盒的中心在视锥体外,但一部分在里面
+        mesh.vertices[MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET] = 3f;
+        renderer.loadMesh(mesh.toVertexBuffer(), 3, mesh.toShortIndexBuffer());
+        Frustum frustum = new Frustum();
+        frustum.set(projection, view);
+        renderer.setCullingFrustum(frustum);
+
+        float[] model = identity();
+        renderer.updateModelMatrix(model, 1f);
+        renderer.draw(view, projection, 1f);
+        assertEquals(1, renderer.getDrawnCount());
+
+        Mat4.translate(model, 1.5f, 0f, 0f);
+        renderer.updateModelMatrix(model, 1f);
+        renderer.draw(view, projection, 1f);
+        assertEquals(1, renderer.getCulledCount());
+    }
+
+    private void drawAt(ObjectRenderer renderer, float distance) {
+        float[] model = identity();
+        Mat4.translate(model, 0f, 0f, -distance);
+        renderer.updateModelMatrix(model, 1f);
+        renderer.draw(view, projection, 1f);
+    }
+
+    private ObjectRenderer largeRenderer(int vertexCount) {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        // 大模型不会被复制,开启实例化也没有影响
+        renderer.setInstancingEnabled(true);
+        MeshData mesh = mesh(vertexCount, vertexCount);
+        renderer.loadMesh(mesh.toVertexBuffer(), vertexCount, mesh.toIntIndexBuffer());
+        assertEquals(0, renderer.getInstanceBatchSize());
+        return renderer;
+    }
+
+    private ObjectRenderer boxRenderer(boolean instancing) {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        renderer.setInstancingEnabled(instancing);
+        loadMesh(renderer, BOX_VERTICES, BOX_INDICES);
+        return renderer;
+    }
+
+    private static void loadMesh(ObjectRenderer renderer, int vertexCount, int indexCount) {
+        MeshData mesh = mesh(vertexCount, indexCount);
+        renderer.loadMesh(mesh.toVertexBuffer(), vertexCount, mesh.toShortIndexBuffer());
+    }
+
+    private static MeshData boxMesh() {
+        return mesh(BOX_VERTICES, BOX_INDICES);
+    }
+
+    private static MeshData mesh(int vertexCount, int indexCount) {
+        int[] indices = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            indices[i] = i % vertexCount;
+        }
+        return new MeshData(new float[vertexCount * MeshData.FLOATS_PER_VERTEX],
+                vertexCount, indices, indexCount);
+    }
+
+    private static TransformRing platforms(int count) {
+        TransformRing ring = new TransformRing(Math.max(count, 1));
+        for (int i = 0; i < count; i++) {
+            float[] m = identity();
+            Mat4.translate(m, 0.45f * i, 0f, 0f);
+            ring.push(m);
+        }
+        return ring;
+    }
+
+    private static float[] identity() {
+        float[] m = new float[16];
+        Mat4.setIdentity(m);
+        return m;
+    }
+
+    /** 记下最后一次上传的索引和顶点大小 */
+    private static final class IndexCapturingBackend extends NoOpGlBackend {
+        String extensions = "";
+        ShortBuffer lastIndices;
+        int lastIndexCount;
+        int lastIndexBytes;
+        int lastVertexBytes;
+        int lastDrawCount;
+        int lastDrawOffset;
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            if (target == GL_ELEMENT_ARRAY_BUFFER) {
+                lastIndices = data instanceof ShortBuffer ? (ShortBuffer) data : null;
+                lastIndexCount = data.remaining();
+                lastIndexBytes = size;
+            } else {
+                lastVertexBytes = size;
+            }
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            lastDrawCount = count;
+            lastDrawOffset = offset;
+        }
+
+        @Override
+        public String glGetString(int name) {
+            return extensions;
+        }
+    }
+}
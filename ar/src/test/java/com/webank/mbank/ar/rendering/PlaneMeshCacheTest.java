@@ -0,0 +1,102 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 平面没有变化时不再细分和上传,多边形变化时只更新这个平面的缓冲区
+ */
+public class PlaneMeshCacheTest {
+    private final RecordingGlBackend gl = new RecordingGlBackend(new NoOpGlBackend());
+    private final PlaneMeshCache cache = new PlaneMeshCache(gl);
+    private final Object first = new Object();
+    private final Object second = new Object();
+
+    @Test
+    public void stablePlanesAreNotUploadedAgain() throws Exception {
+        gl.beginFrame();
+        PlaneMeshCache.Mesh mesh = cache.get(first, 1f, 1f, square(0.5f));
+        cache.get(second, 2f, 2f, square(1f));
+        assertEquals(2, cache.getMissCount());
+        assertTrue(gl.getBytesUploaded() > 0);
+        // 4个边界点,每个点内外两个顶点、3个索引
+        assertEquals(4 * 3, mesh.getIndexCount());
+        assertTrue(mesh.getVertexBufferId() != mesh.getIndexBufferId());
+
+        // ARCore每次返回新的FloatBuffer,内容相同就算命中
+        gl.beginFrame();
+        for (int i = 0; i < 10; i++) {
+            assertSame(mesh, cache.get(first, 1f, 1f, square(0.5f)));
+            cache.get(second, 2f, 2f, square(1f));
+        }
+        assertEquals(20, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, gl.getCalls());
+        assertEquals(0, gl.getBytesUploaded());
+    }
+
+    @Test
+    public void changedPolygonIsUploadedInPlace() throws Exception {
+        PlaneMeshCache.Mesh mesh = cache.get(first, 1f, 1f, square(0.5f));
+        int vertexBuffer = mesh.getVertexBufferId();
+
+        // 范围变了也要重新细分
+        gl.beginFrame();
+        cache.get(first, 1.2f, 1f, square(0.5f));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(4 * 2 * 3 * 4 + 4 * 3 * 2, gl.getBytesUploaded());
+
+        // 变大以后重新分配,缓冲区还是原来那两个
+        gl.beginFrame();
+        mesh = cache.get(first, 1.2f, 1f, polygon(32, 0.6f));
+        assertEquals(vertexBuffer, mesh.getVertexBufferId());
+        assertEquals(32 * 3, mesh.getIndexCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void releaseDeletesBuffers() throws Exception {
+        cache.get(first, 1f, 1f, square(0.5f));
+        cache.get(second, 1f, 1f, null);
+        assertEquals(2, cache.size());
+
+        gl.beginFrame();
+        cache.release(first);
+        cache.release(first);
+        assertEquals(1, gl.getCalls());
+        assertEquals(1, cache.size());
+
+        // 新的context中旧的缓冲区已经不存在,不需要删除
+        gl.beginFrame();
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals(0, gl.getCalls());
+    }
+
+    @Test
+    public void fingerprintCoversEveryCoordinate() throws Exception {
+        FloatBuffer polygon = polygon(16, 1f);
+        long fingerprint = PlaneMeshCache.fingerprint(2f, 2f, polygon);
+        assertEquals(fingerprint, PlaneMeshCache.fingerprint(2f, 2f, polygon(16, 1f)));
+        polygon.put(7, polygon.get(7) + 1e-6f);
+        assertNotEquals(fingerprint, PlaneMeshCache.fingerprint(2f, 2f, polygon));
+        assertNotEquals(fingerprint, PlaneMeshCache.fingerprint(2f, 2f, null));
+    }
+
+    private static FloatBuffer square(float half) {
+        return FloatBuffer.wrap(new float[]{-half, -half, half, -half, half, half, -half, half});
+    }
+
+    private static FloatBuffer polygon(int count, float radius) {
+        float[] boundary = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            boundary[i * 2] = (float) (radius * Math.cos(angle));
+            boundary[i * 2 + 1] = (float) (radius * Math.sin(angle));
+        }
+        return FloatBuffer.wrap(boundary);
+    }
+}
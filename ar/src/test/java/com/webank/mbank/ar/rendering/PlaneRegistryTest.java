@@ -0,0 +1,120 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 活着的平面下标不变,死掉的平面被移除并释放资源,空出的下标给新平面用
+ */
+public class PlaneRegistryTest {
+    private final List<Object> evicted = new ArrayList<>();
+    private final PlaneRegistry registry = new PlaneRegistry(new PlaneRegistry.Listener() {
+        @Override
+        public void onPlaneEvicted(Object plane) {
+            evicted.add(plane);
+        }
+    });
+
+    @Test
+    public void livePlanesKeepTheirIndex() throws Exception {
+        Object a = new Object();
+        Object b = new Object();
+        registry.beginFrame();
+        assertEquals(0, registry.update(a, PlaneRegistry.State.TRACKING));
+        assertEquals(1, registry.update(b, PlaneRegistry.State.TRACKING));
+        registry.endFrame();
+        assertEquals(PlaneRegistry.State.NEW, registry.getState(a));
+
+        // 暂停的平面保留下标,恢复追踪后颜色不变
+        for (int i = 0; i < 5; i++) {
+            registry.beginFrame();
+            assertEquals(0, registry.update(a, PlaneRegistry.State.PAUSED));
+            assertEquals(1, registry.update(b, PlaneRegistry.State.TRACKING));
+            registry.endFrame();
+        }
+        assertEquals(PlaneRegistry.State.PAUSED, registry.getState(a));
+        assertEquals(PlaneRegistry.State.TRACKING, registry.getState(b));
+        assertEquals(2, registry.size());
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    public void deadPlanesAreEvictedAndTheirIndexReused() throws Exception {
+        Object a = new Object();
+        Object b = new Object();
+        Object c = new Object();
+        Object d = new Object();
+        registry.beginFrame();
+        registry.update(a, PlaneRegistry.State.TRACKING);
+        registry.update(b, PlaneRegistry.State.TRACKING);
+        registry.update(c, PlaneRegistry.State.TRACKING);
+        registry.endFrame();
+
+        // a被合并,c不再出现
+        registry.beginFrame();
+        assertEquals(-1, registry.update(a, PlaneRegistry.State.SUBSUMED));
+        assertEquals(1, registry.update(b, PlaneRegistry.State.TRACKING));
+        registry.endFrame();
+        assertEquals(2, evicted.size());
+        assertTrue(evicted.contains(a));
+        assertTrue(evicted.contains(c));
+        assertNull(registry.getState(a));
+        assertEquals(1, registry.size());
+
+        // 死掉的平面还会在列表里出现一段时间,不能重新登记
+        registry.beginFrame();
+        assertEquals(-1, registry.update(a, PlaneRegistry.State.STOPPED));
+        assertEquals(1, registry.update(b, PlaneRegistry.State.TRACKING));
+        assertEquals(0, registry.update(d, PlaneRegistry.State.TRACKING));
+        assertEquals(2, registry.update(c, PlaneRegistry.State.TRACKING));
+        registry.endFrame();
+        assertEquals(3, registry.size());
+        assertEquals(2, registry.getEvictedCount());
+    }
+
+    @Test
+    public void sizeStaysFlatOverLongSessions() throws Exception {
+        Random random = new Random(42);
+        Object[] slots = new Object[12];
+        int maxIndex = 0;
+        long created = 0;
+        for (int frame = 0; frame < 100000; frame++) {
+            registry.beginFrame();
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] == null) {
+                    slots[i] = new Object();
+                    created++;
+                    int index = registry.update(slots[i], PlaneRegistry.State.TRACKING);
+                    maxIndex = Math.max(maxIndex, index);
+                    continue;
+                }
+                int dice = random.nextInt(1000);
+                if (dice == 0) {
+                    registry.update(slots[i], PlaneRegistry.State.SUBSUMED);
+                    slots[i] = null;
+                } else if (dice == 1) {
+                    registry.update(slots[i], PlaneRegistry.State.STOPPED);
+                    slots[i] = null;
+                } else if (dice == 2) {
+                    // 不再出现
+                    slots[i] = null;
+                } else {
+                    int index = registry.update(slots[i], dice < 100
+                            ? PlaneRegistry.State.PAUSED : PlaneRegistry.State.TRACKING);
+                    maxIndex = Math.max(maxIndex, index);
+                }
+            }
+            registry.endFrame();
+            assertTrue(registry.size() <= slots.length);
+        }
+        assertTrue(created > 1000);
+        assertTrue(maxIndex < slots.length);
+        assertEquals(created - registry.size(), registry.getEvictedCount());
+        assertEquals(registry.getEvictedCount(), evicted.size());
+    }
+}
@@ -0,0 +1,54 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 平面细分的顶点和索引数量,以及多边形变大时缓冲区的扩容
+ */
+public class PlaneTessellatorTest {
+    private final PlaneTessellator tessellator = new PlaneTessellator();
+
+    @Test
+    public void squareHasFadingEdge() throws Exception {
+        tessellator.tessellate(1f, 1f, FloatBuffer.wrap(new float[]{
+                -0.5f, -0.5f, 0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.5f}));
+
+        FloatBuffer vertices = tessellator.getVertices();
+        assertEquals(4 * 2 * PlaneTessellator.COORDS_PER_VERTEX, vertices.limit());
+        // 外圈透明,内圈向中心收缩 FADE_RADIUS_M 后不透明
+        assertEquals(-0.5f, vertices.get(0), 0f);
+        assertEquals(0f, vertices.get(2), 0f);
+        assertEquals(-0.25f, vertices.get(3), 1e-6f);
+        assertEquals(1f, vertices.get(5), 0f);
+
+        ShortBuffer indices = tessellator.getIndices();
+        assertEquals(4 * 3, indices.limit());
+        for (int i = 0; i < indices.limit(); i++) {
+            assertTrue(indices.get(i) >= 0 && indices.get(i) < 8);
+        }
+    }
+
+    @Test
+    public void growsForLargePolygons() throws Exception {
+        int count = 256;
+        float[] boundary = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            boundary[i * 2] = (float) Math.cos(angle);
+            boundary[i * 2 + 1] = (float) Math.sin(angle);
+        }
+        tessellator.tessellate(2f, 2f, FloatBuffer.wrap(boundary));
+        assertEquals(count * 2 * PlaneTessellator.COORDS_PER_VERTEX,
+                tessellator.getVertices().limit());
+        assertEquals(count * 3, tessellator.getIndices().limit());
+
+        tessellator.tessellate(2f, 2f, null);
+        assertEquals(0, tessellator.getVertices().limit());
+        assertEquals(0, tessellator.getIndices().limit());
+    }
+}
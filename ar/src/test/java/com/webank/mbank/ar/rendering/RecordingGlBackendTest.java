@@ -0,0 +1,85 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Mat4;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class RecordingGlBackendTest {
+    private static final int GL_FLOAT = 0x1406;
+    private static final int GL_TRIANGLES = 0x0004;
+    private static final int GL_UNSIGNED_SHORT = 0x1403;
+
+    private final RecordingGlBackend gl = new RecordingGlBackend(new NoOpGlBackend());
+
+    @Test
+    public void countsObjectDrawCalls() {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        float[] model = new float[16];
+        float[] view = new float[16];
+        float[] projection = new float[16];
+        Mat4.setIdentity(model);
+        Mat4.setIdentity(view);
+        Mat4.setIdentity(projection);
+
+        gl.beginFrame();
+        renderer.updateModelMatrix(model, 0.5f);
+        renderer.draw(view, projection, 1f);
+        int callsPerDraw = gl.getCalls();
+        assertEquals(1, gl.getDrawCalls());
+        // 矩阵、光照、材质、纹理和3个反量化参数
+        assertEquals(8, gl.getUniformUpdates());
+        assertTrue(gl.getStateChanges() > 0);
+        assertEquals(0, gl.getBytesUploaded());
+
+        // 每次绘制的调用次数都一样,20张桌子就是20倍
+        gl.beginFrame();
+        for (int i = 0; i < 20; i++) {
+            renderer.updateModelMatrix(model, 0.5f);
+            renderer.draw(view, projection, 1f);
+        }
+        assertEquals(20, gl.getDrawCalls());
+        assertEquals(20 * callsPerDraw, gl.getCalls());
+    }
+
+    @Test
+    public void countsUploadedBytes() {
+        FloatBuffer vertices =
+                ByteBuffer.allocateDirect(4 * 12).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        ShortBuffer indices =
+                ByteBuffer.allocateDirect(2 * 6).order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        gl.beginFrame();
+        gl.glBufferData(0, 64, null, 0);
+        gl.glBufferSubData(0, 0, 16, null);
+        // 客户端内存中的顶点和索引每次绘制都会重新上传
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, vertices);
+        gl.glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_SHORT, indices);
+        assertEquals(64 + 16 + 48 + 12, gl.getBytesUploaded());
+        assertEquals(4, gl.getCalls());
+        assertEquals(1, gl.getDrawCalls());
+        assertEquals(1, gl.getStateChanges());
+
+        gl.beginFrame();
+        assertEquals(0, gl.getCalls());
+        assertEquals(0, gl.getBytesUploaded());
+    }
+
+    @Test
+    public void noOpBackendHandsOutDistinctNames() {
+        NoOpGlBackend noOp = new NoOpGlBackend();
+        int[] names = new int[3];
+        noOp.glGenBuffers(2, names, 0);
+        noOp.glGenTextures(1, names, 2);
+        assertTrue(names[0] != 0);
+        assertTrue(names[0] != names[1]);
+        assertTrue(names[1] != names[2]);
+        assertEquals(0, noOp.glGetError());
+    }
+}
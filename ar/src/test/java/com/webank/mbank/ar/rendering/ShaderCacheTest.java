@@ -0,0 +1,236 @@
+package com.webank.mbank.ar.rendering;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 同一组着色器只链接一次,链接结果保存到磁盘,换了驱动或者驱动拒绝时重新编译
+ */
+public class ShaderCacheTest {
+    private static final int GL_VENDOR = 0x1F00;
+    private static final int GL_RENDERER = 0x1F01;
+    private static final int GL_VERSION = 0x1F02;
+    private static final int GL_EXTENSIONS = 0x1F03;
+    private static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+    private static final int GL_LINK_STATUS = 0x8B82;
+    private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+    private static final int BINARY_FORMAT = 0x1234;
+    private static final byte[] BINARY = {1, 2, 3, 4, 5};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeDriver driver = new FakeDriver();
+
+    @Test
+    public void sharesOneProgramPerKey() {
+        ShaderCache cache = new ShaderCache(driver);
+        ShaderCache.Program first = cache.get("object", "vertex", "fragment");
+        ShaderCache.Program second = cache.get("object", "vertex", "fragment");
+        assertSame(first, second);
+        assertEquals(1, cache.getCompiledCount());
+        assertEquals(1, cache.getSharedCount());
+        assertEquals(2, driver.compiledShaders);
+
+        // 查询过的location不再问驱动
+        first.getUniformLocation("u_Texture");
+        second.getUniformLocation("u_Texture");
+        second.getAttribLocation("a_Position");
+        assertEquals(2, driver.locationQueries);
+
+        // 新的context需要重新链接
+        cache.onContextCreated();
+        assertNotSame(first, cache.get("object", "vertex", "fragment"));
+        assertEquals(2, cache.getCompiledCount());
+    }
+
+    @Test
+    public void warmStartLoadsSavedBinary() throws Exception {
+        File directory = new File(folder.getRoot(), "shaders");
+        ShaderCache cold = newCache(directory);
+        cold.get("object", "vertex", "fragment");
+        assertEquals(1, cold.getCompiledCount());
+        assertEquals(1, directory.listFiles().length);
+
+        driver.compiledShaders = 0;
+        ShaderCache warm = newCache(directory);
+        warm.get("object", "vertex", "fragment");
+        assertEquals(0, warm.getCompiledCount());
+        assertEquals(1, warm.getBinaryLoadCount());
+        assertEquals(0, driver.compiledShaders);
+        assertEquals(BINARY_FORMAT, driver.loadedFormat);
+        assertEquals(BINARY.length, driver.loadedLength);
+
+        // 着色器源码不同,保存的二进制不能用
+        warm.get("other", "vertex2", "fragment");
+        assertEquals(1, warm.getCompiledCount());
+    }
+
+    @Test
+    public void otherDriverRecompiles() {
+        File directory = folder.getRoot();
+        newCache(directory).get("object", "vertex", "fragment");
+
+        driver.renderer = "Adreno (TM) 640";
+        ShaderCache cache = newCache(directory);
+        cache.get("object", "vertex", "fragment");
+        assertEquals(1, cache.getCompiledCount());
+        assertEquals(0, cache.getBinaryLoadCount());
+    }
+
+    @Test
+    public void rejectedBinaryRecompiles() {
+        File directory = folder.getRoot();
+        newCache(directory).get("object", "vertex", "fragment");
+
+        driver.rejectBinaries = true;
+        ShaderCache cache = newCache(directory);
+        cache.get("object", "vertex", "fragment");
+        assertEquals(1, cache.getCompiledCount());
+        assertEquals(1, driver.deletedPrograms);
+    }
+
+    @Test
+    public void binariesNeedOpenGlEs3() {
+        driver.version = "OpenGL ES 2.0 V@145.0";
+        File directory = folder.getRoot();
+        newCache(directory).get("object", "vertex", "fragment");
+        assertEquals(0, directory.listFiles().length);
+
+        assertEquals(3, ShaderCache.majorVersion("OpenGL ES 3.2 V@258.0"));
+        assertEquals(0, ShaderCache.majorVersion("OpenGL ES-CM 1.1"));
+        assertEquals(0, ShaderCache.majorVersion(null));
+    }
+
+    @Test
+    public void binariesNeedExtensionAndFormats() {
+        File directory = folder.getRoot();
+        driver.extensions = "GL_OES_element_index_uint";
+        newCache(directory).get("object", "vertex", "fragment");
+        assertEquals(0, directory.listFiles().length);
+
+        // 有扩展但是一种格式都没有,加载一定失败,不保存
+        driver.extensions = "GL_OES_get_program_binary GL_OES_element_index_uint";
+        driver.binaryFormats = 0;
+        driver.rejectBinaries = true;
+        ShaderCache cache = newCache(directory);
+        cache.get("object", "vertex", "fragment");
+        assertEquals(0, directory.listFiles().length);
+        cache = newCache(directory);
+        cache.get("object", "vertex", "fragment");
+        assertEquals(0, cache.getBinaryLoadCount());
+        assertEquals(0, driver.deletedPrograms);
+    }
+
+    @Test
+    public void definesGoAfterVersion() {
+        assertEquals("#define FOG\nvoid main() {}",
+                ShaderCache.withDefines("void main() {}", "#define FOG\n"));
+        assertEquals("#version 100\n#define FOG\nvoid main() {}",
+                ShaderCache.withDefines("#version 100\nvoid main() {}", "#define FOG\n"));
+        assertEquals("void main() {}", ShaderCache.withDefines("void main() {}", ""));
+    }
+
+    private ShaderCache newCache(File directory) {
+        ShaderCache cache = new ShaderCache(driver);
+        cache.setBinaryDirectory(directory);
+        cache.onContextCreated();
+        return cache;
+    }
+
+    /** 支持program二进制的驱动 */
+    private static final class FakeDriver extends NoOpGlBackend {
+        String version = "OpenGL ES 3.2 V@258.0";
+        String renderer = "Adreno (TM) 530";
+        String extensions = "GL_OES_get_program_binary";
+        int binaryFormats = 1;
+        boolean rejectBinaries;
+        int compiledShaders;
+        int locationQueries;
+        int deletedPrograms;
+        int loadedFormat;
+        int loadedLength;
+        private boolean lastFromBinary;
+
+        @Override
+        public String glGetString(int name) {
+            switch (name) {
+                case GL_VENDOR:
+                    return "Qualcomm";
+                case GL_RENDERER:
+                    return renderer;
+                case GL_VERSION:
+                    return version;
+                case GL_EXTENSIONS:
+                    return extensions;
+                default:
+                    return "";
+            }
+        }
+
+        @Override
+        public void glGetIntegerv(int pname, int[] params, int offset) {
+            params[offset] = pname == GL_NUM_PROGRAM_BINARY_FORMATS ? binaryFormats : 0;
+        }
+
+        @Override
+        public void glCompileShader(int shader) {
+            compiledShaders++;
+        }
+
+        @Override
+        public void glLinkProgram(int program) {
+            lastFromBinary = false;
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name) {
+            locationQueries++;
+            return 1;
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name) {
+            locationQueries++;
+            return 0;
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+            if (pname == GL_PROGRAM_BINARY_LENGTH) {
+                params[offset] = BINARY.length;
+            } else if (pname == GL_LINK_STATUS) {
+                params[offset] = lastFromBinary && rejectBinaries ? 0 : 1;
+            } else {
+                super.glGetProgramiv(program, pname, params, offset);
+            }
+        }
+
+        @Override
+        public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                                       int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+            ((ByteBuffer) binary).put(BINARY);
+            length[lengthOffset] = BINARY.length;
+            binaryFormat[binaryFormatOffset] = BINARY_FORMAT;
+        }
+
+        @Override
+        public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+            lastFromBinary = true;
+            loadedFormat = binaryFormat;
+            loadedLength = length;
+        }
+
+        @Override
+        public void glDeleteProgram(int program) {
+            deletedPrograms++;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.mesh.MeshData;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 重复的状态切换和uniform不会发给驱动,绑定延迟到绘制时才生效
+ */
+public class StateCachingGlBackendTest {
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_TEXTURE_2D = 0x0DE1;
+    private static final int GL_TEXTURE0 = 0x84C0;
+    private static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+    private static final int GL_LINEAR = 0x2601;
+    private static final int GL_BLEND = 0x0BE2;
+    private static final int GL_FLOAT = 0x1406;
+    private static final int GL_TRIANGLES = 0x0004;
+    private static final int BOX_VERTICES = 24;
+    private static final int BOX_INDICES = 36;
+
+    private final LoggingBackend log = new LoggingBackend();
+    private final RecordingGlBackend driver = new RecordingGlBackend(log);
+    private final StateCachingGlBackend gl = new StateCachingGlBackend(driver);
+
+    @Test
+    public void repeatedFramesOnlySendMatricesAndDraws() {
+        ObjectRenderer renderer = boxRenderer();
+
+        drawBoxes(renderer, 20);
+        int firstFrameCalls = driver.getCalls();
+        assertEquals(20, driver.getDrawCalls());
+        assertEquals(gl.getIssuedCalls(), driver.getCalls());
+        assertTrue(gl.getElidedCalls() > 0);
+
+        // 第二帧的绑定、开关和材质参数都和上一帧相同
+        drawBoxes(renderer, 20);
+        assertEquals(20, driver.getDrawCalls());
+        assertEquals(0, driver.getStateChanges());
+        assertTrue(driver.getUniformUpdates() < 20 * 5);
+        assertTrue(driver.getCalls() < firstFrameCalls);
+        assertTrue(gl.getIssuedCalls() * 3 < gl.getRequestedCalls());
+    }
+
+    @Test
+    public void invalidateSendsStateAgain() {
+        ObjectRenderer renderer = boxRenderer();
+        drawBoxes(renderer, 1);
+        int firstUniforms = driver.getUniformUpdates();
+        drawBoxes(renderer, 1);
+        int cachedUniforms = driver.getUniformUpdates();
+        assertTrue(cachedUniforms < firstUniforms);
+
+        // 其它代码可能改了绑定,uniform只有我们自己会改
+        gl.invalidateSharedState();
+        drawBoxes(renderer, 1);
+        assertTrue(driver.getStateChanges() > 0);
+        assertEquals(cachedUniforms, driver.getUniformUpdates());
+
+        // 新的context什么都不能假设
+        gl.invalidate();
+        drawBoxes(renderer, 1);
+        assertEquals(firstUniforms, driver.getUniformUpdates());
+    }
+
+    @Test
+    public void relinkingForgetsUniforms() {
+        gl.glUseProgram(1);
+        gl.glUniform4f(3, 1f, 2f, 3f, 4f);
+        gl.glUniform4f(3, 1f, 2f, 3f, 4f);
+        gl.glUniform1i(4, 0);
+        gl.glUniform1i(4, 0);
+        assertEquals(2, driver.getUniformUpdates());
+
+        // 每个program各自记录
+        gl.glUseProgram(2);
+        gl.glUniform4f(3, 1f, 2f, 3f, 4f);
+        gl.glUseProgram(1);
+        gl.glUniform4f(3, 1f, 2f, 3f, 4f);
+        assertEquals(3, driver.getUniformUpdates());
+
+        gl.glLinkProgram(1);
+        gl.glUniform4f(3, 1f, 2f, 3f, 4f);
+        assertEquals(4, driver.getUniformUpdates());
+        // 不存在的uniform不用发
+        gl.glUniform1f(-1, 1f);
+        assertEquals(4, driver.getUniformUpdates());
+    }
+
+    @Test
+    public void bindsAreAppliedWhenNeeded() {
+        gl.glActiveTexture(GL_TEXTURE0);
+        gl.glBindTexture(GL_TEXTURE_2D, 7);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        gl.glEnable(GL_BLEND);
+        gl.glDisable(GL_BLEND);
+        assertEquals("activeTexture(33984) bindTexture(7) texParameteri ", log.toString());
+
+        // 绘制之前撤销的绑定和开关不会发出
+        log.clear();
+        gl.glBindTexture(GL_TEXTURE_2D, 7);
+        gl.glDrawArrays(GL_TRIANGLES, 0, 3);
+        assertEquals("disable(3042) drawArrays ", log.toString());
+        log.clear();
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        gl.glBindTexture(GL_TEXTURE_2D, 7);
+        gl.glDrawArrays(GL_TRIANGLES, 0, 3);
+        assertEquals("drawArrays ", log.toString());
+    }
+
+    @Test
+    public void clientPointersAlwaysPassThrough() {
+        Buffer vertices = ByteBuffer.allocateDirect(36);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 5);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        assertEquals("bindBuffer(5) pointer ", log.toString());
+
+        log.clear();
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, vertices);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, vertices);
+        assertEquals("bindBuffer(0) clientPointer clientPointer ", log.toString());
+
+        // 客户端数组覆盖了之前的VBO,需要重新设置
+        log.clear();
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 5);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        assertEquals("bindBuffer(5) pointer ", log.toString());
+    }
+
+    private void drawBoxes(ObjectRenderer renderer, int count) {
+        gl.beginFrame();
+        driver.beginFrame();
+        float[] view = identity();
+        float[] projection = identity();
+        for (int i = 0; i < count; i++) {
+            float[] model = identity();
+            Mat4.translate(model, 0.45f * i, 0f, 0f);
+            renderer.updateModelMatrix(model, 0.5f);
+            renderer.draw(view, projection, 1f);
+        }
+    }
+
+    private ObjectRenderer boxRenderer() {
+        ObjectRenderer renderer = new ObjectRenderer(gl);
+        int[] indices = new int[BOX_INDICES];
+        for (int i = 0; i < BOX_INDICES; i++) {
+            indices[i] = i % BOX_VERTICES;
+        }
+        MeshData mesh = new MeshData(new float[BOX_VERTICES * MeshData.FLOATS_PER_VERTEX],
+                BOX_VERTICES, indices, BOX_INDICES);
+        renderer.loadMesh(mesh.toVertexBuffer(), BOX_VERTICES, mesh.toShortIndexBuffer());
+        renderer.loadPrograms(1, 2);
+        return renderer;
+    }
+
+    private static float[] identity() {
+        float[] m = new float[16];
+        Mat4.setIdentity(m);
+        return m;
+    }
+
+    /** 每个uniform和attribute有不同的location,并记下部分调用的顺序 */
+    private static final class LoggingBackend extends NoOpGlBackend {
+        private final StringBuilder calls = new StringBuilder();
+        private int nextLocation;
+        private int nextAttribute;
+
+        void clear() {
+            calls.setLength(0);
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name) {
+            return nextLocation++;
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name) {
+            return nextAttribute++ % 4;
+        }
+
+        @Override
+        public void glActiveTexture(int texture) {
+            calls.append("activeTexture(").append(texture).append(") ");
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture) {
+            calls.append("bindTexture(").append(texture).append(") ");
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            calls.append("bindBuffer(").append(buffer).append(") ");
+        }
+
+        @Override
+        public void glTexParameteri(int target, int pname, int param) {
+            calls.append("texParameteri ");
+        }
+
+        @Override
+        public void glEnable(int cap) {
+            calls.append("enable(").append(cap).append(") ");
+        }
+
+        @Override
+        public void glDisable(int cap) {
+            calls.append("disable(").append(cap).append(") ");
+        }
+
+        @Override
+        public void glDrawArrays(int mode, int first, int count) {
+            calls.append("drawArrays ");
+        }
+
+        @Override
+        public void glVertexAttribPointer(
+                int index, int size, int type, boolean normalized, int stride, int offset) {
+            calls.append("pointer ");
+        }
+
+        @Override
+        public void glVertexAttribPointer(
+                int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+            calls.append("clientPointer ");
+        }
+
+        @Override
+        public String toString() {
+            return calls.toString();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.webank.mbank.ar.texture;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Etc1Test {
+
+    @Test
+    public void representableColorsRoundTripExactly() throws Exception {
+        // 4位颜色展开后是17的倍数,纯色块可以精确还原
+        int[] pixels = new int[16];
+        for (int i = 0; i < 16; i++) {
+            pixels[i] = 0xff000000 | (17 * 3) << 16 | (17 * 9) << 8 | 17 * 14;
+        }
+        byte[] block = new byte[Etc1.BYTES_PER_BLOCK];
+        Etc1.encodeBlock(pixels, block, 0);
+        int[] decoded = new int[16];
+        Etc1.decodeBlock(block, 0, decoded);
+        assertArrayEquals(pixels, decoded);
+    }
+
+    @Test
+    public void splitsBlockAlongEdge() throws Exception {
+        // 上下两半颜色差别很大,应该按4x2分成两个子块,误差很小
+        int[] pixels = new int[16];
+        for (int i = 0; i < 16; i++) {
+            pixels[i] = i < 8 ? 0xff102030 : 0xfff0e0d0;
+        }
+        byte[] block = new byte[Etc1.BYTES_PER_BLOCK];
+        Etc1.encodeBlock(pixels, block, 0);
+        int[] decoded = new int[16];
+        Etc1.decodeBlock(block, 0, decoded);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(maxChannelError(pixels[i], decoded[i]) <= 8);
+        }
+    }
+
+    @Test
+    public void gradientKeepsQuality() throws Exception {
+        int width = 32;
+        int height = 16;
+        // 平滑的渐变,类似模型贴图;ETC1每个子块只有一种色调,剧烈的色彩变化还原不了
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = 0xff000000 | (x * 4) << 16 | (y * 8) << 8 | 128;
+            }
+        }
+        byte[] encoded = Etc1.encodeImage(argb, width, height);
+        assertEquals(Etc1.encodedSize(width, height), encoded.length);
+        assertEquals(width * height / 2, encoded.length);
+
+        int[] decoded = Etc1.decodeImage(encoded, 0, width, height);
+        double sum = 0;
+        for (int i = 0; i < argb.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int d = ((argb[i] >> shift) & 0xff) - ((decoded[i] >> shift) & 0xff);
+                sum += d * d;
+            }
+        }
+        double psnr = 10 * Math.log10(255 * 255 / (sum / (argb.length * 3)));
+        assertTrue("PSNR " + psnr, psnr > 35);
+    }
+
+    @Test
+    public void partialBlocksRepeatEdge() throws Exception {
+        // 2x2的图像占一个完整的块,解码时只取左上角
+        int[] argb = {0xffff0000, 0xffff0000, 0xffff0000, 0xffff0000};
+        byte[] encoded = Etc1.encodeImage(argb, 2, 2);
+        assertEquals(Etc1.BYTES_PER_BLOCK, encoded.length);
+        int[] decoded = Etc1.decodeImage(encoded, 0, 2, 2);
+        assertEquals(4, decoded.length);
+        for (int pixel : decoded) {
+            assertTrue(maxChannelError(0xffff0000, pixel) <= 8);
+        }
+    }
+
+    private static int maxChannelError(int a, int b) {
+        int max = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            max = Math.max(max, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+        }
+        return max;
+    }
+}
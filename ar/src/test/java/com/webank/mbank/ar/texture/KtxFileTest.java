@@ -0,0 +1,81 @@
+package com.webank.mbank.ar.texture;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class KtxFileTest {
+
+    @Test
+    public void writesWholeMipChain() throws Exception {
+        int[] argb = new int[16 * 8];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xff000000 | i * 0x010203;
+        }
+        KtxFile file = KtxFile.wrap(write(argb, 16, 8));
+        assertEquals(Etc1.GL_ETC1_RGB8_OES, file.getInternalFormat());
+        assertEquals(KtxFile.GL_RGB, file.getBaseInternalFormat());
+        assertEquals(16, file.getWidth());
+        assertEquals(8, file.getHeight());
+        // 16x8, 8x4, 4x2, 2x1, 1x1
+        assertEquals(5, file.getLevelCount());
+        assertTrue(file.isMipmapComplete());
+        assertEquals(2, file.getLevelWidth(3));
+        assertEquals(1, file.getLevelHeight(3));
+        assertEquals(Etc1.encodedSize(16, 8), file.getLevel(0).remaining());
+        for (int level = 1; level < 5; level++) {
+            // 不足4x4的级别也占一个块
+            assertEquals(Etc1.encodedSize(file.getLevelWidth(level), file.getLevelHeight(level)),
+                    file.getLevel(level).remaining());
+        }
+
+        // 第0级和直接压缩的结果一致
+        byte[] expected = Etc1.encodeImage(argb, 16, 8);
+        ByteBuffer level0 = file.getLevel(0);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], level0.get(i));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws Exception {
+        ByteBuffer data = write(new int[8 * 8], 8, 8);
+        data.limit(data.limit() - 1);
+        try {
+            KtxFile.wrap(data);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws Exception {
+        try {
+            KtxFile.wrap(ByteBuffer.allocate(KtxFile.HEADER_SIZE));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void resizesToPowerOfTwo() throws Exception {
+        assertEquals(512, Mipmaps.nearestPowerOfTwo(727));
+        assertEquals(1024, Mipmaps.nearestPowerOfTwo(1000));
+        assertEquals(512, Mipmaps.nearestPowerOfTwo(512));
+        assertEquals(1, Mipmaps.nearestPowerOfTwo(1));
+
+        int[] resized = Mipmaps.resize(new int[]{0xff808080, 0xff808080, 0xff808080}, 3, 1, 4, 1);
+        assertEquals(4, resized.length);
+        assertEquals(0xff808080, resized[3]);
+    }
+
+    private static ByteBuffer write(int[] argb, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KtxWriter.writeEtc1(argb, width, height, out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+}
@@ -0,0 +1,93 @@
+package com.webank.mbank.ar.trace;
+
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Mat4;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TraceReplayerTest {
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Test
+    public void replayPlaysTheRecordedGame() throws Exception {
+        byte[] trace = recordSession(7L);
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(trace));
+        TraceReplayer replayer = new TraceReplayer(new JumpGameEngine(new Random(reader.getSeed())));
+        final int[] maxScore = new int[1];
+        replayer.setFrameConsumer(new TraceReplayer.FrameConsumer() {
+            @Override
+            public void onFrame(TraceFrame frame, JumpGameState state) {
+                maxScore[0] = Math.max(maxScore[0], state.score);
+            }
+        });
+        assertEquals(300, replayer.replay(reader));
+        // 第一跳的距离是固定的0.45,按压1137ms刚好跳到第二张桌子上
+        assertTrue(maxScore[0] >= 1);
+        assertEquals(300, replayer.getFrameNanos().getCount());
+    }
+
+    @Test
+    public void replayIsDeterministic() throws Exception {
+        byte[] trace = recordSession(99L);
+        assertEquals(replayReport(trace), replayReport(trace));
+    }
+
+    @Test
+    public void poseMatrixMatchesQuaternion() {
+        // 绕Y轴旋转90度
+        float s = (float) Math.sqrt(0.5);
+        float[] m = new float[16];
+        Mat4.setFromPose(m, 1, 2, 3, 0, s, 0, s);
+        assertArrayEquals(new float[]{
+                0, 0, -1, 0,
+                0, 1, 0, 0,
+                1, 0, 0, 0,
+                1, 2, 3, 1}, m, 1e-6f);
+    }
+
+    private static String replayReport(byte[] trace) throws Exception {
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(trace));
+        TraceReplayer replayer = new TraceReplayer(new JumpGameEngine(new Random(reader.getSeed())));
+        StringWriter report = new StringWriter();
+        replayer.setReport(report);
+        replayer.replay(reader);
+        // 去掉每帧的耗时,只比较状态
+        return report.toString().replaceAll("(?m)^(\\d+,\\d+),\\d+,", "$1,");
+    }
+
+    /** 300帧:第10帧开局,之后每60帧按压一次 */
+    private static byte[] recordSession(long seed) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, seed);
+        TraceFrame frame = new TraceFrame();
+        long now = 5000000000L;
+        for (int i = 0; i < 300; i++) {
+            frame.clear();
+            now += FRAME_NANOS;
+            frame.timestampNanos = now;
+            Mat4.setIdentity(frame.projection);
+            Mat4.setIdentity(frame.view);
+            frame.displayOrientedPose[6] = 1f;
+            if (i == 10) {
+                frame.hasAnchor = true;
+                frame.startRequested = true;
+                frame.anchorPose[6] = 1f;
+            }
+            if (i > 10 && i % 60 == 0) {
+                frame.addTouch(TraceFrame.ACTION_DOWN, 0, 0, now - 1137000000L);
+                frame.addTouch(TraceFrame.ACTION_UP, 0, 0, now - 1000);
+            }
+            writer.write(frame);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+}
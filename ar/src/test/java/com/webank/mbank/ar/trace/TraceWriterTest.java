@@ -0,0 +1,140 @@
+package com.webank.mbank.ar.trace;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TraceWriterTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, 1234L);
+        TraceFrame frame = new TraceFrame();
+        for (int i = 0; i < 10; i++) {
+            fillFrame(frame, i);
+            writer.write(frame);
+        }
+        writer.close();
+        assertEquals(10, writer.getFrameCount());
+
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(1234L, reader.getSeed());
+        TraceFrame expected = new TraceFrame();
+        TraceFrame actual = new TraceFrame();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(reader.read(actual));
+            fillFrame(expected, i);
+            assertFrameEquals(expected, actual);
+        }
+        assertFalse(reader.read(actual));
+    }
+
+    @Test
+    public void unchangedPolygonsAreNotRewritten() throws Exception {
+        TraceFrame frame = new TraceFrame();
+        fillFrame(frame, 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, 0);
+        writer.write(frame);
+        writer.flush();
+        int first = bytes.size();
+        writer.write(frame);
+        writer.flush();
+        int second = bytes.size() - first;
+        writer.close();
+
+        int polygonBytes = 0;
+        for (int i = 0; i < frame.planeCount; i++) {
+            polygonBytes += 2 + frame.planes[i].polygonSize * 4;
+        }
+        // 文件头: magic, version, seed
+        int header = 4 + 2 + 8;
+        assertEquals(polygonBytes, first - header - second);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        new TraceReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14}));
+    }
+
+    /** 平面1的多边形每5帧变化一次,平面0不变 */
+    private static void fillFrame(TraceFrame frame, int index) {
+        frame.clear();
+        frame.timestampNanos = 1000000000L + index * 33333333L;
+        frame.cameraTrackingState = TraceFrame.TRACKING;
+        for (int i = 0; i < 16; i++) {
+            frame.projection[i] = i * 0.5f;
+            frame.view[i] = index + i;
+        }
+        for (int i = 0; i < TraceFrame.POSE_SIZE; i++) {
+            frame.displayOrientedPose[i] = index * i;
+        }
+        frame.lightIntensity = 0.4f;
+        if (index == 3) {
+            frame.hasAnchor = true;
+            frame.startRequested = true;
+            frame.anchorTrackingState = TraceFrame.TRACKING;
+            frame.anchorPose[0] = 0.25f;
+            frame.anchorPose[6] = 1f;
+        }
+        for (int p = 0; p < 2; p++) {
+            TraceFrame.TracePlane plane = frame.addPlane();
+            plane.id = p;
+            plane.trackingState = TraceFrame.TRACKING;
+            plane.type = 0;
+            plane.centerPose[1] = -1f;
+            plane.centerPose[6] = 1f;
+            plane.extentX = 1.5f;
+            plane.extentZ = 2f;
+            int version = p == 0 ? 0 : index / 5;
+            int size = 8 + version * 2;
+            float[] polygon = plane.ensurePolygonCapacity(size);
+            for (int i = 0; i < size; i++) {
+                polygon[i] = version + i * 0.1f;
+            }
+        }
+        if (index % 4 == 0) {
+            frame.addTouch(TraceFrame.ACTION_DOWN, 10, 20, frame.timestampNanos - 5);
+            frame.addTouch(TraceFrame.ACTION_UP, 11, 21, frame.timestampNanos - 1);
+        }
+    }
+
+    private static void assertFrameEquals(TraceFrame expected, TraceFrame actual) {
+        assertEquals(expected.timestampNanos, actual.timestampNanos);
+        assertEquals(expected.cameraTrackingState, actual.cameraTrackingState);
+        assertArrayEquals(expected.projection, actual.projection, 0f);
+        assertArrayEquals(expected.view, actual.view, 0f);
+        assertArrayEquals(expected.displayOrientedPose, actual.displayOrientedPose, 0f);
+        assertEquals(expected.lightIntensity, actual.lightIntensity, 0f);
+        assertEquals(expected.hasAnchor, actual.hasAnchor);
+        assertEquals(expected.startRequested, actual.startRequested);
+        if (expected.hasAnchor) {
+            assertArrayEquals(expected.anchorPose, actual.anchorPose, 0f);
+        }
+        assertEquals(expected.planeCount, actual.planeCount);
+        for (int i = 0; i < expected.planeCount; i++) {
+            TraceFrame.TracePlane e = expected.planes[i];
+            TraceFrame.TracePlane a = actual.planes[i];
+            assertEquals(e.id, a.id);
+            assertArrayEquals(e.centerPose, a.centerPose, 0f);
+            assertEquals(e.extentX, a.extentX, 0f);
+            assertEquals(e.extentZ, a.extentZ, 0f);
+            assertEquals(e.polygonSize, a.polygonSize);
+            assertArrayEquals(Arrays.copyOf(e.polygon, e.polygonSize),
+                    Arrays.copyOf(a.polygon, a.polygonSize), 0f);
+        }
+        assertEquals(expected.touchCount, actual.touchCount);
+        for (int i = 0; i < expected.touchCount; i++) {
+            assertEquals(expected.touchActions[i], actual.touchActions[i]);
+            assertEquals(expected.touchX[i], actual.touchX[i], 0f);
+            assertEquals(expected.touchNanos[i], actual.touchNanos[i]);
+        }
+    }
+}
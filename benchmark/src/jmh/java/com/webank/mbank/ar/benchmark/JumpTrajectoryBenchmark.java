@@ -0,0 +1,64 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Mat4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跳跃轨迹的计算,原来在Activity的changeStride中,现在是 {@link JumpGameEngine#tick()}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class JumpTrajectoryBenchmark {
+    // 按压0.8秒,大约跳到第二个盒子的位置
+    private static final long PRESS_NANOS = 800000000L;
+
+    private final JumpGameEngine engine = new JumpGameEngine(new Random(42));
+    private final float[] anchor = new float[16];
+
+    @Setup
+    public void setUp() {
+        Mat4.setIdentity(anchor);
+        engine.start(anchor);
+    }
+
+    /** 跳跃中的一个固定步长 */
+    @Benchmark
+    public JumpGameState tick() {
+        JumpGameState state = engine.getState();
+        if (state.phase != JumpGameState.PHASE_JUMPING) {
+            if (state.phase != JumpGameState.PHASE_READY) {
+                engine.start(anchor);
+            }
+            engine.jump(PRESS_NANOS);
+        }
+        engine.tick();
+        return state;
+    }
+
+    /** 从起跳到落地的完整一跳 */
+    @Benchmark
+    public JumpGameState fullJump() {
+        JumpGameState state = engine.getState();
+        if (state.phase != JumpGameState.PHASE_READY) {
+            engine.start(anchor);
+        }
+        engine.jump(PRESS_NANOS);
+        while (state.phase == JumpGameState.PHASE_JUMPING) {
+            engine.tick();
+        }
+        return state;
+    }
+}
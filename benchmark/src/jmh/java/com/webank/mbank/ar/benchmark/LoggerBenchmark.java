@@ -0,0 +1,93 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.utils.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logger.d 的分发开销。Logger的状态是静态的,每组参数单独fork一个进程,互不影响
+ * <p>
+ * 日志级别是release的配置,即没有代理时不会真正输出,这里测的是调用点本身的开销,
+ * 包括可变参数数组和自动装箱。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class LoggerBenchmark {
+    private static final String TAG = "Bench";
+
+    // 代理数量,0表示没有代理
+    @Param({"0", "1", "4"})
+    public int proxies;
+
+    private final Logger.ILog proxy = new Logger.ILog() {
+        @Override
+        public void v(String tag, Throwable t, String msg, Object... args) {
+        }
+
+        @Override
+        public void d(String tag, Throwable t, String msg, Object... args) {
+        }
+
+        @Override
+        public void i(String tag, Throwable t, String msg, Object... args) {
+        }
+
+        @Override
+        public void w(String tag, Throwable t, String msg, Object... args) {
+        }
+
+        @Override
+        public void e(String tag, Throwable t, String msg, Object... args) {
+        }
+    };
+
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        Logger.closeLog();
+        for (int i = 0; i < proxies; i++) {
+            Logger.addProxy(proxy);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < proxies; i++) {
+            Logger.removeProxy(proxy);
+        }
+    }
+
+    /** 不带参数 */
+    @Benchmark
+    public void plain() {
+        Logger.d(TAG, "onDrawFrame");
+    }
+
+    /** 带参数,每次调用都会创建参数数组并装箱 */
+    @Benchmark
+    public void withArgs() {
+        Logger.d(TAG, "frame %d took %d us", frame++, 16000);
+    }
+
+    /** 先用isLoggable判断,热路径上推荐的写法 */
+    @Benchmark
+    public void guarded() {
+        if (Logger.isLoggable(android.util.Log.DEBUG)) {
+            Logger.d(TAG, "frame %d took %d us", frame++, 16000);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.rendering.ModelTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ObjectRenderer 每次绘制前在CPU上做的矩阵计算: updateModelMatrix 加上 draw 中的MV/MVP和光照方向
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ModelTransformBenchmark {
+    private static final float[] LIGHT = {0.250f, 0.866f, 0.433f, 0.0f};
+
+    private final ModelTransform transform = new ModelTransform();
+    private final float[] model = new float[16];
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+
+    // 用完整4x4乘法计算的对照组,和以前调用android.opengl.Matrix时的步骤一样
+    private final float[] scale = new float[16];
+    private final float[] scaledModel = new float[16];
+    private final float[] modelView = new float[16];
+    private final float[] modelViewProjection = new float[16];
+    private final float[] lightDirection = new float[4];
+
+    @Setup
+    public void setUp() {
+        Mat4.setIdentity(model);
+        Mat4.translate(model, 0.45f, 0f, -0.8f);
+        Mat4.rotateY(model, 30f);
+
+        Mat4.setIdentity(view);
+        Mat4.translate(view, 0f, -1.2f, -0.5f);
+
+        // 60度视角的透视投影
+        float f = 1.0f / (float) Math.tan(Math.toRadians(30));
+        Mat4.setIdentity(projection);
+        projection[0] = f / 0.5625f;
+        projection[5] = f;
+        projection[10] = -(100f + 0.1f) / (100f - 0.1f);
+        projection[11] = -1f;
+        projection[14] = -2f * 100f * 0.1f / (100f - 0.1f);
+        projection[15] = 0f;
+    }
+
+    /** 画一个盒子 */
+    @Benchmark
+    public ModelTransform drawOne() {
+        transform.setModel(model, 0.003f);
+        transform.update(view, projection);
+        return transform;
+    }
+
+    /** 同样的计算用setIdentity + 3次multiplyMM + multiplyMV完成,作为对照 */
+    @Benchmark
+    public float[] drawOneFullMultiply() {
+        Mat4.setIdentity(scale);
+        scale[0] = 0.003f;
+        scale[5] = 0.003f;
+        scale[10] = 0.003f;
+        Mat4.multiply(scaledModel, model, scale);
+        Mat4.multiply(modelView, view, scaledModel);
+        Mat4.multiply(modelViewProjection, projection, modelView);
+        Mat4.multiplyVec(lightDirection, modelView, LIGHT);
+        return lightDirection;
+    }
+}
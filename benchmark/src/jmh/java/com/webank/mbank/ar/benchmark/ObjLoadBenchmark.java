@@ -0,0 +1,94 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.mesh.MeshData;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.mesh.MeshWriter;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ObjectRenderer.createOnGlThread 中的OBJ解析,每次创建Surface都会执行
+ * <p>
+ * 模型目录由 -Dwear.assetsDir 指定,build.gradle 中默认是 ar/src/main/assets。
+ * 文件先读进内存,只统计解析的开销,不包括IO。{@link #readMesh} 是同一个模型转换成
+ * {@link MeshFile} 之后的加载开销,用来和OBJ对比。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ObjLoadBenchmark {
+    @Param({"webox.obj"})
+    public String model;
+
+    private byte[] objBytes;
+    private ByteBuffer meshBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = new File(System.getProperty("wear.assetsDir", "ar/src/main/assets"), model);
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            objBytes = out.toByteArray();
+        } finally {
+            in.close();
+        }
+
+        ByteArrayOutputStream mesh = new ByteArrayOutputStream();
+        MeshWriter.write(MeshData.fromObj(read()), mesh);
+        meshBytes = ByteBuffer.allocateDirect(mesh.size());
+        meshBytes.put(mesh.toByteArray()).rewind();
+    }
+
+    /** 只解析文本 */
+    @Benchmark
+    public Obj read() throws IOException {
+        return ObjReader.read(new ByteArrayInputStream(objBytes));
+    }
+
+    /** 和 ObjectRenderer 一样:解析、转换成可渲染的结构、取出各个缓冲区 */
+    @Benchmark
+    public void readAndConvert(Blackhole blackhole) throws IOException {
+        Obj obj = ObjReader.read(new ByteArrayInputStream(objBytes));
+        obj = ObjUtils.convertToRenderable(obj);
+        blackhole.consume(ObjData.getFaceVertexIndices(obj, 3));
+        blackhole.consume(ObjData.getVertices(obj));
+        blackhole.consume(ObjData.getTexCoords(obj, 2));
+        blackhole.consume(ObjData.getNormals(obj));
+    }
+
+    /** 二进制网格只需要检查文件头,顶点和索引块直接交给glBufferData */
+    @Benchmark
+    public void readMesh(Blackhole blackhole) throws IOException {
+        MeshFile file = MeshFile.wrap(meshBytes);
+        blackhole.consume(file.getVertices());
+        blackhole.consume(file.getIndices());
+    }
+}
@@ -0,0 +1,53 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.rendering.PlaneTessellator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PlaneRenderer.updatePlaneParameters 中的平面细分,每个被跟踪的平面每帧执行一次
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PlaneTessellatorBenchmark {
+    // 边界多边形的顶点数,ARCore识别出的平面一般在几个到上百个之间
+    @Param({"4", "16", "64", "256"})
+    public int boundaryVertices;
+
+    private final PlaneTessellator tessellator = new PlaneTessellator();
+    private FloatBuffer boundary;
+
+    @Setup
+    public void setUp() {
+        boundary = ByteBuffer.allocateDirect(boundaryVertices * 2 * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int i = 0; i < boundaryVertices; i++) {
+            // 半径0.5米左右、边缘略有起伏的凸多边形,和真实平面接近
+            double angle = 2 * Math.PI * i / boundaryVertices;
+            float radius = 0.5f + 0.02f * (i % 3);
+            boundary.put((float) Math.cos(angle) * radius);
+            boundary.put((float) Math.sin(angle) * radius);
+        }
+        boundary.rewind();
+    }
+
+    @Benchmark
+    public PlaneTessellator tessellate() {
+        boundary.rewind();
+        tessellator.tessellate(1.0f, 1.0f, boundary);
+        return tessellator;
+    }
+}
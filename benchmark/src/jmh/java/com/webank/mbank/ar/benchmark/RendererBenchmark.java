@@ -0,0 +1,111 @@
+package com.webank.mbank.ar.benchmark;
+
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.rendering.NoOpGlBackend;
+import com.webank.mbank.ar.rendering.RecordingGlBackend;
+import com.webank.mbank.ar.rendering.TraceFrameRenderer;
+import com.webank.mbank.ar.trace.TraceFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一帧的CPU端渲染开销:平面、点云、桌子(实例化绘制)和小机器人,和 HelloArActivity.onDrawFrame 的顺序一样
+ * <p>
+ * 渲染器是真实的 PlaneRenderer 和 ObjectRenderer,GL调用经过 {@link RecordingGlBackend} 计数后交给
+ * {@link NoOpGlBackend},所以测的是Java侧的开销,不包括驱动和GPU。每帧的内容不变,结束时打印最后一帧的
+ * GL调用数、绘制次数、状态切换、uniform更新和上传的字节数,分配速率由gc profiler统计。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class RendererBenchmark {
+    // 场上的桌子数,最多 JumpGameState.MAX_PLATFORMS
+    @Param({"2", "20"})
+    public int platforms;
+
+    // 识别出的平面数
+    @Param({"1", "8"})
+    public int planes;
+
+    private final RecordingGlBackend gl = new RecordingGlBackend(new NoOpGlBackend());
+    private final TraceFrame frame = new TraceFrame();
+    private final JumpGameState state = new JumpGameState();
+    private TraceFrameRenderer renderer;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = new File(System.getProperty("wear.assetsDir", "ar/src/main/assets"),
+                "webox" + MeshFile.EXTENSION);
+        MeshFile mesh;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            mesh = MeshFile.wrap(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+        renderer = new TraceFrameRenderer(gl, mesh, mesh);
+
+        // 相机在原点,单位投影,平面和桌子都在视锥体内
+        Mat4.setIdentity(frame.projection);
+        Mat4.setIdentity(frame.view);
+        frame.displayOrientedPose[6] = 1f;
+        frame.lightIntensity = 0.5f;
+        for (int i = 0; i < planes; i++) {
+            TraceFrame.TracePlane plane = frame.addPlane();
+            plane.id = i;
+            plane.centerPose[0] = i * 0.5f - 1f;
+            plane.centerPose[1] = -1f;
+            plane.centerPose[6] = 1f;
+            plane.extentX = 1f;
+            plane.extentZ = 1f;
+            // 16个顶点的近似圆形边界
+            float[] polygon = plane.ensurePolygonCapacity(32);
+            for (int k = 0; k < 16; k++) {
+                double angle = 2 * Math.PI * k / 16;
+                polygon[2 * k] = (float) Math.cos(angle) * 0.5f;
+                polygon[2 * k + 1] = (float) Math.sin(angle) * 0.5f;
+            }
+        }
+
+        state.phase = JumpGameState.PHASE_READY;
+        float[] model = new float[16];
+        for (int i = 0; i < platforms; i++) {
+            Mat4.setIdentity(model);
+            Mat4.translate(model, i * 0.05f - 0.5f, -0.3f, -0.5f);
+            state.platforms.push(model);
+        }
+        Mat4.setIdentity(state.robotMatrix);
+        Mat4.translate(state.robotMatrix, 0f, -0.2f, -0.5f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(String.format(
+                "platforms=%d planes=%d per frame: calls=%d draws=%d stateChanges=%d uniforms=%d uploaded=%dB",
+                platforms, planes, gl.getCalls(), gl.getDrawCalls(), gl.getStateChanges(),
+                gl.getUniformUpdates(), gl.getBytesUploaded()));
+    }
+
+    @Benchmark
+    public RecordingGlBackend drawFrame() {
+        gl.beginFrame();
+        renderer.onFrame(frame, state);
+        return gl;
+    }
+}
@@ -0,0 +1,13 @@
+package com.webank.mbank.ar;
+
+/**
+ * 代替ar模块生成的BuildConfig,按release配置回放和压测,比如 {@link com.webank.mbank.ar.utils.Logger} 默认关闭日志
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String APPLICATION_ID = "com.webank.mbank.ar";
+    public static final String BUILD_TYPE = "release";
+    public static final String FLAVOR = "";
+    public static final int VERSION_CODE = 1;
+    public static final String VERSION_NAME = "1.0";
+}
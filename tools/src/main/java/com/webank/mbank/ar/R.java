@@ -0,0 +1,16 @@
+package com.webank.mbank.ar;
+
+/**
+ * 代替ar模块生成的R。回放和压测时渲染器不从资源读取着色器,只需要它们引用到的id
+ */
+public final class R {
+    public static final class raw {
+        public static int object_vertex;
+        public static int object_instanced_vertex;
+        public static int object_fragment;
+        public static int plane_vertex;
+        public static int plane_fragment;
+        public static int point_cloud_vertex;
+        public static int passthrough_fragment;
+    }
+}
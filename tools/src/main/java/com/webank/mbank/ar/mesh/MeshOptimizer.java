@@ -0,0 +1,341 @@
+package com.webank.mbank.ar.mesh;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 离线的网格优化,由 {@link ObjToMesh} 在转换时调用,只改变顶点和三角形的顺序,不改变
+ * 画出来的三角形:
+ * <ol>
+ * <li>{@link #weld}: 合并属性完全相同的顶点,convertToRenderable 会产生很多重复的顶点</li>
+ * <li>{@link #optimizeVertexCache}: 按 Tipsify (Sander 2007) 重排三角形,提高GPU顶点缓存
+ * 的命中率,同时把结果分成若干簇</li>
+ * <li>{@link #optimizeOverdraw}: 按簇朝外的程度排序,先画外面的簇,减少被遮挡像素的着色</li>
+ * <li>{@link #optimizeVertexFetch}: 按第一次使用的顺序重排顶点,读取顶点时更连续</li>
+ * </ol>
+ * 用 {@link #acmr} 衡量效果:每个三角形平均需要变换的顶点数,理想网格约为0.5,最差为3。
+ */
+public final class MeshOptimizer {
+    /** 优化和统计时假设的顶点缓存大小,移动GPU一般在16到32之间 */
+    public static final int CACHE_SIZE = 16;
+
+    private MeshOptimizer() {
+    }
+
+    /** 依次执行所有优化 */
+    public static MeshData optimize(MeshData mesh) {
+        return optimizeVertexFetch(optimizeTriangles(weld(mesh)));
+    }
+
+    /**
+     * 只重排三角形({@link #optimizeVertexCache} 和 {@link #optimizeOverdraw}),顶点不变,
+     * 共用同一份顶点的多级LOD各自调用
+     */
+    public static MeshData optimizeTriangles(MeshData mesh) {
+        int triangleCount = mesh.indexCount / 3;
+        int[] cacheOrder = new int[mesh.indexCount];
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = optimizeVertexCache(mesh.indices, mesh.indexCount,
+                mesh.vertexCount, CACHE_SIZE, cacheOrder, clusters);
+        int[] drawOrder = new int[mesh.indexCount];
+        optimizeOverdraw(mesh.vertices, cacheOrder, mesh.indexCount, clusters, clusterCount,
+                drawOrder);
+        return new MeshData(mesh.vertices, mesh.vertexCount, drawOrder, mesh.indexCount);
+    }
+
+    /** 合并所有属性(按位)都相同的顶点,三角形不变 */
+    public static MeshData weld(MeshData mesh) {
+        int stride = MeshData.FLOATS_PER_VERTEX;
+        int[] table = new int[tableSize(mesh.vertexCount)];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+
+        int[] remap = new int[mesh.vertexCount];
+        float[] vertices = new float[mesh.vertexCount * stride];
+        int unique = 0;
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            int slot = hash(mesh.vertices, v * stride) & mask;
+            while (table[slot] >= 0 && !sameVertex(vertices, table[slot], mesh.vertices, v)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) {
+                table[slot] = unique;
+                System.arraycopy(mesh.vertices, v * stride, vertices, unique * stride, stride);
+                unique++;
+            }
+            remap[v] = table[slot];
+        }
+
+        int[] indices = new int[mesh.indexCount];
+        for (int i = 0; i < mesh.indexCount; i++) {
+            indices[i] = remap[mesh.indices[i]];
+        }
+        return new MeshData(Arrays.copyOf(vertices, unique * stride), unique, indices,
+                mesh.indexCount);
+    }
+
+    /**
+     * Tipsify:每次选一个"扇心"顶点,输出它所有还没输出的三角形,再从刚用到的顶点中选一个
+     * 还在缓存中、剩余三角形多的顶点作为下一个扇心;没有合适的顶点时从栈或者按顺序找一个,
+     * 并在这里开始一个新的簇。
+     *
+     * @param out      重排之后的索引,三角形内部的顶点顺序不变
+     * @param clusters 返回每个簇的第一个三角形,长度至少为三角形数+1,最后一项为三角形数
+     * @return 簇的数量
+     */
+    public static int optimizeVertexCache(int[] indices, int indexCount, int vertexCount,
+                                          int cacheSize, int[] out, int[] clusters) {
+        int triangleCount = indexCount / 3;
+        // 每个顶点相邻的三角形,CSR格式
+        int[] liveTriangles = new int[vertexCount];
+        for (int i = 0; i < triangleCount * 3; i++) {
+            liveTriangles[indices[i]]++;
+        }
+        int[] adjacencyStart = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyStart[v + 1] = adjacencyStart[v] + liveTriangles[v];
+        }
+        int[] adjacency = new int[triangleCount * 3];
+        int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                adjacency[fill[indices[t * 3 + k]]++] = t;
+            }
+        }
+
+        int[] cacheTime = new int[vertexCount];
+        int time = cacheSize + 1;
+        boolean[] emitted = new boolean[triangleCount];
+        int[] deadEnds = new int[triangleCount * 3];
+        int deadEndCount = 0;
+        int[] candidates = new int[triangleCount * 3];
+        int cursor = 0;
+        int written = 0;
+        int clusterCount = 0;
+
+        int fan = triangleCount > 0 ? indices[0] : -1;
+        boolean newCluster = true;
+        while (fan >= 0) {
+            int candidateCount = 0;
+            for (int a = adjacencyStart[fan]; a < adjacencyStart[fan + 1]; a++) {
+                int t = adjacency[a];
+                if (emitted[t]) {
+                    continue;
+                }
+                if (newCluster) {
+                    clusters[clusterCount++] = written / 3;
+                    newCluster = false;
+                }
+                for (int k = 0; k < 3; k++) {
+                    int v = indices[t * 3 + k];
+                    out[written++] = v;
+                    deadEnds[deadEndCount++] = v;
+                    candidates[candidateCount++] = v;
+                    liveTriangles[v]--;
+                    if (time - cacheTime[v] > cacheSize) {
+                        cacheTime[v] = time++;
+                    }
+                }
+                emitted[t] = true;
+            }
+
+            // 选下一个扇心:在缓存中并且用完之前不会被挤出去的,越早进入缓存越优先
+            int next = -1;
+            int best = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                int v = candidates[c];
+                if (liveTriangles[v] <= 0) {
+                    continue;
+                }
+                int priority = 0;
+                if (time - cacheTime[v] + 2 * liveTriangles[v] <= cacheSize) {
+                    priority = time - cacheTime[v];
+                }
+                if (priority > best) {
+                    best = priority;
+                    next = v;
+                }
+            }
+            if (next < 0) {
+                while (deadEndCount > 0 && next < 0) {
+                    int v = deadEnds[--deadEndCount];
+                    if (liveTriangles[v] > 0) {
+                        next = v;
+                    }
+                }
+                while (next < 0 && cursor < vertexCount) {
+                    if (liveTriangles[cursor] > 0) {
+                        next = cursor;
+                    }
+                    cursor++;
+                }
+                // 新的扇心已经不在缓存中,相当于重新开始,可以作为簇的边界
+                newCluster = next >= 0 && time - cacheTime[next] > cacheSize;
+            }
+            fan = next;
+        }
+        clusters[clusterCount] = triangleCount;
+        System.arraycopy(indices, written, out, written, indexCount - written);
+        return clusterCount;
+    }
+
+    /**
+     * 按簇的朝向排序:簇的中心相对于网格中心越靠外、法线越朝外,越先画。
+     * 簇内部的三角形顺序不变,所以顶点缓存的命中率基本不受影响。
+     *
+     * @param vertices {@link MeshData} 布局的顶点
+     * @param clusters {@link #optimizeVertexCache} 返回的簇
+     */
+    public static void optimizeOverdraw(float[] vertices, int[] indices, int indexCount,
+                                        int[] clusters, int clusterCount, int[] out) {
+        int triangleCount = indexCount / 3;
+        float[] meshCenter = new float[3];
+        float meshArea = 0f;
+        float[] clusterCenter = new float[clusterCount * 3];
+        float[] clusterNormal = new float[clusterCount * 3];
+        float[] cross = new float[3];
+        for (int c = 0; c < clusterCount; c++) {
+            float area = 0f;
+            for (int t = clusters[c]; t < clusters[c + 1]; t++) {
+                int a = indices[t * 3] * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET;
+                int b = indices[t * 3 + 1] * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET;
+                int d = indices[t * 3 + 2] * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET;
+                triangleCross(vertices, a, b, d, cross);
+                float triangleArea = (float) Math.sqrt(
+                        cross[0] * cross[0] + cross[1] * cross[1] + cross[2] * cross[2]);
+                for (int k = 0; k < 3; k++) {
+                    // 面积加权,cross的长度就是面积的两倍
+                    float center = (vertices[a + k] + vertices[b + k] + vertices[d + k]) / 3f;
+                    clusterCenter[c * 3 + k] += center * triangleArea;
+                    clusterNormal[c * 3 + k] += cross[k];
+                    meshCenter[k] += center * triangleArea;
+                }
+                area += triangleArea;
+            }
+            meshArea += area;
+            for (int k = 0; k < 3; k++) {
+                clusterCenter[c * 3 + k] = area > 0f ? clusterCenter[c * 3 + k] / area : 0f;
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            meshCenter[k] = meshArea > 0f ? meshCenter[k] / meshArea : 0f;
+        }
+
+        final float[] keys = new float[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            float dot = 0f;
+            float length = 0f;
+            for (int k = 0; k < 3; k++) {
+                dot += (clusterCenter[c * 3 + k] - meshCenter[k]) * clusterNormal[c * 3 + k];
+                length += clusterNormal[c * 3 + k] * clusterNormal[c * 3 + k];
+            }
+            keys[c] = length > 0f ? dot / (float) Math.sqrt(length) : 0f;
+            order[c] = c;
+        }
+        // 稳定排序,朝外的簇在前
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(keys[b], keys[a]);
+            }
+        });
+
+        int written = 0;
+        for (int i = 0; i < clusterCount; i++) {
+            int c = order[i];
+            int from = clusters[c] * 3;
+            int length = (clusters[c + 1] - clusters[c]) * 3;
+            System.arraycopy(indices, from, out, written, length);
+            written += length;
+        }
+        // 不完整的三角形原样保留在最后
+        System.arraycopy(indices, triangleCount * 3, out, written, indexCount - triangleCount * 3);
+    }
+
+    /** 按索引中第一次出现的顺序重排顶点,去掉没有用到的顶点 */
+    public static MeshData optimizeVertexFetch(MeshData mesh) {
+        int stride = MeshData.FLOATS_PER_VERTEX;
+        int[] remap = new int[mesh.vertexCount];
+        Arrays.fill(remap, -1);
+        float[] vertices = new float[mesh.vertexCount * stride];
+        int[] indices = new int[mesh.indexCount];
+        int next = 0;
+        for (int i = 0; i < mesh.indexCount; i++) {
+            int v = mesh.indices[i];
+            if (remap[v] < 0) {
+                remap[v] = next;
+                System.arraycopy(mesh.vertices, v * stride, vertices, next * stride, stride);
+                next++;
+            }
+            indices[i] = remap[v];
+        }
+        return new MeshData(Arrays.copyOf(vertices, next * stride), next, indices,
+                mesh.indexCount);
+    }
+
+    /**
+     * Average Cache Miss Ratio:模拟大小为 cacheSize 的FIFO顶点缓存,平均每个三角形未命中的次数
+     */
+    public static float acmr(int[] indices, int indexCount, int cacheSize) {
+        int triangleCount = indexCount / 3;
+        if (triangleCount == 0) {
+            return 0f;
+        }
+        int maxIndex = 0;
+        for (int i = 0; i < indexCount; i++) {
+            maxIndex = Math.max(maxIndex, indices[i]);
+        }
+        // 顶点进入缓存时的未命中序号,序号相差不超过cacheSize时还在缓存中
+        int[] inserted = new int[maxIndex + 1];
+        Arrays.fill(inserted, Integer.MIN_VALUE / 2);
+        int misses = 0;
+        for (int i = 0; i < triangleCount * 3; i++) {
+            int v = indices[i];
+            if (misses - inserted[v] >= cacheSize) {
+                inserted[v] = misses;
+                misses++;
+            }
+        }
+        return misses / (float) triangleCount;
+    }
+
+    private static void triangleCross(float[] v, int a, int b, int c, float[] out) {
+        float ux = v[b] - v[a];
+        float uy = v[b + 1] - v[a + 1];
+        float uz = v[b + 2] - v[a + 2];
+        float wx = v[c] - v[a];
+        float wy = v[c + 1] - v[a + 1];
+        float wz = v[c + 2] - v[a + 2];
+        out[0] = uy * wz - uz * wy;
+        out[1] = uz * wx - ux * wz;
+        out[2] = ux * wy - uy * wx;
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(float[] vertices, int offset) {
+        int h = 0;
+        for (int i = 0; i < MeshData.FLOATS_PER_VERTEX; i++) {
+            h = h * 31 + Float.floatToIntBits(vertices[offset + i]);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameVertex(float[] a, int va, float[] b, int vb) {
+        int stride = MeshData.FLOATS_PER_VERTEX;
+        for (int i = 0; i < stride; i++) {
+            if (Float.floatToIntBits(a[va * stride + i])
+                    != Float.floatToIntBits(b[vb * stride + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
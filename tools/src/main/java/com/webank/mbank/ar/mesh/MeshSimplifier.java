@@ -0,0 +1,391 @@
+package com.webank.mbank.ar.mesh;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * 按二次误差度量(QEM, Garland & Heckbert 1997)简化网格,用来离线生成LOD。
+ * <p>
+ * 只做半边折叠:把一个顶点合并到相邻的顶点上,不产生新顶点,所以所有LOD可以共用同一份
+ * 顶点数据,只有索引不同。纹理接缝上的顶点(同一位置有多个顶点)和开放边界上的顶点
+ * 不会被移动,避免产生裂缝;会让三角形翻转的折叠也会被跳过。
+ */
+public final class MeshSimplifier {
+    // 每个顶点的二次误差矩阵的10个系数,加上累积的平面数
+    private static final int QUADRIC_SIZE = 11;
+
+    /** 每级LOD的目标三角形数是上一级的一半 */
+    public static final float LOD_RATIO = 0.5f;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * 生成LOD,第0级就是输入的网格
+     *
+     * @param maxLevels 最多生成的级数,包括第0级
+     * @param errors    返回每一级相对于原网格的误差,模型空间中的距离,长度至少为maxLevels
+     * @return 共用 mesh.vertices 的各级网格,简化不动时会提前结束
+     */
+    public static MeshData[] buildLods(MeshData mesh, int maxLevels, float[] errors) {
+        MeshData[] lods = new MeshData[maxLevels];
+        lods[0] = mesh;
+        errors[0] = 0f;
+        int count = 1;
+        float[] error = new float[1];
+        while (count < maxLevels) {
+            MeshData previous = lods[count - 1];
+            int target = (int) (previous.indexCount / 3 * LOD_RATIO) * 3;
+            MeshData simplified = simplify(mesh, target, error);
+            // 少于10%的减少不值得单独一级
+            if (simplified.indexCount > previous.indexCount * 0.9f || simplified.indexCount == 0) {
+                break;
+            }
+            errors[count] = error[0];
+            lods[count++] = simplified;
+        }
+        return Arrays.copyOf(lods, count);
+    }
+
+    /**
+     * 把网格简化到不超过 targetIndexCount 个索引,或者没有可以折叠的边为止
+     *
+     * @param error 返回误差,模型空间中的距离
+     * @return 共用 mesh.vertices 的网格,三角形保持原来的相对顺序
+     */
+    public static MeshData simplify(MeshData mesh, int targetIndexCount, float[] error) {
+        int vertexCount = mesh.vertexCount;
+        int triangleCount = mesh.indexCount / 3;
+        int[] triangles = Arrays.copyOf(mesh.indices, triangleCount * 3);
+        boolean[] removed = new boolean[triangleCount];
+        float[] v = mesh.vertices;
+
+        boolean[] locked = findLockedVertices(mesh, triangles, triangleCount);
+
+        double[] quadrics = new double[vertexCount * QUADRIC_SIZE];
+        for (int t = 0; t < triangleCount; t++) {
+            addPlaneQuadric(v, triangles, t, quadrics);
+        }
+
+        IntList[] adjacency = new IntList[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            adjacency[i] = new IntList();
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                adjacency[triangles[t * 3 + k]].add(t);
+            }
+        }
+
+        int[] version = new int[vertexCount];
+        boolean[] collapsed = new boolean[vertexCount];
+        PriorityQueue<Collapse> queue = new PriorityQueue<>();
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = triangles[t * 3 + k];
+                int b = triangles[t * 3 + (k + 1) % 3];
+                offer(queue, a, b, locked, quadrics, v, version);
+                offer(queue, b, a, locked, quadrics, v, version);
+            }
+        }
+
+        int liveTriangles = triangleCount;
+        double maxError = 0;
+        while (liveTriangles * 3 > targetIndexCount && !queue.isEmpty()) {
+            Collapse c = queue.poll();
+            if (collapsed[c.from] || collapsed[c.to]
+                    || c.fromVersion != version[c.from] || c.toVersion != version[c.to]) {
+                continue;
+            }
+            if (!isEdge(adjacency[c.from], triangles, removed, c.to)
+                    || flips(v, adjacency[c.from], triangles, removed, c.from, c.to)) {
+                continue;
+            }
+
+            // 折叠 from -> to
+            collapsed[c.from] = true;
+            maxError = Math.max(maxError, c.error);
+            for (int q = 0; q < QUADRIC_SIZE; q++) {
+                quadrics[c.to * QUADRIC_SIZE + q] += quadrics[c.from * QUADRIC_SIZE + q];
+            }
+            IntList fromTriangles = adjacency[c.from];
+            for (int i = 0; i < fromTriangles.size; i++) {
+                int t = fromTriangles.items[i];
+                if (removed[t]) {
+                    continue;
+                }
+                boolean hasTo = false;
+                for (int k = 0; k < 3; k++) {
+                    if (triangles[t * 3 + k] == c.to) {
+                        hasTo = true;
+                    }
+                }
+                if (hasTo) {
+                    removed[t] = true;
+                    liveTriangles--;
+                } else {
+                    for (int k = 0; k < 3; k++) {
+                        if (triangles[t * 3 + k] == c.from) {
+                            triangles[t * 3 + k] = c.to;
+                        }
+                    }
+                    adjacency[c.to].add(t);
+                }
+            }
+            version[c.to]++;
+
+            // to周围的边代价都变了
+            IntList toTriangles = adjacency[c.to];
+            for (int i = 0; i < toTriangles.size; i++) {
+                int t = toTriangles.items[i];
+                if (removed[t]) {
+                    continue;
+                }
+                for (int k = 0; k < 3; k++) {
+                    int w = triangles[t * 3 + k];
+                    if (w != c.to) {
+                        version[w]++;
+                    }
+                }
+            }
+            for (int i = 0; i < toTriangles.size; i++) {
+                int t = toTriangles.items[i];
+                if (removed[t]) {
+                    continue;
+                }
+                for (int k = 0; k < 3; k++) {
+                    int a = triangles[t * 3 + k];
+                    int b = triangles[t * 3 + (k + 1) % 3];
+                    offer(queue, a, b, locked, quadrics, v, version);
+                    offer(queue, b, a, locked, quadrics, v, version);
+                }
+            }
+        }
+
+        int[] indices = new int[liveTriangles * 3];
+        int written = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (!removed[t]) {
+                System.arraycopy(triangles, t * 3, indices, written, 3);
+                written += 3;
+            }
+        }
+        error[0] = (float) maxError;
+        return new MeshData(mesh.vertices, vertexCount, indices, indices.length);
+    }
+
+    /** 同一位置有多个顶点(属性接缝)或者在开放边界上的顶点 */
+    private static boolean[] findLockedVertices(MeshData mesh, int[] triangles,
+                                                int triangleCount) {
+        int vertexCount = mesh.vertexCount;
+        // 按位置合并,positionId相同的顶点在同一个位置
+        int[] positionId = new int[vertexCount];
+        int[] verticesAtPosition = new int[vertexCount];
+        int[] table = new int[tableSize(vertexCount)];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int i = 0; i < vertexCount; i++) {
+            int slot = positionHash(mesh.vertices, i) & mask;
+            while (table[slot] >= 0 && !samePosition(mesh.vertices, table[slot], i)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) {
+                table[slot] = i;
+            }
+            positionId[i] = table[slot];
+            verticesAtPosition[table[slot]]++;
+        }
+
+        boolean[] locked = new boolean[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            locked[i] = verticesAtPosition[positionId[i]] > 1;
+        }
+
+        // 只属于一个三角形的边是边界;按位置比较,接缝两侧的边算同一条
+        long[] edges = new long[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = positionId[triangles[t * 3 + k]];
+                int b = positionId[triangles[t * 3 + (k + 1) % 3]];
+                edges[t * 3 + k] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+            }
+        }
+        Arrays.sort(edges);
+        boolean[] boundary = new boolean[vertexCount];
+        for (int i = 0; i < edges.length; i++) {
+            boolean single = (i == 0 || edges[i - 1] != edges[i])
+                    && (i == edges.length - 1 || edges[i + 1] != edges[i]);
+            if (single) {
+                boundary[(int) (edges[i] >>> 32)] = true;
+                boundary[(int) edges[i]] = true;
+            }
+        }
+        // 同一位置的所有顶点都锁定
+        for (int i = 0; i < vertexCount; i++) {
+            locked[i] |= boundary[positionId[i]];
+        }
+        return locked;
+    }
+
+    private static void offer(PriorityQueue<Collapse> queue, int from, int to, boolean[] locked,
+                              double[] quadrics, float[] v, int[] version) {
+        if (locked[from] || from == to) {
+            return;
+        }
+        int p = to * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET;
+        double cost = evaluate(quadrics, from, v[p], v[p + 1], v[p + 2])
+                + evaluate(quadrics, to, v[p], v[p + 1], v[p + 2]);
+        double planes = quadrics[from * QUADRIC_SIZE + 10] + quadrics[to * QUADRIC_SIZE + 10];
+        // 到累积的各个平面的均方根距离
+        double error = planes > 0 ? Math.sqrt(Math.max(cost, 0) / planes) : 0;
+        queue.add(new Collapse(from, to, cost, error, version[from], version[to]));
+    }
+
+    private static boolean isEdge(IntList fromTriangles, int[] triangles, boolean[] removed,
+                                  int to) {
+        for (int i = 0; i < fromTriangles.size; i++) {
+            int t = fromTriangles.items[i];
+            if (!removed[t] && (triangles[t * 3] == to || triangles[t * 3 + 1] == to
+                    || triangles[t * 3 + 2] == to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 把from移动到to的位置之后,是否有不含to的三角形翻转或者退化 */
+    private static boolean flips(float[] v, IntList fromTriangles, int[] triangles,
+                                 boolean[] removed, int from, int to) {
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int i = 0; i < fromTriangles.size; i++) {
+            int t = fromTriangles.items[i];
+            if (removed[t]) {
+                continue;
+            }
+            int a = triangles[t * 3];
+            int b = triangles[t * 3 + 1];
+            int c = triangles[t * 3 + 2];
+            if (a == to || b == to || c == to) {
+                continue;
+            }
+            normal(v, a, b, c, -1, -1, before);
+            normal(v, a, b, c, from, to, after);
+            double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            if (dot <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 三角形的法线(未归一化),顶点replace的位置用with的位置代替 */
+    private static void normal(float[] v, int a, int b, int c, int replace, int with,
+                               double[] out) {
+        int pa = position(a == replace ? with : a);
+        int pb = position(b == replace ? with : b);
+        int pc = position(c == replace ? with : c);
+        double ux = v[pb] - v[pa];
+        double uy = v[pb + 1] - v[pa + 1];
+        double uz = v[pb + 2] - v[pa + 2];
+        double wx = v[pc] - v[pa];
+        double wy = v[pc + 1] - v[pa + 1];
+        double wz = v[pc + 2] - v[pa + 2];
+        out[0] = uy * wz - uz * wy;
+        out[1] = uz * wx - ux * wz;
+        out[2] = ux * wy - uy * wx;
+    }
+
+    private static int position(int vertex) {
+        return vertex * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET;
+    }
+
+    private static void addPlaneQuadric(float[] v, int[] triangles, int t, double[] quadrics) {
+        double[] n = new double[3];
+        int a = triangles[t * 3];
+        normal(v, a, triangles[t * 3 + 1], triangles[t * 3 + 2], -1, -1, n);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0) {
+            return;
+        }
+        double nx = n[0] / length;
+        double ny = n[1] / length;
+        double nz = n[2] / length;
+        int p = position(a);
+        double d = -(nx * v[p] + ny * v[p + 1] + nz * v[p + 2]);
+        double[] plane = {nx * nx, nx * ny, nx * nz, nx * d, ny * ny, ny * nz, ny * d,
+                nz * nz, nz * d, d * d, 1};
+        for (int k = 0; k < 3; k++) {
+            int vertex = triangles[t * 3 + k];
+            for (int q = 0; q < QUADRIC_SIZE; q++) {
+                quadrics[vertex * QUADRIC_SIZE + q] += plane[q];
+            }
+        }
+    }
+
+    /** 点到所有累积平面的距离平方和 */
+    private static double evaluate(double[] q, int vertex, double x, double y, double z) {
+        int o = vertex * QUADRIC_SIZE;
+        return q[o] * x * x + 2 * q[o + 1] * x * y + 2 * q[o + 2] * x * z + 2 * q[o + 3] * x
+                + q[o + 4] * y * y + 2 * q[o + 5] * y * z + 2 * q[o + 6] * y
+                + q[o + 7] * z * z + 2 * q[o + 8] * z
+                + q[o + 9];
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int positionHash(float[] v, int vertex) {
+        int p = position(vertex);
+        int h = Float.floatToIntBits(v[p]);
+        h = h * 31 + Float.floatToIntBits(v[p + 1]);
+        h = h * 31 + Float.floatToIntBits(v[p + 2]);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean samePosition(float[] v, int a, int b) {
+        int pa = position(a);
+        int pb = position(b);
+        return v[pa] == v[pb] && v[pa + 1] == v[pb + 1] && v[pa + 2] == v[pb + 2];
+    }
+
+    private static final class Collapse implements Comparable<Collapse> {
+        final int from;
+        final int to;
+        final double cost;
+        final double error;
+        final int fromVersion;
+        final int toVersion;
+
+        Collapse(int from, int to, double cost, double error, int fromVersion, int toVersion) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+            this.error = error;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    private static final class IntList {
+        int[] items = new int[8];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+}
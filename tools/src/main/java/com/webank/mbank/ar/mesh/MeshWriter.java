@@ -0,0 +1,106 @@
+package com.webank.mbank.ar.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 把 {@link MeshData} 按 {@link MeshFile} 的格式写入输出流
+ */
+public final class MeshWriter {
+
+    private MeshWriter() {
+    }
+
+    public static void write(MeshData mesh, OutputStream out) throws IOException {
+        write(mesh, out, false);
+    }
+
+    /**
+     * 顶点数不超过65536时使用16位索引,否则使用32位索引
+     *
+     * @param quantized 是否按 {@link MeshQuantizer} 量化顶点
+     */
+    public static void write(MeshData mesh, OutputStream out, boolean quantized)
+            throws IOException {
+        write(new MeshData[]{mesh}, new float[]{0f}, out, quantized);
+    }
+
+    /**
+     * 写入多级LOD,比如 {@link MeshSimplifier#buildLods} 的结果
+     *
+     * @param lods   共用第0级顶点的各级网格,第0级最精细
+     * @param errors 每一级的误差
+     */
+    public static void write(MeshData[] lods, float[] errors, OutputStream out, boolean quantized)
+            throws IOException {
+        MeshData mesh = lods[0];
+        int totalIndexCount = 0;
+        for (MeshData lod : lods) {
+            if (lod.vertices != mesh.vertices) {
+                throw new IllegalArgumentException("lods must share vertices");
+            }
+            totalIndexCount += lod.indexCount;
+        }
+        int indexSize = mesh.maxIndex() <= 0xffff ? 2 : 4;
+        int stride = quantized ? MeshQuantizer.BYTES_PER_VERTEX : MeshData.BYTES_PER_VERTEX;
+        float[] min = new float[3];
+        float[] max = new float[3];
+        float[] texCoordMin = new float[2];
+        float[] texCoordMax = new float[2];
+        mesh.computeBounds(min, max);
+        mesh.computeTexCoordBounds(texCoordMin, texCoordMax);
+
+        ByteBuffer buffer = ByteBuffer.allocate(MeshFile.HEADER_SIZE
+                + lods.length * MeshFile.LOD_ENTRY_SIZE
+                + mesh.vertexCount * stride + totalIndexCount * indexSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MeshFile.MAGIC);
+        buffer.putShort(MeshFile.VERSION);
+        buffer.putShort((short) (quantized ? MeshFile.FLAG_QUANTIZED : 0));
+        buffer.putInt(mesh.vertexCount);
+        buffer.putInt(totalIndexCount);
+        buffer.putShort((short) stride);
+        buffer.putShort((short) indexSize);
+        for (int i = 0; i < 3; i++) {
+            buffer.putFloat(min[i]);
+        }
+        for (int i = 0; i < 3; i++) {
+            buffer.putFloat(max[i]);
+        }
+        for (int i = 0; i < 2; i++) {
+            buffer.putFloat(texCoordMin[i]);
+        }
+        for (int i = 0; i < 2; i++) {
+            buffer.putFloat(texCoordMax[i]);
+        }
+        buffer.putInt(lods.length);
+        int firstIndex = 0;
+        for (int i = 0; i < lods.length; i++) {
+            buffer.putInt(firstIndex);
+            buffer.putInt(lods[i].indexCount);
+            buffer.putFloat(errors[i]);
+            firstIndex += lods[i].indexCount;
+        }
+
+        if (quantized) {
+            MeshQuantizer.quantize(mesh, min, max, texCoordMin, texCoordMax, buffer);
+        } else {
+            for (int i = 0; i < mesh.vertexCount * MeshData.FLOATS_PER_VERTEX; i++) {
+                buffer.putFloat(mesh.vertices[i]);
+            }
+        }
+        for (MeshData lod : lods) {
+            for (int i = 0; i < lod.indexCount; i++) {
+                if (indexSize == 2) {
+                    buffer.putShort((short) lod.indices[i]);
+                } else {
+                    buffer.putInt(lod.indices[i]);
+                }
+            }
+        }
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+}
@@ -0,0 +1,80 @@
+package com.webank.mbank.ar.mesh;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import de.javagl.obj.ObjReader;
+
+/**
+ * 命令行工具:把OBJ模型转换成 {@link MeshFile},输出到同一目录下的同名.wmesh文件。
+ * <pre>
+ * ./gradlew :tools:objToMesh
+ * ./gradlew :tools:objToMesh -Pquantize
+ * java com.webank.mbank.ar.mesh.ObjToMesh [--quantize] model.obj [model2.obj ...]
+ * </pre>
+ * 加 --quantize 时按 {@link MeshQuantizer} 量化顶点,大小减半,适合顶点多的模型。
+ * 转换前会用 {@link MeshOptimizer} 优化顶点和三角形的顺序,并输出优化前后的ACMR;
+ * 然后用 {@link MeshSimplifier} 生成最多 {@link #LOD_LEVELS} 级LOD,写在同一个文件中。
+ */
+public final class ObjToMesh {
+
+    /** 包括原网格在内的LOD级数 */
+    public static final int LOD_LEVELS = 4;
+
+    private ObjToMesh() {
+    }
+
+    /** 转换一个模型,返回输出的文件 */
+    public static File convert(File objFile, boolean quantize) throws IOException {
+        MeshData source;
+        InputStream in = new FileInputStream(objFile);
+        try {
+            source = MeshData.fromObj(ObjReader.read(in));
+        } finally {
+            in.close();
+        }
+        MeshData mesh = MeshOptimizer.optimize(source);
+        System.out.println(String.format("%s: %d -> %d vertices, ACMR %.3f -> %.3f",
+                objFile.getName(), source.vertexCount, mesh.vertexCount,
+                MeshOptimizer.acmr(source.indices, source.indexCount, MeshOptimizer.CACHE_SIZE),
+                MeshOptimizer.acmr(mesh.indices, mesh.indexCount, MeshOptimizer.CACHE_SIZE)));
+
+        float[] errors = new float[LOD_LEVELS];
+        MeshData[] lods = MeshSimplifier.buildLods(mesh, LOD_LEVELS, errors);
+        for (int i = 1; i < lods.length; i++) {
+            lods[i] = MeshOptimizer.optimizeTriangles(lods[i]);
+            System.out.println(String.format("  LOD%d: %d triangles, error %.4f",
+                    i, lods[i].indexCount / 3, errors[i]));
+        }
+
+        String name = objFile.getName();
+        int dot = name.lastIndexOf('.');
+        File out = new File(objFile.getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + MeshFile.EXTENSION);
+        OutputStream stream = new FileOutputStream(out);
+        try {
+            MeshWriter.write(lods, errors, stream, quantize);
+        } finally {
+            stream.close();
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean quantize = args.length > 0 && "--quantize".equals(args[0]);
+        int first = quantize ? 1 : 0;
+        if (args.length <= first) {
+            System.err.println("usage: ObjToMesh [--quantize] <model.obj> [model.obj ...]");
+            System.exit(1);
+        }
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            File out = convert(new File(arg), quantize);
+            System.out.println(arg + " -> " + out.getPath() + " (" + out.length() + " bytes)");
+        }
+    }
+}
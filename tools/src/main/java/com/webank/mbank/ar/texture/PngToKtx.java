@@ -0,0 +1,82 @@
+package com.webank.mbank.ar.texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 命令行工具:把PNG纹理压缩成ETC1并生成整条mip链,输出到同一目录下的同名.ktx文件。
+ * <pre>
+ * ./gradlew :tools:pngToKtx
+ * java com.webank.mbank.ar.texture.PngToKtx texture.png [texture2.png ...]
+ * </pre>
+ * 宽高不是2的幂时先缩放到最接近的2的幂,OpenGL ES 2.0中只有这样才能使用mipmap;
+ * 纹理坐标是归一化的,缩放不影响模型。ETC1没有透明通道,透明度会被丢弃。
+ * 用到ImageIO,所以放在tools中而不是ar中。
+ */
+public final class PngToKtx {
+
+    private PngToKtx() {
+    }
+
+    /** 转换一张纹理,返回输出的文件 */
+    public static File convert(File pngFile) throws IOException {
+        BufferedImage image = ImageIO.read(pngFile);
+        if (image == null) {
+            throw new IOException("can not decode " + pngFile);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        int newWidth = Mipmaps.nearestPowerOfTwo(width);
+        int newHeight = Mipmaps.nearestPowerOfTwo(height);
+        argb = Mipmaps.resize(argb, width, height, newWidth, newHeight);
+
+        String name = pngFile.getName();
+        int dot = name.lastIndexOf('.');
+        File out = new File(pngFile.getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + KtxFile.EXTENSION);
+        OutputStream stream = new FileOutputStream(out);
+        try {
+            KtxWriter.writeEtc1(argb, newWidth, newHeight, stream);
+        } finally {
+            stream.close();
+        }
+
+        // 和原图比较第0级的PSNR,方便检查压缩质量
+        byte[] encoded = Etc1.encodeImage(argb, newWidth, newHeight);
+        int[] decoded = Etc1.decodeImage(encoded, 0, newWidth, newHeight);
+        System.out.println(String.format("%s: %dx%d -> %dx%d, %d levels, PSNR %.2f dB",
+                name, width, height, newWidth, newHeight,
+                Mipmaps.levelCount(newWidth, newHeight), psnr(argb, decoded)));
+        return out;
+    }
+
+    /** RGB三个通道的峰值信噪比 */
+    static double psnr(int[] expected, int[] actual) {
+        double sum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int d = ((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff);
+                sum += d * d;
+            }
+        }
+        double mse = sum / (expected.length * 3.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: PngToKtx <texture.png> [texture.png ...]");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            File out = convert(new File(arg));
+            System.out.println(arg + " -> " + out.getPath() + " (" + out.length() + " bytes)");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.webank.mbank.ar.trace;
+
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.profiling.LogLinearHistogram;
+import com.webank.mbank.ar.rendering.NoOpGlBackend;
+import com.webank.mbank.ar.rendering.RecordingGlBackend;
+import com.webank.mbank.ar.rendering.TraceFrameRenderer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * 命令行工具:在JVM上回放 {@link TraceRecorder} 录制的trace,每一帧都交给真实的渲染器,
+ * GL调用由 {@link RecordingGlBackend} 统计后交给 {@link NoOpGlBackend}。
+ * <pre>
+ * ./gradlew :tools:replayTrace -Ptrace=session_xxx.trace [-Preport=report.csv]
+ * java -Dwear.assetsDir=ar/src/main/assets com.webank.mbank.ar.trace.ReplayTrace &lt;trace&gt; [report.csv]
+ * </pre>
+ * 输出每帧回放耗时的分位数,以及平均每帧的GL调用数、绘制次数、状态切换、uniform更新和上传的字节数。
+ * 桌子和小机器人都用assets中的webox.wmesh绘制。
+ */
+public final class ReplayTrace {
+
+    private ReplayTrace() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayTrace <trace> [report.csv]");
+            System.exit(1);
+        }
+        File assets = new File(System.getProperty("wear.assetsDir", "ar/src/main/assets"));
+        MeshFile mesh = loadMesh(new File(assets, "webox" + MeshFile.EXTENSION));
+
+        final RecordingGlBackend gl = new RecordingGlBackend(new NoOpGlBackend());
+        final TraceFrameRenderer renderer = new TraceFrameRenderer(gl, mesh, mesh);
+        final long[] totals = new long[5];
+
+        TraceReader reader = new TraceReader(new FileInputStream(args[0]));
+        Writer report = args.length > 1 ? new FileWriter(args[1]) : null;
+        try {
+            TraceReplayer replayer = new TraceReplayer(new JumpGameEngine(new Random(reader.getSeed())));
+            replayer.setReport(report);
+            replayer.setFrameConsumer(new TraceReplayer.FrameConsumer() {
+                @Override
+                public void onFrame(TraceFrame frame, JumpGameState state) {
+                    gl.beginFrame();
+                    renderer.onFrame(frame, state);
+                    totals[0] += gl.getCalls();
+                    totals[1] += gl.getDrawCalls();
+                    totals[2] += gl.getStateChanges();
+                    totals[3] += gl.getUniformUpdates();
+                    totals[4] += gl.getBytesUploaded();
+                }
+            });
+            int frames = replayer.replay(reader);
+            LogLinearHistogram nanos = replayer.getFrameNanos();
+            System.out.println(String.format("frames=%d p50=%dns p99=%dns max=%dns", frames,
+                    nanos.getPercentile(50), nanos.getPercentile(99), nanos.getMax()));
+            int perFrame = Math.max(frames, 1);
+            System.out.println(String.format(
+                    "per frame: calls=%.1f draws=%.1f stateChanges=%.1f uniforms=%.1f uploaded=%.1fB",
+                    (double) totals[0] / perFrame, (double) totals[1] / perFrame,
+                    (double) totals[2] / perFrame, (double) totals[3] / perFrame,
+                    (double) totals[4] / perFrame));
+            System.out.println(String.format("plane meshes: %d uploads, %d hits",
+                    renderer.getPlaneRenderer().getMeshCache().getMissCount(),
+                    renderer.getPlaneRenderer().getMeshCache().getHitCount()));
+        } finally {
+            reader.close();
+            if (report != null) {
+                report.close();
+            }
+        }
+    }
+
+    private static MeshFile loadMesh(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return MeshFile.wrap(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.webank.mbank.ar.mesh;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import de.javagl.obj.ObjReader;
+
+import static org.junit.Assert.*;
+
+public class MeshFileTest {
+    // 一个四边形,带纹理坐标和法线
+    private static final String QUAD_OBJ = ""
+            + "v 0 0 0\nv 1 0 0\nv 1 0 1\nv 0 0 1\n"
+            + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n"
+            + "vn 0 1 0\n"
+            + "f 1/1/1 2/2/1 3/3/1 4/4/1\n";
+
+    @Test
+    public void roundTripMatchesObj() throws Exception {
+        MeshData mesh = MeshData.fromObj(ObjReader.read(
+                new ByteArrayInputStream(QUAD_OBJ.getBytes("UTF-8"))));
+        assertEquals(4, mesh.vertexCount);
+        // 四边形被三角化成两个三角形
+        assertEquals(6, mesh.indexCount);
+
+        MeshFile file = MeshFile.wrap(write(mesh));
+        assertEquals(mesh.vertexCount, file.getVertexCount());
+        assertEquals(mesh.indexCount, file.getIndexCount());
+        assertEquals(MeshData.BYTES_PER_VERTEX, file.getVertexStride());
+        assertEquals(2, file.getIndexSize());
+        assertEquals(1, file.getLodCount());
+        assertArrayEquals(new float[]{0f, 0f, 0f}, file.getBoundsMin(), 0f);
+        assertArrayEquals(new float[]{1f, 0f, 1f}, file.getBoundsMax(), 0f);
+
+        FloatBuffer vertices = file.getVertices().asFloatBuffer();
+        assertEquals(mesh.vertexCount * MeshData.FLOATS_PER_VERTEX, vertices.remaining());
+        for (int i = 0; i < vertices.remaining(); i++) {
+            assertEquals(mesh.vertices[i], vertices.get(i), 0f);
+        }
+        // 第一个顶点的法线
+        assertEquals(1f, vertices.get(MeshData.NORMAL_OFFSET + 1), 0f);
+
+        ShortBuffer indices = file.getIndices().asShortBuffer();
+        for (int i = 0; i < mesh.indexCount; i++) {
+            assertEquals(mesh.indices[i], indices.get(i));
+        }
+    }
+
+    @Test
+    public void largeMeshesUseIntIndices() throws Exception {
+        int vertexCount = 70000;
+        int[] indices = {0, 1, vertexCount - 1};
+        MeshData mesh = new MeshData(new float[vertexCount * MeshData.FLOATS_PER_VERTEX],
+                vertexCount, indices, indices.length);
+
+        MeshFile file = MeshFile.wrap(write(mesh));
+        assertEquals(4, file.getIndexSize());
+        assertEquals(vertexCount - 1, file.getIndices().asIntBuffer().get(2));
+    }
+
+    @Test
+    public void readsFromOffsetInBuffer() throws Exception {
+        MeshData mesh = new MeshData(new float[3 * MeshData.FLOATS_PER_VERTEX], 3,
+                new int[]{0, 1, 2}, 3);
+        ByteBuffer bytes = write(mesh);
+        // 模拟映射APK中的一段
+        ByteBuffer padded = ByteBuffer.allocateDirect(bytes.remaining() + 8);
+        padded.position(8);
+        padded.put(bytes);
+        padded.position(8);
+
+        MeshFile file = MeshFile.wrap(padded);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, file.getIndices().order());
+        assertEquals(2, file.getIndices().asShortBuffer().get(2));
+    }
+
+    @Test
+    public void lodsFollowEachOther() throws Exception {
+        float[] vertices = new float[4 * MeshData.FLOATS_PER_VERTEX];
+        MeshData fine = new MeshData(vertices, 4, new int[]{0, 1, 2, 0, 2, 3}, 6);
+        MeshData coarse = new MeshData(vertices, 4, new int[]{0, 1, 3}, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshWriter.write(new MeshData[]{fine, coarse}, new float[]{0f, 0.5f}, out, false);
+
+        MeshFile file = MeshFile.wrap(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(2, file.getLodCount());
+        assertEquals(9, file.getIndexCount());
+        assertEquals(0, file.getLodFirstIndex(0));
+        assertEquals(6, file.getLodIndexCount(0));
+        assertEquals(6, file.getLodFirstIndex(1));
+        assertEquals(3, file.getLodIndexCount(1));
+        assertEquals(0.5f, file.getLodError(1), 0f);
+        // LOD表在顶点块之前,顶点块不受影响
+        assertEquals(4 * MeshData.BYTES_PER_VERTEX, file.getVertices().remaining());
+        assertEquals(3, file.getIndices().asShortBuffer().get(8));
+    }
+
+    @Test
+    public void quantizedRoundTrip() throws Exception {
+        Random random = new Random(3);
+        int vertexCount = 100;
+        float[] vertices = new float[vertexCount * MeshData.FLOATS_PER_VERTEX];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = random.nextFloat() * 2f - 1f;
+        }
+        MeshData mesh = new MeshData(vertices, vertexCount, new int[]{0, 1, 2}, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshWriter.write(mesh, out, true);
+
+        MeshFile file = MeshFile.wrap(ByteBuffer.wrap(out.toByteArray()));
+        assertTrue(file.isQuantized());
+        assertEquals(MeshQuantizer.BYTES_PER_VERTEX, file.getVertexStride());
+
+        float[] boundsMin = new float[3];
+        float[] boundsMax = new float[3];
+        float[] texCoordMin = new float[2];
+        float[] texCoordMax = new float[2];
+        ByteBuffer expected =
+                MeshQuantizer.toVertexBuffer(mesh, boundsMin, boundsMax, texCoordMin, texCoordMax);
+        assertArrayEquals(boundsMin, file.getBoundsMin(), 0f);
+        assertArrayEquals(texCoordMax, file.getTexCoordMax(), 0f);
+        ByteBuffer actual = file.getVertices();
+        for (int i = 0; i < expected.remaining(); i += 2) {
+            assertEquals(expected.getShort(i), actual.getShort(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLodOutsideIndices() throws Exception {
+        ByteBuffer bytes = write(new MeshData(new float[3 * MeshData.FLOATS_PER_VERTEX], 3,
+                new int[]{0, 1, 2}, 3));
+        bytes.order(ByteOrder.LITTLE_ENDIAN).putInt(MeshFile.HEADER_SIZE + 4, 6);
+        MeshFile.wrap(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        ByteBuffer bytes = write(new MeshData(new float[0], 0, new int[0], 0));
+        bytes.putInt(0, 0x6a626f20);
+        MeshFile.wrap(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws Exception {
+        MeshData mesh = new MeshData(new float[3 * MeshData.FLOATS_PER_VERTEX], 3,
+                new int[]{0, 1, 2}, 3);
+        ByteBuffer bytes = write(mesh);
+        bytes.limit(bytes.limit() - 2);
+        MeshFile.wrap(bytes);
+    }
+
+    private static ByteBuffer write(MeshData mesh) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshWriter.write(mesh, out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+}
@@ -0,0 +1,148 @@
+package com.webank.mbank.ar.mesh;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshOptimizerTest {
+
+    @Test
+    public void optimizedMeshDrawsSameTriangles() throws Exception {
+        MeshData mesh = shuffledGrid(80, 60, new Random(5));
+        MeshData optimized = MeshOptimizer.optimize(mesh);
+        assertEquals(triangles(mesh), triangles(optimized));
+    }
+
+    @Test
+    public void improvesCacheMissRatio() throws Exception {
+        MeshData mesh = shuffledGrid(120, 120, new Random(9));
+        float before = MeshOptimizer.acmr(mesh.indices, mesh.indexCount, MeshOptimizer.CACHE_SIZE);
+        MeshData optimized = MeshOptimizer.optimize(mesh);
+        float after = MeshOptimizer.acmr(
+                optimized.indices, optimized.indexCount, MeshOptimizer.CACHE_SIZE);
+        // 打乱的网格几乎每个顶点都未命中,规则网格优化后应该接近每个三角形一个顶点
+        assertTrue("before " + before, before > 2f);
+        assertTrue("after " + after, after < 0.9f);
+    }
+
+    @Test
+    public void weldMergesDuplicates() throws Exception {
+        MeshData mesh = shuffledGrid(10, 10, new Random(1));
+        MeshData welded = MeshOptimizer.weld(mesh);
+        // 每个三角形单独的3个顶点,合并之后回到网格的顶点数
+        assertEquals(mesh.indexCount, mesh.vertexCount);
+        assertEquals(10 * 10, welded.vertexCount);
+        assertEquals(triangles(mesh), triangles(welded));
+    }
+
+    @Test
+    public void vertexFetchFollowsIndexOrder() throws Exception {
+        MeshData optimized = MeshOptimizer.optimize(shuffledGrid(30, 30, new Random(3)));
+        int next = 0;
+        for (int i = 0; i < optimized.indexCount; i++) {
+            // 每个新出现的顶点都是下一个顶点
+            assertTrue(optimized.indices[i] <= next);
+            if (optimized.indices[i] == next) {
+                next++;
+            }
+        }
+        assertEquals(optimized.vertexCount, next);
+    }
+
+    @Test
+    public void clustersCoverAllTriangles() throws Exception {
+        MeshData mesh = MeshOptimizer.weld(shuffledGrid(50, 50, new Random(4)));
+        int triangleCount = mesh.indexCount / 3;
+        int[] out = new int[mesh.indexCount];
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = MeshOptimizer.optimizeVertexCache(mesh.indices, mesh.indexCount,
+                mesh.vertexCount, MeshOptimizer.CACHE_SIZE, out, clusters);
+
+        assertTrue(clusterCount >= 1);
+        assertEquals(0, clusters[0]);
+        assertEquals(triangleCount, clusters[clusterCount]);
+        for (int c = 0; c < clusterCount; c++) {
+            assertTrue(clusters[c] < clusters[c + 1]);
+        }
+
+        int[] drawn = new int[mesh.indexCount];
+        MeshOptimizer.optimizeOverdraw(mesh.vertices, out, mesh.indexCount, clusters,
+                clusterCount, drawn);
+        MeshData reordered = new MeshData(mesh.vertices, mesh.vertexCount, drawn, mesh.indexCount);
+        assertEquals(triangles(mesh), triangles(reordered));
+    }
+
+    @Test
+    public void drawsOutwardClustersFirst() throws Exception {
+        // 两个平行的面,都朝+z:z=1的面背对网格中心,z=-0.5的面朝向网格中心
+        float[] vertices = new float[8 * MeshData.FLOATS_PER_VERTEX];
+        float[][] positions = {
+                {-1, -1, 1}, {1, -1, 1}, {1, 1, 1}, {-1, 1, 1},
+                {-1, -1, -0.5f}, {1, -1, -0.5f}, {1, 1, -0.5f}, {-1, 1, -0.5f}};
+        for (int v = 0; v < 8; v++) {
+            System.arraycopy(positions[v], 0, vertices, v * MeshData.FLOATS_PER_VERTEX, 3);
+        }
+        // 簇0是朝向中心的面,簇1是朝外的面
+        int[] indices = {4, 5, 6, 4, 6, 7, 0, 1, 2, 0, 2, 3};
+        int[] clusters = {0, 2, 4};
+        int[] out = new int[indices.length];
+        MeshOptimizer.optimizeOverdraw(vertices, indices, indices.length, clusters, 2, out);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 4, 5, 6, 4, 6, 7}, out);
+    }
+
+    /** 每个三角形用顶点属性表示,保留绕序,从最小的顶点开始,排序后比较 */
+    private static List<String> triangles(MeshData mesh) {
+        List<String> result = new ArrayList<>();
+        for (int t = 0; t + 2 < mesh.indexCount; t += 3) {
+            String[] corners = new String[3];
+            for (int k = 0; k < 3; k++) {
+                int base = mesh.indices[t + k] * MeshData.FLOATS_PER_VERTEX;
+                corners[k] = Arrays.toString(Arrays.copyOfRange(
+                        mesh.vertices, base, base + MeshData.FLOATS_PER_VERTEX));
+            }
+            int first = 0;
+            for (int k = 1; k < 3; k++) {
+                if (corners[k].compareTo(corners[first]) < 0) {
+                    first = k;
+                }
+            }
+            result.add(corners[first] + corners[(first + 1) % 3] + corners[(first + 2) % 3]);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** columns * rows 的网格,三角形顺序打乱,每个三角形有自己的3个顶点 */
+    private static MeshData shuffledGrid(int columns, int rows, Random random) {
+        List<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < rows - 1; y++) {
+            for (int x = 0; x < columns - 1; x++) {
+                int v = y * columns + x;
+                triangles.add(new int[]{v, v + 1, v + columns});
+                triangles.add(new int[]{v + 1, v + columns + 1, v + columns});
+            }
+        }
+        Collections.shuffle(triangles, random);
+
+        int vertexCount = triangles.size() * 3;
+        float[] vertices = new float[vertexCount * MeshData.FLOATS_PER_VERTEX];
+        int[] indices = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            int source = triangles.get(i / 3)[i % 3];
+            int base = i * MeshData.FLOATS_PER_VERTEX;
+            vertices[base + MeshData.POSITION_OFFSET] = source % columns;
+            vertices[base + MeshData.POSITION_OFFSET + 2] = source / columns;
+            vertices[base + MeshData.TEXCOORD_OFFSET] = (source % columns) / (float) columns;
+            vertices[base + MeshData.TEXCOORD_OFFSET + 1] = (source / columns) / (float) rows;
+            vertices[base + MeshData.NORMAL_OFFSET + 1] = 1f;
+            indices[i] = i;
+        }
+        return new MeshData(vertices, vertexCount, indices, vertexCount);
+    }
+}
@@ -0,0 +1,199 @@
+package com.webank.mbank.ar.mesh;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MeshSimplifierTest {
+
+    @Test
+    public void flatGridKeepsShape() throws Exception {
+        MeshData grid = grid(30, 30, -1);
+        MeshData simplified = MeshSimplifier.simplify(grid, grid.indexCount / 4, new float[1]);
+
+        assertTrue(simplified.indexCount <= grid.indexCount / 4);
+        assertTrue(simplified.indexCount > 0);
+        assertSame(grid.vertices, simplified.vertices);
+        // 边界不动,包围盒不变
+        float[] min = new float[3];
+        float[] max = new float[3];
+        usedBounds(simplified, min, max);
+        assertArrayEquals(new float[]{0f, 0f, 0f}, min, 0f);
+        assertArrayEquals(new float[]{29f, 0f, 29f}, max, 0f);
+        // 平面上的折叠没有误差,也没有三角形翻转
+        float[] error = new float[1];
+        MeshSimplifier.simplify(grid, grid.indexCount / 4, error);
+        assertEquals(0f, error[0], 1e-5f);
+        for (int t = 0; t < simplified.indexCount; t += 3) {
+            assertTrue(normalY(simplified, t) < 0f);
+        }
+    }
+
+    @Test
+    public void seamVerticesStay() throws Exception {
+        // 第15列的顶点复制一份,两边的纹理坐标不连续
+        MeshData grid = grid(30, 30, 15);
+        MeshData simplified = MeshSimplifier.simplify(grid, grid.indexCount / 4, new float[1]);
+
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < simplified.indexCount; i++) {
+            used.add(simplified.indices[i]);
+        }
+        for (int v = 30 * 30; v < grid.vertexCount; v++) {
+            // 接缝另一侧的顶点还在,它们在原网格中的位置也还在
+            assertTrue(used.contains(v));
+            assertTrue(used.contains((v - 30 * 30) * 30 + 15));
+        }
+    }
+
+    @Test
+    public void buildsCoarserLevels() throws Exception {
+        MeshData sphere = sphere(48, 24);
+        float[] errors = new float[4];
+        MeshData[] lods = MeshSimplifier.buildLods(sphere, 4, errors);
+
+        assertEquals(4, lods.length);
+        assertSame(sphere, lods[0]);
+        for (int i = 1; i < lods.length; i++) {
+            assertSame(sphere.vertices, lods[i].vertices);
+            // 每一级大约是上一级的一半
+            assertTrue(lods[i].indexCount <= lods[i - 1].indexCount * 0.6f);
+            assertTrue(errors[i] >= errors[i - 1]);
+        }
+        // 误差相对半径1的球很小
+        assertTrue("error " + errors[3], errors[3] < 0.2f);
+    }
+
+    @Test
+    public void stopsWhenNothingCanCollapse() throws Exception {
+        // 只有一个三角形,所有顶点都在边界上
+        MeshData triangle = new MeshData(new float[]{
+                0, 0, 0, 0, 0, 0, 0, 1,
+                1, 0, 0, 1, 0, 0, 0, 1,
+                0, 1, 0, 0, 1, 0, 0, 1}, 3, new int[]{0, 1, 2}, 3);
+        MeshData[] lods = MeshSimplifier.buildLods(triangle, 4, new float[4]);
+        assertEquals(1, lods.length);
+    }
+
+    /** 被三角形用到的顶点的包围盒 */
+    private static void usedBounds(MeshData mesh, float[] min, float[] max) {
+        for (int k = 0; k < 3; k++) {
+            min[k] = Float.MAX_VALUE;
+            max[k] = -Float.MAX_VALUE;
+        }
+        for (int i = 0; i < mesh.indexCount; i++) {
+            int base = mesh.indices[i] * MeshData.FLOATS_PER_VERTEX;
+            for (int k = 0; k < 3; k++) {
+                min[k] = Math.min(min[k], mesh.vertices[base + k]);
+                max[k] = Math.max(max[k], mesh.vertices[base + k]);
+            }
+        }
+    }
+
+    private static float normalY(MeshData mesh, int t) {
+        float[] v = mesh.vertices;
+        int a = mesh.indices[t] * MeshData.FLOATS_PER_VERTEX;
+        int b = mesh.indices[t + 1] * MeshData.FLOATS_PER_VERTEX;
+        int c = mesh.indices[t + 2] * MeshData.FLOATS_PER_VERTEX;
+        float ux = v[b] - v[a];
+        float uz = v[b + 2] - v[a + 2];
+        float wx = v[c] - v[a];
+        float wz = v[c + 2] - v[a + 2];
+        return uz * wx - ux * wz;
+    }
+
+    /**
+     * y=0平面上 size * size 的网格,seamColumn大于等于0时这一列的顶点复制一份,
+     * 右边的三角形用复制的顶点
+     */
+    private static MeshData grid(int size, int rows, int seamColumn) {
+        int extra = seamColumn >= 0 ? rows : 0;
+        int vertexCount = size * rows + extra;
+        float[] vertices = new float[vertexCount * MeshData.FLOATS_PER_VERTEX];
+        for (int v = 0; v < size * rows; v++) {
+            int base = v * MeshData.FLOATS_PER_VERTEX;
+            vertices[base] = v % size;
+            vertices[base + 2] = v / size;
+            vertices[base + MeshData.TEXCOORD_OFFSET] = v % size / (float) size;
+            vertices[base + MeshData.NORMAL_OFFSET + 1] = 1f;
+        }
+        for (int r = 0; r < extra; r++) {
+            int base = (size * rows + r) * MeshData.FLOATS_PER_VERTEX;
+            System.arraycopy(vertices, (r * size + seamColumn) * MeshData.FLOATS_PER_VERTEX,
+                    vertices, base, MeshData.FLOATS_PER_VERTEX);
+            vertices[base + MeshData.TEXCOORD_OFFSET] = 1f;
+        }
+
+        int[] indices = new int[(size - 1) * (rows - 1) * 6];
+        int n = 0;
+        for (int y = 0; y < rows - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int v00 = vertex(size, rows, seamColumn, x, y, x);
+                int v10 = vertex(size, rows, seamColumn, x + 1, y, x);
+                int v01 = vertex(size, rows, seamColumn, x, y + 1, x);
+                int v11 = vertex(size, rows, seamColumn, x + 1, y + 1, x);
+                indices[n++] = v00;
+                indices[n++] = v10;
+                indices[n++] = v01;
+                indices[n++] = v10;
+                indices[n++] = v11;
+                indices[n++] = v01;
+            }
+        }
+        return new MeshData(vertices, vertexCount, indices, n);
+    }
+
+    // 接缝右边的格子使用复制的顶点
+    private static int vertex(int size, int rows, int seamColumn, int x, int y, int cell) {
+        if (x == seamColumn && cell >= seamColumn) {
+            return size * rows + y;
+        }
+        return y * size + x;
+    }
+
+    /** 半径为1的UV球,两极和经线接缝处的顶点是重复的 */
+    private static MeshData sphere(int slices, int stacks) {
+        int vertexCount = (slices + 1) * (stacks + 1);
+        float[] vertices = new float[vertexCount * MeshData.FLOATS_PER_VERTEX];
+        for (int j = 0; j <= stacks; j++) {
+            double phi = Math.PI * j / stacks;
+            for (int i = 0; i <= slices; i++) {
+                double theta = 2 * Math.PI * (i % slices) / slices;
+                int base = (j * (slices + 1) + i) * MeshData.FLOATS_PER_VERTEX;
+                float x = (float) (Math.sin(phi) * Math.cos(theta));
+                float y = (float) Math.cos(phi);
+                float z = (float) (Math.sin(phi) * Math.sin(theta));
+                vertices[base] = x;
+                vertices[base + 1] = y;
+                vertices[base + 2] = z;
+                vertices[base + MeshData.TEXCOORD_OFFSET] = i / (float) slices;
+                vertices[base + MeshData.TEXCOORD_OFFSET + 1] = j / (float) stacks;
+                vertices[base + MeshData.NORMAL_OFFSET] = x;
+                vertices[base + MeshData.NORMAL_OFFSET + 1] = y;
+                vertices[base + MeshData.NORMAL_OFFSET + 2] = z;
+            }
+        }
+        int[] indices = new int[slices * (stacks - 2) * 6 + slices * 6];
+        int n = 0;
+        for (int j = 0; j < stacks; j++) {
+            for (int i = 0; i < slices; i++) {
+                int a = j * (slices + 1) + i;
+                int b = a + slices + 1;
+                if (j > 0) {
+                    indices[n++] = a;
+                    indices[n++] = a + 1;
+                    indices[n++] = b;
+                }
+                if (j < stacks - 1) {
+                    indices[n++] = a + 1;
+                    indices[n++] = b + 1;
+                    indices[n++] = b;
+                }
+            }
+        }
+        return new MeshData(vertices, vertexCount, indices, n);
+    }
+}
@@ -0,0 +1,122 @@
+package com.webank.mbank.ar.rendering;
+
+import com.webank.mbank.ar.game.JumpGameEngine;
+import com.webank.mbank.ar.game.JumpGameState;
+import com.webank.mbank.ar.math.Mat4;
+import com.webank.mbank.ar.mesh.MeshData;
+import com.webank.mbank.ar.mesh.MeshFile;
+import com.webank.mbank.ar.mesh.MeshWriter;
+import com.webank.mbank.ar.trace.TraceFrame;
+import com.webank.mbank.ar.trace.TraceReader;
+import com.webank.mbank.ar.trace.TraceReplayer;
+import com.webank.mbank.ar.trace.TraceWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 回放的每一帧都经过真实的渲染器:平面、点云、桌子和小机器人
+ */
+public class TraceFrameRendererTest {
+    private static final int FRAMES = 120;
+    private static final int START_FRAME = 10;
+
+    @Test
+    public void drawsEveryRecordedFrame() throws Exception {
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(recordSession()));
+        final RecordingGlBackend gl = new RecordingGlBackend(new NoOpGlBackend());
+        final TraceFrameRenderer renderer = new TraceFrameRenderer(gl, cube(), cube());
+        final int[] drawCalls = new int[FRAMES];
+        final int[] frameIndex = new int[1];
+        TraceReplayer replayer = new TraceReplayer(new JumpGameEngine(new Random(reader.getSeed())));
+        replayer.setFrameConsumer(new TraceReplayer.FrameConsumer() {
+            @Override
+            public void onFrame(TraceFrame frame, JumpGameState state) {
+                gl.beginFrame();
+                renderer.onFrame(frame, state);
+                drawCalls[frameIndex[0]++] = gl.getDrawCalls();
+            }
+        });
+        assertEquals(FRAMES, replayer.replay(reader));
+
+        // 开局之前只有两个平面和点云
+        assertEquals(3, drawCalls[0]);
+        // 开局之后还有桌子和小机器人
+        assertTrue(drawCalls[START_FRAME + 1] > 3);
+        assertTrue(drawCalls[FRAMES - 1] > 3);
+
+        // 平面0不变只上传一次;平面1的多边形变了一次,之后它的id给了一个新平面
+        PlaneMeshCache meshes = renderer.getPlaneRenderer().getMeshCache();
+        assertEquals(4, meshes.getMissCount());
+        assertEquals(2 * FRAMES - 4, meshes.getHitCount());
+        assertEquals(2, renderer.getPlaneRenderer().getPlaneRegistry().size());
+    }
+
+    private static MeshFile cube() throws Exception {
+        float[] vertices = new float[8 * MeshData.FLOATS_PER_VERTEX];
+        for (int v = 0; v < 8; v++) {
+            for (int k = 0; k < 3; k++) {
+                vertices[v * MeshData.FLOATS_PER_VERTEX + MeshData.POSITION_OFFSET + k] =
+                        (v >> k & 1) - 0.5f;
+            }
+        }
+        int[] indices = {0, 1, 3, 0, 3, 2, 4, 6, 7, 4, 7, 5};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshWriter.write(new MeshData(vertices, 8, indices, indices.length), out);
+        return MeshFile.wrap(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /** 相机在原点,两个平面在下方1米;第10帧开局,第60帧跳到第二张桌子上 */
+    private static byte[] recordSession() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, 5L);
+        TraceFrame frame = new TraceFrame();
+        long now = 5000000000L;
+        for (int i = 0; i < FRAMES; i++) {
+            frame.clear();
+            now += 33333333L;
+            frame.timestampNanos = now;
+            Mat4.setIdentity(frame.projection);
+            Mat4.setIdentity(frame.view);
+            frame.displayOrientedPose[6] = 1f;
+            frame.lightIntensity = 0.5f;
+            addPlane(frame, 0, 1f);
+            addPlane(frame, 1, i < 30 ? 2f : i < 60 ? 3f : 4f);
+            if (i == START_FRAME) {
+                frame.hasAnchor = true;
+                frame.startRequested = true;
+                frame.anchorPose[1] = -1f;
+                frame.anchorPose[6] = 1f;
+            }
+            if (i == 60) {
+                // 和TraceReplayerTest一样,第一跳按压1137ms刚好跳到第二张桌子上
+                frame.addTouch(TraceFrame.ACTION_DOWN, 0, 0, now - 1137000000L);
+                frame.addTouch(TraceFrame.ACTION_UP, 0, 0, now - 1000);
+            }
+            writer.write(frame);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private static void addPlane(TraceFrame frame, int id, float size) {
+        TraceFrame.TracePlane plane = frame.addPlane();
+        plane.id = id;
+        plane.trackingState = TraceFrame.TRACKING;
+        plane.centerPose[0] = id * 3f;
+        plane.centerPose[1] = -1f;
+        plane.centerPose[6] = 1f;
+        plane.extentX = size;
+        plane.extentZ = size;
+        float[] polygon = plane.ensurePolygonCapacity(8);
+        float half = size / 2;
+        float[] corners = {-half, -half, half, -half, half, half, -half, half};
+        System.arraycopy(corners, 0, polygon, 0, 8);
+    }
+}